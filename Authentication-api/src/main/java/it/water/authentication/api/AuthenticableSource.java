@@ -0,0 +1,27 @@
+package it.water.authentication.api;
+
+import it.water.core.api.security.Authenticable;
+import it.water.core.api.service.Service;
+
+import java.util.Collection;
+
+/**
+ * @Author Aristide Cittadino
+ * Source of the current state of a principal, implemented by the module owning the users (usually next to its
+ * AuthenticationProvider). A refresh token redeem reloads the principal through it, so that a token is never
+ * re-minted for a user that has been deleted or disabled, or with roles and admin flag captured at login.
+ * Without a source for the principal issuer, refresh tokens are rejected.
+ */
+public interface AuthenticableSource extends Service {
+
+    /**
+     * @return issuers whose principals this source can reload
+     */
+    Collection<String> issuersNames();
+
+    /**
+     * @param authenticable principal as captured when the refresh token was issued
+     * @return the current principal, or null when it no longer exists
+     */
+    Authenticable reload(Authenticable authenticable);
+}
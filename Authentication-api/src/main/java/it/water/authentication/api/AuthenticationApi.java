@@ -3,6 +3,10 @@ package it.water.authentication.api;
 import it.water.core.api.security.Authenticable;
 import it.water.core.api.service.BaseApi;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @Generated by Water Generator
  * This interface defines the externally exposed methods and allows interaction with them through a permission system.
@@ -37,11 +41,25 @@ public interface AuthenticationApi extends BaseApi {
      */
     Authenticable login(String username, String password, Long companyId, String clientIp);
 
+    /**
+     * Non-blocking login: lockout check and provider login run as stages on the authentication executor.
+     * Chain {@link #generateTokenAsync(Authenticable)} to issue the token without blocking the caller.
+     * @param companyId requested active company (may be null)
+     * @param clientIp resolved client IP for lockout (may be null)
+     * @return the authenticated principal, or a future completed with the login failure
+     */
+    CompletableFuture<Authenticable> loginAsync(String username, String password, Long companyId, String clientIp);
+
     /**
      * Resolves the active company from the request virtual host before authenticating.
      */
     Authenticable loginForVirtualHost(String username, String password, String virtualHost, String clientIp);
 
+    /**
+     * Non-blocking form of {@link #loginForVirtualHost(String, String, String, String)}
+     */
+    CompletableFuture<Authenticable> loginForVirtualHostAsync(String username, String password, String virtualHost, String clientIp);
+
     /**
      * User-level impersonation. The caller (taken from the current SecurityContext) mints an
      * Authenticable that carries the identity of the target user. Permission-gated in the provider
@@ -52,6 +70,24 @@ public interface AuthenticationApi extends BaseApi {
      */
     Authenticable impersonate(String targetUsername, Long companyId);
 
+    /**
+     * Non-blocking impersonation. The caller is taken from the current SecurityContext when the method is
+     * called, and the context is carried to the thread running the provider.
+     * @return the target Authenticable, or a future completed with UnauthorizedException when nobody is logged in
+     */
+    CompletableFuture<Authenticable> impersonateAsync(String targetUsername, Long companyId);
+
+    /**
+     * Impersonation token for the caller (taken from the current SecurityContext). A token issued for the same
+     * caller, target and company within water.authentication.impersonation.cache.ttl.millis is returned again
+     * without a new permission gate, as long as the caller did not log out and the permissions did not change.
+     * Tokens are only reused when a PermissionSnapshotSource publishes the permissions version.
+     * @param targetUsername username of the user to impersonate
+     * @param companyId requested active company for the target (may be null → target's primary)
+     * @return the token of the impersonated target
+     */
+    String impersonationToken(String targetUsername, Long companyId);
+
     /**
      * Generates a valid token for an authenticable
      * @param authenticable
@@ -59,10 +95,95 @@ public interface AuthenticationApi extends BaseApi {
      */
     String generateToken(Authenticable authenticable);
 
+    /**
+     * Non-blocking token generation, on the signing executor
+     * @param authenticable
+     * @return the signed token
+     */
+    CompletableFuture<String> generateTokenAsync(Authenticable authenticable);
+
+    /**
+     * Generates valid tokens for many authenticables at once
+     * @param authenticables principals to issue a token for
+     * @return one token per principal, in the iteration order of the input
+     */
+    List<String> generateTokens(Collection<Authenticable> authenticables);
+
+    /**
+     * Issues the refresh token returned at login next to the access token
+     * @param authenticable
+     * @return the refresh token, or null when refresh tokens are disabled
+     */
+    String generateRefreshToken(Authenticable authenticable);
+
+    /**
+     * Redeems a refresh token (no password, no provider login) and rotates it
+     * @param refreshToken refresh token obtained at login or from a previous refresh
+     * @return the principal to issue the new access token for, and the rotated refresh token
+     */
+    RefreshTokenGrant refresh(String refreshToken);
+
+    /**
+     * Revokes the refresh token and every token rotated from the same login
+     * @param refreshToken refresh token to revoke
+     */
+    void revokeRefreshToken(String refreshToken);
+
+    /**
+     * Logs the current user out of every session: all of its access and refresh tokens issued until now
+     * are revoked with a single subject-level entry, checked by the token service of this module on every
+     * authenticated endpoint.
+     */
+    void logoutEverywhere();
+
     /**
      * Logs out by revoking the supplied token: its jti is added to the revocation denylist so it
-     * is no longer accepted, until its natural expiry. Idempotent and safe on invalid input.
+     * is no longer accepted, until its natural expiry. The caller must be logged in and can only revoke its
+     * own tokens; invalid tokens are ignored. Idempotent and safe on unparseable input.
      * @param token raw JWT token to revoke
      */
     void logout(String token);
+
+    /**
+     * Non-blocking form of {@link #logout(String)}
+     * @param token raw JWT token to revoke
+     */
+    CompletableFuture<Void> logoutAsync(String token);
+
+    /**
+     * Bulk revocation for administrative use (compromised integration, offboarded tenant). Restricted to
+     * administrators.
+     * @param tokens raw JWT tokens to revoke
+     * @return the outcome of each token, in the same order as the input
+     */
+    List<TokenRevocationOutcome> revokeTokens(List<String> tokens);
+
+    /**
+     * Public signing keys as a JWK set, so that other services can validate tokens locally. Public data,
+     * no permission required.
+     * @return the pre-encoded JWK set with its ETag and cache lifetime
+     */
+    JwkSet getJwkSet();
+
+    /**
+     * Readiness of token issuance for health probes, see {@link AuthenticationSystemApi#isSigningReady()}.
+     * Public data, no permission required.
+     */
+    boolean isSigningReady();
+
+    /**
+     * Token introspection for components that cannot validate tokens locally. Restricted to logged in
+     * callers; repeated checks of the same token are served from the validation cache.
+     * @param token raw JWT token to check
+     * @return whether the token is active, with its main claims
+     */
+    TokenIntrospection introspect(String token);
+
+    /**
+     * Roles and permissions embedded in a valid token (water.authentication.permissions.snapshot.enabled).
+     * Restricted to logged in callers.
+     * @param token raw JWT token
+     * @return the snapshot, null when the token is not valid or carries none
+     */
+    PermissionSnapshot getPermissionSnapshot(String token);
 }
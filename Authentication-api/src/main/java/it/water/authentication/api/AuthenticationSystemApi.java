@@ -3,6 +3,10 @@ package it.water.authentication.api;
 import it.water.core.api.security.Authenticable;
 import it.water.core.api.service.BaseSystemApi;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @Generated by Water Generator
  * This interface defines the internally exposed methods allows interaction with them bypassing permission system.
@@ -52,12 +56,30 @@ public interface AuthenticationSystemApi extends BaseSystemApi {
      */
     Authenticable login(String username, String password, String authProviderFilter, Long companyId, String clientIp);
 
+    /**
+     * Non-blocking form of {@link #login(String, String, String, Long, String)}: the lockout check and the provider
+     * login run as stages on the authentication executor (water.authentication.async.threads), with the security
+     * context of the calling thread.
+     *
+     * @return the authenticated principal; completes exceptionally with the exception the blocking login throws,
+     * or with a load shedding exception (HTTP 503 on the REST runtimes) when the executor is saturated: the
+     * stages never run on the calling thread
+     */
+    CompletableFuture<Authenticable> loginAsync(String username, String password, String authProviderFilter, Long companyId, String clientIp);
+
     /**
      * Resolves the active company through the location-transparent Company integration client.
      */
     Authenticable loginForVirtualHost(String username, String password, String authProviderFilter,
                                       String virtualHost, String clientIp);
 
+    /**
+     * Non-blocking form of {@link #loginForVirtualHost(String, String, String, String, String)}, run on the
+     * authentication executor.
+     */
+    CompletableFuture<Authenticable> loginForVirtualHostAsync(String username, String password, String authProviderFilter,
+                                                              String virtualHost, String clientIp);
+
     /**
      * User-level impersonation. Resolves the AuthenticationProvider for the default issuer and delegates
      * to it; the provider performs the permission gate (caller must hold IMPERSONATE on WaterUser, admin
@@ -70,6 +92,34 @@ public interface AuthenticationSystemApi extends BaseSystemApi {
      */
     Authenticable impersonate(String targetUsername, String callerUsername, Long companyId);
 
+    /**
+     * Non-blocking form of {@link #impersonate(String, String, Long)}, run on the authentication executor.
+     */
+    CompletableFuture<Authenticable> impersonateAsync(String targetUsername, String callerUsername, Long companyId);
+
+    /**
+     * {@link #impersonate(String, String, Long)} followed by {@link #generateToken(Authenticable)}, with the
+     * issued token reused for the same caller, target and company for at most
+     * water.authentication.impersonation.cache.ttl.millis and never beyond its expiry. Cached tokens are dropped
+     * when the caller logs out, when the caller or the target is revoked everywhere, when the token is revoked
+     * and when the version of the registered {@link PermissionSnapshotSource} changes. Without a registered
+     * PermissionSnapshotSource nothing is cached and every call goes through the provider permission gate.
+     *
+     * @param targetUsername username of the user to impersonate
+     * @param callerUsername username of the authorized caller
+     * @param companyId      requested active company for the target (may be null → target's primary)
+     * @return the token of the impersonated target
+     */
+    String impersonationToken(String targetUsername, String callerUsername, Long companyId);
+
+    /**
+     * Drops the cached impersonation tokens of the caller, e.g. when its IMPERSONATE permission is withdrawn
+     * before the {@link PermissionSnapshotSource} publishes a new version.
+     *
+     * @param callerUsername username of the caller
+     */
+    void invalidateImpersonations(String callerUsername);
+
     /**
      * Generates a valid token for an authenticable
      *
@@ -78,12 +128,175 @@ public interface AuthenticationSystemApi extends BaseSystemApi {
      */
     String generateToken(Authenticable authenticable);
 
+    /**
+     * Non-blocking form of {@link #generateToken(Authenticable)}: signing is CPU bound and runs on its own executor
+     * (water.authentication.async.signing.threads, one thread per core by default), so that it can be chained to
+     * {@link #loginAsync} without sharing threads with the provider calls.
+     */
+    CompletableFuture<String> generateTokenAsync(Authenticable authenticable);
+
+    /**
+     * Batch issuance, e.g. for service accounts at startup or load generators: the configuration and the
+     * signing keys are resolved once, and large batches are signed in parallel across cores.
+     *
+     * @param authenticables principals to issue a token for
+     * @return one token per principal, in the iteration order of the input
+     */
+    List<String> generateTokens(Collection<Authenticable> authenticables);
+
+    /**
+     * Issues the refresh token returned at login next to the access token
+     * (water.authentication.refresh.token.enabled).
+     *
+     * @param authenticable authenticated principal
+     * @return a new refresh token, or null when refresh tokens are disabled
+     */
+    String generateRefreshToken(Authenticable authenticable);
+
+    /**
+     * Redeems a refresh token without running the provider login: the token validity and its revocation
+     * are checked, and the principal is reloaded through the {@link AuthenticableSource} of its issuer (no
+     * password check). The token is consumed and replaced by the rotated one of the grant.
+     *
+     * @param refreshToken refresh token obtained at login or from a previous refresh
+     * @return the reloaded principal to issue the new access token for, and the rotated refresh token
+     * @throws it.water.core.permission.exceptions.UnauthorizedException if the token is invalid, expired or revoked,
+     *                                                                    or the principal is gone, disabled or cannot be reloaded
+     */
+    RefreshTokenGrant refresh(String refreshToken);
+
+    /**
+     * Revokes the refresh token and every token rotated from the same login. Idempotent and safe on
+     * invalid input.
+     *
+     * @param refreshToken refresh token to revoke
+     */
+    void revokeRefreshToken(String refreshToken);
+
+    /**
+     * Logs the user out of every session: all the tokens of the user issued until now (access and
+     * refresh tokens) are revoked with a single subject-level entry, instead of one denylist entry per token.
+     *
+     * @param username subject whose sessions are revoked
+     */
+    void logoutEverywhere(String username);
+
+    /**
+     * Subject-level revocation check, to be run after the signature validation: one lookup of the token
+     * subject against its "not before" instant.
+     *
+     * @param token raw JWT token
+     * @return true if the token was issued at or before the last logout everywhere of its subject;
+     * false for tokens that cannot be parsed (they are rejected by the signature validation anyway)
+     */
+    boolean isTokenRevoked(String token);
+
+    /**
+     * Full token check: signature, expiry and revocation, for tokens of any issuer known to the registered
+     * authentication providers. With in-tree signing the verification key is picked by the {@code kid} header
+     * among the current keys and the keys retired within the rotation overlap window; otherwise the platform
+     * token service validates the signature.
+     *
+     * @param token raw JWT token
+     * @return true if the token is valid and not revoked
+     */
+    boolean validateToken(String token);
+
+    /**
+     * Same check as {@link #validateToken(String)}, restricted to the given issuers: the validation used by the
+     * platform security filter on every authenticated endpoint.
+     *
+     * @param issuers issuers the token may come from
+     * @param token   raw JWT token
+     * @return true if the token is valid, issued by one of the issuers and not revoked
+     */
+    boolean validateToken(Collection<String> issuers, String token);
+
+    /**
+     * Same check as {@link #validateToken(Collection, String)}, returning the verified claims used by logout and
+     * revocation, so that the caller does not decode the token again.
+     *
+     * @param issuers issuers the token may come from
+     * @param token   raw JWT token
+     * @return the verified token, null if the token is not valid
+     */
+    ParsedToken verifyToken(Collection<String> issuers, String token);
+
+    /**
+     * Token introspection (RFC 7662) backed by a bounded cache of validation results keyed by the token hash:
+     * entries live at most water.authentication.introspection.cache.ttl.millis, never beyond the token
+     * expiry, and are dropped as soon as the token (or its subject) is revoked.
+     *
+     * @param token raw JWT token
+     * @return the token claims when active, {@link TokenIntrospection#inactive()} otherwise
+     */
+    TokenIntrospection introspect(String token);
+
+    /**
+     * Snapshot embedded at issuance when water.authentication.permissions.snapshot.enabled is true and a
+     * {@link PermissionSnapshotSource} is registered: the roles and permissions of the principal, stamped with
+     * the permissions version they were read at. The token is fully validated first.
+     *
+     * @param token raw JWT token
+     * @return the snapshot, null when the token is not valid or carries none
+     */
+    PermissionSnapshot getPermissionSnapshot(String token);
+
     /**
      * Logs out by revoking the supplied token (adds its jti to the revocation denylist until its
-     * natural expiry). Idempotent and safe on invalid/unparseable input.
+     * natural expiry). The jti and subject are taken from the verified token only: an invalid, forged or
+     * already revoked token is ignored. Idempotent and safe on unparseable input.
      *
      * @param token raw JWT token to revoke
      */
     void logout(String token);
 
+    /**
+     * Non-blocking form of {@link #logout(String)}, run on the authentication executor.
+     */
+    CompletableFuture<Void> logoutAsync(String token);
+
+    /**
+     * Same as {@link #logout(String)} for a token already parsed in the current request, without decoding it
+     * again. The jti and subject are trusted as they are: only pass the bearer token of a request whose
+     * signature has been verified (e.g. a {@code @LoggedIn} resource), never a token built from caller input.
+     * Not part of {@link AuthenticationApi} for that reason.
+     *
+     * @param token bearer token parsed by {@link #parseToken(String)} or verified by {@link #verifyToken(Collection, String)}
+     */
+    void logout(ParsedToken token);
+
+    /**
+     * Decodes the token claims used by logout and revocation. The signature is not checked.
+     *
+     * @param token raw JWT token, may be null
+     * @return the parsed token, with null claims when the token cannot be parsed; never null
+     */
+    ParsedToken parseToken(String token);
+
+    /**
+     * Readiness of token issuance, for health probes: true once the signing key has been loaded and warmed
+     * up at activation (or when the warm-up is disabled). Also true when the keys could not be loaded: tokens
+     * are then issued by the token service while the keys are loaded again in background. Served by the
+     * unauthenticated GET /authentication/ready resource.
+     */
+    boolean isSigningReady();
+
+    /**
+     * Bulk logout: revokes many tokens at once. Tokens are parsed in parallel and written to the
+     * revocation denylist in one batch.
+     *
+     * @param tokens raw JWT tokens to revoke
+     * @return the outcome of each token, in the same order as the input
+     */
+    List<TokenRevocationOutcome> revokeTokens(List<String> tokens);
+
+    /**
+     * Public keys validating the tokens issued by this module (current, verification-only and retired keys
+     * within the rotation overlap), for downstream services validating tokens locally.
+     *
+     * @return the JWK set, empty when the signing keys are not loaded
+     */
+    JwkSet getJwkSet();
+
 }
@@ -0,0 +1,57 @@
+package it.water.authentication.api;
+
+import java.util.Arrays;
+
+/**
+ * @Author Aristide Cittadino
+ * Public signing keys as a JSON Web Key Set (RFC 7517), serialized once when the keys change and served as
+ * pre-encoded bytes. The strong ETag is derived from the content, so every node publishing the same keys
+ * returns the same tag and consumers can revalidate with {@code If-None-Match}.
+ */
+public final class JwkSet {
+    private final byte[] body;
+    private final String eTag;
+    private final long maxAgeSeconds;
+
+    public JwkSet(byte[] body, String eTag, long maxAgeSeconds) {
+        this.body = body;
+        this.eTag = eTag;
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * @return the encoded JSON document, shared: callers must not modify it
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return the quoted strong entity tag
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    public String getCacheControl() {
+        return "public, max-age=" + maxAgeSeconds;
+    }
+
+    /**
+     * @param ifNoneMatch value of the If-None-Match request header, may be null
+     * @return true if the client copy is current and a 304 can be returned
+     */
+    public boolean isNotModified(String ifNoneMatch) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank())
+            return false;
+        //If-None-Match uses the weak comparison: W/ prefixes are ignored
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(eTag));
+    }
+}
@@ -7,6 +7,10 @@ import it.water.core.api.service.Service;
  * Tracks failed login attempts per principal (key = issuer + username) and decides when an
  * account is temporarily locked out. Default impl is in-memory; multi-node deployments can
  * plug a shared store (e.g. Redis/JDBC).
+ * <p>
+ * The companyId-aware overloads select a per-tenant partition in multi-tenant mode, so that the keys of
+ * one tenant cannot evict the lockout state of another. Stores that do not partition by tenant inherit
+ * the default implementations, which ignore the companyId.
  */
 public interface LoginAttemptStore extends Service {
 
@@ -29,4 +33,33 @@ public interface LoginAttemptStore extends Service {
      * @return remaining lockout time in milliseconds, or 0 if not locked
      */
     long remainingLockMillis(String key);
+
+    /**
+     * @param companyId tenant partition (null = shared, non-tenant partition)
+     * @return true if the key is currently locked out in the tenant partition
+     */
+    default boolean isLocked(Long companyId, String key) {
+        return isLocked(key);
+    }
+
+    /**
+     * Records a failed login attempt for the key in the tenant partition.
+     */
+    default void recordFailure(Long companyId, String key) {
+        recordFailure(key);
+    }
+
+    /**
+     * Records a successful login in the tenant partition, clearing accumulated failures for the key.
+     */
+    default void recordSuccess(Long companyId, String key) {
+        recordSuccess(key);
+    }
+
+    /**
+     * @return remaining lockout time in milliseconds in the tenant partition, or 0 if not locked
+     */
+    default long remainingLockMillis(Long companyId, String key) {
+        return remainingLockMillis(key);
+    }
 }
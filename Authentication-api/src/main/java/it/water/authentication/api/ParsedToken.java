@@ -0,0 +1,55 @@
+package it.water.authentication.api;
+
+/**
+ * @Author Aristide Cittadino
+ * Bearer token parsed once per request: the raw string and the claims needed by logout and revocation (jti,
+ * subject, issue and expiry instants). Bearer endpoints keep it as the {@link #REQUEST_ATTRIBUTE} request
+ * attribute, so every step of the same request reuses it instead of decoding the token again; the token
+ * verified by the security filter of the request is taken first when available. The signature is not checked
+ * by the parsing itself. Instants are epoch milliseconds, 0 when absent; the claims are null when the token
+ * cannot be parsed.
+ */
+public final class ParsedToken {
+    public static final String REQUEST_ATTRIBUTE = ParsedToken.class.getName();
+
+    private final String raw;
+    private final String jwtId;
+    private final String subject;
+    private final long issuedAt;
+    private final long expiresAt;
+
+    public ParsedToken(String raw, String jwtId, String subject, long issuedAt, long expiresAt) {
+        this.raw = raw;
+        this.jwtId = jwtId;
+        this.subject = subject;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return a token that could not be parsed, only the raw string is known
+     */
+    public static ParsedToken unparseable(String raw) {
+        return new ParsedToken(raw, null, null, 0L, 0L);
+    }
+
+    public String getRaw() {
+        return raw;
+    }
+
+    public String getJwtId() {
+        return jwtId;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public long getIssuedAt() {
+        return issuedAt;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,57 @@
+package it.water.authentication.api;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @Author Aristide Cittadino
+ * Roles and permissions embedded in a token at issuance, with the permissions version they were read at. A
+ * service can authorize from the snapshot as long as {@link #isCurrent(long)} holds for the version published
+ * by {@link PermissionSnapshotSource#getPermissionsVersion()}, and fall back to the permission system once the
+ * version moved.
+ */
+public final class PermissionSnapshot {
+    private final long version;
+    private final Set<String> roles;
+    private final Map<String, Set<String>> permissions;
+
+    public PermissionSnapshot(long version, Collection<String> roles, Map<String, ? extends Collection<String>> permissions) {
+        this.version = version;
+        this.roles = Collections.unmodifiableSet(new LinkedHashSet<>(roles));
+        Map<String, Set<String>> copy = new LinkedHashMap<>();
+        permissions.forEach((resource, actions) -> copy.put(resource, Collections.unmodifiableSet(new LinkedHashSet<>(actions))));
+        this.permissions = Collections.unmodifiableMap(copy);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * @return resource name → allowed action names
+     */
+    public Map<String, Set<String>> getPermissions() {
+        return permissions;
+    }
+
+    public boolean isAllowed(String resource, String action) {
+        Set<String> actions = permissions.get(resource);
+        return actions != null && actions.contains(action);
+    }
+
+    /**
+     * @param currentVersion permissions version currently published by the permission side
+     * @return true if the snapshot was taken at that version and can be trusted
+     */
+    public boolean isCurrent(long currentVersion) {
+        return version == currentVersion;
+    }
+}
@@ -0,0 +1,31 @@
+package it.water.authentication.api;
+
+import it.water.core.api.security.Authenticable;
+import it.water.core.api.service.Service;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * @Author Aristide Cittadino
+ * Optional source of the permissions embedded in the issued tokens, implemented by the permission side. When
+ * registered and water.authentication.permissions.snapshot.enabled is true, every token carries the
+ * permissions of its principal stamped with the current permissions version, so that services can authorize
+ * from the token instead of querying the permission system on every request.
+ */
+public interface PermissionSnapshotSource extends Service {
+
+    /**
+     * @param authenticable principal the token is issued for
+     * @return resource name → allowed action names, never null
+     */
+    Map<String, Collection<String>> findPermissions(Authenticable authenticable);
+
+    /**
+     * Version of the permission data: it must change whenever a role, a role assignment or a permission
+     * changes, so that snapshots stamped with an older version are no longer trusted.
+     *
+     * @return current permissions version
+     */
+    long getPermissionsVersion();
+}
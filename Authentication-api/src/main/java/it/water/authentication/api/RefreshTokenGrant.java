@@ -0,0 +1,26 @@
+package it.water.authentication.api;
+
+import it.water.core.api.security.Authenticable;
+
+/**
+ * @Author Aristide Cittadino
+ * Outcome of a successful refresh token redeem: the principal the token was issued for and the rotated
+ * refresh token replacing the consumed one.
+ */
+public final class RefreshTokenGrant {
+    private final Authenticable authenticable;
+    private final String refreshToken;
+
+    public RefreshTokenGrant(Authenticable authenticable, String refreshToken) {
+        this.authenticable = authenticable;
+        this.refreshToken = refreshToken;
+    }
+
+    public Authenticable getAuthenticable() {
+        return authenticable;
+    }
+
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+}
@@ -0,0 +1,42 @@
+package it.water.authentication.api;
+
+import it.water.core.api.security.Authenticable;
+import it.water.core.api.service.Service;
+
+/**
+ * @Author Aristide Cittadino
+ * Issues and redeems the long-lived refresh tokens handed out at login, so that a client can obtain a new
+ * access token without sending the password again. Refresh tokens are opaque, single use (every redeem
+ * returns a rotated replacement) and revocable. Default impl is in-memory;
+ * multi-node deployments can plug a shared store (e.g. Redis/JDBC).
+ */
+public interface RefreshTokenStore extends Service {
+
+    /**
+     * @param authenticable authenticated principal the token refers to
+     * @param ttlMillis     token lifetime
+     * @return a new opaque refresh token
+     */
+    String issue(Authenticable authenticable, long ttlMillis);
+
+    /**
+     * Consumes the token and issues its replacement, with the same lifetime policy. Presenting an already
+     * redeemed token again is treated as token theft and revokes every token rotated from the same login.
+     *
+     * @param ttlMillis lifetime of the rotated token
+     * @return the principal and the rotated token, or null if the token is unknown, expired or revoked
+     */
+    RefreshTokenGrant redeem(String refreshToken, long ttlMillis);
+
+    /**
+     * Revokes the token and every token rotated from the same login. Idempotent and safe on invalid input.
+     */
+    void revoke(String refreshToken);
+
+    /**
+     * Revokes every refresh token issued to the subject (logout everywhere).
+     *
+     * @param subject username the tokens were issued for
+     */
+    void revokeAll(String subject);
+}
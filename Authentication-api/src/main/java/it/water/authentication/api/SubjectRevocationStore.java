@@ -0,0 +1,39 @@
+package it.water.authentication.api;
+
+import it.water.core.api.service.Service;
+
+/**
+ * @Author Aristide Cittadino
+ * Subject-level token revocation: one "not before" instant per subject (username). Every token of the
+ * subject issued at or before that instant is revoked, so revoking all the sessions of a user costs one
+ * entry whatever the number of tokens, and checking a token is one lookup. Default impl is in-memory;
+ * multi-node deployments can plug a shared store (e.g. Redis/JDBC).
+ */
+public interface SubjectRevocationStore extends Service {
+
+    /**
+     * Revokes every token of the subject issued at or before the given instant. Never moves an existing
+     * instant backwards.
+     *
+     * @param subject         token subject (username)
+     * @param notBeforeMillis epoch millis
+     */
+    void revokeBefore(String subject, long notBeforeMillis);
+
+    /**
+     * @return the revocation instant of the subject in epoch millis, or 0 if none
+     */
+    long revokedBefore(String subject);
+
+    /**
+     * @param subject        token subject (username)
+     * @param issuedAtMillis token issue instant in epoch millis
+     * @return true if the token was issued at or before the revocation instant of its subject
+     */
+    default boolean isRevoked(String subject, long issuedAtMillis) {
+        if (subject == null)
+            return false;
+        long notBefore = revokedBefore(subject);
+        return notBefore > 0L && issuedAtMillis <= notBefore;
+    }
+}
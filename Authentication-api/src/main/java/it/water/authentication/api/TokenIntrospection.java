@@ -0,0 +1,67 @@
+package it.water.authentication.api;
+
+/**
+ * @Author Aristide Cittadino
+ * Outcome of a token introspection (RFC 7662): whether the token is currently active (valid signature, not
+ * expired, not revoked) and, if so, its main claims. Instants are epoch milliseconds, 0 when absent.
+ */
+public final class TokenIntrospection {
+    private static final TokenIntrospection INACTIVE = new TokenIntrospection(false, null, null, null, 0L, 0L);
+
+    private final boolean active;
+    private final String subject;
+    private final String issuer;
+    private final String jwtId;
+    private final long issuedAt;
+    private final long expiresAt;
+    private final boolean admin;
+
+    public TokenIntrospection(boolean active, String subject, String issuer, String jwtId, long issuedAt, long expiresAt) {
+        this(active, subject, issuer, jwtId, issuedAt, expiresAt, false);
+    }
+
+    /**
+     * @param admin value of the admin claim, for callers authorizing requests from the introspection alone
+     */
+    public TokenIntrospection(boolean active, String subject, String issuer, String jwtId, long issuedAt, long expiresAt, boolean admin) {
+        this.active = active;
+        this.subject = subject;
+        this.issuer = issuer;
+        this.jwtId = jwtId;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+        this.admin = admin;
+    }
+
+    public static TokenIntrospection inactive() {
+        return INACTIVE;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public String getJwtId() {
+        return jwtId;
+    }
+
+    public long getIssuedAt() {
+        return issuedAt;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isAdmin() {
+        return admin;
+    }
+}
@@ -0,0 +1,14 @@
+package it.water.authentication.api;
+
+/**
+ * @Author Aristide Cittadino
+ * Per-token result of a bulk revocation.
+ */
+public enum TokenRevocationOutcome {
+    //added to the revocation denylist by this call
+    REVOKED,
+    //already revoked, or repeated earlier in the same batch
+    ALREADY_REVOKED,
+    //missing, unparseable or without a jti: nothing to revoke
+    INVALID
+}
@@ -0,0 +1,36 @@
+package it.water.authentication.api;
+
+import it.water.core.api.service.Service;
+
+import java.util.Map;
+
+/**
+ * @Author Aristide Cittadino
+ * Denylist of revoked token ids (jti), enforced on every authenticated endpoint by the token service of the
+ * Authentication module. An entry is only needed until the token it refers to expires,
+ * so every revocation carries the token expiry and the store is free to forget it afterwards. Default impl
+ * is in-memory; multi-node deployments can plug a shared store.
+ */
+public interface TokenRevocationStore extends Service {
+
+    /**
+     * @param jti             id of the revoked token
+     * @param expiresAtMillis token expiry in epoch millis, after which the entry can be dropped
+     */
+    void revoke(String jti, long expiresAtMillis);
+
+    /**
+     * Batch variant of {@link #revoke(String, long)}, for bulk revocations. The default implementation
+     * revokes one entry at a time; stores that can write a batch at once should override it.
+     *
+     * @param expiresAtByJti token expiry in epoch millis by revoked token id
+     */
+    default void revokeAll(Map<String, Long> expiresAtByJti) {
+        expiresAtByJti.forEach(this::revoke);
+    }
+
+    /**
+     * @return true if the token id has been revoked and the token is not expired yet
+     */
+    boolean isRevoked(String jti);
+}
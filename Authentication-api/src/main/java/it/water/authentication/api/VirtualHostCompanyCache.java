@@ -0,0 +1,49 @@
+package it.water.authentication.api;
+
+import it.water.core.api.service.Service;
+
+import java.util.Map;
+
+/**
+ * @Author Aristide Cittadino
+ * Caches the virtual host → companyId resolution performed through the Company integration client
+ * during multi-tenant login, so a remote Company module is not hit on every login. Misses (unknown
+ * hosts) are cached too, with a shorter lifetime. The Company side calls the invalidation methods
+ * when a virtual host mapping is created, changed or removed.
+ */
+public interface VirtualHostCompanyCache extends Service {
+
+    /**
+     * @param virtualHost request virtual host (may be null)
+     * @return the companyId mapped to the virtual host, or null if no company is mapped to it
+     */
+    Long resolveCompanyId(String virtualHost);
+
+    /**
+     * Drops the cached resolution for the given virtual host; the next login reloads it.
+     *
+     * @param virtualHost virtual host whose mapping changed
+     */
+    void invalidate(String virtualHost);
+
+    /**
+     * Drops every cached resolution.
+     */
+    void invalidateAll();
+
+    /**
+     * Replaces the preloaded mappings with the given full map. Preloaded mappings do not expire: they are
+     * kept in sync by {@link #applyChanges(Map)} instead of being reloaded one host at a time.
+     *
+     * @param mappings every virtual host → companyId mapping
+     */
+    void preload(Map<String, Long> mappings);
+
+    /**
+     * Applies an incremental change set on top of the preloaded mappings. A null companyId removes the
+     * virtual host.
+     *
+     * @param changes changed virtual host → companyId mappings
+     */
+    void applyChanges(Map<String, Long> changes);
+}
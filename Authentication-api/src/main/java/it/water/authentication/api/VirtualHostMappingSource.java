@@ -0,0 +1,31 @@
+package it.water.authentication.api;
+
+import it.water.core.api.service.Service;
+
+import java.util.Map;
+
+/**
+ * @Author Aristide Cittadino
+ * Optional bulk source of virtual host → companyId mappings, implemented by the Company side. When
+ * registered and preload is enabled, Authentication loads the whole map at activation and then keeps
+ * it in sync incrementally, so multi-tenant logins resolve their tenant from memory.
+ */
+public interface VirtualHostMappingSource extends Service {
+
+    /**
+     * @return every current virtual host → companyId mapping, never null
+     */
+    Map<String, Long> findAllVirtualHostMappings();
+
+    /**
+     * Returns the mappings created, changed or removed since the given instant. A removed virtual host
+     * is reported with a null companyId. The default implementation returns the full map, which is
+     * always correct but not incremental.
+     *
+     * @param sinceMillis epoch millis of the previous synchronization
+     * @return changed mappings, never null
+     */
+    default Map<String, Long> findVirtualHostMappingsChangedSince(long sinceMillis) {
+        return findAllVirtualHostMappings();
+    }
+}
@@ -27,4 +27,13 @@ public interface AuthenticationOption extends Service {
      * @return true if multi-tenant mode is enabled (default false)
      */
     boolean isMultiTenantEnabled();
+
+    /**
+     * Claim layout of the tokens issued for the issuer. The compact profile shrinks the token sent on every
+     * request; validators of this module expand it back to the standard claims.
+     * Reads water.authentication.claims.compact.issuers.
+     * @param issuerName issuer of the authenticated principal
+     * @return the claims profile of the issuer (default {@link TokenClaimsProfile#STANDARD})
+     */
+    TokenClaimsProfile getTokenClaimsProfile(String issuerName);
 }
@@ -0,0 +1,12 @@
+package it.water.authentication.api.options;
+
+/**
+ * @Author Aristide Cittadino
+ * Claim layout of the tokens issued for an issuer, selected through {@link AuthenticationOption}.
+ */
+public enum TokenClaimsProfile {
+    //full claim names: loggedEntityId, admin, roles (role names), permissions, permissionsVersion
+    STANDARD,
+    //same principal claims, permission snapshot with short claim names and actions as bitsets; expanded back by the validators
+    COMPACT
+}
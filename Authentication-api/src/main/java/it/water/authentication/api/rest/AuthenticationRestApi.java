@@ -11,8 +11,12 @@ import it.water.core.api.service.rest.WaterJsonView;
 import it.water.service.rest.api.security.LoggedIn;
 
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -33,8 +37,23 @@ public interface AuthenticationRestApi extends RestApi {
     @ApiResponses(value = {@ApiResponse(code = 401, message = "login failed"),
             @ApiResponse(code = 200, message = "login successed")})
     @JsonView(WaterJsonView.Public.class)
-    Map<String,String> login(@FormParam("username") String username, @FormParam("password") String password,
-                             @FormParam("companyId") Long companyId);
+    void login(@FormParam("username") String username, @FormParam("password") String password,
+               @FormParam("companyId") Long companyId, @Suspended AsyncResponse asyncResponse);
+
+    /**
+     * Synchronous form of the login resource, used by runtimes without JAX-RS asynchronous responses (Spring).
+     */
+    Map<String,String> login(String username, String password, Long companyId);
+
+    @POST
+    @Path("/refresh")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @ApiOperation(value = "/authentication/refresh", response = String.class, notes = "Issues a new JWT token and a rotated refresh token in exchange for a valid refresh token, without credentials", httpMethod = "POST", produces = "application/json", consumes = "application/x-www-form-urlencoded")
+    @ApiResponses(value = {@ApiResponse(code = 401, message = "invalid, expired or revoked refresh token"),
+            @ApiResponse(code = 200, message = "token refreshed")})
+    @JsonView(WaterJsonView.Public.class)
+    Map<String,String> refresh(@FormParam("refreshToken") String refreshToken);
 
     @POST
     @Path("/impersonate")
@@ -45,7 +64,13 @@ public interface AuthenticationRestApi extends RestApi {
     @ApiResponses(value = {@ApiResponse(code = 401, message = "not authenticated or not authorized to impersonate"),
             @ApiResponse(code = 200, message = "impersonation token issued")})
     @JsonView(WaterJsonView.Public.class)
-    Map<String,String> impersonate(@FormParam("targetUsername") String targetUsername, @FormParam("companyId") Long companyId);
+    void impersonate(@FormParam("targetUsername") String targetUsername, @FormParam("companyId") Long companyId,
+                     @Suspended AsyncResponse asyncResponse);
+
+    /**
+     * Synchronous form of the impersonate resource.
+     */
+    Map<String,String> impersonate(String targetUsername, Long companyId);
 
     @POST
     @Path("/logout")
@@ -55,5 +80,58 @@ public interface AuthenticationRestApi extends RestApi {
     @ApiResponses(value = {@ApiResponse(code = 401, message = "not authenticated"),
             @ApiResponse(code = 200, message = "logout successed")})
     @JsonView(WaterJsonView.Public.class)
-    Map<String,String> logout(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization);
+    void logout(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization, @Suspended AsyncResponse asyncResponse);
+
+    /**
+     * Synchronous form of the logout resource.
+     */
+    Map<String,String> logout(String authorization);
+
+    @POST
+    @Path("/logout/all")
+    @Produces(MediaType.APPLICATION_JSON)
+    @LoggedIn
+    @ApiOperation(value = "/authentication/logout/all", response = String.class, notes = "Revokes every token of the current user, on every device (logout everywhere)", httpMethod = "POST", produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 401, message = "not authenticated"),
+            @ApiResponse(code = 200, message = "logout successed")})
+    @JsonView(WaterJsonView.Public.class)
+    Map<String,String> logoutEverywhere(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization);
+
+    @POST
+    @Path("/revoke")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @LoggedIn
+    @ApiOperation(value = "/authentication/revoke", response = String.class, notes = "Bulk revocation of the given JWT tokens (administrators only); returns the outcome of each token in input order", httpMethod = "POST", produces = "application/json", consumes = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 401, message = "not authenticated or not an administrator"),
+            @ApiResponse(code = 200, message = "tokens processed")})
+    @JsonView(WaterJsonView.Public.class)
+    Map<String, Object> revokeTokens(List<String> tokens);
+
+    @POST
+    @Path("/introspect")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @LoggedIn
+    @ApiOperation(value = "/authentication/introspect", response = String.class, notes = "Token introspection (RFC 7662): whether the token is active (valid signature, not expired, not revoked) and its main claims", httpMethod = "POST", produces = "application/json", consumes = "application/x-www-form-urlencoded")
+    @ApiResponses(value = {@ApiResponse(code = 401, message = "not authenticated"),
+            @ApiResponse(code = 200, message = "token introspected")})
+    @JsonView(WaterJsonView.Public.class)
+    Map<String, Object> introspect(@FormParam("token") String token);
+
+    @GET
+    @Path("/jwks")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "/authentication/jwks", response = String.class, notes = "Public keys validating the issued tokens as a JSON Web Key Set, with ETag and Cache-Control headers so consumers can validate locally and revalidate cheaply", httpMethod = "GET", produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 304, message = "key set not modified"),
+            @ApiResponse(code = 200, message = "key set")})
+    Response jwks(@HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch);
+
+    @GET
+    @Path("/ready")
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "/authentication/ready", response = String.class, notes = "Readiness probe: 200 once token signing is hot, 503 while the signing keys are still loading", httpMethod = "GET", produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(code = 503, message = "not ready"),
+            @ApiResponse(code = 200, message = "ready")})
+    Response ready();
 }
@@ -0,0 +1,22 @@
+package it.water.authentication.service;
+
+
+import it.water.implementation.spring.annotations.EnableWaterFramework;
+import it.water.repository.jpa.spring.RepositoryFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+@SpringBootApplication
+@EnableWaterFramework
+@EnableJpaRepositories(basePackages = {"it.water"}, repositoryFactoryBeanClass = RepositoryFactory.class)
+@EntityScan({"it.water"})
+@ComponentScan({"it.water"})
+public class AuthenticationReactiveApplication {
+    public static void main(String[] args) {
+        SpringApplication.run(AuthenticationReactiveApplication.class, args);
+    }
+
+}
@@ -0,0 +1,242 @@
+package it.water.authentication.service.rest.spring.reactive;
+
+import it.water.authentication.api.AuthenticationApi;
+import it.water.authentication.api.AuthenticationSystemApi;
+import it.water.authentication.api.JwkSet;
+import it.water.authentication.api.TokenIntrospection;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.authentication.service.ClientIpResolver;
+import it.water.authentication.service.execption.LoginAdmissionRejectedException;
+import it.water.authentication.service.rest.AuthenticationResponses;
+import it.water.core.api.security.Authenticable;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.core.permission.exceptions.UnauthorizedException;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Spring WebFlux counterpart of the Spring MVC controller: same /authentication resources, parameters and
+ * response bodies. The event loop only reads the request: logins and token signing compose the
+ * CompletableFuture methods of the Api, the other blocking calls (refresh and revocation stores, token
+ * validation) run on the bounded elastic scheduler.
+ * <p>
+ * There is no servlet request and no thread-bound security context here. Client IP and virtual host are read
+ * from the {@link ServerHttpRequest}, and the authenticated resources validate the bearer token themselves
+ * through the (cached) token introspection, acting on behalf of the token subject.
+ */
+@RestController
+@RequestMapping("/authentication")
+public class AuthenticationReactiveRestController {
+    private static final Logger log = LoggerFactory.getLogger(AuthenticationReactiveRestController.class);
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    @Inject
+    @Setter
+    private AuthenticationApi authenticationApi;
+
+    //the authenticated resources act on the validated token subject, there is no security context to check
+    @Inject
+    @Setter
+    private AuthenticationSystemApi authenticationSystemApi;
+
+    @Inject
+    @Setter
+    private AuthenticationOption authenticationOption;
+
+    @PostMapping(path = "/login", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, String>> login(ServerWebExchange exchange) {
+        String clientIp = resolveClientIp(exchange.getRequest());
+        String virtualHost = resolveVirtualHost(exchange.getRequest());
+        return exchange.getFormData().flatMap(form -> {
+            String username = form.getFirst("username");
+            String password = form.getFirst("password");
+            Long companyId = longParam("companyId", form.getFirst("companyId"));
+            log.debug("User {} is logging in ...", username);
+            CompletableFuture<Authenticable> login = (companyId != null)
+                    ? authenticationApi.loginAsync(username, password, companyId, clientIp)
+                    : authenticationApi.loginForVirtualHostAsync(username, password, virtualHost, clientIp);
+            return Mono.fromFuture(login.thenCompose(authenticable -> authenticationApi.generateTokenAsync(authenticable)
+                    .thenApply(token -> AuthenticationResponses.token(token, authenticationApi.generateRefreshToken(authenticable)))));
+        });
+    }
+
+    @PostMapping(path = "/refresh", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, String>> refresh(ServerWebExchange exchange) {
+        //no provider login here: the refresh token is checked and rotated, then a new access token is minted
+        return exchange.getFormData()
+                .flatMap(form -> blocking(() -> authenticationApi.refresh(form.getFirst("refreshToken"))))
+                .flatMap(grant -> Mono.fromFuture(authenticationApi.generateTokenAsync(grant.getAuthenticable()))
+                        .map(token -> AuthenticationResponses.token(token, grant.getRefreshToken())));
+    }
+
+    @PostMapping(path = "/impersonate", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, String>> impersonate(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+                                                 ServerWebExchange exchange) {
+        //the IMPERSONATE permission gate is enforced in the provider, for the caller named by the token
+        return authenticated(bearerToken(authorization)).flatMap(caller -> exchange.getFormData().flatMap(form -> {
+            String targetUsername = form.getFirst("targetUsername");
+            Long companyId = longParam("companyId", form.getFirst("companyId"));
+            return blocking(() -> authenticationSystemApi.impersonationToken(targetUsername, caller.getSubject(), companyId));
+        })).map(token -> AuthenticationResponses.token(token, null));
+    }
+
+    @PostMapping(path = "/logout", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, String>> logout(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        String token = bearerToken(authorization);
+        return authenticated(token)
+                .flatMap(caller -> Mono.fromFuture(authenticationSystemApi.logoutAsync(token)))
+                .then(Mono.fromSupplier(() -> {
+                    log.debug("Token revoked (logout) at: {}", Instant.now());
+                    return AuthenticationResponses.ok();
+                }));
+    }
+
+    @PostMapping(path = "/logout/all", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, String>> logoutEverywhere(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        //the presented token is also denylisted so that it is rejected right away by the jti check
+        String token = bearerToken(authorization);
+        return authenticated(token).flatMap(caller -> blocking(() -> {
+            authenticationSystemApi.logoutEverywhere(caller.getSubject());
+            authenticationSystemApi.logout(token);
+            log.debug("All tokens of the caller revoked (logout everywhere) at: {}", Instant.now());
+            return AuthenticationResponses.ok();
+        }));
+    }
+
+    @PostMapping(path = "/revoke", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, Object>> revokeTokens(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+                                                  @RequestBody List<String> tokens) {
+        //revoking tokens of other users is an administrative operation
+        return authenticated(bearerToken(authorization))
+                .filter(TokenIntrospection::isAdmin)
+                .switchIfEmpty(Mono.error(UnauthorizedException::new))
+                .flatMap(caller -> blocking(() -> AuthenticationResponses.revocation(authenticationSystemApi.revokeTokens(tokens))));
+    }
+
+    @PostMapping(path = "/introspect", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, Object>> introspect(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+                                                ServerWebExchange exchange) {
+        return authenticated(bearerToken(authorization))
+                .flatMap(caller -> exchange.getFormData())
+                .flatMap(form -> blocking(() -> AuthenticationResponses.introspection(authenticationSystemApi.introspect(form.getFirst("token")))));
+    }
+
+    @GetMapping(path = "/jwks", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<byte[]>> jwkSet(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return Mono.fromSupplier(() -> jwkSetResponse(ifNoneMatch));
+    }
+
+    @GetMapping(path = "/ready", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<Map<String, String>>> readiness() {
+        return Mono.fromSupplier(() -> {
+            boolean ready = authenticationSystemApi.isSigningReady();
+            return ResponseEntity.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(AuthenticationResponses.readiness(ready));
+        });
+    }
+
+    //same status as the other runtimes for failed logins, lockouts and rejected tokens
+    @ExceptionHandler(UnauthorizedException.class)
+    public ResponseEntity<Void> unauthorized(UnauthorizedException e) {
+        log.debug("Authentication request rejected: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+
+    //load shedding: 503 with the time after which the client should retry, not a credentials failure
+    @ExceptionHandler(LoginAdmissionRejectedException.class)
+    public ResponseEntity<Void> loginRejected(LoginAdmissionRejectedException e) {
+        log.debug("Login rejected by the admission control: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .build();
+    }
+
+    //the key set is encoded once per key change, the response only copies the shared bytes
+    private ResponseEntity<byte[]> jwkSetResponse(String ifNoneMatch) {
+        JwkSet jwkSet = authenticationSystemApi.getJwkSet();
+        boolean notModified = jwkSet.isNotModified(ifNoneMatch);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                .header(HttpHeaders.ETAG, jwkSet.getETag())
+                .header(HttpHeaders.CACHE_CONTROL, jwkSet.getCacheControl());
+        return notModified ? response.build() : response.contentType(MediaType.APPLICATION_JSON).body(jwkSet.getBody());
+    }
+
+    /**
+     * Same trust policy as the servlet runtimes: forwarding headers are honored only when the TCP peer is one
+     * of the configured trusted proxies.
+     */
+    protected String resolveClientIp(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        String tcpSource = (remoteAddress != null && remoteAddress.getAddress() != null) ? remoteAddress.getAddress().getHostAddress() : null;
+        HttpHeaders headers = request.getHeaders();
+        return ClientIpResolver.resolve(trustedProxies(), tcpSource, headers.getFirst("X-Forwarded-For"), headers.getFirst("X-Real-IP"));
+    }
+
+    //host of the request URI, built from the Host header as the servlet server name
+    protected String resolveVirtualHost(ServerHttpRequest request) {
+        return request.getURI().getHost();
+    }
+
+    private Set<String> trustedProxies() {
+        return (authenticationOption != null) ? authenticationOption.getTrustedProxies() : Set.of();
+    }
+
+    /**
+     * @return the active token, or an UnauthorizedException error when it is missing, invalid, expired or revoked
+     */
+    private Mono<TokenIntrospection> authenticated(String token) {
+        if (token == null || token.isBlank())
+            return Mono.error(new UnauthorizedException());
+        return blocking(() -> authenticationSystemApi.introspect(token))
+                .filter(introspection -> introspection.isActive() && introspection.getSubject() != null && !introspection.getSubject().isBlank())
+                .switchIfEmpty(Mono.error(UnauthorizedException::new));
+    }
+
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static Long longParam(String name, String value) {
+        if (value == null || value.isBlank())
+            return null;
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ServerWebInputException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static String bearerToken(String authorization) {
+        if (authorization == null)
+            return null;
+        if (authorization.startsWith(BEARER_PREFIX))
+            return authorization.substring(BEARER_PREFIX.length()).trim();
+        return authorization.trim();
+    }
+}
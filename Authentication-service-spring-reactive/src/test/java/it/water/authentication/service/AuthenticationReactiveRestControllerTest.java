@@ -0,0 +1,196 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.authentication.api.AuthenticationApi;
+import it.water.authentication.api.AuthenticationSystemApi;
+import it.water.authentication.api.TokenIntrospection;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.authentication.service.rest.spring.reactive.AuthenticationReactiveRestController;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.security.Authenticable;
+import it.water.core.api.security.AuthenticationProvider;
+import it.water.core.permission.exceptions.UnauthorizedException;
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for the WebFlux controller: form parameters, client IP and virtual host are read from
+ * the reactive request, and the authenticated resources reject tokens that are not active.
+ */
+@ExtendWith(MockitoExtension.class)
+class AuthenticationReactiveRestControllerTest {
+
+    private static final String HOST = "tenant.example.test";
+    private static final String USER_ISSUER = "it.water.core.api.model.User";
+    private static final String DEVICE_ISSUER = "it.water.core.api.model.Device";
+
+    @Mock
+    private AuthenticationApi authenticationApi;
+
+    @Mock
+    private AuthenticationSystemApi authenticationSystemApi;
+
+    @Mock
+    private AuthenticationOption authenticationOption;
+
+    @Mock
+    private Authenticable authenticable;
+
+    private AuthenticationReactiveRestController controller;
+
+    @BeforeEach
+    void setUp() {
+        controller = new AuthenticationReactiveRestController();
+        controller.setAuthenticationApi(authenticationApi);
+        controller.setAuthenticationSystemApi(authenticationSystemApi);
+        controller.setAuthenticationOption(authenticationOption);
+        lenient().when(authenticationOption.getTrustedProxies()).thenReturn(Set.of("10.0.0.1"));
+    }
+
+    @Test
+    void loginWithCompanyUsesTheForwardedClientIpOfATrustedProxy() {
+        when(authenticationApi.loginAsync("user1", "pwd1", 5L, "192.168.1.7")).thenReturn(CompletableFuture.completedFuture(authenticable));
+        when(authenticationApi.generateTokenAsync(authenticable)).thenReturn(CompletableFuture.completedFuture("token"));
+
+        Map<String, String> response = controller.login(form("username=user1&password=pwd1&companyId=5", "10.0.0.1")).block();
+
+        Assertions.assertEquals(Map.of("token", "token"), response);
+    }
+
+    @Test
+    void loginWithoutCompanyResolvesTheVirtualHost() {
+        when(authenticationApi.loginForVirtualHostAsync("user1", "pwd1", HOST, "172.16.0.9"))
+                .thenReturn(CompletableFuture.completedFuture(authenticable));
+        when(authenticationApi.generateTokenAsync(authenticable)).thenReturn(CompletableFuture.completedFuture("token"));
+        when(authenticationApi.generateRefreshToken(authenticable)).thenReturn("refresh");
+
+        //the forwarding header of an untrusted peer is ignored
+        Map<String, String> response = controller.login(form("username=user1&password=pwd1", "172.16.0.9")).block();
+
+        Assertions.assertEquals("token", response.get("token"));
+        Assertions.assertEquals("refresh", response.get("refreshToken"));
+    }
+
+    @Test
+    void failedLoginIsPropagatedAsUnauthorized() {
+        when(authenticationApi.loginAsync("user1", "wrong", 5L, "192.168.1.7"))
+                .thenReturn(CompletableFuture.failedFuture(new UnauthorizedException("Invalid credentials")));
+
+        Assertions.assertThrows(UnauthorizedException.class, () ->
+                controller.login(form("username=user1&password=wrong&companyId=5", "10.0.0.1")).block());
+    }
+
+    @Test
+    void logoutRejectsAnInactiveToken() {
+        when(authenticationSystemApi.introspect("raw")).thenReturn(TokenIntrospection.inactive());
+
+        Assertions.assertThrows(UnauthorizedException.class, () -> controller.logout("Bearer raw").block());
+        verify(authenticationSystemApi, never()).logoutAsync("raw");
+    }
+
+    @Test
+    void logoutRevokesTheBearerToken() {
+        when(authenticationSystemApi.introspect("raw")).thenReturn(new TokenIntrospection(true, "user1", "issuer", "jti-1", 0L, 0L));
+        when(authenticationSystemApi.logoutAsync("raw")).thenReturn(CompletableFuture.completedFuture(null));
+
+        Assertions.assertEquals(Map.of("result", "ok"), controller.logout("Bearer raw").block());
+    }
+
+    @Test
+    void logoutAcceptsTokensOfTheIssuersOfTheRegisteredProviders() {
+        //introspect authenticates the reactive resources: it accepts every provider issuer, as @LoggedIn does
+        JwtTokenService platformTokenService = mock(JwtTokenService.class);
+        ComponentRegistry componentRegistry = mock(ComponentRegistry.class);
+        AuthenticationProvider provider = mock(AuthenticationProvider.class);
+        when(authenticationOption.getIssuerName()).thenReturn(USER_ISSUER);
+        when(provider.issuersNames()).thenReturn(Set.of(DEVICE_ISSUER));
+        when(componentRegistry.findComponents(eq(AuthenticationProvider.class), any())).thenReturn(List.of(provider));
+        when(platformTokenService.validateToken(argThat(issuers -> issuers.containsAll(List.of(USER_ISSUER, DEVICE_ISSUER))), anyString()))
+                .thenReturn(true);
+        AuthenticationSystemServiceImpl systemService = new AuthenticationSystemServiceImpl();
+        systemService.setAuthenticationOption(authenticationOption);
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.setJwtTokenService(platformTokenService);
+        systemService.setTokenRevocationStore(new InMemoryTokenRevocationStore());
+        systemService.setSubjectRevocationStore(new InMemorySubjectRevocationStore());
+        controller.setAuthenticationSystemApi(systemService);
+        String token = token("device1", DEVICE_ISSUER);
+        try {
+            Assertions.assertEquals(Map.of("result", "ok"), controller.logout("Bearer " + token).block());
+            Assertions.assertFalse(systemService.introspect(token).isActive());
+        } finally {
+            systemService.onDeactivate();
+        }
+    }
+
+    @Test
+    void revokeIsReservedToAdministrators() {
+        when(authenticationSystemApi.introspect("raw")).thenReturn(new TokenIntrospection(true, "user1", "issuer", "jti-1", 0L, 0L, false));
+
+        Assertions.assertThrows(UnauthorizedException.class, () -> controller.revokeTokens("Bearer raw", List.of("other")).block());
+        verify(authenticationSystemApi, never()).revokeTokens(anyList());
+    }
+
+    //the signature is checked by the mocked platform token service only
+    private static String token(String subject, String issuer) {
+        long now = System.currentTimeMillis() / 1000L;
+        String claims = "{\"sub\":\"" + subject + "\",\"iss\":\"" + issuer + "\",\"jti\":\"" + UUID.randomUUID()
+                + "\",\"iat\":" + (now - 2L) + ",\"exp\":" + (now + 3600L) + "}";
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString("signature".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MockServerWebExchange form(String body, String remoteAddress) {
+        MockServerHttpRequest request = MockServerHttpRequest.post("http://" + HOST + "/authentication/login")
+                .remoteAddress(new InetSocketAddress(remoteAddress, 40000))
+                .header("X-Forwarded-For", "192.168.1.7")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(body);
+        return MockServerWebExchange.from(request);
+    }
+}
@@ -0,0 +1,57 @@
+package it.water.authentication.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Virtual-thread request execution for the Spring runtime (water.authentication.virtual.threads.enabled).
+ * The embedded Tomcat connector runs every request on its own virtual thread instead of the bounded
+ * platform pool (server.tomcat.threads.max), so a login waiting on the provider (database, LDAP, Company
+ * client) releases its carrier thread instead of holding a container thread.
+ * <p>
+ * The resources stay synchronous: provider login and signing run on the request thread, and the request
+ * context ({@code RequestContextHolder}) and the Water security context are bound to it as before. The
+ * offload executors of the service already use virtual threads on Java 21+, except token signing which is
+ * CPU bound and keeps one platform thread per core. On runtimes without virtual threads the connector keeps
+ * its platform pool.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(name = "org.apache.coyote.ProtocolHandler")
+@ConditionalOnProperty(name = AuthenticationConstants.VIRTUAL_THREADS_ENABLED, havingValue = "true")
+public class AuthenticationVirtualThreadsConfiguration implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(AuthenticationVirtualThreadsConfiguration.class);
+
+    //not exposed as a bean: an Executor bean would replace the Spring Boot application task executor
+    private final ExecutorService requestExecutor = AuthenticationExecutors.newVirtualThreadExecutor();
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> authenticationVirtualThreadsCustomizer() {
+        return protocolHandler -> {
+            if (requestExecutor == null) {
+                log.warn("{} is set but virtual threads are not supported by this Java runtime, keeping the platform request threads",
+                        AuthenticationConstants.VIRTUAL_THREADS_ENABLED);
+                return;
+            }
+            protocolHandler.setExecutor(requestExecutor);
+            log.info("Serving requests on virtual threads");
+        };
+    }
+
+    ExecutorService getRequestExecutor() {
+        return requestExecutor;
+    }
+
+    @Override
+    public void destroy() {
+        if (requestExecutor != null)
+            requestExecutor.shutdown();
+    }
+}
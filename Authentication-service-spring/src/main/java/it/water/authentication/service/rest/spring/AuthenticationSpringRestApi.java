@@ -22,11 +22,15 @@ import it.water.core.api.service.rest.FrameworkRestApi;
 import it.water.core.api.service.rest.WaterJsonView;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -44,6 +48,11 @@ public interface AuthenticationSpringRestApi extends AuthenticationRestApi {
                               @RequestParam("password") String password,
                               @RequestParam(value = "companyId", required = false) Long companyId);
 
+    @PostMapping(path = "/refresh", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @JsonView(WaterJsonView.Public.class)
+    @Override
+    Map<String, String> refresh(@RequestParam("refreshToken") String refreshToken);
+
     @PostMapping(path = "/impersonate", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
     @JsonView(WaterJsonView.Public.class)
     @Override
@@ -53,4 +62,27 @@ public interface AuthenticationSpringRestApi extends AuthenticationRestApi {
     @JsonView(WaterJsonView.Public.class)
     @Override
     Map<String, String> logout(@RequestHeader(HttpHeaders.AUTHORIZATION) String authorization);
+
+    @PostMapping(path = "/logout/all", produces = MediaType.APPLICATION_JSON_VALUE)
+    @JsonView(WaterJsonView.Public.class)
+    @Override
+    Map<String, String> logoutEverywhere(@RequestHeader(HttpHeaders.AUTHORIZATION) String authorization);
+
+    @PostMapping(path = "/revoke", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @JsonView(WaterJsonView.Public.class)
+    @Override
+    Map<String, Object> revokeTokens(@RequestBody List<String> tokens);
+
+    @PostMapping(path = "/introspect", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @JsonView(WaterJsonView.Public.class)
+    @Override
+    Map<String, Object> introspect(@RequestParam("token") String token);
+
+    //Spring MVC counterpart of jwks(String): same headers, with a ResponseEntity instead of a JAX-RS Response
+    @GetMapping(path = "/jwks", produces = MediaType.APPLICATION_JSON_VALUE)
+    ResponseEntity<byte[]> jwkSet(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch);
+
+    //Spring MVC counterpart of ready(): same status codes and body, with a ResponseEntity instead of a JAX-RS Response
+    @GetMapping(path = "/ready", produces = MediaType.APPLICATION_JSON_VALUE)
+    ResponseEntity<Map<String, String>> readiness();
 }
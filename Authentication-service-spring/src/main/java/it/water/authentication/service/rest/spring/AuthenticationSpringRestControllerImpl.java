@@ -1,14 +1,23 @@
 
 package it.water.authentication.service.rest.spring;
 
+import it.water.authentication.api.JwkSet;
 import it.water.authentication.service.ClientIpResolver;
+import it.water.authentication.service.execption.LoginAdmissionRejectedException;
+import it.water.authentication.service.rest.AuthenticationResponses;
 import it.water.authentication.service.rest.AuthenticationRestControllerImpl;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
+import java.util.List;
 import java.util.Map;
 
 
@@ -24,6 +33,11 @@ public class AuthenticationSpringRestControllerImpl extends AuthenticationRestCo
         return super.login(username, password, companyId);
     }
 
+    @Override
+    public Map<String, String> refresh(String refreshToken) {
+        return super.refresh(refreshToken);
+    }
+
     @Override
     public Map<String, String> impersonate(String targetUsername, Long companyId) {
         return super.impersonate(targetUsername, companyId);
@@ -34,6 +48,46 @@ public class AuthenticationSpringRestControllerImpl extends AuthenticationRestCo
         return super.logout(authorization);
     }
 
+    @Override
+    public Map<String, String> logoutEverywhere(String authorization) {
+        return super.logoutEverywhere(authorization);
+    }
+
+    @Override
+    public Map<String, Object> revokeTokens(List<String> tokens) {
+        return super.revokeTokens(tokens);
+    }
+
+    @Override
+    public Map<String, Object> introspect(String token) {
+        return super.introspect(token);
+    }
+
+    @Override
+    public ResponseEntity<byte[]> jwkSet(String ifNoneMatch) {
+        JwkSet jwkSet = currentJwkSet();
+        boolean notModified = jwkSet.isNotModified(ifNoneMatch);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                .header(HttpHeaders.ETAG, jwkSet.getETag())
+                .header(HttpHeaders.CACHE_CONTROL, jwkSet.getCacheControl());
+        return notModified ? response.build() : response.contentType(MediaType.APPLICATION_JSON).body(jwkSet.getBody());
+    }
+
+    @Override
+    public ResponseEntity<Map<String, String>> readiness() {
+        boolean ready = signingReady();
+        return ResponseEntity.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+                .body(AuthenticationResponses.readiness(ready));
+    }
+
+    //load shedding: 503 with the time after which the client should retry, not a credentials failure
+    @ExceptionHandler(LoginAdmissionRejectedException.class)
+    public ResponseEntity<Void> loginRejected(LoginAdmissionRejectedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .build();
+    }
+
     @Override
     protected String resolveClientIp() {
         HttpServletRequest request = currentRequest();
@@ -54,6 +108,19 @@ public class AuthenticationSpringRestControllerImpl extends AuthenticationRestCo
         return request == null ? null : request.getServerName();
     }
 
+    @Override
+    protected Object getRequestAttribute(String name) {
+        HttpServletRequest request = currentRequest();
+        return request == null ? null : request.getAttribute(name);
+    }
+
+    @Override
+    protected void setRequestAttribute(String name, Object value) {
+        HttpServletRequest request = currentRequest();
+        if (request != null)
+            request.setAttribute(name, value);
+    }
+
     //#34/#37 - Spring MVC: the controller is a singleton, so read the per-request jakarta HttpServletRequest
     //from the thread-bound request context instead of the (javax, unpopulated) @Context field of the base class.
     private HttpServletRequest currentRequest() {
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.authentication.api.AuthenticationApi;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.authentication.service.rest.spring.AuthenticationSpringRestControllerImpl;
+import it.water.core.api.security.Authenticable;
+import org.apache.coyote.ProtocolHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Plain Mockito unit tests for the virtual-thread request execution of the Spring runtime: the Tomcat
+ * connector gets the virtual-thread executor, and a login served on a virtual request thread still resolves
+ * client IP and virtual host from the request bound to {@link RequestContextHolder}.
+ */
+@ExtendWith(MockitoExtension.class)
+class AuthenticationVirtualThreadsTest {
+
+    private static final String TRUSTED_PROXY = "10.0.0.1";
+    private static final String CLIENT_IP = "203.0.113.7";
+    private static final String VIRTUAL_HOST = "tenant.example.com";
+
+    @Mock
+    private AuthenticationApi authenticationApi;
+
+    @Mock
+    private AuthenticationOption authenticationOption;
+
+    @Mock
+    private Authenticable authenticable;
+
+    private AuthenticationVirtualThreadsConfiguration configuration;
+    private AuthenticationSpringRestControllerImpl controller;
+
+    @BeforeEach
+    void setUp() {
+        configuration = new AuthenticationVirtualThreadsConfiguration();
+        controller = new AuthenticationSpringRestControllerImpl();
+        controller.setAuthenticationApi(authenticationApi);
+        controller.setAuthenticationOption(authenticationOption);
+        lenient().when(authenticationOption.getTrustedProxies()).thenReturn(Set.of(TRUSTED_PROXY));
+        lenient().when(authenticationApi.loginForVirtualHost(any(), any(), any(), any())).thenReturn(authenticable);
+        lenient().when(authenticationApi.generateToken(authenticable)).thenReturn("jwt");
+    }
+
+    @AfterEach
+    void tearDown() {
+        configuration.destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void connectorRunsRequestsOnVirtualThreads() {
+        Assumptions.assumeTrue(AuthenticationExecutors.virtualThreadsSupported(), "virtual threads require Java 21+");
+        ProtocolHandler protocolHandler = mock(ProtocolHandler.class);
+        ((TomcatProtocolHandlerCustomizer<ProtocolHandler>) configuration.authenticationVirtualThreadsCustomizer()).customize(protocolHandler);
+        verify(protocolHandler).setExecutor(configuration.getRequestExecutor());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void connectorKeepsPlatformThreadsWhenVirtualThreadsAreNotSupported() {
+        Assumptions.assumeFalse(AuthenticationExecutors.virtualThreadsSupported(), "runtime supports virtual threads");
+        ProtocolHandler protocolHandler = mock(ProtocolHandler.class);
+        ((TomcatProtocolHandlerCustomizer<ProtocolHandler>) configuration.authenticationVirtualThreadsCustomizer()).customize(protocolHandler);
+        Assertions.assertNull(configuration.getRequestExecutor());
+        verify(protocolHandler, never()).setExecutor(any());
+    }
+
+    @Test
+    void loginOnVirtualRequestThreadResolvesClientIpFromRequestContext() throws Exception {
+        Assumptions.assumeTrue(AuthenticationExecutors.virtualThreadsSupported(), "virtual threads require Java 21+");
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/water/authentication/login");
+        request.setRemoteAddr(TRUSTED_PROXY);
+        request.setServerName(VIRTUAL_HOST);
+        request.addHeader("X-Forwarded-For", CLIENT_IP + ", " + TRUSTED_PROXY);
+        //as the servlet container does: the request is bound to the thread serving it
+        Map<String, String> response = configuration.getRequestExecutor().submit(() -> {
+            Assertions.assertTrue(isVirtual(Thread.currentThread()));
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+            try {
+                return controller.login("user", "password", null);
+            } finally {
+                RequestContextHolder.resetRequestAttributes();
+            }
+        }).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals("jwt", response.get("token"));
+        verify(authenticationApi).loginForVirtualHost("user", "password", VIRTUAL_HOST, CLIENT_IP);
+    }
+
+    @Test
+    void requestContextIsNotVisibleToOtherVirtualThreads() throws Exception {
+        Assumptions.assumeTrue(AuthenticationExecutors.virtualThreadsSupported(), "virtual threads require Java 21+");
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/water/authentication/login");
+        request.setRemoteAddr(CLIENT_IP);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            //a request thread never sees the request of another one, the lockout key falls back to unknown
+            configuration.getRequestExecutor().submit(() -> controller.login("user", "password", null)).get(5, TimeUnit.SECONDS);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        verify(authenticationApi).loginForVirtualHost("user", "password", null, null);
+    }
+
+    //Thread.isVirtual() is Java 21+, the module is compiled for 17
+    private static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.security.Authenticable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch issuance against the per-call loop, with in-tree RS256 signing on the test keystore: both report
+ * tokens per second ({@code @OperationsPerInvocation} is the batch size), so the scores compare directly.
+ * The gain of {@code generateTokens} comes from the parallel signing and grows with the available cores.
+ * <p>
+ * Run with {@code gradle :Authentication-service:jmh -PjmhInclude=BatchTokenIssuanceBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchTokenIssuanceBenchmark {
+    private static final int BATCH_SIZE = 500;
+    private static final String ISSUER = "it.water.core.api.model.User";
+
+    private AuthenticationSystemServiceImpl service;
+    private List<Authenticable> principals;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, String> properties = Map.of(
+                AuthenticationConstants.KEYSTORE_FILE, "src/test/resources/certs/server.keystore",
+                AuthenticationConstants.KEYSTORE_PASSWORD, "water.",
+                AuthenticationConstants.KEYSTORE_ALIAS, "server-cert",
+                AuthenticationConstants.SIGNING_ENABLED, "true",
+                AuthenticationConstants.SIGNING_RELOAD_INTERVAL_MILLIS, "0");
+        ApplicationProperties applicationProperties = (ApplicationProperties) Proxy.newProxyInstance(
+                ApplicationProperties.class.getClassLoader(), new Class<?>[]{ApplicationProperties.class},
+                (proxy, method, args) -> "getProperty".equals(method.getName()) ? properties.get((String) args[0]) : null);
+        service = new AuthenticationSystemServiceImpl();
+        service.setApplicationProperties(applicationProperties);
+        service.onActivate(applicationProperties);
+        if (service.getSigningProfiles() == null)
+            throw new IllegalStateException("Signing keys not loaded, run from the Authentication-service directory");
+        principals = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            principals.add(principal("service-account-" + i, ISSUER));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.onDeactivate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void perCallLoop(Blackhole blackhole) {
+        for (Authenticable principal : principals) {
+            blackhole.consume(service.generateToken(principal));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<String> batch() {
+        return service.generateTokens(principals);
+    }
+
+    private static Authenticable principal(String username, String issuer) {
+        return (Authenticable) Proxy.newProxyInstance(Authenticable.class.getClassLoader(), new Class<?>[]{Authenticable.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getScreenName", "toString" -> username;
+                    case "getIssuer" -> issuer;
+                    case "getLoggedEntityId" -> 1L;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                });
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.authentication.service.rest.AuthenticationResponses;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.security.Authenticable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Request execution models of the Spring runtime for {@code /authentication/login}: a burst of concurrent logins
+ * served by the platform request pool of the servlet container (Tomcat default, 200 threads) against one virtual
+ * thread per request (water.authentication.virtual.threads.enabled). Each request waits for the provider
+ * ({@code providerLatencyMicros}, standing for the user lookup and the password check) and then signs the token in
+ * tree with RS256, as the synchronous login resource does. Scores are logins per second.
+ * <p>
+ * With provider latency the platform pool caps the logins in flight at its size, while virtual threads release the
+ * carrier during the wait and are only bounded by signing on the available cores. The virtual model needs Java 21+.
+ * Run with {@code gradle :Authentication-service:jmh -PjmhInclude=LoginThreadModelBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginThreadModelBenchmark {
+    private static final int CONCURRENT_REQUESTS = 2000;
+    //server.tomcat.threads.max default
+    private static final int PLATFORM_REQUEST_THREADS = 200;
+    private static final String ISSUER = "it.water.core.api.model.User";
+
+    @Param({"platform", "virtual"})
+    private String threadModel;
+
+    @Param({"0", "5000"})
+    private long providerLatencyMicros;
+
+    private AuthenticationSystemServiceImpl service;
+    private Authenticable principal;
+    private ExecutorService requestExecutor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, String> properties = Map.of(
+                AuthenticationConstants.KEYSTORE_FILE, "src/test/resources/certs/server.keystore",
+                AuthenticationConstants.KEYSTORE_PASSWORD, "water.",
+                AuthenticationConstants.KEYSTORE_ALIAS, "server-cert",
+                AuthenticationConstants.SIGNING_ENABLED, "true",
+                AuthenticationConstants.SIGNING_RELOAD_INTERVAL_MILLIS, "0");
+        ApplicationProperties applicationProperties = (ApplicationProperties) Proxy.newProxyInstance(
+                ApplicationProperties.class.getClassLoader(), new Class<?>[]{ApplicationProperties.class},
+                (proxy, method, args) -> "getProperty".equals(method.getName()) ? properties.get((String) args[0]) : null);
+        service = new AuthenticationSystemServiceImpl();
+        service.setApplicationProperties(applicationProperties);
+        service.onActivate(applicationProperties);
+        if (service.getSigningProfiles() == null)
+            throw new IllegalStateException("Signing keys not loaded, run from the Authentication-service directory");
+        principal = principal("user", ISSUER);
+        if ("virtual".equals(threadModel)) {
+            requestExecutor = AuthenticationExecutors.newVirtualThreadExecutor();
+            if (requestExecutor == null)
+                throw new IllegalStateException("Virtual threads are not supported by this runtime, run on Java 21+");
+        } else {
+            //the connector queue (server.tomcat.accept-count) holds the requests beyond the pool
+            requestExecutor = AuthenticationExecutors.newBoundedExecutor("http-nio-exec", PLATFORM_REQUEST_THREADS, CONCURRENT_REQUESTS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        requestExecutor.shutdown();
+        requestExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        service.onDeactivate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENT_REQUESTS)
+    public void login(Blackhole blackhole) throws InterruptedException {
+        CountDownLatch completed = new CountDownLatch(CONCURRENT_REQUESTS);
+        long providerLatencyNanos = TimeUnit.MICROSECONDS.toNanos(providerLatencyMicros);
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            requestExecutor.execute(() -> {
+                try {
+                    if (providerLatencyNanos > 0)
+                        LockSupport.parkNanos(providerLatencyNanos);
+                    blackhole.consume(AuthenticationResponses.token(service.generateToken(principal), null));
+                } finally {
+                    completed.countDown();
+                }
+            });
+        }
+        completed.await();
+    }
+
+    private static Authenticable principal(String username, String issuer) {
+        return (Authenticable) Proxy.newProxyInstance(Authenticable.class.getClassLoader(), new Class<?>[]{Authenticable.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getScreenName", "toString" -> username;
+                    case "getIssuer" -> issuer;
+                    case "getLoggedEntityId" -> 1L;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                });
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token issuance and validation throughput per signing profile: RS256 (RSA 2048, the keystore default),
+ * ES256 (EC P-256) and EdDSA (Ed25519). Issuance signs the same claims as
+ * {@code AuthenticationSystemServiceImpl.generateToken}; validation parses the compact token and checks the
+ * signature, as a validator does on every request.
+ * <p>
+ * Run with {@code gradle :Authentication-service:jmh -PjmhInclude=SigningAlgorithmBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningAlgorithmBenchmark {
+
+    @Param({"RS256", "ES256", "EdDSA"})
+    public String algorithm;
+
+    private SigningKeyCache keys;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPairGenerator generator;
+        switch (algorithm) {
+            case "ES256" -> {
+                generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+            }
+            case "EdDSA" -> generator = KeyPairGenerator.getInstance("Ed25519");
+            default -> {
+                generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(2048);
+            }
+        }
+        KeyPair keyPair = generator.generateKeyPair();
+        keys = new SigningKeyCache(algorithm, keyPair.getPrivate(), keyPair.getPublic());
+        token = keys.sign(claims());
+    }
+
+    @Benchmark
+    public String issue() throws JOSEException {
+        return keys.sign(claims());
+    }
+
+    @Benchmark
+    public boolean validate() throws ParseException, JOSEException {
+        return SignedJWT.parse(token).verify(keys.getVerifier());
+    }
+
+    private static JWTClaimsSet claims() {
+        long now = System.currentTimeMillis();
+        return new JWTClaimsSet.Builder()
+                .subject("benchmark-user")
+                .issuer("it.water.core.api.model.User")
+                .jwtID(UUID.randomUUID().toString())
+                .issueTime(new Date(now))
+                .expirationTime(new Date(now + 3_600_000L))
+                .claim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_LOGGED_ENTITY_ID, 1L)
+                .claim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ADMIN, false)
+                .claim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ROLES, List.of("user"))
+                .build();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jwt.JWTClaimsSet;
+import it.water.authentication.api.options.TokenClaimsProfile;
+import it.water.core.api.model.Role;
+import it.water.core.api.security.Authenticable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per issued token of the two issuance paths: {@code claimsSet} builds a {@link JWTClaimsSet} and a
+ * {@code SignedJWT} for every token, as {@code generateToken} did before the issuance templates, while
+ * {@code template} writes only the dynamic claims on top of the pre-encoded header and issuer of a
+ * {@link TokenIssuanceTemplate}. EdDSA keeps the signature cheap, so the encoding share stands out; RS256 is
+ * the keystore default.
+ * <p>
+ * Allocations per token are the {@code gc.alloc.rate.norm} lines of the GC profiler:
+ * {@code gradle :Authentication-service:jmh -PjmhInclude=TokenIssuanceAllocationBenchmark -PjmhArgs="-prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenIssuanceAllocationBenchmark {
+    private static final String ISSUER = "it.water.core.api.model.User";
+    private static final long DURATION_MILLIS = 3_600_000L;
+
+    @Param({"EdDSA", "RS256"})
+    public String algorithm;
+
+    private SigningKeyCache keys;
+    private TokenIssuanceTemplate template;
+    private Authenticable principal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPairGenerator generator;
+        if ("EdDSA".equals(algorithm)) {
+            generator = KeyPairGenerator.getInstance("Ed25519");
+        } else {
+            generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+        }
+        KeyPair keyPair = generator.generateKeyPair();
+        keys = new SigningKeyCache(algorithm, keyPair.getPrivate(), keyPair.getPublic());
+        template = new TokenIssuanceTemplate(keys, ISSUER, DURATION_MILLIS, TokenClaimsProfile.STANDARD);
+        Role role = (Role) Proxy.newProxyInstance(Role.class.getClassLoader(), new Class<?>[]{Role.class},
+                (proxy, method, args) -> "getName".equals(method.getName()) ? "user" : null);
+        principal = (Authenticable) Proxy.newProxyInstance(Authenticable.class.getClassLoader(), new Class<?>[]{Authenticable.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getScreenName" -> "benchmark-user";
+                    case "getIssuer" -> ISSUER;
+                    case "getLoggedEntityId" -> 1L;
+                    case "isAdmin" -> Boolean.FALSE;
+                    case "getRoles" -> List.of(role);
+                    default -> null;
+                });
+    }
+
+    @Benchmark
+    public String claimsSet() throws JOSEException {
+        long now = System.currentTimeMillis();
+        List<String> roles = principal.getRoles().stream().map(Role::getName).toList();
+        return keys.sign(new JWTClaimsSet.Builder()
+                .subject(principal.getScreenName())
+                .issuer(principal.getIssuer())
+                .jwtID(UUID.randomUUID().toString())
+                .issueTime(new Date(now))
+                .expirationTime(new Date(now + DURATION_MILLIS))
+                .claim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_LOGGED_ENTITY_ID, principal.getLoggedEntityId())
+                .claim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ADMIN, principal.isAdmin())
+                .claim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ROLES, roles)
+                .build());
+    }
+
+    @Benchmark
+    public String template() throws JOSEException {
+        return template.sign(principal, System.currentTimeMillis());
+    }
+}
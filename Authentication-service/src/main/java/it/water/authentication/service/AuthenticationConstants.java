@@ -12,6 +12,36 @@ public class AuthenticationConstants {
     public static final String KEYSTORE_FILE = "water.keystore.file";
     public static final String PRIVATE_KEY_PASSWORD = "water.private.key.password";
 
+    //Signing key warm-up at activation: keystore load, cached signer and sign/verify rounds
+    public static final String SIGNING_WARMUP_ENABLED = "water.authentication.signing.warmup.enabled";
+    public static final String SIGNING_WARMUP_ROUNDS = "water.authentication.signing.warmup.rounds";
+    //Tokens signed in this module with per-issuer keystore aliases (RS256, ES256 or Ed25519 by key type) and kid headers
+    public static final String SIGNING_ENABLED = "water.authentication.signing.enabled";
+    //default signing alias, falls back to water.keystore.alias
+    public static final String SIGNING_ALIAS = "water.authentication.signing.alias";
+    //comma separated issuerName=alias pairs
+    public static final String SIGNING_PROFILES = "water.authentication.signing.profiles";
+    //Key rotation: keystore change polling (0 disables), retired key overlap (defaults to the JWT lifetime)
+    public static final String SIGNING_RELOAD_INTERVAL_MILLIS = "water.authentication.signing.reload.interval.millis";
+    public static final String SIGNING_KEY_OVERLAP_MILLIS = "water.authentication.signing.key.overlap.millis";
+    //comma separated aliases accepted for validation only, e.g. the next key published before it signs
+    public static final String SIGNING_VERIFICATION_ALIASES = "water.authentication.signing.verification.aliases";
+    //comma separated issuers whose tokens use the compact claims profile, "*" for every issuer
+    public static final String CLAIMS_COMPACT_ISSUERS = "water.authentication.claims.compact.issuers";
+    //embeds the roles and permissions of the principal, stamped with the permissions version, in the issued tokens
+    public static final String PERMISSION_SNAPSHOT_ENABLED = "water.authentication.permissions.snapshot.enabled";
+    //Impersonation token reuse: entry lifetime (capped by the token expiry, 0 disables) and size bound
+    public static final String IMPERSONATION_CACHE_TTL_MILLIS = "water.authentication.impersonation.cache.ttl.millis";
+    public static final String IMPERSONATION_CACHE_MAX_ENTRIES = "water.authentication.impersonation.cache.max.entries";
+    //Cache-Control max-age of the JWKS endpoint
+    public static final String JWKS_MAX_AGE_SECONDS = "water.authentication.jwks.max.age.seconds";
+    //Introspection validation cache: entry lifetime (capped by the token expiry, 0 disables) and size bound
+    public static final String INTROSPECTION_CACHE_TTL_MILLIS = "water.authentication.introspection.cache.ttl.millis";
+    public static final String INTROSPECTION_CACHE_MAX_ENTRIES = "water.authentication.introspection.cache.max.entries";
+
+    //JWT lifetime, owned by the REST security module
+    public static final String JWT_DURATION_MILLIS = "water.rest.security.jwt.duration.millis";
+
     //Framework-wide test mode flag; when true lockout enforcement is disabled
     public static final String TEST_MODE = "water.testMode";
 
@@ -21,6 +51,10 @@ public class AuthenticationConstants {
     public static final String LOGIN_LOCKOUT_DURATION_MILLIS = "water.authentication.login.lockout.duration.millis";
     //M33 - hard cap on tracked keys in the in-memory store to bound memory usage
     public static final String LOGIN_LOCKOUT_MAX_KEYS = "water.authentication.login.lockout.max.keys";
+    //bound on the per-tenant partitions of the in-memory store (lockout properties accept ".company.<id>" overrides)
+    public static final String LOGIN_LOCKOUT_TENANT_MAX_PARTITIONS = "water.authentication.login.lockout.tenant.max.partitions";
+    //when true, multi-tenant virtual host logins track lockout in the partition of the resolved company
+    public static final String LOGIN_LOCKOUT_PARTITIONED = "water.authentication.login.lockout.partitioned";
 
     //#34 - progressive backoff
     public static final String LOGIN_LOCKOUT_BACKOFF_ENABLED = "water.authentication.login.lockout.backoff.enabled";
@@ -33,4 +67,56 @@ public class AuthenticationConstants {
     //Multitenancy - when true this issuer runs in MT mode: login resolves/validates the active company
     //and the token carries the companyId claim. Default false = single-tenant/legacy behavior.
     public static final String MULTITENANT_ENABLED = "water.authentication.multitenant.enabled";
+
+    //Virtual host -> companyId resolution cache used by loginForVirtualHost
+    public static final String VHOST_CACHE_MAX_ENTRIES = "water.authentication.vhost.cache.max.entries";
+    public static final String VHOST_CACHE_TTL_MILLIS = "water.authentication.vhost.cache.ttl.millis";
+    public static final String VHOST_CACHE_NEGATIVE_TTL_MILLIS = "water.authentication.vhost.cache.negative.ttl.millis";
+    //percentage of the ttl after which a hit triggers an asynchronous reload (refresh-ahead)
+    public static final String VHOST_CACHE_REFRESH_AHEAD_PERCENT = "water.authentication.vhost.cache.refresh.ahead.percent";
+
+    //Bulk preload of the virtual host map at activation, kept in sync in background
+    public static final String VHOST_PRELOAD_ENABLED = "water.authentication.vhost.preload.enabled";
+    public static final String VHOST_PRELOAD_REFRESH_INTERVAL_MILLIS = "water.authentication.vhost.preload.refresh.interval.millis";
+    public static final String VHOST_PRELOAD_FULL_REFRESH_INTERVAL_MILLIS = "water.authentication.vhost.preload.full.refresh.interval.millis";
+
+    //Concurrent tenant lookup and lockout check in loginForVirtualHost
+    public static final String LOGIN_CONCURRENT_ENABLED = "water.authentication.login.concurrent.enabled";
+    public static final String LOGIN_CONCURRENT_THREADS = "water.authentication.login.concurrent.threads";
+
+    //Executor of the asynchronous login, impersonate and logout REST resources
+    public static final String REST_ASYNC_THREADS = "water.authentication.rest.async.threads";
+    public static final String REST_ASYNC_QUEUE_CAPACITY = "water.authentication.rest.async.queue.capacity";
+
+    //Executors of the CompletableFuture methods: provider and store stages, signing stage
+    public static final String ASYNC_THREADS = "water.authentication.async.threads";
+    public static final String ASYNC_SIGNING_THREADS = "water.authentication.async.signing.threads";
+
+    //Spring runtime: embedded servlet container requests served on virtual threads (Java 21+)
+    public static final String VIRTUAL_THREADS_ENABLED = "water.authentication.virtual.threads.enabled";
+
+    //Per-tenant admission control of provider logins (weighted fair queuing)
+    public static final String LOGIN_ADMISSION_ENABLED = "water.authentication.login.admission.enabled";
+    public static final String LOGIN_ADMISSION_MAX_CONCURRENT = "water.authentication.login.admission.max.concurrent";
+    public static final String LOGIN_ADMISSION_QUEUE_CAPACITY = "water.authentication.login.admission.queue.capacity";
+    public static final String LOGIN_ADMISSION_MAX_WAIT_MILLIS = "water.authentication.login.admission.max.wait.millis";
+    //tenant share; overridable per tenant with the ".company.<companyId>" suffix
+    public static final String LOGIN_ADMISSION_WEIGHT = "water.authentication.login.admission.weight";
+
+    //Refresh tokens issued at login and redeemed by /authentication/refresh
+    public static final String REFRESH_TOKEN_ENABLED = "water.authentication.refresh.token.enabled";
+    public static final String REFRESH_TOKEN_TTL_MILLIS = "water.authentication.refresh.token.ttl.millis";
+    public static final String REFRESH_TOKEN_MAX_ENTRIES = "water.authentication.refresh.token.max.entries";
+
+    //Time-bucketed jti denylist: bucket width and Bloom filter sizing per bucket
+    public static final String REVOCATION_BUCKET_MILLIS = "water.authentication.revocation.bucket.millis";
+    public static final String REVOCATION_BLOOM_EXPECTED_ENTRIES = "water.authentication.revocation.bloom.expected.entries";
+
+    //Append-only revocation journal shared by the nodes through a local directory; disabled when dir is not set
+    public static final String REVOCATION_JOURNAL_DIR = "water.authentication.revocation.journal.dir";
+    //segment file prefix, required when the journal dir is set: must be stable across restarts and unique per node
+    public static final String REVOCATION_JOURNAL_NODE_ID = "water.authentication.revocation.journal.node.id";
+    public static final String REVOCATION_JOURNAL_SEGMENT_BYTES = "water.authentication.revocation.journal.segment.bytes";
+    public static final String REVOCATION_JOURNAL_ROLL_INTERVAL_MILLIS = "water.authentication.revocation.journal.roll.interval.millis";
+    public static final String REVOCATION_JOURNAL_POLL_INTERVAL_MILLIS = "water.authentication.revocation.journal.poll.interval.millis";
 }
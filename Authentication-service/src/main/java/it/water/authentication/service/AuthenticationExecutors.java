@@ -0,0 +1,89 @@
+package it.water.authentication.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory for the executors used by the authentication module to run login work off the calling thread.
+ * The module is compiled for Java 17, so virtual threads are looked up reflectively: on a Java 21+ runtime
+ * {@link #newExecutor(String, int, int)} returns a virtual-thread-per-task executor, on older runtimes a
+ * bounded pool of daemon platform threads.
+ */
+public final class AuthenticationExecutors {
+    private static final Logger log = LoggerFactory.getLogger(AuthenticationExecutors.class);
+
+    //Executors.newVirtualThreadPerTaskExecutor(), null when the runtime does not support virtual threads
+    private static final MethodHandle VIRTUAL_THREAD_EXECUTOR = lookupVirtualThreadExecutor();
+
+    private AuthenticationExecutors() {
+    }
+
+    public static boolean virtualThreadsSupported() {
+        return VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * @param namePrefix     thread name prefix used by the platform-thread fallback
+     * @param threads        platform threads used when virtual threads are not available
+     * @param queueCapacity  platform pool queue bound; submissions beyond it are rejected
+     * @return a virtual-thread-per-task executor when supported, a bounded platform pool otherwise
+     */
+    public static ExecutorService newExecutor(String namePrefix, int threads, int queueCapacity) {
+        ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+        return (virtualThreadExecutor != null) ? virtualThreadExecutor : newBoundedExecutor(namePrefix, threads, queueCapacity);
+    }
+
+    /**
+     * @return a virtual-thread-per-task executor, or null when the runtime does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        if (VIRTUAL_THREAD_EXECUTOR == null)
+            return null;
+        try {
+            return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke();
+        } catch (Throwable t) {
+            log.warn("Unable to create a virtual thread executor: {}", t.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Fixed pool of daemon platform threads with a bounded queue. Submissions beyond the queue bound are
+     * rejected with {@link java.util.concurrent.RejectedExecutionException} so callers can shed load.
+     */
+    public static ExecutorService newBoundedExecutor(String namePrefix, int threads, int queueCapacity) {
+        int poolSize = Math.max(threads, 1);
+        return new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(queueCapacity, 1)), daemonThreadFactory(namePrefix),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static MethodHandle lookupVirtualThreadExecutor() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
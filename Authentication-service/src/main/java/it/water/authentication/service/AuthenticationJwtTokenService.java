@@ -0,0 +1,83 @@
+package it.water.authentication.service;
+
+import it.water.authentication.api.AuthenticationSystemApi;
+import it.water.authentication.api.ParsedToken;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.security.Authenticable;
+import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * @Author Aristide Cittadino
+ * Token service seen by the platform: it takes precedence over the REST security one, so that every
+ * {@code @LoggedIn} endpoint validates tokens the way this module does. The signature is verified by the
+ * signing key ring (kid, retired keys, ES256/EdDSA) when in-tree signing is enabled and by the platform token
+ * service otherwise; then the jti denylist ({@link it.water.authentication.api.TokenRevocationStore}) and the
+ * subject "not before" instants ({@link it.water.authentication.api.SubjectRevocationStore}) are checked, which
+ * are also fed by the revocation journal of the other nodes. Issuance and revocation go through
+ * {@link AuthenticationSystemApi} as well.
+ */
+@FrameworkComponent(priority = 2, services = {JwtTokenService.class, DelegatingJwtTokenService.class})
+public class AuthenticationJwtTokenService implements DelegatingJwtTokenService {
+
+    @Inject
+    @Setter
+    private ComponentRegistry componentRegistry;
+
+    //looked up on first use: the system service depends on the token service, so it cannot be injected here
+    private volatile AuthenticationSystemApi authenticationSystemApi;
+    private volatile JwtTokenService delegate;
+
+    @Override
+    public String generateJwtToken(Authenticable authenticable) {
+        return authenticationSystemApi().generateToken(authenticable);
+    }
+
+    @Override
+    public boolean validateToken(List<String> validIssuers, String jwtToken) {
+        ParsedToken verified = authenticationSystemApi().verifyToken(validIssuers, jwtToken);
+        if (verified == null)
+            return false;
+        //the filter and the resource share the request thread: the bearer endpoints reuse the verified claims
+        VerifiedTokens.publish(verified);
+        return true;
+    }
+
+    @Override
+    public void revokeToken(String token) {
+        if (token == null || token.isBlank())
+            return;
+        authenticationSystemApi().logout(token);
+    }
+
+    @Override
+    public JwtTokenService getDelegate() {
+        JwtTokenService service = delegate;
+        if (service == null) {
+            //components come sorted by priority: the first one that is not a wrapper is the platform token service
+            service = componentRegistry.findComponents(JwtTokenService.class, null).stream()
+                    .filter(component -> !(component instanceof DelegatingJwtTokenService))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No platform JwtTokenService registered"));
+            delegate = service;
+        }
+        return service;
+    }
+
+    private AuthenticationSystemApi authenticationSystemApi() {
+        AuthenticationSystemApi systemApi = authenticationSystemApi;
+        if (systemApi == null) {
+            systemApi = componentRegistry.findComponent(AuthenticationSystemApi.class, null);
+            authenticationSystemApi = systemApi;
+        }
+        return systemApi;
+    }
+
+    void setAuthenticationSystemApi(AuthenticationSystemApi authenticationSystemApi) {
+        this.authenticationSystemApi = authenticationSystemApi;
+    }
+}
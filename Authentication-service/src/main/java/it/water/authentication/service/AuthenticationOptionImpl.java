@@ -1,6 +1,7 @@
 package it.water.authentication.service;
 
 import it.water.authentication.api.options.AuthenticationOption;
+import it.water.authentication.api.options.TokenClaimsProfile;
 import it.water.authentication.service.execption.NoIssuerNameDefinedException;
 import it.water.core.api.bundle.ApplicationProperties;
 import it.water.core.interceptors.annotations.FrameworkComponent;
@@ -53,4 +54,18 @@ public class AuthenticationOptionImpl implements AuthenticationOption {
         Object raw = applicationProperties.getProperty(AuthenticationConstants.MULTITENANT_ENABLED);
         return raw != null && Boolean.parseBoolean(raw.toString().trim());
     }
+
+    @Override
+    public TokenClaimsProfile getTokenClaimsProfile(String issuerName) {
+        if (applicationProperties == null)
+            return TokenClaimsProfile.STANDARD;
+        Object raw = applicationProperties.getProperty(AuthenticationConstants.CLAIMS_COMPACT_ISSUERS);
+        String value = (raw == null) ? "" : raw.toString();
+        for (String token : value.split(",")) {
+            String issuer = token.trim();
+            if (issuer.equals("*") || (!issuer.isEmpty() && issuer.equals(issuerName)))
+                return TokenClaimsProfile.COMPACT;
+        }
+        return TokenClaimsProfile.STANDARD;
+    }
 }
@@ -2,6 +2,11 @@ package it.water.authentication.service;
 
 import it.water.authentication.api.AuthenticationApi;
 import it.water.authentication.api.AuthenticationSystemApi;
+import it.water.authentication.api.JwkSet;
+import it.water.authentication.api.PermissionSnapshot;
+import it.water.authentication.api.RefreshTokenGrant;
+import it.water.authentication.api.TokenIntrospection;
+import it.water.authentication.api.TokenRevocationOutcome;
 import it.water.core.api.bundle.Runtime;
 import it.water.core.api.permission.SecurityContext;
 import it.water.core.api.registry.ComponentRegistry;
@@ -13,6 +18,10 @@ import it.water.core.service.BaseServiceImpl;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 
 /**
  * @Generated by Water Generator
@@ -53,11 +62,21 @@ public class AuthenticationServiceImpl extends BaseServiceImpl implements Authen
         return systemService.login(username, password, null, companyId, clientIp);
     }
 
+    @Override
+    public CompletableFuture<Authenticable> loginAsync(String username, String password, Long companyId, String clientIp) {
+        return systemService.loginAsync(username, password, null, companyId, clientIp);
+    }
+
     @Override
     public Authenticable loginForVirtualHost(String username, String password, String virtualHost, String clientIp) {
         return systemService.loginForVirtualHost(username, password, null, virtualHost, clientIp);
     }
 
+    @Override
+    public CompletableFuture<Authenticable> loginForVirtualHostAsync(String username, String password, String virtualHost, String clientIp) {
+        return systemService.loginForVirtualHostAsync(username, password, null, virtualHost, clientIp);
+    }
+
     @Override
     public Authenticable impersonate(String targetUsername, Long companyId) {
         //authenticated endpoint: the caller must be logged in; resolve the caller from the current context
@@ -71,13 +90,130 @@ public class AuthenticationServiceImpl extends BaseServiceImpl implements Authen
         return systemService.impersonate(targetUsername, callerUsername, companyId);
     }
 
+    @Override
+    public CompletableFuture<Authenticable> impersonateAsync(String targetUsername, Long companyId) {
+        //the caller is resolved now, on the calling thread; the system layer carries the context to its stages
+        SecurityContext securityContext = (runtime != null) ? runtime.getSecurityContext() : null;
+        if (securityContext == null || !securityContext.isLoggedIn())
+            return CompletableFuture.failedFuture(new UnauthorizedException());
+        String callerUsername = securityContext.getLoggedUsername();
+        if (callerUsername == null || callerUsername.isBlank())
+            return CompletableFuture.failedFuture(new UnauthorizedException());
+        return systemService.impersonateAsync(targetUsername, callerUsername, companyId);
+    }
+
+    @Override
+    public String impersonationToken(String targetUsername, Long companyId) {
+        SecurityContext securityContext = (runtime != null) ? runtime.getSecurityContext() : null;
+        if (securityContext == null || !securityContext.isLoggedIn())
+            throw new UnauthorizedException();
+        String callerUsername = securityContext.getLoggedUsername();
+        if (callerUsername == null || callerUsername.isBlank())
+            throw new UnauthorizedException();
+        return systemService.impersonationToken(targetUsername, callerUsername, companyId);
+    }
+
     @Override
     public String generateToken(Authenticable authenticable) {
         return systemService.generateToken(authenticable);
     }
 
+    @Override
+    public CompletableFuture<String> generateTokenAsync(Authenticable authenticable) {
+        return systemService.generateTokenAsync(authenticable);
+    }
+
+    @Override
+    public List<String> generateTokens(Collection<Authenticable> authenticables) {
+        return systemService.generateTokens(authenticables);
+    }
+
+    @Override
+    public String generateRefreshToken(Authenticable authenticable) {
+        return systemService.generateRefreshToken(authenticable);
+    }
+
+    @Override
+    public RefreshTokenGrant refresh(String refreshToken) {
+        //anonymous endpoint: possession of a valid refresh token is the credential
+        return systemService.refresh(refreshToken);
+    }
+
+    @Override
+    public void revokeRefreshToken(String refreshToken) {
+        systemService.revokeRefreshToken(refreshToken);
+    }
+
+    @Override
+    public void logoutEverywhere() {
+        //authenticated endpoint: the subject is the caller, never a parameter
+        SecurityContext securityContext = (runtime != null) ? runtime.getSecurityContext() : null;
+        if (securityContext == null || !securityContext.isLoggedIn())
+            throw new UnauthorizedException();
+        String callerUsername = securityContext.getLoggedUsername();
+        if (callerUsername == null || callerUsername.isBlank())
+            throw new UnauthorizedException();
+        systemService.logoutEverywhere(callerUsername);
+    }
+
     @Override
     public void logout(String token) {
+        if (!isTokenOfCaller(token))
+            throw new UnauthorizedException();
         systemService.logout(token);
     }
+
+    @Override
+    public CompletableFuture<Void> logoutAsync(String token) {
+        if (!isTokenOfCaller(token))
+            return CompletableFuture.failedFuture(new UnauthorizedException());
+        return systemService.logoutAsync(token);
+    }
+
+    //a caller logs out its own tokens only: the signature is checked by the system service, before any revocation
+    private boolean isTokenOfCaller(String token) {
+        SecurityContext securityContext = (runtime != null) ? runtime.getSecurityContext() : null;
+        if (securityContext == null || !securityContext.isLoggedIn())
+            return false;
+        String callerUsername = securityContext.getLoggedUsername();
+        if (callerUsername == null || callerUsername.isBlank())
+            return false;
+        String subject = systemService.parseToken(token).getSubject();
+        return subject == null || subject.equals(callerUsername);
+    }
+
+    @Override
+    public List<TokenRevocationOutcome> revokeTokens(List<String> tokens) {
+        //revoking tokens of other users is an administrative operation
+        SecurityContext securityContext = (runtime != null) ? runtime.getSecurityContext() : null;
+        if (securityContext == null || !securityContext.isLoggedIn() || !securityContext.isAdmin())
+            throw new UnauthorizedException();
+        return systemService.revokeTokens(tokens);
+    }
+
+    @Override
+    public JwkSet getJwkSet() {
+        return systemService.getJwkSet();
+    }
+
+    @Override
+    public boolean isSigningReady() {
+        return systemService.isSigningReady();
+    }
+
+    @Override
+    public TokenIntrospection introspect(String token) {
+        SecurityContext securityContext = (runtime != null) ? runtime.getSecurityContext() : null;
+        if (securityContext == null || !securityContext.isLoggedIn())
+            throw new UnauthorizedException();
+        return systemService.introspect(token);
+    }
+
+    @Override
+    public PermissionSnapshot getPermissionSnapshot(String token) {
+        SecurityContext securityContext = (runtime != null) ? runtime.getSecurityContext() : null;
+        if (securityContext == null || !securityContext.isLoggedIn())
+            throw new UnauthorizedException();
+        return systemService.getPermissionSnapshot(token);
+    }
 }
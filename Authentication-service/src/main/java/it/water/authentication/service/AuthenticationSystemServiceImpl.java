@@ -1,11 +1,31 @@
 package it.water.authentication.service;
 
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import it.water.authentication.api.AuthenticableSource;
 import it.water.authentication.api.AuthenticationSystemApi;
+import it.water.authentication.api.JwkSet;
 import it.water.authentication.api.LoginAttemptStore;
+import it.water.authentication.api.ParsedToken;
+import it.water.authentication.api.PermissionSnapshot;
+import it.water.authentication.api.PermissionSnapshotSource;
+import it.water.authentication.api.RefreshTokenGrant;
+import it.water.authentication.api.RefreshTokenStore;
+import it.water.authentication.api.SubjectRevocationStore;
+import it.water.authentication.api.TokenIntrospection;
+import it.water.authentication.api.TokenRevocationOutcome;
+import it.water.authentication.api.TokenRevocationStore;
+import it.water.authentication.api.VirtualHostCompanyCache;
+import it.water.authentication.api.VirtualHostMappingSource;
 import it.water.authentication.api.options.AuthenticationOption;
+import it.water.authentication.api.options.TokenClaimsProfile;
 import it.water.authentication.service.execption.AccountLockedException;
+import it.water.authentication.service.execption.LoginAdmissionRejectedException;
 import it.water.core.api.bundle.ApplicationProperties;
 import it.water.core.api.interceptors.OnActivate;
+import it.water.core.api.interceptors.OnDeactivate;
 import it.water.core.api.registry.ComponentRegistry;
 import it.water.core.api.security.Authenticable;
 import it.water.core.api.security.AuthenticationProvider;
@@ -18,8 +38,31 @@ import it.water.service.rest.api.security.jwt.JwtTokenService;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 
 
 /**
@@ -30,6 +73,40 @@ import java.util.Optional;
 @FrameworkComponent
 public class AuthenticationSystemServiceImpl extends BaseSystemServiceImpl implements AuthenticationSystemApi {
 
+    private static final long DEFAULT_VHOST_PRELOAD_REFRESH_INTERVAL_MILLIS = 60L * 1000L;          // 1 minute
+    private static final long DEFAULT_VHOST_PRELOAD_FULL_REFRESH_INTERVAL_MILLIS = 60L * 60L * 1000L; // 1 hour
+    //platform threads used by the concurrent login mode when virtual threads are not available
+    private static final int DEFAULT_LOGIN_CONCURRENT_THREADS = 16;
+    //beyond this the concurrent login subtasks run in the calling thread
+    private static final int LOGIN_EXECUTOR_QUEUE_CAPACITY = 1024;
+    private static final int DEFAULT_ASYNC_THREADS = 32;
+    private static final int ASYNC_EXECUTOR_QUEUE_CAPACITY = 1024;
+    private static final int DEFAULT_LOGIN_ADMISSION_QUEUE_CAPACITY = 100;
+    private static final long DEFAULT_LOGIN_ADMISSION_MAX_WAIT_MILLIS = 10L * 1000L; // 10 seconds
+    private static final int DEFAULT_LOGIN_ADMISSION_WEIGHT = 1;
+    static final long DEFAULT_REFRESH_TOKEN_TTL_MILLIS = 7L * 24L * 60L * 60L * 1000L; // 7 days
+    //same default as the REST security module
+    static final long DEFAULT_JWT_DURATION_MILLIS = 60L * 60L * 1000L; // 1 hour
+    private static final int DEFAULT_SIGNING_WARMUP_ROUNDS = 50;
+    private static final long DEFAULT_SIGNING_RELOAD_INTERVAL_MILLIS = 30L * 1000L; // 30 seconds
+    private static final long DEFAULT_JWKS_MAX_AGE_SECONDS = 300L; // 5 minutes
+    private static final int DEFAULT_INTROSPECTION_CACHE_MAX_ENTRIES = 10000;
+    private static final long DEFAULT_INTROSPECTION_CACHE_TTL_MILLIS = 60L * 1000L; // 1 minute
+    private static final int DEFAULT_IMPERSONATION_CACHE_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_IMPERSONATION_CACHE_TTL_MILLIS = 60L * 1000L; // 1 minute
+    static final String TOKEN_CLAIM_LOGGED_ENTITY_ID = "loggedEntityId";
+    static final String TOKEN_CLAIM_ADMIN = "admin";
+    static final String TOKEN_CLAIM_ROLES = "roles";
+    static final String TOKEN_CLAIM_PERMISSIONS = "permissions";
+    static final String TOKEN_CLAIM_PERMISSIONS_VERSION = "permissionsVersion";
+    //below this a bulk revocation parses its tokens sequentially
+    private static final int BULK_REVOCATION_PARALLEL_THRESHOLD = 64;
+    //below this a batch issuance signs its tokens sequentially
+    private static final int BATCH_ISSUANCE_PARALLEL_THRESHOLD = 8;
+    private static final int DEFAULT_REVOCATION_JOURNAL_SEGMENT_BYTES = 16 * 1024 * 1024;
+    private static final long DEFAULT_REVOCATION_JOURNAL_ROLL_INTERVAL_MILLIS = 60L * 60L * 1000L; // 1 hour
+    private static final long DEFAULT_REVOCATION_JOURNAL_POLL_INTERVAL_MILLIS = 1000L;
+
     @Inject
     @Setter
     private ComponentRegistry componentRegistry;
@@ -50,6 +127,58 @@ public class AuthenticationSystemServiceImpl extends BaseSystemServiceImpl imple
     @Setter
     private ApplicationProperties applicationProperties;
 
+    @Inject
+    @Setter
+    private VirtualHostCompanyCache virtualHostCompanyCache;
+
+    @Inject
+    @Setter
+    private RefreshTokenStore refreshTokenStore;
+
+    @Inject
+    @Setter
+    private SubjectRevocationStore subjectRevocationStore;
+
+    @Inject
+    @Setter
+    private TokenRevocationStore tokenRevocationStore;
+
+    //the CompletableFuture methods carry the caller security context to their stages
+    @Inject
+    @Setter
+    private it.water.core.api.bundle.Runtime runtime;
+
+    //running only when the virtual host preload is enabled
+    private VirtualHostMapPreloader virtualHostMapPreloader;
+
+    //loaded at activation and reloaded when the keystore changes, null if the keystore could not be loaded
+    private volatile SigningKeyRing signingKeyRing;
+    private volatile boolean signingReady;
+    //running only while the keys of a failed activation are loaded again
+    private volatile ScheduledExecutorService signingKeyRetry;
+
+    //created at activation, introspection validates every token when null
+    private volatile TokenValidationCache tokenValidationCache;
+
+    //created at activation, every impersonation goes through the provider when null
+    private volatile ImpersonationTokenCache impersonationTokenCache;
+
+    //running only when water.authentication.revocation.journal.dir is set
+    private volatile RevocationJournal revocationJournal;
+
+    //created on the first concurrent login (water.authentication.login.concurrent.enabled)
+    private volatile ExecutorService loginExecutor;
+
+    //created on the first call of a CompletableFuture method: provider and store stages, signing stage
+    private volatile ExecutorService asyncExecutor;
+    private volatile ExecutorService asyncSigningExecutor;
+
+    //created on the first large bulk revocation or batch issuance
+    private volatile ExecutorService batchExecutor;
+
+    //created on the first login when water.authentication.login.admission.enabled
+    private volatile TenantLoginAdmission loginAdmission;
+
     /**
      * On component activation, emit a single prominent WARN if the framework is running in test mode.
      * When water.testMode=true several security controls are intentionally relaxed (login lockout is
@@ -67,6 +196,251 @@ public class AuthenticationSystemServiceImpl extends BaseSystemServiceImpl imple
             log.warn("* is typically turned off. DO NOT enable test mode in a production environment.");
             log.warn("**************************************************************************************");
         }
+        startVirtualHostPreload(applicationProperties);
+        startTokenValidationCache(applicationProperties);
+        startImpersonationTokenCache(applicationProperties);
+        startRevocationJournal(applicationProperties);
+        warmUpSigning(applicationProperties);
+    }
+
+    @OnDeactivate
+    public void onDeactivate() {
+        if (virtualHostMapPreloader != null) {
+            virtualHostMapPreloader.stop();
+            virtualHostMapPreloader = null;
+        }
+        RevocationJournal journal = revocationJournal;
+        if (journal != null) {
+            journal.stop();
+            revocationJournal = null;
+        }
+        stopSigningKeyRetry();
+        SigningKeyRing keyRing = signingKeyRing;
+        if (keyRing != null) {
+            keyRing.stop();
+            signingKeyRing = null;
+        }
+        ExecutorService executor = loginExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+            loginExecutor = null;
+        }
+        executor = asyncExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+            asyncExecutor = null;
+        }
+        executor = asyncSigningExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+            asyncSigningExecutor = null;
+        }
+        executor = batchExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+            batchExecutor = null;
+        }
+        loginAdmission = null;
+        tokenValidationCache = null;
+        impersonationTokenCache = null;
+    }
+
+    /**
+     * Optional bulk preload of the virtual host map (water.authentication.vhost.preload.enabled), so that
+     * multi-tenant logins resolve their company from memory from the very first request. Requires MT mode,
+     * the virtual host cache and a registered {@link VirtualHostMappingSource}; otherwise tenants keep being
+     * resolved per host.
+     */
+    private void startVirtualHostPreload(ApplicationProperties applicationProperties) {
+        if (!PropertyReader.boolProp(applicationProperties, AuthenticationConstants.VHOST_PRELOAD_ENABLED, false))
+            return;
+        if (virtualHostCompanyCache == null || authenticationOption == null || !authenticationOption.isMultiTenantEnabled()) {
+            log.info("Virtual host preload enabled but multitenancy or the virtual host cache is not available, skipping");
+            return;
+        }
+        VirtualHostMappingSource mappingSource;
+        try {
+            mappingSource = componentRegistry.findComponent(VirtualHostMappingSource.class, null);
+        } catch (RuntimeException e) {
+            mappingSource = null;
+        }
+        if (mappingSource == null) {
+            log.info("Virtual host preload enabled but no VirtualHostMappingSource is registered, skipping");
+            return;
+        }
+        long refreshInterval = PropertyReader.longProp(applicationProperties, AuthenticationConstants.VHOST_PRELOAD_REFRESH_INTERVAL_MILLIS, DEFAULT_VHOST_PRELOAD_REFRESH_INTERVAL_MILLIS);
+        long fullRefreshInterval = PropertyReader.longProp(applicationProperties, AuthenticationConstants.VHOST_PRELOAD_FULL_REFRESH_INTERVAL_MILLIS, DEFAULT_VHOST_PRELOAD_FULL_REFRESH_INTERVAL_MILLIS);
+        if (virtualHostMapPreloader != null)
+            virtualHostMapPreloader.stop();
+        virtualHostMapPreloader = new VirtualHostMapPreloader(mappingSource, virtualHostCompanyCache, refreshInterval, fullRefreshInterval);
+        virtualHostMapPreloader.start();
+    }
+
+    /**
+     * Loads and caches the signing keys and their signers (see {@link SigningProfiles}) and runs
+     * water.authentication.signing.warmup.rounds sign/verify rounds on the cached signer, so that keystore
+     * loading, key decryption and the crypto provider JIT are paid before the first login. No token is issued
+     * for the warm-up. Runs in the activation thread: {@link #isSigningReady()} turns true once signing is hot.
+     * When the keys cannot be loaded tokens are issued by the token service, the node is reported ready and
+     * the keys are loaded again every water.authentication.signing.reload.interval.millis until they load.
+     * With water.authentication.signing.enabled the keystore is then watched and the keys rotated without
+     * downtime (see {@link SigningKeyRing}); otherwise the token service signs and validates with its own
+     * keystore key and is not reloaded.
+     */
+    private void warmUpSigning(ApplicationProperties applicationProperties) {
+        if (applicationProperties == null)
+            return;
+        boolean warmUp = PropertyReader.boolProp(applicationProperties, AuthenticationConstants.SIGNING_WARMUP_ENABLED, true);
+        boolean inTreeSigning = PropertyReader.boolProp(applicationProperties, AuthenticationConstants.SIGNING_ENABLED, false);
+        if (!warmUp && !inTreeSigning) {
+            signingReady = true;
+            return;
+        }
+        stopSigningKeyRetry();
+        if (signingKeyRing != null)
+            signingKeyRing.stop();
+        //other algorithms only verify on @LoggedIn endpoints when the platform validates through the key ring
+        Set<JWSAlgorithm> signingAlgorithms = (inTreeSigning && !(jwtTokenService instanceof DelegatingJwtTokenService))
+                ? Set.of(JWSAlgorithm.RS256) : Set.of();
+        if (loadSigningKeys(applicationProperties, warmUp, signingAlgorithms))
+            return;
+        //logins keep working through the token service, a node that cannot load its keys is not left out of rotation
+        signingReady = true;
+        long retryInterval = PropertyReader.longProp(applicationProperties, AuthenticationConstants.SIGNING_RELOAD_INTERVAL_MILLIS, DEFAULT_SIGNING_RELOAD_INTERVAL_MILLIS);
+        if (retryInterval > 0) {
+            ScheduledExecutorService retry = Executors.newSingleThreadScheduledExecutor(AuthenticationExecutors.daemonThreadFactory("water-signing-key-retry"));
+            retry.scheduleWithFixedDelay(() -> {
+                if (loadSigningKeys(applicationProperties, warmUp, signingAlgorithms))
+                    retry.shutdown();
+            }, retryInterval, retryInterval, TimeUnit.MILLISECONDS);
+            signingKeyRetry = retry;
+        }
+    }
+
+    /**
+     * @return true when the keys have been loaded, warmed up and installed
+     */
+    private boolean loadSigningKeys(ApplicationProperties applicationProperties, boolean warmUp, Set<JWSAlgorithm> signingAlgorithms) {
+        boolean inTreeSigning = PropertyReader.boolProp(applicationProperties, AuthenticationConstants.SIGNING_ENABLED, false);
+        int rounds = Math.max(PropertyReader.intProp(applicationProperties, AuthenticationConstants.SIGNING_WARMUP_ROUNDS, DEFAULT_SIGNING_WARMUP_ROUNDS), 1);
+        long started = System.currentTimeMillis();
+        try {
+            String keystoreAlias = PropertyReader.stringProp(applicationProperties, AuthenticationConstants.KEYSTORE_ALIAS, null);
+            String verificationAliases = PropertyReader.stringProp(applicationProperties, AuthenticationConstants.SIGNING_VERIFICATION_ALIASES, "");
+            SigningKeyRing keyRing = new SigningKeyRing(
+                    PropertyReader.stringProp(applicationProperties, AuthenticationConstants.KEYSTORE_FILE, null),
+                    PropertyReader.stringProp(applicationProperties, AuthenticationConstants.KEYSTORE_PASSWORD, null),
+                    PropertyReader.stringProp(applicationProperties, AuthenticationConstants.PRIVATE_KEY_PASSWORD, null),
+                    PropertyReader.stringProp(applicationProperties, AuthenticationConstants.SIGNING_ALIAS, keystoreAlias),
+                    PropertyReader.stringProp(applicationProperties, AuthenticationConstants.SIGNING_PROFILES, null),
+                    Arrays.stream(verificationAliases.split(",")).map(String::trim).filter(alias -> !alias.isEmpty()).toList(),
+                    //by default a retired key verifies for a whole token lifetime, so no issued token is cut short
+                    PropertyReader.longProp(applicationProperties, AuthenticationConstants.SIGNING_KEY_OVERLAP_MILLIS,
+                            PropertyReader.longProp(applicationProperties, AuthenticationConstants.JWT_DURATION_MILLIS, DEFAULT_JWT_DURATION_MILLIS)),
+                    //rotation only applies to tokens signed here: the token service keeps its own keystore key
+                    inTreeSigning ? PropertyReader.longProp(applicationProperties, AuthenticationConstants.SIGNING_RELOAD_INTERVAL_MILLIS, DEFAULT_SIGNING_RELOAD_INTERVAL_MILLIS) : 0L,
+                    warmUp ? rounds : 0,
+                    signingAlgorithms);
+            keyRing.start();
+            SigningProfiles profiles = keyRing.getProfiles();
+            signingKeyRing = keyRing;
+            signingReady = true;
+            log.info("Signing key '{}' ({}) ready in {} ms", profiles.getDefaultKey().getAlias(), profiles.getDefaultKey().getAlgorithm(), System.currentTimeMillis() - started);
+            return true;
+        } catch (IOException | GeneralSecurityException | JOSEException | RuntimeException e) {
+            log.warn("Signing keys not loaded, tokens are issued by the token service until they load: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void stopSigningKeyRetry() {
+        ScheduledExecutorService retry = signingKeyRetry;
+        if (retry != null) {
+            retry.shutdownNow();
+            signingKeyRetry = null;
+        }
+    }
+
+    @Override
+    public boolean isSigningReady() {
+        return signingReady;
+    }
+
+    SigningProfiles getSigningProfiles() {
+        SigningKeyRing keyRing = signingKeyRing;
+        return (keyRing != null) ? keyRing.getProfiles() : null;
+    }
+
+    @Override
+    public JwkSet getJwkSet() {
+        long maxAgeSeconds = PropertyReader.longProp(applicationProperties, AuthenticationConstants.JWKS_MAX_AGE_SECONDS, DEFAULT_JWKS_MAX_AGE_SECONDS);
+        SigningKeyRing keyRing = signingKeyRing;
+        return (keyRing != null) ? keyRing.jwkSet(maxAgeSeconds) : SigningKeyRing.encodeJwkSet(List.of(), maxAgeSeconds);
+    }
+
+    SigningKeyRing getSigningKeyRing() {
+        return signingKeyRing;
+    }
+
+    private void startTokenValidationCache(ApplicationProperties applicationProperties) {
+        long ttl = PropertyReader.longProp(applicationProperties, AuthenticationConstants.INTROSPECTION_CACHE_TTL_MILLIS, DEFAULT_INTROSPECTION_CACHE_TTL_MILLIS);
+        int maxEntries = PropertyReader.intProp(applicationProperties, AuthenticationConstants.INTROSPECTION_CACHE_MAX_ENTRIES, DEFAULT_INTROSPECTION_CACHE_MAX_ENTRIES);
+        tokenValidationCache = (ttl > 0) ? new TokenValidationCache(maxEntries, ttl) : null;
+    }
+
+    private void startImpersonationTokenCache(ApplicationProperties applicationProperties) {
+        long ttl = PropertyReader.longProp(applicationProperties, AuthenticationConstants.IMPERSONATION_CACHE_TTL_MILLIS, DEFAULT_IMPERSONATION_CACHE_TTL_MILLIS);
+        int maxEntries = PropertyReader.intProp(applicationProperties, AuthenticationConstants.IMPERSONATION_CACHE_MAX_ENTRIES, DEFAULT_IMPERSONATION_CACHE_MAX_ENTRIES);
+        impersonationTokenCache = (ttl > 0) ? new ImpersonationTokenCache(maxEntries, ttl) : null;
+    }
+
+    /**
+     * Optional revocation journal (water.authentication.revocation.journal.dir): logouts and "logout
+     * everywhere" are appended to a directory shared by the nodes, replayed into the local revocation stores
+     * at activation and tailed afterwards. The stores are the ones {@link AuthenticationJwtTokenService} checks,
+     * so revocations survive restarts and are enforced by every node. The nodes sharing the directory run on
+     * the same host, so the node id cannot be derived from it: it must be configured.
+     */
+    private void startRevocationJournal(ApplicationProperties applicationProperties) {
+        Object dir = (applicationProperties != null) ? applicationProperties.getProperty(AuthenticationConstants.REVOCATION_JOURNAL_DIR) : null;
+        if (dir == null || dir.toString().isBlank())
+            return;
+        Object nodeId = applicationProperties.getProperty(AuthenticationConstants.REVOCATION_JOURNAL_NODE_ID);
+        if (nodeId == null || nodeId.toString().isBlank())
+            throw new IllegalStateException(AuthenticationConstants.REVOCATION_JOURNAL_NODE_ID + " is required when "
+                    + AuthenticationConstants.REVOCATION_JOURNAL_DIR + " is set");
+        int segmentBytes = PropertyReader.intProp(applicationProperties, AuthenticationConstants.REVOCATION_JOURNAL_SEGMENT_BYTES, DEFAULT_REVOCATION_JOURNAL_SEGMENT_BYTES);
+        long rollInterval = PropertyReader.longProp(applicationProperties, AuthenticationConstants.REVOCATION_JOURNAL_ROLL_INTERVAL_MILLIS, DEFAULT_REVOCATION_JOURNAL_ROLL_INTERVAL_MILLIS);
+        long pollInterval = PropertyReader.longProp(applicationProperties, AuthenticationConstants.REVOCATION_JOURNAL_POLL_INTERVAL_MILLIS, DEFAULT_REVOCATION_JOURNAL_POLL_INTERVAL_MILLIS);
+        if (revocationJournal != null)
+            revocationJournal.stop();
+        RevocationJournal journal = new RevocationJournal(Path.of(dir.toString().trim()),
+                nodeId.toString().trim(),
+                segmentBytes, rollInterval, pollInterval, new RevocationJournal.Listener() {
+            @Override
+            public void onTokenRevoked(String jti, long expiresAtMillis) {
+                if (tokenRevocationStore != null)
+                    tokenRevocationStore.revoke(jti, expiresAtMillis);
+                invalidateCachedToken(jti);
+            }
+
+            @Override
+            public void onSubjectRevoked(String subject, long notBeforeMillis) {
+                if (subjectRevocationStore != null)
+                    subjectRevocationStore.revokeBefore(subject, notBeforeMillis);
+                invalidateCachedSubject(subject);
+                //refresh tokens live on the node that issued them
+                if (refreshTokenStore != null)
+                    refreshTokenStore.revokeAll(subject);
+            }
+        });
+        try {
+            journal.start();
+            revocationJournal = journal;
+        } catch (IOException | RuntimeException e) {
+            journal.stop();
+            log.warn("Revocation journal in '{}' not available, revocations stay local to this node: {}", dir, e.getMessage());
+        }
     }
 
     @Override
@@ -88,18 +462,156 @@ public class AuthenticationSystemServiceImpl extends BaseSystemServiceImpl imple
 
     @Override
     public Authenticable login(String username, String password, String authProviderFilter, Long companyId, String clientIp) {
+        //the companyId here comes from the caller, so it never selects the lockout partition: varying it
+        //would give an attacker a fresh attempt budget per company
+        return login(username, password, authProviderFilter, companyId, clientIp, null);
+    }
+
+    /**
+     * @param resolvedCompanyId tenant resolved server side, selecting lockout partition and admission queue
+     */
+    private Authenticable login(String username, String password, String authProviderFilter, Long companyId, String clientIp,
+                                Long resolvedCompanyId) {
         //#34 - resolve the issuer (null filter falls back to the default) and build an IP-scoped lockout key
-        String issuerName = (authProviderFilter != null) ? authProviderFilter : authenticationOption.getIssuerName();
-        String ipPart = (clientIp == null || clientIp.isBlank()) ? "unknown" : clientIp.trim();
-        String attemptKey = issuerName + ":" + ipPart + ":" + username; //#34 - lockout key: issuer:ip:username
+        String issuerName = resolveIssuerName(authProviderFilter);
+        String attemptKey = lockoutKey(issuerName, clientIp, username);
+        boolean lockoutEnabled = isLockoutEnabled();
+
+        Long lockoutPartition = lockoutPartition(resolvedCompanyId);
+        if (lockoutEnabled)
+            checkNotLocked(lockoutPartition, attemptKey);
+        return authenticate(username, password, issuerName, companyId, resolvedCompanyId, lockoutPartition, attemptKey, lockoutEnabled);
+    }
+
+    /**
+     * Same steps as the blocking login, as stages on the async executor: the lockout check, then the provider
+     * login recording the outcome. A failed lockout check completes the future without reaching the provider.
+     * A saturated executor fails the future with LoginAdmissionRejectedException.
+     */
+    @Override
+    public CompletableFuture<Authenticable> loginAsync(String username, String password, String authProviderFilter, Long companyId, String clientIp) {
+        String issuerName = resolveIssuerName(authProviderFilter);
+        String attemptKey = lockoutKey(issuerName, clientIp, username);
         boolean lockoutEnabled = isLockoutEnabled();
+        //the companyId comes from the caller, so the shared lockout partition is used as in the blocking login
+        Executor executor = SecurityContextExecutor.captureShedding(asyncExecutor(), runtime);
+        return offload(() -> {
+                    if (lockoutEnabled)
+                        checkNotLocked(null, attemptKey);
+                    return null;
+                }, executor)
+                .thenApplyAsync(ignored -> authenticate(username, password, issuerName, companyId, null, null, attemptKey, lockoutEnabled), executor);
+    }
 
-        if (lockoutEnabled && loginAttemptStore.isLocked(attemptKey)) {
-            long remaining = loginAttemptStore.remainingLockMillis(attemptKey);
+    @Override
+    public CompletableFuture<Authenticable> loginForVirtualHostAsync(String username, String password, String authProviderFilter,
+                                                                     String virtualHost, String clientIp) {
+        //the tenant lookup, the lockout check and the provider login keep their blocking order, off the calling thread
+        return offload(() -> loginForVirtualHost(username, password, authProviderFilter, virtualHost, clientIp),
+                SecurityContextExecutor.captureShedding(asyncExecutor(), runtime));
+    }
+
+    @Override
+    public Authenticable loginForVirtualHost(String username, String password, String authProviderFilter,
+                                             String virtualHost, String clientIp) {
+        if (!authenticationOption.isMultiTenantEnabled()) {
+            return login(username, password, authProviderFilter, null, clientIp);
+        }
+
+        if (isConcurrentLoginEnabled()) {
+            return concurrentLoginForVirtualHost(username, password, authProviderFilter, virtualHost, clientIp);
+        }
+
+        Long companyId = resolveCompanyId(virtualHost);
+        if (companyId != null) {
+            return login(username, password, authProviderFilter, companyId, clientIp, companyId);
+        }
+
+        // A fresh installation has no Company/virtualHost yet. Only the non-scoped Water admin may
+        // authenticate in that state so it can provision the first tenant.
+        Authenticable authenticable = login(username, password, authProviderFilter, null, clientIp);
+        if (authenticable.isAdmin()) {
+            return authenticable;
+        }
+        throw new UnauthorizedException("Invalid credentials");
+    }
+
+    /**
+     * Same semantics as the sequential path, but the tenant lookup and the lockout check run together in a
+     * {@link FailFastTaskScope}: the provider is invoked as soon as both are done, and if either fails the
+     * sibling is cancelled and the failure is rethrown as is (AccountLockedException, Company client errors).
+     * Worth enabling when the Company module or the login attempt store is remote. With a partitioned
+     * lockout store the partition depends on the resolved tenant, so the lockout check follows the lookup.
+     */
+    private Authenticable concurrentLoginForVirtualHost(String username, String password, String authProviderFilter,
+                                                        String virtualHost, String clientIp) {
+        String issuerName = resolveIssuerName(authProviderFilter);
+        String attemptKey = lockoutKey(issuerName, clientIp, username);
+        boolean lockoutEnabled = isLockoutEnabled();
+        boolean checkAfterLookup = lockoutEnabled && isLockoutPartitioned();
+
+        Future<Long> companyIdLookup;
+        try (FailFastTaskScope scope = new FailFastTaskScope(loginExecutor())) {
+            companyIdLookup = scope.fork(() -> resolveCompanyId(virtualHost));
+            if (lockoutEnabled && !checkAfterLookup) {
+                scope.fork(() -> {
+                    checkNotLocked(null, attemptKey);
+                    return null;
+                });
+            }
+            scope.join();
+        }
+        Long companyId = FailFastTaskScope.resultNow(companyIdLookup);
+        Long lockoutPartition = lockoutPartition(companyId);
+        if (checkAfterLookup)
+            checkNotLocked(lockoutPartition, attemptKey);
+
+        Authenticable authenticable = authenticate(username, password, issuerName, companyId, companyId, lockoutPartition, attemptKey, lockoutEnabled);
+        // fresh installation fallback, as in the sequential path: without a tenant only the admin may log in
+        if (companyId != null || authenticable.isAdmin()) {
+            return authenticable;
+        }
+        throw new UnauthorizedException("Invalid credentials");
+    }
+
+    private String resolveIssuerName(String authProviderFilter) {
+        return (authProviderFilter != null) ? authProviderFilter : authenticationOption.getIssuerName();
+    }
+
+    //#34 - lockout key: issuer:ip:username
+    private String lockoutKey(String issuerName, String clientIp, String username) {
+        String ipPart = (clientIp == null || clientIp.isBlank()) ? "unknown" : clientIp.trim();
+        return issuerName + ":" + ipPart + ":" + username;
+    }
+
+    private void checkNotLocked(Long lockoutPartition, String attemptKey) {
+        boolean locked = (lockoutPartition == null) ? loginAttemptStore.isLocked(attemptKey)
+                : loginAttemptStore.isLocked(lockoutPartition, attemptKey);
+        if (locked) {
+            long remaining = (lockoutPartition == null) ? loginAttemptStore.remainingLockMillis(attemptKey)
+                    : loginAttemptStore.remainingLockMillis(lockoutPartition, attemptKey);
             log.warn("Rejecting login for locked key '{}', {} ms remaining", attemptKey, remaining);
             throw new AccountLockedException(remaining);
         }
+    }
+
+    /**
+     * Provider login for an already lockout-checked key, recording the outcome in the attempt store
+     * (in the given tenant partition, null for the shared one). With admission control enabled the provider
+     * login waits for a slot of the resolved tenant (null: logins not bound to a server-resolved tenant).
+     */
+    private Authenticable authenticate(String username, String password, String issuerName, Long companyId, Long resolvedCompanyId,
+                                       Long lockoutPartition, String attemptKey, boolean lockoutEnabled) {
+        TenantLoginAdmission admission = loginAdmission();
+        if (admission == null)
+            return authenticate(username, password, issuerName, companyId, lockoutPartition, attemptKey, lockoutEnabled);
+        String tenant = (resolvedCompanyId != null) ? "company:" + resolvedCompanyId : null;
+        return admission.admit(tenant, admissionWeight(resolvedCompanyId),
+                () -> authenticate(username, password, issuerName, companyId, lockoutPartition, attemptKey, lockoutEnabled));
+    }
 
+    private Authenticable authenticate(String username, String password, String issuerName, Long companyId,
+                                       Long lockoutPartition, String attemptKey, boolean lockoutEnabled) {
         Collection<AuthenticationProvider> authenticationProviders = componentRegistry.findComponents(AuthenticationProvider.class, null);
         //finds the one with highest priority for the specific issuer
         Optional<AuthenticationProvider> authenticationProviderOpt = authenticationProviders.stream().filter(authenticationProvider -> authenticationProvider.issuersNames().contains(issuerName)).findFirst();
@@ -115,43 +627,149 @@ public class AuthenticationSystemServiceImpl extends BaseSystemServiceImpl imple
                     : authenticationProviderOpt.get().login(username, password);
         } catch (RuntimeException loginError) {
             if (lockoutEnabled)
-                loginAttemptStore.recordFailure(attemptKey);
+                recordFailure(lockoutPartition, attemptKey);
             throw loginError;
         }
 
         if (authenticable == null) {
             //provider signalled failure without throwing
             if (lockoutEnabled)
-                loginAttemptStore.recordFailure(attemptKey);
+                recordFailure(lockoutPartition, attemptKey);
             throw new UnauthorizedException("Invalid credentials");
         }
 
         if (lockoutEnabled)
-            loginAttemptStore.recordSuccess(attemptKey);
+            recordSuccess(lockoutPartition, attemptKey);
         return authenticable;
     }
 
-    @Override
-    public Authenticable loginForVirtualHost(String username, String password, String authProviderFilter,
-                                             String virtualHost, String clientIp) {
-        if (!authenticationOption.isMultiTenantEnabled()) {
-            return login(username, password, authProviderFilter, null, clientIp);
-        }
+    //the shared partition goes through the key-only methods, as before partitioning existed
+    private void recordFailure(Long lockoutPartition, String attemptKey) {
+        if (lockoutPartition == null)
+            loginAttemptStore.recordFailure(attemptKey);
+        else
+            loginAttemptStore.recordFailure(lockoutPartition, attemptKey);
+    }
 
+    private void recordSuccess(Long lockoutPartition, String attemptKey) {
+        if (lockoutPartition == null)
+            loginAttemptStore.recordSuccess(attemptKey);
+        else
+            loginAttemptStore.recordSuccess(lockoutPartition, attemptKey);
+    }
+
+    //virtual host resolution goes through the cache when available, straight to the Company client otherwise
+    private Long resolveCompanyId(String virtualHost) {
+        if (virtualHostCompanyCache != null)
+            return virtualHostCompanyCache.resolveCompanyId(virtualHost);
         CompanyIntegrationClient companyIntegrationClient =
                 componentRegistry.findComponent(CompanyIntegrationClient.class, null);
-        Long companyId = companyIntegrationClient.findCompanyIdByVirtualHost(virtualHost);
-        if (companyId != null) {
-            return login(username, password, authProviderFilter, companyId, clientIp);
+        return companyIntegrationClient.findCompanyIdByVirtualHost(virtualHost);
+    }
+
+    //only a tenant resolved server side (from the virtual host) selects a lockout partition
+    private Long lockoutPartition(Long resolvedCompanyId) {
+        return isLockoutPartitioned() ? resolvedCompanyId : null;
+    }
+
+    private boolean isLockoutPartitioned() {
+        return PropertyReader.boolProp(applicationProperties, AuthenticationConstants.LOGIN_LOCKOUT_PARTITIONED, false);
+    }
+
+    private TenantLoginAdmission loginAdmission() {
+        if (!PropertyReader.boolProp(applicationProperties, AuthenticationConstants.LOGIN_ADMISSION_ENABLED, false))
+            return null;
+        TenantLoginAdmission admission = loginAdmission;
+        if (admission == null) {
+            synchronized (this) {
+                admission = loginAdmission;
+                if (admission == null) {
+                    //password hashing is CPU bound: by default one login per core
+                    int maxConcurrent = PropertyReader.intProp(applicationProperties, AuthenticationConstants.LOGIN_ADMISSION_MAX_CONCURRENT, Runtime.getRuntime().availableProcessors());
+                    int queueCapacity = PropertyReader.intProp(applicationProperties, AuthenticationConstants.LOGIN_ADMISSION_QUEUE_CAPACITY, DEFAULT_LOGIN_ADMISSION_QUEUE_CAPACITY);
+                    long maxWaitMillis = PropertyReader.longProp(applicationProperties, AuthenticationConstants.LOGIN_ADMISSION_MAX_WAIT_MILLIS, DEFAULT_LOGIN_ADMISSION_MAX_WAIT_MILLIS);
+                    admission = new TenantLoginAdmission(maxConcurrent, queueCapacity, maxWaitMillis);
+                    loginAdmission = admission;
+                }
+            }
         }
+        return admission;
+    }
 
-        // A fresh installation has no Company/virtualHost yet. Only the non-scoped Water admin may
-        // authenticate in that state so it can provision the first tenant.
-        Authenticable authenticable = login(username, password, authProviderFilter, null, clientIp);
-        if (authenticable.isAdmin()) {
-            return authenticable;
+    //"water.authentication.login.admission.weight.company.<companyId>" overrides the default weight
+    private int admissionWeight(Long resolvedCompanyId) {
+        int defaultWeight = PropertyReader.intProp(applicationProperties, AuthenticationConstants.LOGIN_ADMISSION_WEIGHT, DEFAULT_LOGIN_ADMISSION_WEIGHT);
+        if (resolvedCompanyId == null)
+            return defaultWeight;
+        return PropertyReader.intProp(applicationProperties, AuthenticationConstants.LOGIN_ADMISSION_WEIGHT + ".company." + resolvedCompanyId, defaultWeight);
+    }
+
+    private boolean isConcurrentLoginEnabled() {
+        return PropertyReader.boolProp(applicationProperties, AuthenticationConstants.LOGIN_CONCURRENT_ENABLED, false);
+    }
+
+    //provider and store calls: virtual threads when supported, they mostly wait on I/O
+    private ExecutorService asyncExecutor() {
+        ExecutorService executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = asyncExecutor;
+                if (executor == null) {
+                    int threads = PropertyReader.intProp(applicationProperties, AuthenticationConstants.ASYNC_THREADS, DEFAULT_ASYNC_THREADS);
+                    executor = AuthenticationExecutors.newExecutor("water-authentication-async", threads, ASYNC_EXECUTOR_QUEUE_CAPACITY);
+                    asyncExecutor = executor;
+                }
+            }
         }
-        throw new UnauthorizedException("Invalid credentials");
+        return executor;
+    }
+
+    //signing is CPU bound: platform threads, one per core by default
+    private ExecutorService asyncSigningExecutor() {
+        ExecutorService executor = asyncSigningExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = asyncSigningExecutor;
+                if (executor == null) {
+                    int threads = PropertyReader.intProp(applicationProperties, AuthenticationConstants.ASYNC_SIGNING_THREADS,
+                            Runtime.getRuntime().availableProcessors());
+                    executor = AuthenticationExecutors.newBoundedExecutor("water-authentication-signing", threads, ASYNC_EXECUTOR_QUEUE_CAPACITY);
+                    asyncSigningExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    //bulk revocation and batch issuance: CPU bound chunks, one platform thread per core
+    private ExecutorService batchExecutor() {
+        ExecutorService executor = batchExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = batchExecutor;
+                if (executor == null) {
+                    executor = AuthenticationExecutors.newBoundedExecutor("water-authentication-batch",
+                            Runtime.getRuntime().availableProcessors(), ASYNC_EXECUTOR_QUEUE_CAPACITY);
+                    batchExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private ExecutorService loginExecutor() {
+        ExecutorService executor = loginExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = loginExecutor;
+                if (executor == null) {
+                    int threads = PropertyReader.intProp(applicationProperties, AuthenticationConstants.LOGIN_CONCURRENT_THREADS, DEFAULT_LOGIN_CONCURRENT_THREADS);
+                    executor = AuthenticationExecutors.newExecutor("water-login", threads, LOGIN_EXECUTOR_QUEUE_CAPACITY);
+                    loginExecutor = executor;
+                }
+            }
+        }
+        return executor;
     }
 
     //Lockout is disabled under water.testMode so repeated wrong logins in tests don't trip it
@@ -175,14 +793,483 @@ public class AuthenticationSystemServiceImpl extends BaseSystemServiceImpl imple
         return authenticationProviderOpt.get().impersonate(targetUsername, callerUsername, companyId);
     }
 
+    @Override
+    public CompletableFuture<Authenticable> impersonateAsync(String targetUsername, String callerUsername, Long companyId) {
+        return offload(() -> impersonate(targetUsername, callerUsername, companyId),
+                SecurityContextExecutor.captureShedding(asyncExecutor(), runtime));
+    }
+
+    @Override
+    public String impersonationToken(String targetUsername, String callerUsername, Long companyId) {
+        ImpersonationTokenCache cache = impersonationTokenCache;
+        PermissionSnapshotSource source = findPermissionSnapshotSource();
+        //without a permissions version a withdrawn IMPERSONATE could not be noticed: every call goes through the provider gate
+        if (cache == null || source == null)
+            return generateToken(impersonate(targetUsername, callerUsername, companyId));
+        long permissionsVersion = source.getPermissionsVersion();
+        ImpersonationTokenCache.Entry cached = cache.get(callerUsername, targetUsername, companyId, permissionsVersion);
+        if (cached != null && !isRevoked(cached.getJwtId(), cached.getSubject(), cached.getIssuedAt()))
+            return cached.getToken();
+        long epoch = cache.epoch();
+        String token = generateToken(impersonate(targetUsername, callerUsername, companyId));
+        ParsedToken parsed = parseToken(token);
+        cache.put(callerUsername, targetUsername, companyId, token, parsed.getJwtId(), parsed.getIssuedAt(), parsed.getExpiresAt(),
+                permissionsVersion, epoch);
+        return token;
+    }
+
     @Override
     public String generateToken(Authenticable authenticable) {
-        return jwtTokenService.generateJwtToken(authenticable);
+        SigningProfiles profiles = inTreeSigningProfiles();
+        if (profiles == null)
+            return platformTokenService().generateJwtToken(authenticable);
+        return sign(profiles, authenticable, System.currentTimeMillis(), jwtDurationMillis(), permissionSnapshotSource());
+    }
+
+    @Override
+    public CompletableFuture<String> generateTokenAsync(Authenticable authenticable) {
+        return offload(() -> generateToken(authenticable),
+                SecurityContextExecutor.captureShedding(asyncSigningExecutor(), runtime));
+    }
+
+    @Override
+    public List<String> generateTokens(Collection<Authenticable> authenticables) {
+        if (authenticables == null || authenticables.isEmpty())
+            return List.of();
+        Authenticable[] principals = authenticables.toArray(new Authenticable[0]);
+        String[] tokens = new String[principals.length];
+        //configuration, signing keys and issue instant are resolved once for the whole batch
+        SigningProfiles profiles = inTreeSigningProfiles();
+        long now = System.currentTimeMillis();
+        long duration = jwtDurationMillis();
+        PermissionSnapshotSource permissionSource = (profiles != null) ? permissionSnapshotSource() : null;
+        //signing is CPU bound: large batches are spread over the batch executor, results stay in input order
+        forEachIndex(principals.length, BATCH_ISSUANCE_PARALLEL_THRESHOLD, i -> tokens[i] = (profiles != null)
+                ? sign(profiles, principals[i], now, duration, permissionSource)
+                : platformTokenService().generateJwtToken(principals[i]));
+        log.debug("Issued {} tokens in one batch", tokens.length);
+        return Arrays.asList(tokens);
+    }
+
+    //signing profiles when tokens are signed in this module, null when they are issued by the token service
+    private SigningProfiles inTreeSigningProfiles() {
+        SigningProfiles profiles = getSigningProfiles();
+        return (profiles != null && PropertyReader.boolProp(applicationProperties, AuthenticationConstants.SIGNING_ENABLED, false)) ? profiles : null;
+    }
+
+    /**
+     * @param permissionSource source of the embedded permission snapshot, null to embed none
+     */
+    private String sign(SigningProfiles profiles, Authenticable authenticable, long now, long duration, PermissionSnapshotSource permissionSource) {
+        TokenIssuanceTemplate template = profiles.issuanceTemplate(authenticable.getIssuer(), duration, claimsProfile(authenticable.getIssuer()));
+        try {
+            if (permissionSource == null)
+                return template.sign(authenticable, now);
+            //version read first: a change racing with the read leaves the snapshot stamped with the older version
+            long permissionsVersion = permissionSource.getPermissionsVersion();
+            Map<String, Collection<String>> permissions = permissionSource.findPermissions(authenticable);
+            return template.sign(authenticable, now, (permissions != null) ? permissions : Map.of(), permissionsVersion);
+        } catch (JOSEException e) {
+            throw new UnauthorizedException("Unable to issue the token: " + e.getMessage());
+        }
+    }
+
+    //registered permission source when water.authentication.permissions.snapshot.enabled, null otherwise
+    private PermissionSnapshotSource permissionSnapshotSource() {
+        if (!PropertyReader.boolProp(applicationProperties, AuthenticationConstants.PERMISSION_SNAPSHOT_ENABLED, false))
+            return null;
+        return findPermissionSnapshotSource();
+    }
+
+    private PermissionSnapshotSource findPermissionSnapshotSource() {
+        if (componentRegistry == null)
+            return null;
+        try {
+            return componentRegistry.findComponent(PermissionSnapshotSource.class, null);
+        } catch (RuntimeException e) {
+            log.debug("Permission snapshot enabled but no PermissionSnapshotSource is registered: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private TokenClaimsProfile claimsProfile(String issuer) {
+        TokenClaimsProfile profile = (authenticationOption != null) ? authenticationOption.getTokenClaimsProfile(issuer) : null;
+        return (profile != null) ? profile : TokenClaimsProfile.STANDARD;
+    }
+
+    private long jwtDurationMillis() {
+        return PropertyReader.longProp(applicationProperties, AuthenticationConstants.JWT_DURATION_MILLIS, DEFAULT_JWT_DURATION_MILLIS);
+    }
+
+    @Override
+    public String generateRefreshToken(Authenticable authenticable) {
+        if (!isRefreshTokenEnabled() || refreshTokenStore == null)
+            return null;
+        return refreshTokenStore.issue(authenticable, refreshTokenTtlMillis());
+    }
+
+    @Override
+    public RefreshTokenGrant refresh(String refreshToken) {
+        if (!isRefreshTokenEnabled() || refreshTokenStore == null)
+            throw new UnauthorizedException("Refresh tokens are not enabled");
+        RefreshTokenGrant grant = refreshTokenStore.redeem(refreshToken, refreshTokenTtlMillis());
+        if (grant == null)
+            throw new UnauthorizedException("Invalid refresh token");
+        //the principal captured at login may be gone, disabled or have other roles by now
+        String username = grant.getAuthenticable().getScreenName();
+        Authenticable current = reloadAuthenticable(grant.getAuthenticable());
+        if (current == null || !current.isActive()) {
+            refreshTokenStore.revokeAll(username);
+            throw new UnauthorizedException("Invalid refresh token");
+        }
+        return new RefreshTokenGrant(current, grant.getRefreshToken());
+    }
+
+    private Authenticable reloadAuthenticable(Authenticable authenticable) {
+        String issuerName = (authenticable.getIssuer() != null) ? authenticable.getIssuer() : authenticationOption.getIssuerName();
+        Collection<AuthenticableSource> sources = componentRegistry.findComponents(AuthenticableSource.class, null);
+        Optional<AuthenticableSource> sourceOpt = sources.stream().filter(source -> source.issuersNames().contains(issuerName)).findFirst();
+        if (sourceOpt.isEmpty()) {
+            log.warn("No AuthenticableSource registered for {}, refresh tokens cannot be redeemed", issuerName);
+            return null;
+        }
+        return sourceOpt.get().reload(authenticable);
+    }
+
+    @Override
+    public void revokeRefreshToken(String refreshToken) {
+        if (refreshTokenStore != null)
+            refreshTokenStore.revoke(refreshToken);
+    }
+
+    private boolean isRefreshTokenEnabled() {
+        return PropertyReader.boolProp(applicationProperties, AuthenticationConstants.REFRESH_TOKEN_ENABLED, false);
+    }
+
+    private long refreshTokenTtlMillis() {
+        return PropertyReader.longProp(applicationProperties, AuthenticationConstants.REFRESH_TOKEN_TTL_MILLIS, DEFAULT_REFRESH_TOKEN_TTL_MILLIS);
+    }
+
+    @Override
+    public void logoutEverywhere(String username) {
+        if (username == null || username.isBlank())
+            return;
+        long now = System.currentTimeMillis();
+        if (subjectRevocationStore != null)
+            subjectRevocationStore.revokeBefore(username, now);
+        invalidateCachedSubject(username);
+        RevocationJournal journal = revocationJournal;
+        if (journal != null)
+            journal.appendSubjectRevoked(username, now, now + subjectRevocationRetentionMillis());
+        //refresh tokens are server side state: revoke them directly so they cannot mint new access tokens
+        if (refreshTokenStore != null)
+            refreshTokenStore.revokeAll(username);
+        log.info("All sessions of '{}' revoked", username);
+    }
+
+    @Override
+    public boolean isTokenRevoked(String token) {
+        JWTClaimsSet claims = parseClaims(token);
+        return claims != null && isRevoked(claims);
+    }
+
+    private boolean isRevoked(JWTClaimsSet claims) {
+        Date issuedAt = claims.getIssueTime();
+        return isRevoked(claims.getJWTID(), claims.getSubject(), (issuedAt != null) ? issuedAt.getTime() : 0L);
+    }
+
+    /**
+     * @param issuedAt issue instant in epoch millis, 0 if unknown
+     */
+    private boolean isRevoked(String jti, String subject, long issuedAt) {
+        //jti denylist first: its Bloom filters answer the common "not revoked" case without lookups
+        if (tokenRevocationStore != null && tokenRevocationStore.isRevoked(jti))
+            return true;
+        //iat has second precision: a token issued within the same second as the revocation is revoked too
+        return subjectRevocationStore != null && issuedAt > 0
+                && subjectRevocationStore.isRevoked(subject, issuedAt);
+    }
+
+    @Override
+    public boolean validateToken(String token) {
+        return validatedClaims(token) != null;
+    }
+
+    @Override
+    public boolean validateToken(Collection<String> issuers, String token) {
+        return issuers != null && validatedClaims(issuers, token) != null;
+    }
+
+    @Override
+    public ParsedToken verifyToken(Collection<String> issuers, String token) {
+        JWTClaimsSet claims = (issuers != null) ? validatedClaims(issuers, token) : null;
+        return (claims != null) ? parsedToken(token, claims) : null;
+    }
+
+    @Override
+    public TokenIntrospection introspect(String token) {
+        if (token == null || token.isBlank())
+            return TokenIntrospection.inactive();
+        TokenValidationCache cache = tokenValidationCache;
+        TokenIntrospection cached = (cache != null) ? cache.get(token) : null;
+        if (cached != null)
+            return cached;
+        long epoch = (cache != null) ? cache.epoch() : 0L;
+        JWTClaimsSet claims = validatedClaims(token);
+        if (claims == null)
+            return TokenIntrospection.inactive();
+        TokenIntrospection introspection = new TokenIntrospection(true, claims.getSubject(), claims.getIssuer(), claims.getJWTID(),
+                (claims.getIssueTime() != null) ? claims.getIssueTime().getTime() : 0L,
+                (claims.getExpirationTime() != null) ? claims.getExpirationTime().getTime() : 0L,
+                Boolean.TRUE.equals(claims.getClaim(TOKEN_CLAIM_ADMIN)));
+        if (cache != null)
+            cache.put(token, introspection, epoch);
+        return introspection;
+    }
+
+    @Override
+    public PermissionSnapshot getPermissionSnapshot(String token) {
+        JWTClaimsSet claims = validatedClaims(token);
+        if (claims == null || !(claims.getClaim(TOKEN_CLAIM_PERMISSIONS_VERSION) instanceof Number version))
+            return null;
+        List<String> roles = new ArrayList<>();
+        if (claims.getClaim(TOKEN_CLAIM_ROLES) instanceof Collection<?> names)
+            names.forEach(name -> roles.add(String.valueOf(name)));
+        return new PermissionSnapshot(version.longValue(), roles, CompactClaims.permissions(claims.getClaim(TOKEN_CLAIM_PERMISSIONS)));
+    }
+
+    //tokens of every issuer the servlet security filter accepts
+    private JWTClaimsSet validatedClaims(String token) {
+        return validatedClaims(knownIssuers(), token);
+    }
+
+    /**
+     * Signature (by kid with in-tree signing, through the platform token service otherwise), issuer, expiry and
+     * revocation. Compact claims are expanded to the standard names.
+     *
+     * @return the claims of a valid token, null otherwise
+     */
+    private JWTClaimsSet validatedClaims(Collection<String> issuers, String token) {
+        if (token == null || token.isBlank())
+            return null;
+        try {
+            SignedJWT jwt = SignedJWT.parse(token);
+            SigningKeyRing keyRing = signingKeyRing;
+            //the platform token service checks the issuer itself
+            boolean valid = (keyRing != null && PropertyReader.boolProp(applicationProperties, AuthenticationConstants.SIGNING_ENABLED, false))
+                    ? keyRing.verify(jwt) && issuers.contains(jwt.getJWTClaimsSet().getIssuer())
+                    : platformTokenService().validateToken(List.copyOf(issuers), token);
+            if (!valid)
+                return null;
+            JWTClaimsSet claims = jwt.getJWTClaimsSet();
+            Date expiration = claims.getExpirationTime();
+            if (expiration != null && expiration.getTime() <= System.currentTimeMillis())
+                return null;
+            return isRevoked(claims) ? null : CompactClaims.expand(claims);
+        } catch (ParseException | JOSEException e) {
+            return null;
+        }
+    }
+
+    private Collection<String> knownIssuers() {
+        Set<String> issuers = new HashSet<>();
+        String defaultIssuer = (authenticationOption != null) ? authenticationOption.getIssuerName() : null;
+        if (defaultIssuer != null)
+            issuers.add(defaultIssuer);
+        if (componentRegistry != null)
+            componentRegistry.findComponents(AuthenticationProvider.class, null)
+                    .forEach(authenticationProvider -> issuers.addAll(authenticationProvider.issuersNames()));
+        return issuers;
+    }
+
+    //the injected token service is the wrapper of this module when registered: reach the platform one behind it
+    private JwtTokenService platformTokenService() {
+        JwtTokenService service = jwtTokenService;
+        return (service instanceof DelegatingJwtTokenService wrapper) ? wrapper.getDelegate() : service;
+    }
+
+    //drops the revoked token from the validation and impersonation caches
+    private void invalidateCachedToken(String jti) {
+        TokenValidationCache cache = tokenValidationCache;
+        if (cache != null)
+            cache.invalidateJwtId(jti);
+        ImpersonationTokenCache impersonationCache = impersonationTokenCache;
+        if (impersonationCache != null)
+            impersonationCache.invalidateJwtId(jti);
+    }
+
+    //drops the cached tokens of a subject revoked everywhere, as caller or target of an impersonation too
+    private void invalidateCachedSubject(String subject) {
+        TokenValidationCache cache = tokenValidationCache;
+        if (cache != null)
+            cache.invalidateSubject(subject);
+        ImpersonationTokenCache impersonationCache = impersonationTokenCache;
+        if (impersonationCache != null)
+            impersonationCache.invalidateSubject(subject);
+    }
+
+    @Override
+    public void invalidateImpersonations(String callerUsername) {
+        ImpersonationTokenCache cache = impersonationTokenCache;
+        if (cache != null)
+            cache.invalidateCaller(callerUsername);
     }
 
     @Override
     public void logout(String token) {
-        //reuse the same token service used to generate tokens; revocation is idempotent/safe
-        jwtTokenService.revokeToken(token);
+        //jti and subject of a verified token only: a forged one must neither revoke nor flush anything
+        JWTClaimsSet claims = validatedClaims(token);
+        if (claims != null)
+            logout(parsedToken(token, claims));
+    }
+
+    @Override
+    public CompletableFuture<Void> logoutAsync(String token) {
+        return offload(() -> {
+            logout(token);
+            return null;
+        }, SecurityContextExecutor.captureShedding(asyncExecutor(), runtime));
+    }
+
+    //a saturated executor fails the future: running the stage on the caller would block it, e.g. a Netty event loop
+    private static <T> CompletableFuture<T> offload(Supplier<T> stage, Executor executor) {
+        try {
+            return CompletableFuture.supplyAsync(stage, executor);
+        } catch (LoginAdmissionRejectedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void logout(ParsedToken token) {
+        //the jti denylist is the one enforced by AuthenticationJwtTokenService, the platform one is not written
+        //the caller logged out: its cached impersonations must go through the permission gate again
+        invalidateImpersonations(token.getSubject());
+        String jti = token.getJwtId();
+        if (jti == null)
+            return;
+        long expiresAt = (token.getExpiresAt() > 0) ? token.getExpiresAt() : defaultExpiresAtMillis();
+        if (tokenRevocationStore != null)
+            tokenRevocationStore.revoke(jti, expiresAt);
+        invalidateCachedToken(jti);
+        RevocationJournal journal = revocationJournal;
+        if (journal != null)
+            journal.appendTokenRevoked(jti, expiresAt);
+    }
+
+    @Override
+    public ParsedToken parseToken(String token) {
+        JWTClaimsSet claims = parseClaims(token);
+        if (claims == null)
+            return ParsedToken.unparseable(token);
+        return parsedToken(token, claims);
+    }
+
+    private static ParsedToken parsedToken(String token, JWTClaimsSet claims) {
+        return new ParsedToken(token, claims.getJWTID(), claims.getSubject(),
+                (claims.getIssueTime() != null) ? claims.getIssueTime().getTime() : 0L,
+                (claims.getExpirationTime() != null) ? claims.getExpirationTime().getTime() : 0L);
+    }
+
+    @Override
+    public List<TokenRevocationOutcome> revokeTokens(List<String> tokens) {
+        if (tokens == null || tokens.isEmpty())
+            return List.of();
+        //parsing (base64 + JSON) is the expensive part: done in parallel for large batches
+        JWTClaimsSet[] claims = new JWTClaimsSet[tokens.size()];
+        forEachIndex(claims.length, BULK_REVOCATION_PARALLEL_THRESHOLD, i -> claims[i] = parseClaims(tokens.get(i)));
+        List<TokenRevocationOutcome> outcomes = new ArrayList<>(claims.length);
+        Map<String, Long> batch = new LinkedHashMap<>();
+        for (int i = 0; i < claims.length; i++) {
+            String jti = (claims[i] != null) ? claims[i].getJWTID() : null;
+            if (jti == null) {
+                outcomes.add(TokenRevocationOutcome.INVALID);
+            } else if (batch.containsKey(jti) || (tokenRevocationStore != null && tokenRevocationStore.isRevoked(jti))) {
+                outcomes.add(TokenRevocationOutcome.ALREADY_REVOKED);
+            } else {
+                batch.put(jti, expiresAtMillis(claims[i]));
+                outcomes.add(TokenRevocationOutcome.REVOKED);
+            }
+        }
+        if (!batch.isEmpty()) {
+            if (tokenRevocationStore != null)
+                tokenRevocationStore.revokeAll(batch);
+            batch.keySet().forEach(this::invalidateCachedToken);
+            RevocationJournal journal = revocationJournal;
+            if (journal != null)
+                journal.appendTokensRevoked(batch);
+        }
+        log.info("Bulk revocation: {} of {} tokens revoked", batch.size(), claims.length);
+        return outcomes;
+    }
+
+    /**
+     * Applies the action to every index in [0, size). From the threshold on, the range is split in one chunk
+     * per core: the chunks run on the batch executor while the calling thread takes the first one. A chunk
+     * the executor rejects runs in the calling thread.
+     */
+    private void forEachIndex(int size, int parallelThreshold, IntConsumer action) {
+        int chunks = (size >= parallelThreshold) ? Math.min(Runtime.getRuntime().availableProcessors(), size) : 1;
+        int chunkSize = (size + chunks - 1) / chunks;
+        List<Future<?>> forked = new ArrayList<>(chunks);
+        try {
+            for (int from = chunkSize; from < size; from += chunkSize) {
+                Runnable chunk = indexRange(from, Math.min(from + chunkSize, size), action);
+                try {
+                    forked.add(batchExecutor().submit(chunk));
+                } catch (RejectedExecutionException e) {
+                    chunk.run();
+                }
+            }
+            indexRange(0, Math.min(chunkSize, size), action).run();
+            for (Future<?> future : forked) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            //on failure, the chunks still running are not needed anymore
+            forked.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private static Runnable indexRange(int from, int to, IntConsumer action) {
+        return () -> {
+            for (int i = from; i < to; i++) {
+                action.accept(i);
+            }
+        };
+    }
+
+    //a subject revocation matters as long as a token or refresh token issued before it can still be valid
+    private long subjectRevocationRetentionMillis() {
+        long jwtDuration = PropertyReader.longProp(applicationProperties, AuthenticationConstants.JWT_DURATION_MILLIS, DEFAULT_JWT_DURATION_MILLIS);
+        return Math.max(jwtDuration, refreshTokenTtlMillis());
+    }
+
+    //null for missing or unparseable tokens; the signature is not checked here
+    private static JWTClaimsSet parseClaims(String token) {
+        if (token == null || token.isBlank())
+            return null;
+        try {
+            return SignedJWT.parse(token).getJWTClaimsSet();
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    //tokens without exp are kept for a full JWT lifetime
+    private long expiresAtMillis(JWTClaimsSet claims) {
+        Date expiration = claims.getExpirationTime();
+        return (expiration != null) ? expiration.getTime() : defaultExpiresAtMillis();
+    }
+
+    private long defaultExpiresAtMillis() {
+        return System.currentTimeMillis() + PropertyReader.longProp(applicationProperties, AuthenticationConstants.JWT_DURATION_MILLIS, DEFAULT_JWT_DURATION_MILLIS);
     }
 }
@@ -0,0 +1,75 @@
+package it.water.authentication.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, thread-safe Bloom filter over strings, used in front of in-memory lookups whose common
+ * answer is "absent": {@link #mightContain(long)} false is definitive and costs a few bit probes. The k
+ * probe positions are derived from one 64-bit hash (Kirsch-Mitzenmacher double hashing), computed once
+ * with {@link #hash(String)} so callers probing several filters hash only once.
+ */
+final class BloomFilter {
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions entries the filter is sized for; beyond it the false positive rate grows
+     * @param falsePositiveRate  target false positive rate at the expected insertions, in (0, 1)
+     */
+    BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        int n = Math.max(expectedInsertions, 1);
+        double p = Math.min(Math.max(falsePositiveRate, 1e-9d), 0.5d);
+        long bits = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max((bits + 63) / 64, 1);
+        this.words = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64L;
+        this.hashCount = Math.max((int) Math.round((double) bitCount / n * Math.log(2)), 1);
+    }
+
+    static long hash(String value) {
+        //FNV-1a over the chars followed by a murmur3 finalizer to spread the bits
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    void put(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0L && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    boolean mightContain(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0L)
+                return false;
+        }
+        return true;
+    }
+
+    private long index(int combinedHash) {
+        //flip negative values instead of Math.abs, which fails on Integer.MIN_VALUE
+        int positive = (combinedHash < 0) ? ~combinedHash : combinedHash;
+        return positive % bitCount;
+    }
+}
@@ -0,0 +1,52 @@
+package it.water.authentication.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Overflow eviction of the bounded in-memory caches. A full cache drops a batch of a tenth of its cap at
+ * once, so the scan of an eviction is paid once every {@code maxEntries / 10} insertions instead of on each
+ * one, and the victims are selected with a bounded heap instead of sorting the whole cache.
+ */
+final class CacheEviction {
+
+    private CacheEviction() {
+    }
+
+    /**
+     * @return entries to drop beyond the overflow itself, at least one
+     */
+    static int batch(int maxEntries) {
+        return Math.max(maxEntries / 10, 1);
+    }
+
+    /**
+     * @param eligible entries that may be evicted
+     * @param order    eviction order, the first entries are evicted first
+     * @return the first {@code count} eligible entries in eviction order
+     */
+    static <K, V> List<Map.Entry<K, V>> victims(Map<K, V> entries, Predicate<V> eligible, Comparator<V> order, int count) {
+        if (count <= 0)
+            return List.of();
+        Comparator<Map.Entry<K, V>> byValue = Map.Entry.comparingByValue(order);
+        //max-heap of the current victims: its head is the first one to give up its place
+        PriorityQueue<Map.Entry<K, V>> heap = new PriorityQueue<>(count + 1, byValue.reversed());
+        for (Map.Entry<K, V> entry : entries.entrySet()) {
+            if (!eligible.test(entry.getValue()))
+                continue;
+            if (heap.size() < count) {
+                heap.add(Map.entry(entry.getKey(), entry.getValue()));
+            } else if (byValue.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        List<Map.Entry<K, V>> victims = new ArrayList<>(heap);
+        victims.sort(byValue);
+        return victims;
+    }
+}
@@ -0,0 +1,94 @@
+package it.water.authentication.service;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact claims profile ({@code water.authentication.claims.compact.issuers}): the permission snapshot is
+ * written with short names and its actions as bitsets, to shrink the token sent on every request. The claims
+ * read by the platform security filter and by other validators ({@code loggedEntityId}, {@code admin},
+ * {@code roles} with the role names) and the registered claims keep their names, so a compact token carries the
+ * same principal everywhere. Compact tokens carry {@code "prf":"c"}; {@link #expand(JWTClaimsSet)} rewrites
+ * them to the standard claims, so the code reading the claims after validation does not depend on the profile.
+ * <p>
+ * Actions outside {@link #ACTIONS} make the resource fall back to the list of action names.
+ */
+public final class CompactClaims {
+    public static final String CLAIM_PROFILE = "prf";
+    public static final String PROFILE_COMPACT = "c";
+    public static final String CLAIM_PERMISSIONS = "p";
+    public static final String CLAIM_PERMISSIONS_VERSION = "pv";
+    //bit i of a permission bitset is ACTIONS[i]: the order is part of the token format, only append to it
+    public static final List<String> ACTIONS = List.of("save", "update", "remove", "find", "find-all", "share", "impersonate");
+
+    private CompactClaims() {
+    }
+
+    /**
+     * @return the actions as a bitset over {@link #ACTIONS}, -1 if one of them is not in the list
+     */
+    public static long permissionBits(Collection<String> actions) {
+        long bits = 0L;
+        for (String action : actions) {
+            int bit = ACTIONS.indexOf(action);
+            if (bit < 0)
+                return -1L;
+            bits |= 1L << bit;
+        }
+        return bits;
+    }
+
+    /**
+     * @param value bitset or list of action names, as written in a compact permission entry
+     * @return the action names
+     */
+    public static List<String> permissionActions(Object value) {
+        List<String> actions = new ArrayList<>();
+        if (value instanceof Number number) {
+            long bits = number.longValue();
+            for (int bit = 0; bit < ACTIONS.size(); bit++) {
+                if ((bits & (1L << bit)) != 0)
+                    actions.add(ACTIONS.get(bit));
+            }
+        } else if (value instanceof Collection<?> names) {
+            names.forEach(name -> actions.add(String.valueOf(name)));
+        }
+        return actions;
+    }
+
+    public static boolean isCompact(JWTClaimsSet claims) {
+        return PROFILE_COMPACT.equals(claims.getClaim(CLAIM_PROFILE));
+    }
+
+    /**
+     * @return the claims with the standard names, the same instance when the token is not compact
+     */
+    public static JWTClaimsSet expand(JWTClaimsSet claims) {
+        if (claims == null || !isCompact(claims))
+            return claims;
+        JWTClaimsSet.Builder builder = new JWTClaimsSet.Builder();
+        claims.getClaims().forEach((name, value) -> {
+            switch (name) {
+                case CLAIM_PROFILE -> {
+                    //marker only
+                }
+                case CLAIM_PERMISSIONS -> builder.claim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_PERMISSIONS, permissions(value));
+                case CLAIM_PERMISSIONS_VERSION -> builder.claim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_PERMISSIONS_VERSION, value);
+                default -> builder.claim(name, value);
+            }
+        });
+        return builder.build();
+    }
+
+    static Map<String, List<String>> permissions(Object value) {
+        Map<String, List<String>> permissions = new LinkedHashMap<>();
+        if (value instanceof Map<?, ?> entries)
+            entries.forEach((resource, actions) -> permissions.put(String.valueOf(resource), permissionActions(actions)));
+        return permissions;
+    }
+}
@@ -0,0 +1,16 @@
+package it.water.authentication.service;
+
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+
+/**
+ * @Author Aristide Cittadino
+ * Token service wrapping the platform one. Issuance and validation of this module reach the platform
+ * token service through {@link #getDelegate()}, never through the wrapper itself.
+ */
+public interface DelegatingJwtTokenService extends JwtTokenService {
+
+    /**
+     * @return the platform token service behind this one
+     */
+    JwtTokenService getDelegate();
+}
@@ -0,0 +1,115 @@
+package it.water.authentication.service;
+
+import it.water.core.permission.exceptions.UnauthorizedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Minimal structured-concurrency scope, modeled on the JDK {@code StructuredTaskScope.ShutdownOnFailure}
+ * (not available on the Java 17 baseline): subtasks are forked on an executor, {@link #join()} waits until
+ * all of them complete or the first one fails, and on failure (or on {@link #close()}) every unfinished
+ * sibling is cancelled with an interrupt. The first failure is rethrown unwrapped, so callers see the
+ * same exceptions as in the sequential code path. If the executor rejects a fork, the subtask runs in the
+ * calling thread.
+ */
+public final class FailFastTaskScope implements AutoCloseable {
+
+    private final CompletionService<Object> completionService;
+    private final List<Future<?>> forked = new ArrayList<>();
+    //subtasks run in the calling thread because the executor rejected them, already complete
+    private final List<Future<?>> inline = new ArrayList<>();
+    //subtasks submitted to the executor, each one is delivered exactly once by the completion service
+    private int submitted;
+
+    public FailFastTaskScope(ExecutorService executor) {
+        this.completionService = new ExecutorCompletionService<>(executor);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> fork(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = (Future<T>) completionService.submit((Callable<Object>) task);
+            submitted++;
+        } catch (RejectedExecutionException e) {
+            //executor saturated: degrade to sequential execution in the caller
+            FutureTask<T> inlineTask = new FutureTask<>(task);
+            inlineTask.run();
+            future = inlineTask;
+            inline.add(future);
+        }
+        forked.add(future);
+        return future;
+    }
+
+    /**
+     * Waits for every forked subtask. On the first failure the siblings are cancelled and the failure is
+     * rethrown.
+     */
+    public void join() {
+        try {
+            for (Future<?> future : inline) {
+                rethrowIfFailed(future);
+            }
+            for (; submitted > 0; submitted--) {
+                rethrowIfFailed(completionService.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll();
+            throw new UnauthorizedException("Login interrupted");
+        } catch (RuntimeException | Error e) {
+            cancelAll();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        cancelAll();
+    }
+
+    private void cancelAll() {
+        forked.forEach(future -> future.cancel(true));
+    }
+
+    /**
+     * Result of a subtask after a successful {@link #join()}, like {@code Future.resultNow()} on Java 19+.
+     */
+    public static <T> T resultNow(Future<T> future) {
+        if (!future.isDone() || future.isCancelled())
+            throw new IllegalStateException("Task has not completed successfully");
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void rethrowIfFailed(Future<?> future) throws InterruptedException {
+        if (future.isCancelled())
+            throw new UnauthorizedException("Login task cancelled");
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (cause instanceof Error error)
+                throw error;
+            throw new IllegalStateException(cause);
+        }
+    }
+}
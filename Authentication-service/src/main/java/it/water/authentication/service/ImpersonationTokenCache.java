@@ -0,0 +1,197 @@
+package it.water.authentication.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived cache of the impersonation tokens issued by {@code impersonationToken}, keyed by caller, target
+ * and company, so that a support agent repeating the same impersonation gets the token already issued instead
+ * of another provider permission gate, target load and signature. Entries live at most {@code ttlMillis} and
+ * never beyond the token expiry.
+ * <p>
+ * Reusing a token skips the IMPERSONATE check of the provider, so entries are bound to the state they were
+ * issued in: they are dropped when the caller logs out, when the caller or the target is revoked everywhere,
+ * when the token itself is revoked and when the permissions version moves. The service only uses the cache
+ * while a {@code PermissionSnapshotSource} publishes that version. The same epoch guard as
+ * {@link TokenValidationCache} keeps an issuance racing with an invalidation from inserting a stale token.
+ */
+public class ImpersonationTokenCache {
+    private static final Logger log = LoggerFactory.getLogger(ImpersonationTokenCache.class);
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+
+    private static final class Key {
+        private final String caller;
+        private final String target;
+        private final Long companyId;
+
+        private Key(String caller, String target, Long companyId) {
+            this.caller = caller;
+            this.target = target;
+            this.companyId = companyId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key key))
+                return false;
+            return caller.equals(key.caller) && target.equals(key.target) && Objects.equals(companyId, key.companyId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(caller, target, companyId);
+        }
+    }
+
+    /**
+     * Issued impersonation token with the claims checked on reuse.
+     */
+    public static final class Entry {
+        private final String token;
+        private final String jwtId;
+        private final String subject;
+        private final long issuedAt;
+        private final long expiresAt;
+        private final long permissionsVersion;
+
+        private Entry(String token, String jwtId, String subject, long issuedAt, long expiresAt, long permissionsVersion) {
+            this.token = token;
+            this.jwtId = jwtId;
+            this.subject = subject;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+            this.permissionsVersion = permissionsVersion;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public String getJwtId() {
+            return jwtId;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public long getIssuedAt() {
+            return issuedAt;
+        }
+    }
+
+    public ImpersonationTokenCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(maxEntries, 1);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return the epoch to pass to {@link #put}, read before the impersonation
+     */
+    public long epoch() {
+        return epoch.get();
+    }
+
+    /**
+     * @param permissionsVersion current permissions version, entries issued at another version are dropped
+     * @return the cached token, null on miss, expiry or permissions change
+     */
+    public Entry get(String caller, String target, Long companyId, long permissionsVersion) {
+        if (caller == null || target == null)
+            return null;
+        Key key = new Key(caller, target, companyId);
+        Entry entry = entries.get(key);
+        if (entry == null)
+            return null;
+        if (entry.expiresAt <= System.currentTimeMillis() || entry.permissionsVersion != permissionsVersion) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Caches an issued token until the cache ttl elapses, capped by the token expiry.
+     *
+     * @param tokenExpiresAt token expiry in epoch millis, 0 if unknown
+     * @param epoch          value of {@link #epoch()} read before the impersonation
+     */
+    public void put(String caller, String target, Long companyId, String token, String jwtId, long issuedAt, long tokenExpiresAt,
+                    long permissionsVersion, long epoch) {
+        if (caller == null || target == null || token == null || ttlMillis <= 0)
+            return;
+        long now = System.currentTimeMillis();
+        long expiresAt = now + ttlMillis;
+        if (tokenExpiresAt > 0)
+            expiresAt = Math.min(expiresAt, tokenExpiresAt);
+        if (expiresAt <= now)
+            return;
+        Key key = new Key(caller, target, companyId);
+        evictIfNeeded(now);
+        Entry entry = new Entry(token, jwtId, target, issuedAt, expiresAt, permissionsVersion);
+        entries.put(key, entry);
+        //a logout or a revocation ran during the impersonation: the token may already be stale
+        if (this.epoch.get() != epoch)
+            entries.remove(key, entry);
+    }
+
+    /**
+     * Drops the tokens issued to the caller, on caller logout or when its IMPERSONATE permission is withdrawn.
+     */
+    public void invalidateCaller(String caller) {
+        if (caller == null)
+            return;
+        epoch.incrementAndGet();
+        entries.keySet().removeIf(key -> key.caller.equals(caller));
+    }
+
+    /**
+     * Drops every entry where the user is the caller or the impersonated target.
+     */
+    public void invalidateSubject(String subject) {
+        if (subject == null)
+            return;
+        epoch.incrementAndGet();
+        entries.keySet().removeIf(key -> key.caller.equals(subject) || key.target.equals(subject));
+    }
+
+    public void invalidateJwtId(String jwtId) {
+        if (jwtId == null)
+            return;
+        epoch.incrementAndGet();
+        entries.values().removeIf(entry -> jwtId.equals(entry.jwtId));
+    }
+
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    //drops expired entries first, then the ones closest to expiry until the cache is a batch below the cap
+    private void evictIfNeeded(long now) {
+        if (entries.size() < maxEntries)
+            return;
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+        int excess = entries.size() - maxEntries + 1;
+        if (excess <= 0)
+            return;
+        CacheEviction.victims(entries, entry -> true, Comparator.comparingLong(entry -> entry.expiresAt), excess + CacheEviction.batch(maxEntries) - 1)
+                .forEach(e -> entries.remove(e.getKey(), e.getValue()));
+        log.debug("Impersonation token cache exceeded {} entries; evicted the entries closest to expiry", maxEntries);
+    }
+}
@@ -7,6 +7,7 @@ import it.water.core.interceptors.annotations.Inject;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Comparator;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -14,6 +15,16 @@ import java.util.concurrent.ConcurrentHashMap;
  * Default in-process {@link LoginAttemptStore}: counts failures in a sliding window, locks the
  * key after {@code threshold} failures, resets on success. State is per-JVM — multi-node
  * deployments need a shared implementation.
+ * <p>
+ * Keys recorded with a companyId live in a per-tenant partition with its own key cap and lockout
+ * policy: every lockout property can be overridden for one tenant by appending
+ * {@code .company.<companyId>} to its name. The {@code max.keys} cap becomes a global budget shared by
+ * all partitions: while it is not exhausted any partition may grow (up to its own cap), once it is the
+ * entries are evicted from the partitions holding more than their fair share, so a flood against one
+ * tenant evicts that tenant's keys only. The number of tenant partitions is bounded by
+ * {@code water.authentication.login.lockout.tenant.max.partitions}; beyond it, and for keys recorded
+ * without companyId, the shared partition is used. A tenant that overflowed keeps its state: its reads
+ * also check the shared partition, and the first write once it has its own partition carries the key over.
  */
 @Slf4j
 @FrameworkComponent
@@ -28,8 +39,13 @@ public class InMemoryLoginAttemptStore implements LoginAttemptStore {
     private static final boolean DEFAULT_BACKOFF_ENABLED = true;
     private static final int DEFAULT_BACKOFF_MULTIPLIER = 2;               // exponential
     private static final long DEFAULT_MAX_LOCKOUT_MILLIS = 60L * 60L * 1000L; // 1 hour safety cap
+    private static final int DEFAULT_TENANT_MAX_PARTITIONS = 1000;
+    //suffix selecting the per-tenant override of a lockout property
+    private static final String COMPANY_SUFFIX = ".company.";
 
-    private final ConcurrentHashMap<String, Attempt> attempts = new ConcurrentHashMap<>();
+    //keys recorded without a tenant (single-tenant mode, MT admin fallback, tenant partitions overflow)
+    private final Partition sharedPartition = new Partition(null);
+    private final ConcurrentHashMap<Long, Partition> tenantPartitions = new ConcurrentHashMap<>();
 
     @Inject
     @Setter
@@ -128,112 +144,261 @@ public class InMemoryLoginAttemptStore implements LoginAttemptStore {
         }
     }
 
+    /**
+     * Attempt counters of one tenant (companyId null = shared partition). Keys are inserted and an empty
+     * partition retired under the partition lock, so a retired partition never receives a key.
+     */
+    private static final class Partition {
+        private final Long companyId;
+        private final ConcurrentHashMap<String, Attempt> attempts = new ConcurrentHashMap<>();
+        //guarded by the partition lock
+        private boolean retired;
+
+        private Partition(Long companyId) {
+            this.companyId = companyId;
+        }
+    }
+
+    //global memory budget shared by all partitions
     private int maxKeys() {
         return intProp(AuthenticationConstants.LOGIN_LOCKOUT_MAX_KEYS, DEFAULT_MAX_KEYS);
     }
 
-    private boolean isStale(Attempt a, long now) {
-        return a.isStale(now, windowMillis());
+    //own cap of a partition: the budget, unless a lower per-tenant cap is configured
+    private int maxKeys(Long companyId) {
+        return Math.min(policyInt(AuthenticationConstants.LOGIN_LOCKOUT_MAX_KEYS, companyId, DEFAULT_MAX_KEYS), maxKeys());
+    }
+
+    private int maxTenantPartitions() {
+        return intProp(AuthenticationConstants.LOGIN_LOCKOUT_TENANT_MAX_PARTITIONS, DEFAULT_TENANT_MAX_PARTITIONS);
+    }
+
+    private boolean isStale(Attempt a, long now, Long companyId) {
+        return a.isStale(now, windowMillis(companyId));
     }
 
     /**
      * Opportunistic, bounded cleanup invoked on writes:
-     * 1) drop entries whose window expired and are not locked;
-     * 2) if still above the cap, evict the least-recently-updated entries until under the cap.
+     * 1) drop entries of the partition whose window expired and are not locked;
+     * 2) if the partition is above its own cap, evict its least-recently-updated entries;
+     * 3) if all partitions together are above the global budget, evict the least-recently-updated
+     *    entries of the partition being written when it holds more than its fair share of the budget,
+     *    of the largest partition otherwise.
+     * Both evictions go a batch below the bound (see {@link CacheEviction}), so a flood pays the scan once
+     * per batch instead of on every failure.
      * Locked entries are preserved as long as possible so eviction can never silently unlock a key.
      */
-    private void evictIfNeeded() {
+    private void evictIfNeeded(Partition partition) {
         long now = now();
         // pass 1: remove stale entries (no live security state)
-        attempts.entrySet().removeIf(e -> isStale(e.getValue(), now));
-        int cap = maxKeys();
-        if (attempts.size() <= cap)
+        partition.attempts.entrySet().removeIf(e -> isStale(e.getValue(), now, partition.companyId));
+        int cap = maxKeys(partition.companyId);
+        if (partition.attempts.size() > cap) {
+            // pass 2: own cap enforcement — evict oldest (least-recently-updated) first
+            evictOldest(partition, partition.attempts.size() - cap + CacheEviction.batch(cap));
+            log.warn("Login attempt store partition {} exceeded {} keys; evicted oldest entries down to the cap", partitionName(partition), cap);
+        }
+        if (tenantPartitions.isEmpty())
             return;
-        // pass 2: cap enforcement — evict oldest (least-recently-updated) first
-        attempts.entrySet().stream()
-                .sorted((x, y) -> Long.compare(lastUpdateOf(x.getValue()), lastUpdateOf(y.getValue())))
-                .limit((long) attempts.size() - cap)
-                .map(java.util.Map.Entry::getKey)
-                .forEach(attempts::remove);
-        log.warn("Login attempt store exceeded {} keys; evicted oldest entries down to the cap", cap);
+        // pass 3: global budget enforcement, only relevant once tenant partitions exist
+        int budget = maxKeys();
+        long total = sharedPartition.attempts.size() + tenantPartitions.values().stream().mapToLong(p -> p.attempts.size()).sum();
+        if (total <= budget)
+            return;
+        long fairShare = Math.max(budget / (tenantPartitions.size() + 1L), 1L);
+        Partition victim = (partition.attempts.size() > fairShare) ? partition : largestPartition();
+        evictOldest(victim, (int) Math.min(total - budget + CacheEviction.batch(budget), Integer.MAX_VALUE));
+        log.warn("Login attempt store exceeded its {} keys budget; evicted oldest entries of partition {}", budget, partitionName(victim));
+    }
+
+    private void evictOldest(Partition partition, int count) {
+        CacheEviction.victims(partition.attempts, attempt -> true, Comparator.comparingLong(this::lastUpdateOf), count)
+                .forEach(e -> partition.attempts.remove(e.getKey(), e.getValue()));
+    }
+
+    private Partition largestPartition() {
+        Partition largest = sharedPartition;
+        for (Partition p : tenantPartitions.values()) {
+            if (p.attempts.size() > largest.attempts.size())
+                largest = p;
+        }
+        return largest;
+    }
+
+    private String partitionName(Partition partition) {
+        return (partition.companyId == null) ? "shared" : "company " + partition.companyId;
     }
 
     private long lastUpdateOf(Attempt a) {
         return a.lastUpdate();
     }
 
-    private int threshold() {
-        return intProp(AuthenticationConstants.LOGIN_LOCKOUT_THRESHOLD, DEFAULT_THRESHOLD);
+    /**
+     * Counter used for reads: the one of the tenant partition if present, the shared one otherwise (tenants
+     * without partition never recorded anything, or overflowed into the shared partition and the key was not
+     * written since).
+     */
+    private Attempt existingAttempt(Long companyId, String key) {
+        if (companyId != null) {
+            Partition partition = tenantPartitions.get(companyId);
+            Attempt a = (partition != null) ? partition.attempts.get(key) : null;
+            if (a != null)
+                return a;
+        }
+        return sharedPartition.attempts.get(key);
+    }
+
+    /**
+     * Partition used for writes, created on demand while the partition count is below the bound.
+     */
+    private Partition partitionFor(Long companyId) {
+        if (companyId == null)
+            return sharedPartition;
+        Partition partition = tenantPartitions.get(companyId);
+        if (partition != null)
+            return partition;
+        if (tenantPartitions.size() >= maxTenantPartitions()) {
+            //free the slots of tenants with no tracked keys before giving up
+            tenantPartitions.values().forEach(this::retireIfEmpty);
+            if (tenantPartitions.size() >= maxTenantPartitions()) {
+                log.warn("Login attempt store reached {} tenant partitions; company {} uses the shared partition", maxTenantPartitions(), companyId);
+                return sharedPartition;
+            }
+        }
+        return tenantPartitions.computeIfAbsent(companyId, Partition::new);
     }
 
-    private long windowMillis() {
-        return longProp(AuthenticationConstants.LOGIN_LOCKOUT_WINDOW_MILLIS, DEFAULT_WINDOW_MILLIS);
+    //a writer that fetched the partition before its removal sees it retired and fetches the new one
+    private void retireIfEmpty(Partition partition) {
+        synchronized (partition) {
+            if (!partition.retired && partition.attempts.isEmpty()) {
+                partition.retired = true;
+                tenantPartitions.remove(partition.companyId, partition);
+            }
+        }
     }
 
-    private long lockoutMillis() {
-        return longProp(AuthenticationConstants.LOGIN_LOCKOUT_DURATION_MILLIS, DEFAULT_LOCKOUT_MILLIS);
+    /**
+     * Counter of the key in the partition, inserted under the partition lock. A new counter of a tenant
+     * partition takes over the state the key accumulated in the shared partition during an overflow.
+     *
+     * @return the counter, null if the partition was retired in the meantime
+     */
+    private Attempt attemptFor(Partition partition, String key, long now) {
+        synchronized (partition) {
+            if (partition.retired)
+                return null;
+            return partition.attempts.computeIfAbsent(key, k -> {
+                Attempt carried = (partition != sharedPartition) ? sharedPartition.attempts.remove(k) : null;
+                if (carried != null)
+                    return carried;
+                Attempt na = new Attempt();
+                na.windowStart = now;
+                return na;
+            });
+        }
+    }
+
+    private int threshold(Long companyId) {
+        return policyInt(AuthenticationConstants.LOGIN_LOCKOUT_THRESHOLD, companyId, DEFAULT_THRESHOLD);
+    }
+
+    private long windowMillis(Long companyId) {
+        return policyLong(AuthenticationConstants.LOGIN_LOCKOUT_WINDOW_MILLIS, companyId, DEFAULT_WINDOW_MILLIS);
+    }
+
+    private long lockoutMillis(Long companyId) {
+        return policyLong(AuthenticationConstants.LOGIN_LOCKOUT_DURATION_MILLIS, companyId, DEFAULT_LOCKOUT_MILLIS);
     }
 
     //#34 - whether the lockout duration grows progressively across repeated lockouts of the same key
-    private boolean backoffEnabled() {
-        return boolProp(AuthenticationConstants.LOGIN_LOCKOUT_BACKOFF_ENABLED, DEFAULT_BACKOFF_ENABLED);
+    private boolean backoffEnabled(Long companyId) {
+        String key = policyKey(AuthenticationConstants.LOGIN_LOCKOUT_BACKOFF_ENABLED, companyId);
+        return boolProp(key, DEFAULT_BACKOFF_ENABLED);
     }
 
     //#34 - exponential growth factor; clamped to a minimum of 1 to avoid shrinking/zeroing the duration
-    private int backoffMultiplier() {
-        int multiplier = intProp(AuthenticationConstants.LOGIN_LOCKOUT_BACKOFF_MULTIPLIER, DEFAULT_BACKOFF_MULTIPLIER);
+    private int backoffMultiplier(Long companyId) {
+        int multiplier = policyInt(AuthenticationConstants.LOGIN_LOCKOUT_BACKOFF_MULTIPLIER, companyId, DEFAULT_BACKOFF_MULTIPLIER);
         return Math.max(multiplier, 1);
     }
 
     //#34 - hard ceiling on the lockout duration; never below the base lockout duration (used as a floor)
-    private long maxLockoutMillis() {
-        long max = longProp(AuthenticationConstants.LOGIN_LOCKOUT_MAX_DURATION_MILLIS, DEFAULT_MAX_LOCKOUT_MILLIS);
-        long base = lockoutMillis();
+    private long maxLockoutMillis(Long companyId) {
+        long max = policyLong(AuthenticationConstants.LOGIN_LOCKOUT_MAX_DURATION_MILLIS, companyId, DEFAULT_MAX_LOCKOUT_MILLIS);
+        long base = lockoutMillis(companyId);
         return Math.max(max, base);
     }
 
     @Override
     public boolean isLocked(String key) {
+        return isLocked(null, key);
+    }
+
+    @Override
+    public void recordFailure(String key) {
+        recordFailure(null, key);
+    }
+
+    @Override
+    public void recordSuccess(String key) {
+        recordSuccess(null, key);
+    }
+
+    @Override
+    public long remainingLockMillis(String key) {
+        return remainingLockMillis(null, key);
+    }
+
+    @Override
+    public boolean isLocked(Long companyId, String key) {
         if (key == null)
             return false;
-        Attempt a = attempts.get(key);
+        Attempt a = existingAttempt(companyId, key);
         return a != null && a.isLocked(now());
     }
 
     @Override
-    public void recordFailure(String key) {
+    public void recordFailure(Long companyId, String key) {
         if (key == null)
             return;
         long now = now();
-        //bound memory before inserting a potentially-new key (credential stuffing on random usernames)
-        evictIfNeeded();
-        Attempt a = attempts.computeIfAbsent(key, k -> {
-            Attempt na = new Attempt();
-            na.windowStart = now;
-            return na;
-        });
-        int threshold = threshold();
-        long lockoutMillis = lockoutMillis();
+        Partition partition;
+        Attempt a;
+        do {
+            partition = partitionFor(companyId);
+            //bound memory before inserting a potentially-new key (credential stuffing on random usernames)
+            evictIfNeeded(partition);
+            a = attemptFor(partition, key, now);
+        } while (a == null);
+        Long policyCompanyId = partition.companyId;
+        int threshold = threshold(policyCompanyId);
+        long lockoutMillis = lockoutMillis(policyCompanyId);
         //#34 - recordFailure resets failures to 0 when it locks, so detect a lock via the live lock state
-        int failures = a.recordFailure(now, windowMillis(), threshold, lockoutMillis,
-                backoffEnabled(), backoffMultiplier(), maxLockoutMillis());
+        int failures = a.recordFailure(now, windowMillis(policyCompanyId), threshold, lockoutMillis,
+                backoffEnabled(policyCompanyId), backoffMultiplier(policyCompanyId), maxLockoutMillis(policyCompanyId));
         if (failures == 0 && a.isLocked(now)) {
-            log.warn("Login lockout triggered for key '{}'; locked for {} ms", key, a.lastAppliedLockoutMillis());
+            log.warn("Login lockout triggered for key '{}' in partition {}; locked for {} ms", key, partitionName(partition), a.lastAppliedLockoutMillis());
         }
     }
 
     @Override
-    public void recordSuccess(String key) {
+    public void recordSuccess(Long companyId, String key) {
         if (key == null)
             return;
-        attempts.remove(key);
+        if (companyId != null) {
+            Partition partition = tenantPartitions.get(companyId);
+            if (partition != null)
+                partition.attempts.remove(key);
+        }
+        sharedPartition.attempts.remove(key);
     }
 
     @Override
-    public long remainingLockMillis(String key) {
+    public long remainingLockMillis(Long companyId, String key) {
         if (key == null)
             return 0L;
-        Attempt a = attempts.get(key);
+        Attempt a = existingAttempt(companyId, key);
         return a == null ? 0L : a.remainingLockMillis(now());
     }
 
@@ -241,6 +406,22 @@ public class InMemoryLoginAttemptStore implements LoginAttemptStore {
         return System.currentTimeMillis();
     }
 
+    //per-tenant override ("<key>.company.<companyId>") when present, the global property otherwise
+    private String policyKey(String key, Long companyId) {
+        if (companyId == null || applicationProperties == null)
+            return key;
+        String tenantKey = key + COMPANY_SUFFIX + companyId;
+        return (applicationProperties.getProperty(tenantKey) != null) ? tenantKey : key;
+    }
+
+    private int policyInt(String key, Long companyId, int def) {
+        return intProp(policyKey(key, companyId), def);
+    }
+
+    private long policyLong(String key, Long companyId, long def) {
+        return longProp(policyKey(key, companyId), def);
+    }
+
     private int intProp(String key, int def) {
         if (applicationProperties == null)
             return def;
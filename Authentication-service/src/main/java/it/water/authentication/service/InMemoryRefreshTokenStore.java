@@ -0,0 +1,158 @@
+package it.water.authentication.service;
+
+import it.water.authentication.api.RefreshTokenGrant;
+import it.water.authentication.api.RefreshTokenStore;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.security.Authenticable;
+import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.core.interceptors.annotations.Inject;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @Author Aristide Cittadino
+ * Default in-process {@link RefreshTokenStore}. Tokens are 256 random bits; only their SHA-256 digest is
+ * kept, so the map content cannot be replayed. Every token belongs to the family of the login that
+ * created it: redeeming marks the token as used and issues the next one of the family, presenting a used
+ * token again revokes the whole family (the legitimate client and the thief both lose access and must log
+ * in again). State is per-JVM — multi-node deployments need a shared implementation. Size is bounded by
+ * {@code water.authentication.refresh.token.max.entries}.
+ */
+@Slf4j
+@FrameworkComponent
+public class InMemoryRefreshTokenStore implements RefreshTokenStore {
+
+    private static final int DEFAULT_MAX_ENTRIES = 100000;
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Inject
+    @Setter
+    private ApplicationProperties applicationProperties;
+
+    /**
+     * Tokens rotated from the same login share the family: revoking it invalidates all of them.
+     */
+    private static final class Family {
+        private volatile boolean revoked;
+    }
+
+    private static final class Entry {
+        private final Authenticable authenticable;
+        private final Family family;
+        private final long issuedAt;
+        private final long expiresAt;
+        private final AtomicBoolean used = new AtomicBoolean(false);
+
+        private Entry(Authenticable authenticable, Family family, long issuedAt, long expiresAt) {
+            this.authenticable = authenticable;
+            this.family = family;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    @Override
+    public String issue(Authenticable authenticable, long ttlMillis) {
+        if (authenticable == null)
+            return null;
+        return issue(authenticable, new Family(), ttlMillis);
+    }
+
+    @Override
+    public RefreshTokenGrant redeem(String refreshToken, long ttlMillis) {
+        if (refreshToken == null || refreshToken.isBlank())
+            return null;
+        Entry entry = entries.get(digest(refreshToken));
+        if (entry == null || entry.family.revoked || entry.isExpired(now()))
+            return null;
+        if (!entry.used.compareAndSet(false, true)) {
+            //a used token comes back: it was copied, so neither holder can be trusted anymore
+            entry.family.revoked = true;
+            log.warn("Reuse of a rotated refresh token of '{}', revoking its token family", entry.authenticable.getScreenName());
+            return null;
+        }
+        //the used entry stays until it expires, to detect its reuse
+        String rotated = issue(entry.authenticable, entry.family, ttlMillis);
+        return new RefreshTokenGrant(entry.authenticable, rotated);
+    }
+
+    @Override
+    public void revoke(String refreshToken) {
+        if (refreshToken == null || refreshToken.isBlank())
+            return;
+        Entry entry = entries.get(digest(refreshToken));
+        if (entry != null)
+            entry.family.revoked = true;
+    }
+
+    @Override
+    public void revokeAll(String subject) {
+        if (subject == null)
+            return;
+        //rare operation: a scan is cheaper than maintaining a per-subject index on every issue
+        entries.values().stream()
+                .filter(e -> subject.equals(e.authenticable.getScreenName()))
+                .forEach(e -> e.family.revoked = true);
+    }
+
+    private String issue(Authenticable authenticable, Family family, long ttlMillis) {
+        byte[] random = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(random);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+        long now = now();
+        evictIfNeeded(now);
+        entries.put(digest(token), new Entry(authenticable, family, now, now + Math.max(ttlMillis, 0L)));
+        return token;
+    }
+
+    /**
+     * Same strategy as the login attempt store: drop expired and revoked entries first, then the oldest
+     * ones until a batch below the cap (see {@link CacheEviction}).
+     */
+    private void evictIfNeeded(long now) {
+        int cap = maxEntries();
+        if (entries.size() < cap)
+            return;
+        entries.entrySet().removeIf(e -> e.getValue().isExpired(now) || e.getValue().family.revoked);
+        if (entries.size() < cap)
+            return;
+        CacheEviction.victims(entries, entry -> true, Comparator.comparingLong(entry -> entry.issuedAt),
+                        entries.size() - cap + CacheEviction.batch(cap))
+                .forEach(e -> entries.remove(e.getKey(), e.getValue()));
+        log.warn("Refresh token store exceeded {} entries; evicted oldest tokens", cap);
+    }
+
+    private int maxEntries() {
+        return Math.max(PropertyReader.intProp(applicationProperties, AuthenticationConstants.REFRESH_TOKEN_MAX_ENTRIES, DEFAULT_MAX_ENTRIES), 1);
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            //SHA-256 is mandatory on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long now() {
+        return System.currentTimeMillis();
+    }
+}
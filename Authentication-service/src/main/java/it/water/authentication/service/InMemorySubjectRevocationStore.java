@@ -0,0 +1,54 @@
+package it.water.authentication.service;
+
+import it.water.authentication.api.SubjectRevocationStore;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.core.interceptors.annotations.Inject;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author Aristide Cittadino
+ * Default in-process {@link SubjectRevocationStore}: a subject → revocation instant map. An entry is only
+ * useful while tokens issued before it can still be presented, so entries older than the longest token
+ * lifetime (JWT duration or refresh token lifetime) are dropped on the next revocation. State is
+ * per-JVM — multi-node deployments need a shared implementation.
+ */
+@Slf4j
+@FrameworkComponent
+public class InMemorySubjectRevocationStore implements SubjectRevocationStore {
+
+    private final ConcurrentHashMap<String, Long> notBefore = new ConcurrentHashMap<>();
+
+    @Inject
+    @Setter
+    private ApplicationProperties applicationProperties;
+
+    @Override
+    public void revokeBefore(String subject, long notBeforeMillis) {
+        if (subject == null)
+            return;
+        long now = System.currentTimeMillis();
+        //revocations are rare, so the cleanup runs on every write
+        long retention = retentionMillis();
+        notBefore.entrySet().removeIf(e -> e.getValue() + retention < now);
+        notBefore.merge(subject, notBeforeMillis, Math::max);
+        log.debug("Tokens of '{}' issued before {} are revoked", subject, notBeforeMillis);
+    }
+
+    @Override
+    public long revokedBefore(String subject) {
+        if (subject == null)
+            return 0L;
+        Long instant = notBefore.get(subject);
+        return (instant != null) ? instant : 0L;
+    }
+
+    private long retentionMillis() {
+        long jwtDuration = PropertyReader.longProp(applicationProperties, AuthenticationConstants.JWT_DURATION_MILLIS, AuthenticationSystemServiceImpl.DEFAULT_JWT_DURATION_MILLIS);
+        long refreshTokenTtl = PropertyReader.longProp(applicationProperties, AuthenticationConstants.REFRESH_TOKEN_TTL_MILLIS, AuthenticationSystemServiceImpl.DEFAULT_REFRESH_TOKEN_TTL_MILLIS);
+        return Math.max(jwtDuration, refreshTokenTtl);
+    }
+}
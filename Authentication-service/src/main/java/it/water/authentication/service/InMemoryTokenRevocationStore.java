@@ -0,0 +1,122 @@
+package it.water.authentication.service;
+
+import it.water.authentication.api.TokenRevocationStore;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.core.interceptors.annotations.Inject;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * @Author Aristide Cittadino
+ * Default in-process {@link TokenRevocationStore}. Revoked jtis are grouped in time buckets of
+ * {@code water.authentication.revocation.bucket.millis}, keyed by the end of the bucket their token expiry
+ * falls in: once a bucket end is in the past every token in it is expired, so the whole bucket is dropped
+ * at once without looking at its entries. Each bucket has its own Bloom filter; a lookup hashes the jti once
+ * and probes the filters of the live buckets, touching a bucket set only on a filter hit, so the common
+ * "not revoked" answer costs a few bit probes per bucket. State is per-JVM — multi-node deployments need a
+ * shared implementation.
+ */
+@Slf4j
+@FrameworkComponent
+public class InMemoryTokenRevocationStore implements TokenRevocationStore {
+
+    private static final long DEFAULT_BUCKET_MILLIS = 10L * 60L * 1000L; // 10 minutes
+    private static final int DEFAULT_BLOOM_EXPECTED_ENTRIES = 10000;
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01d;
+
+    //bucket end (epoch millis) -> revoked jtis expiring in the bucket
+    private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+
+    @Inject
+    @Setter
+    private ApplicationProperties applicationProperties;
+
+    private static final class Bucket {
+        private final Set<String> jtis = ConcurrentHashMap.newKeySet();
+        private final BloomFilter bloomFilter;
+
+        private Bucket(int expectedEntries) {
+            this.bloomFilter = new BloomFilter(expectedEntries, BLOOM_FALSE_POSITIVE_RATE);
+        }
+    }
+
+    @Override
+    public void revoke(String jti, long expiresAtMillis) {
+        if (jti == null || jti.isBlank())
+            return;
+        long now = System.currentTimeMillis();
+        dropExpiredBuckets(now);
+        if (expiresAtMillis <= now)
+            return;
+        long bucketMillis = bucketMillis();
+        long bucketEnd = (expiresAtMillis / bucketMillis + 1L) * bucketMillis;
+        Bucket bucket = buckets.computeIfAbsent(bucketEnd, k -> new Bucket(bloomExpectedEntries()));
+        //set first: a concurrent lookup that sees the filter bit must also find the entry
+        bucket.jtis.add(jti);
+        bucket.bloomFilter.put(BloomFilter.hash(jti));
+    }
+
+    /**
+     * Expired buckets are dropped once and each bucket is looked up once per batch, not once per entry.
+     */
+    @Override
+    public void revokeAll(Map<String, Long> expiresAtByJti) {
+        if (expiresAtByJti == null || expiresAtByJti.isEmpty())
+            return;
+        long now = System.currentTimeMillis();
+        dropExpiredBuckets(now);
+        long bucketMillis = bucketMillis();
+        int expectedEntries = bloomExpectedEntries();
+        Map<Long, Bucket> touched = new HashMap<>();
+        expiresAtByJti.forEach((jti, expiresAtMillis) -> {
+            if (jti == null || jti.isBlank() || expiresAtMillis == null || expiresAtMillis <= now)
+                return;
+            long bucketEnd = (expiresAtMillis / bucketMillis + 1L) * bucketMillis;
+            Bucket bucket = touched.computeIfAbsent(bucketEnd, k -> buckets.computeIfAbsent(k, end -> new Bucket(expectedEntries)));
+            bucket.jtis.add(jti);
+            bucket.bloomFilter.put(BloomFilter.hash(jti));
+        });
+    }
+
+    @Override
+    public boolean isRevoked(String jti) {
+        if (jti == null || jti.isBlank())
+            return false;
+        long now = System.currentTimeMillis();
+        long hash = BloomFilter.hash(jti);
+        //only buckets ending after now can hold unexpired tokens
+        for (Map.Entry<Long, Bucket> entry : buckets.tailMap(now, false).entrySet()) {
+            Bucket bucket = entry.getValue();
+            if (bucket.bloomFilter.mightContain(hash) && bucket.jtis.contains(jti))
+                return true;
+        }
+        return false;
+    }
+
+    int bucketCount() {
+        return buckets.size();
+    }
+
+    private void dropExpiredBuckets(long now) {
+        Map<Long, Bucket> expired = buckets.headMap(now, true);
+        if (!expired.isEmpty()) {
+            expired.clear();
+            log.debug("Dropped expired revocation buckets");
+        }
+    }
+
+    private long bucketMillis() {
+        return Math.max(PropertyReader.longProp(applicationProperties, AuthenticationConstants.REVOCATION_BUCKET_MILLIS, DEFAULT_BUCKET_MILLIS), 1L);
+    }
+
+    private int bloomExpectedEntries() {
+        return PropertyReader.intProp(applicationProperties, AuthenticationConstants.REVOCATION_BLOOM_EXPECTED_ENTRIES, DEFAULT_BLOOM_EXPECTED_ENTRIES);
+    }
+}
@@ -0,0 +1,292 @@
+package it.water.authentication.service;
+
+import it.water.authentication.api.VirtualHostCompanyCache;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.interceptors.OnDeactivate;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.integration.CompanyIntegrationClient;
+import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.core.interceptors.annotations.Inject;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author Aristide Cittadino
+ * Default in-process {@link VirtualHostCompanyCache}. Resolutions are kept for
+ * {@code water.authentication.vhost.cache.ttl.millis}; misses are kept for the shorter
+ * {@code water.authentication.vhost.cache.negative.ttl.millis} so that logins against unknown hosts
+ * cannot turn into one Company call each. A hit on a positive entry older than
+ * {@code refresh.ahead.percent} of its ttl triggers a single asynchronous reload while the current value
+ * keeps being served, so hot tenants never wait on the Company module. Size is bounded by
+ * {@code water.authentication.vhost.cache.max.entries}.
+ * <p>
+ * Mappings loaded through {@link #preload(Map)} / {@link #applyChanges(Map)} are pinned: they never
+ * expire, are never refreshed per host and are not subject to the cap, because the background
+ * synchronization keeps them current. Lazily loaded entries keep the ttl semantics above.
+ * <p>
+ * Concurrent misses for the same host share a single Company call. Like the token validation cache, every
+ * invalidation or mapping change bumps an epoch, and a load that raced with one does not store its result.
+ */
+@Slf4j
+@FrameworkComponent
+public class InMemoryVirtualHostCompanyCache implements VirtualHostCompanyCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final long DEFAULT_TTL_MILLIS = 10L * 60L * 1000L;       // 10 minutes
+    private static final long DEFAULT_NEGATIVE_TTL_MILLIS = 30L * 1000L;    // 30 seconds
+    private static final int DEFAULT_REFRESH_AHEAD_PERCENT = 80;
+
+    private final ConcurrentHashMap<String, Resolution> resolutions = new ConcurrentHashMap<>();
+    //in-flight loads, so that concurrent misses for a host wait for the same Company call
+    private final ConcurrentHashMap<String, CompletableFuture<Long>> loads = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+    //pinned mappings, updated with every insertion or removal of a pinned entry
+    private final AtomicInteger pinnedEntries = new AtomicInteger();
+
+    //created on the first refresh-ahead; pending reloads are bounded by the number of cached hosts
+    private volatile ExecutorService refreshExecutor;
+
+    @Inject
+    @Setter
+    private ComponentRegistry componentRegistry;
+
+    @Inject
+    @Setter
+    private ApplicationProperties applicationProperties;
+
+    /**
+     * Immutable cached resolution. A null companyId is a cached miss.
+     */
+    private static final class Resolution {
+        private final Long companyId;
+        private final long loadedAt;
+        private final long expiresAt;
+        private final long refreshAt;
+        //preloaded mapping kept current by the bulk synchronization
+        private final boolean pinned;
+        //guarantees a single in-flight refresh-ahead per entry
+        private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        private Resolution(Long companyId, long loadedAt, long ttlMillis, int refreshAheadPercent, boolean pinned) {
+            this.companyId = companyId;
+            this.pinned = pinned;
+            this.loadedAt = loadedAt;
+            this.expiresAt = loadedAt + ttlMillis;
+            this.refreshAt = loadedAt + (ttlMillis * refreshAheadPercent) / 100L;
+        }
+
+        boolean isExpired(long now) {
+            return !pinned && now >= expiresAt;
+        }
+
+        //only positive entries are refreshed ahead: misses simply expire quickly
+        boolean needsRefresh(long now) {
+            return !pinned && companyId != null && now >= refreshAt;
+        }
+    }
+
+    @Override
+    public Long resolveCompanyId(String virtualHost) {
+        if (virtualHost == null)
+            return companyIntegrationClient().findCompanyIdByVirtualHost(null);
+        long now = now();
+        Resolution resolution = resolutions.get(virtualHost);
+        if (resolution != null && !resolution.isExpired(now)) {
+            if (resolution.needsRefresh(now) && resolution.refreshing.compareAndSet(false, true))
+                scheduleRefresh(virtualHost, resolution);
+            return resolution.companyId;
+        }
+        CompletableFuture<Long> load = new CompletableFuture<>();
+        CompletableFuture<Long> inFlight = loads.putIfAbsent(virtualHost, load);
+        if (inFlight != null)
+            return await(inFlight);
+        try {
+            Long companyId = load(virtualHost);
+            load.complete(companyId);
+            return companyId;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(virtualHost, load);
+        }
+    }
+
+    private Long load(String virtualHost) {
+        long loadEpoch = epoch.get();
+        Long companyId = companyIntegrationClient().findCompanyIdByVirtualHost(virtualHost);
+        evictIfNeeded();
+        Resolution resolution = newResolution(companyId);
+        //an invalidation or a mapping change ran during the load: the result may be stale, the current entry stays
+        resolutions.compute(virtualHost, (host, current) -> {
+            Resolution next = (epoch.get() == loadEpoch) ? resolution : current;
+            countPinned(current, next);
+            return next;
+        });
+        return companyId;
+    }
+
+    //the waiting callers get the same result or exception as the loading one
+    private static Long await(CompletableFuture<Long> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    @Override
+    public void invalidate(String virtualHost) {
+        if (virtualHost == null)
+            return;
+        epoch.incrementAndGet();
+        countPinned(resolutions.remove(virtualHost), null);
+    }
+
+    @Override
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        resolutions.clear();
+        pinnedEntries.set(0);
+    }
+
+    @Override
+    public void preload(Map<String, Long> mappings) {
+        if (mappings == null)
+            return;
+        long now = now();
+        //hosts no longer part of the full map lose their pinned mapping
+        epoch.incrementAndGet();
+        resolutions.forEach((virtualHost, resolution) -> {
+            if (resolution.pinned && !mappings.containsKey(virtualHost) && resolutions.remove(virtualHost, resolution))
+                countPinned(resolution, null);
+        });
+        applyChanges(mappings, now);
+        log.debug("Preloaded {} virtual host mappings", mappings.size());
+    }
+
+    @Override
+    public void applyChanges(Map<String, Long> changes) {
+        if (changes == null)
+            return;
+        applyChanges(changes, now());
+    }
+
+    private void applyChanges(Map<String, Long> changes, long now) {
+        //a lazy load racing with the change must not overwrite the pinned mapping
+        epoch.incrementAndGet();
+        changes.forEach((virtualHost, companyId) -> {
+            if (virtualHost == null)
+                return;
+            Resolution next = (companyId != null) ? new Resolution(companyId, now, 0L, 0, true) : null;
+            countPinned((next != null) ? resolutions.put(virtualHost, next) : resolutions.remove(virtualHost), next);
+        });
+    }
+
+    //keeps the pinned count exact whenever a mapping is replaced or removed
+    private void countPinned(Resolution previous, Resolution next) {
+        int delta = ((next != null && next.pinned) ? 1 : 0) - ((previous != null && previous.pinned) ? 1 : 0);
+        if (delta != 0)
+            pinnedEntries.addAndGet(delta);
+    }
+
+    @OnDeactivate
+    public void onDeactivate() {
+        ExecutorService executor = refreshExecutor;
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    private void scheduleRefresh(String virtualHost, Resolution current) {
+        refreshExecutor().execute(() -> {
+            try {
+                Long companyId = companyIntegrationClient().findCompanyIdByVirtualHost(virtualHost);
+                //replace only if the entry was not invalidated or reloaded in the meantime
+                resolutions.replace(virtualHost, current, newResolution(companyId));
+            } catch (RuntimeException e) {
+                //keep serving the current value until it expires; a later hit retries the refresh
+                log.warn("Refresh-ahead of virtual host '{}' failed: {}", virtualHost, e.getMessage());
+                current.refreshing.set(false);
+            }
+        });
+    }
+
+    private Resolution newResolution(Long companyId) {
+        long ttl = (companyId != null) ? ttlMillis() : negativeTtlMillis();
+        return new Resolution(companyId, now(), ttl, refreshAheadPercent(), false);
+    }
+
+    /**
+     * Same strategy as the login attempt store: drop expired entries first, then the oldest ones
+     * until the lazily loaded entries are a batch below the cap (see {@link CacheEviction}). Pinned
+     * entries are not counted.
+     */
+    private void evictIfNeeded() {
+        int cap = maxEntries();
+        //cheap pre-check: the preloaded mappings do not count, so a large preload does not scan on every load
+        if (resolutions.size() - pinnedEntries.get() < cap)
+            return;
+        long now = now();
+        resolutions.entrySet().removeIf(e -> e.getValue().isExpired(now));
+        long lazyEntries = (long) resolutions.size() - pinnedEntries.get();
+        if (lazyEntries < cap)
+            return;
+        CacheEviction.victims(resolutions, resolution -> !resolution.pinned, Comparator.comparingLong(resolution -> resolution.loadedAt),
+                        (int) (lazyEntries - cap) + CacheEviction.batch(cap))
+                .forEach(e -> resolutions.remove(e.getKey(), e.getValue()));
+        log.warn("Virtual host cache exceeded {} entries; evicted oldest entries", cap);
+    }
+
+    private CompanyIntegrationClient companyIntegrationClient() {
+        return componentRegistry.findComponent(CompanyIntegrationClient.class, null);
+    }
+
+    private ExecutorService refreshExecutor() {
+        ExecutorService executor = refreshExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = refreshExecutor;
+                if (executor == null) {
+                    executor = Executors.newSingleThreadExecutor(AuthenticationExecutors.daemonThreadFactory("water-vhost-cache-refresh"));
+                    refreshExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private int maxEntries() {
+        return Math.max(PropertyReader.intProp(applicationProperties, AuthenticationConstants.VHOST_CACHE_MAX_ENTRIES, DEFAULT_MAX_ENTRIES), 1);
+    }
+
+    private long ttlMillis() {
+        return Math.max(PropertyReader.longProp(applicationProperties, AuthenticationConstants.VHOST_CACHE_TTL_MILLIS, DEFAULT_TTL_MILLIS), 0L);
+    }
+
+    private long negativeTtlMillis() {
+        return Math.max(PropertyReader.longProp(applicationProperties, AuthenticationConstants.VHOST_CACHE_NEGATIVE_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS), 0L);
+    }
+
+    //clamped to [0, 100]: 100 disables refresh-ahead, 0 refreshes on every hit
+    private int refreshAheadPercent() {
+        int percent = PropertyReader.intProp(applicationProperties, AuthenticationConstants.VHOST_CACHE_REFRESH_AHEAD_PERCENT, DEFAULT_REFRESH_AHEAD_PERCENT);
+        return Math.min(Math.max(percent, 0), 100);
+    }
+
+    private long now() {
+        return System.currentTimeMillis();
+    }
+}
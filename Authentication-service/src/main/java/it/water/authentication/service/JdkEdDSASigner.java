@@ -0,0 +1,53 @@
+package it.water.authentication.service;
+
+import com.nimbusds.jose.JCAContext;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.util.Base64URL;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.Set;
+
+/**
+ * Ed25519 JWS signer ({@code alg: EdDSA}) on the JDK provider. The Nimbus Ed25519 signer needs the Tink
+ * library and a JWK; this one signs with the {@link PrivateKey} read from the keystore.
+ */
+final class JdkEdDSASigner implements JWSSigner {
+    private static final String SIGNATURE_ALGORITHM = "Ed25519";
+
+    private final PrivateKey privateKey;
+    private final JCAContext jcaContext = new JCAContext();
+
+    JdkEdDSASigner(PrivateKey privateKey) {
+        this.privateKey = privateKey;
+    }
+
+    @Override
+    public Base64URL sign(JWSHeader header, byte[] signingInput) throws JOSEException {
+        if (!JWSAlgorithm.EdDSA.equals(header.getAlgorithm()))
+            throw new JOSEException("Unsupported JWS algorithm " + header.getAlgorithm());
+        try {
+            //Signature instances are not thread safe, a new one per token is cheap compared to the signing
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initSign(privateKey);
+            signature.update(signingInput);
+            return Base64URL.encode(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new JOSEException("Ed25519 signing failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+        return Set.of(JWSAlgorithm.EdDSA);
+    }
+
+    @Override
+    public JCAContext getJCAContext() {
+        return jcaContext;
+    }
+}
@@ -0,0 +1,55 @@
+package it.water.authentication.service;
+
+import com.nimbusds.jose.JCAContext;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.util.Base64URL;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Set;
+
+/**
+ * Ed25519 JWS verifier ({@code alg: EdDSA}) on the JDK provider, counterpart of {@link JdkEdDSASigner}.
+ */
+final class JdkEdDSAVerifier implements JWSVerifier {
+    private static final String SIGNATURE_ALGORITHM = "Ed25519";
+
+    private final PublicKey publicKey;
+    private final JCAContext jcaContext = new JCAContext();
+
+    JdkEdDSAVerifier(PublicKey publicKey) {
+        this.publicKey = publicKey;
+    }
+
+    @Override
+    public boolean verify(JWSHeader header, byte[] signingInput, Base64URL signature) throws JOSEException {
+        if (!JWSAlgorithm.EdDSA.equals(header.getAlgorithm()))
+            return false;
+        try {
+            Signature verifier = Signature.getInstance(SIGNATURE_ALGORITHM);
+            verifier.initVerify(publicKey);
+            verifier.update(signingInput);
+            return verifier.verify(signature.decode());
+        } catch (SignatureException e) {
+            //malformed signature: not a valid token, not a verifier failure
+            return false;
+        } catch (GeneralSecurityException e) {
+            throw new JOSEException("Ed25519 verification failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+        return Set.of(JWSAlgorithm.EdDSA);
+    }
+
+    @Override
+    public JCAContext getJCAContext() {
+        return jcaContext;
+    }
+}
@@ -0,0 +1,60 @@
+package it.water.authentication.service;
+
+import it.water.core.api.bundle.ApplicationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Typed, null-safe readers for the module configuration. A missing {@link ApplicationProperties}
+ * (component not wired yet, plain unit tests), a missing key or an unparseable value all fall back
+ * to the supplied default, logging a WARN only for unparseable values.
+ */
+public final class PropertyReader {
+    private static final Logger log = LoggerFactory.getLogger(PropertyReader.class);
+
+    private PropertyReader() {
+    }
+
+    public static int intProp(ApplicationProperties applicationProperties, String key, int def) {
+        String value = rawValue(applicationProperties, key);
+        if (value == null)
+            return def;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid int property {} ('{}'), using default {}", key, value, def);
+            return def;
+        }
+    }
+
+    public static long longProp(ApplicationProperties applicationProperties, String key, long def) {
+        String value = rawValue(applicationProperties, key);
+        if (value == null)
+            return def;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid long property {} ('{}'), using default {}", key, value, def);
+            return def;
+        }
+    }
+
+    public static boolean boolProp(ApplicationProperties applicationProperties, String key, boolean def) {
+        String value = rawValue(applicationProperties, key);
+        if (value == null)
+            return def;
+        return Boolean.parseBoolean(value);
+    }
+
+    public static String stringProp(ApplicationProperties applicationProperties, String key, String def) {
+        String value = rawValue(applicationProperties, key);
+        return (value == null || value.isEmpty()) ? def : value;
+    }
+
+    private static String rawValue(ApplicationProperties applicationProperties, String key) {
+        if (applicationProperties == null)
+            return null;
+        Object raw = applicationProperties.getProperty(key);
+        return (raw == null) ? null : raw.toString().trim();
+    }
+}
@@ -0,0 +1,448 @@
+package it.water.authentication.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only revocation journal shared by the nodes through a common directory, so that revocations
+ * survive restarts and reach every node without an external service.
+ * <p>
+ * Every node appends only to its own segment files ({@code <nodeId>-<sequence>.journal}), pre-allocated and
+ * memory-mapped, so there is a single writer per file. The writer holds an exclusive {@link java.nio.channels.FileLock}
+ * on its active segment: a second node started with the same id fails to open it instead of writing to it too. A record is
+ * {@code [int length][byte type][long value][long expiresAt][key bytes]}; the length is written after the
+ * body, so a reader seeing a non-zero length sees the whole record, and a zero length marks the end of the
+ * written data. When a segment is full or older than the roll interval it is sealed with a terminal record
+ * and a new one is started.
+ * <p>
+ * At {@link #start()} every segment is replayed sequentially; afterwards a single background thread tails the
+ * segments of the other nodes from the last read offset and compacts: sealed segments whose entries are all
+ * expired are deleted, and sealed segments of this node that are mostly expired have their live entries
+ * re-appended to the active segment before deletion. The directory must be on a local file system shared by
+ * the nodes (memory-mapped files are not coherent over network file systems).
+ */
+public class RevocationJournal {
+    private static final Logger log = LoggerFactory.getLogger(RevocationJournal.class);
+
+    static final byte TOKEN_REVOKED = 1;
+    static final byte SUBJECT_REVOKED = 2;
+    private static final byte SEGMENT_SEALED = 127;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int LENGTH_BYTES = 4;
+    private static final int FIXED_BODY_BYTES = 1 + 8 + 8;
+    //room always left at the end of a segment for the seal record
+    private static final int SEAL_RECORD_BYTES = LENGTH_BYTES + FIXED_BODY_BYTES;
+    private static final int MAX_KEY_BYTES = 4096;
+
+    /**
+     * Receives the records written by the other nodes (and, at replay, by this one).
+     */
+    public interface Listener {
+        void onTokenRevoked(String jti, long expiresAtMillis);
+
+        void onSubjectRevoked(String subject, long notBeforeMillis);
+    }
+
+    private final Path directory;
+    private final String nodeId;
+    private final int segmentBytes;
+    private final long rollIntervalMillis;
+    private final long pollIntervalMillis;
+    private final Listener listener;
+
+    //writer state, guarded by this
+    private FileChannel writeChannel;
+    private MappedByteBuffer writeBuffer;
+    private long writeSegmentCreatedAt;
+    private long writeSequence;
+    private int writtenRecords;
+
+    //reader state, only used by start() and then by the poller thread
+    private final Map<Path, SegmentCursor> cursors = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Read position and statistics of one segment.
+     */
+    private static final class SegmentCursor {
+        private final Path path;
+        private final boolean own;
+        private FileChannel channel;
+        private MappedByteBuffer buffer;
+        private int position;
+        private long maxExpiresAt;
+        private boolean sealed;
+
+        private SegmentCursor(Path path, boolean own) {
+            this.path = path;
+            this.own = own;
+        }
+    }
+
+    /**
+     * @param directory          shared journal directory
+     * @param nodeId             stable id of this node, unique among the nodes sharing the directory, used as segment file prefix
+     * @param segmentBytes       size of each pre-allocated segment
+     * @param rollIntervalMillis age after which the active segment is sealed (so it can expire)
+     * @param pollIntervalMillis tailing and compaction interval; 0 disables the background thread
+     * @param listener           receives the records of the other nodes
+     */
+    public RevocationJournal(Path directory, String nodeId, int segmentBytes, long rollIntervalMillis,
+                             long pollIntervalMillis, Listener listener) {
+        this.directory = directory;
+        this.nodeId = nodeId.replaceAll("[^A-Za-z0-9._]", "_");
+        this.segmentBytes = Math.max(segmentBytes, SEAL_RECORD_BYTES * 4);
+        this.rollIntervalMillis = rollIntervalMillis;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * Replays every segment into the listener, opens the active segment of this node and starts tailing.
+     */
+    public synchronized void start() throws IOException {
+        Files.createDirectories(directory);
+        long started = System.currentTimeMillis();
+        int replayed = 0;
+        for (Path segment : listSegments()) {
+            SegmentCursor cursor = new SegmentCursor(segment, isOwn(segment));
+            cursors.put(segment, cursor);
+            replayed += read(cursor, true);
+        }
+        openWriteSegment();
+        log.info("Revocation journal replayed {} records from {} segments in {} ms", replayed, cursors.size(), System.currentTimeMillis() - started);
+        if (pollIntervalMillis > 0 && scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(AuthenticationExecutors.daemonThreadFactory("water-revocation-journal"));
+            scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                //the poller owns the cursors: let a running round finish before releasing them
+                scheduler.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        if (writeBuffer != null)
+            writeBuffer.force();
+        closeQuietly(writeChannel);
+        writeChannel = null;
+        writeBuffer = null;
+        cursors.values().forEach(cursor -> closeQuietly(cursor.channel));
+        cursors.clear();
+    }
+
+    public void appendTokenRevoked(String jti, long expiresAtMillis) {
+        append(TOKEN_REVOKED, expiresAtMillis, expiresAtMillis, jti);
+    }
+
+    /**
+     * Appends a batch of token revocations under a single lock acquisition.
+     */
+    public synchronized void appendTokensRevoked(Map<String, Long> expiresAtByJti) {
+        expiresAtByJti.forEach(this::appendTokenRevoked);
+    }
+
+    /**
+     * @param expiresAtMillis instant after which the entry is useless (no token issued before notBefore can be valid)
+     */
+    public void appendSubjectRevoked(String subject, long notBeforeMillis, long expiresAtMillis) {
+        append(SUBJECT_REVOKED, notBeforeMillis, expiresAtMillis, subject);
+    }
+
+    /**
+     * One background round: reads the new records of the other nodes, then compacts. Never throws.
+     */
+    void poll() {
+        try {
+            Map<Path, Boolean> present = new HashMap<>();
+            for (Path segment : listSegments()) {
+                present.put(segment, Boolean.TRUE);
+                SegmentCursor cursor = cursors.computeIfAbsent(segment, p -> new SegmentCursor(p, isOwn(p)));
+                read(cursor, false);
+            }
+            //segments deleted by a compaction of another node
+            for (Iterator<SegmentCursor> it = cursors.values().iterator(); it.hasNext(); ) {
+                SegmentCursor cursor = it.next();
+                if (!present.containsKey(cursor.path)) {
+                    closeQuietly(cursor.channel);
+                    it.remove();
+                }
+            }
+            compact(System.currentTimeMillis());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Revocation journal poll failed, retrying in {} ms: {}", pollIntervalMillis, e.getMessage());
+        }
+    }
+
+    private synchronized void append(byte type, long value, long expiresAt, String key) {
+        if (key == null || writeBuffer == null)
+            return;
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > MAX_KEY_BYTES) {
+            log.warn("Revocation journal key longer than {} bytes, not journaled", MAX_KEY_BYTES);
+            return;
+        }
+        int recordBytes = LENGTH_BYTES + FIXED_BODY_BYTES + keyBytes.length;
+        try {
+            if (writeBuffer.position() + recordBytes > segmentBytes - SEAL_RECORD_BYTES)
+                rollWriteSegment();
+            writeRecord(type, value, expiresAt, keyBytes);
+            writtenRecords++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to append to the revocation journal", e);
+        }
+    }
+
+    //body first, length last: readers never see a partially written record
+    private void writeRecord(byte type, long value, long expiresAt, byte[] keyBytes) {
+        int start = writeBuffer.position();
+        int bodyBytes = FIXED_BODY_BYTES + keyBytes.length;
+        writeBuffer.position(start + LENGTH_BYTES);
+        writeBuffer.put(type);
+        writeBuffer.putLong(value);
+        writeBuffer.putLong(expiresAt);
+        writeBuffer.put(keyBytes);
+        writeBuffer.putInt(start, bodyBytes);
+    }
+
+    private void openWriteSegment() throws IOException {
+        SegmentCursor last = null;
+        for (SegmentCursor cursor : cursors.values()) {
+            if (cursor.own && (last == null || sequenceOf(cursor.path) > sequenceOf(last.path)))
+                last = cursor;
+        }
+        if (last != null && !last.sealed && last.position < segmentBytes - SEAL_RECORD_BYTES) {
+            //continue the segment left by the previous run of this node
+            writeSequence = sequenceOf(last.path);
+            mapWriteSegment(last.path, last.position);
+            writeSegmentCreatedAt = Files.getLastModifiedTime(last.path).toMillis();
+            writtenRecords = (last.position > 0) ? 1 : 0;
+        } else {
+            writeSequence = (last != null) ? sequenceOf(last.path) + 1 : 1;
+            newWriteSegment();
+        }
+    }
+
+    private void rollWriteSegment() throws IOException {
+        writeRecord(SEGMENT_SEALED, 0L, 0L, new byte[0]);
+        writeBuffer.force();
+        closeQuietly(writeChannel);
+        writeSequence++;
+        newWriteSegment();
+    }
+
+    private void newWriteSegment() throws IOException {
+        Path segment = directory.resolve(String.format("%s-%019d%s", nodeId, writeSequence, SEGMENT_SUFFIX));
+        mapWriteSegment(segment, 0);
+        writeSegmentCreatedAt = System.currentTimeMillis();
+        writtenRecords = 0;
+    }
+
+    private void mapWriteSegment(Path segment, int position) throws IOException {
+        FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        //released when the channel is closed; readers never lock
+        if (!tryLock(channel)) {
+            closeQuietly(channel);
+            throw new IOException("Revocation journal segment " + segment.getFileName() + " is written by another node with id '"
+                    + nodeId + "', node ids must be unique");
+        }
+        writeChannel = channel;
+        //mapping beyond the end grows the file, zero filled: zero length = no record yet
+        writeBuffer = writeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        writeBuffer.position(position);
+    }
+
+    //a lock held by another process gives null, one held by this process throws
+    private static boolean tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the records appended to the segment since the last call.
+     *
+     * @param replay true at startup: the records of this node are delivered too
+     * @return number of records delivered
+     */
+    private int read(SegmentCursor cursor, boolean replay) throws IOException {
+        if (cursor.sealed)
+            return 0;
+        if ((cursor.buffer == null || cursor.channel.size() > cursor.buffer.limit()) && !map(cursor))
+            return 0;
+        ByteBuffer buffer = cursor.buffer;
+        int delivered = 0;
+        while (cursor.position + LENGTH_BYTES <= buffer.limit()) {
+            int bodyBytes = buffer.getInt(cursor.position);
+            if (bodyBytes <= 0)
+                break;
+            int bodyStart = cursor.position + LENGTH_BYTES;
+            if (bodyBytes < FIXED_BODY_BYTES || bodyStart + bodyBytes > buffer.limit()) {
+                log.warn("Corrupted revocation journal segment {} at offset {}, skipping the rest", cursor.path, cursor.position);
+                cursor.sealed = true;
+                break;
+            }
+            byte type = buffer.get(bodyStart);
+            long value = buffer.getLong(bodyStart + 1);
+            long expiresAt = buffer.getLong(bodyStart + 9);
+            cursor.position = bodyStart + bodyBytes;
+            if (type == SEGMENT_SEALED) {
+                cursor.sealed = true;
+                break;
+            }
+            cursor.maxExpiresAt = Math.max(cursor.maxExpiresAt, expiresAt);
+            if (replay || !cursor.own) {
+                byte[] keyBytes = new byte[bodyBytes - FIXED_BODY_BYTES];
+                buffer.get(bodyStart + FIXED_BODY_BYTES, keyBytes);
+                deliver(type, value, new String(keyBytes, StandardCharsets.UTF_8));
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    private void deliver(byte type, long value, String key) {
+        try {
+            if (type == TOKEN_REVOKED)
+                listener.onTokenRevoked(key, value);
+            else if (type == SUBJECT_REVOKED)
+                listener.onSubjectRevoked(key, value);
+        } catch (RuntimeException e) {
+            log.warn("Revocation journal listener failed on '{}': {}", key, e.getMessage());
+        }
+    }
+
+    //(re)maps the whole file: a segment seen right after its creation may not be pre-allocated yet
+    private boolean map(SegmentCursor cursor) throws IOException {
+        try {
+            if (cursor.channel == null)
+                cursor.channel = FileChannel.open(cursor.path, StandardOpenOption.READ);
+            long size = Math.min(cursor.channel.size(), Integer.MAX_VALUE);
+            cursor.buffer = cursor.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private void compact(long now) throws IOException {
+        synchronized (this) {
+            //seal an old active segment, so that it can expire and be compacted like the others
+            if (writtenRecords > 0 && now - writeSegmentCreatedAt >= rollIntervalMillis)
+                rollWriteSegment();
+        }
+        List<Path> deleted = new ArrayList<>();
+        for (SegmentCursor cursor : cursors.values()) {
+            if (!cursor.sealed)
+                continue;
+            if (cursor.maxExpiresAt < now) {
+                //every entry expired: nobody needs this segment anymore, whoever wrote it
+                deleted.add(cursor.path);
+            } else if (cursor.own && rewriteIfMostlyExpired(cursor, now)) {
+                deleted.add(cursor.path);
+            }
+        }
+        for (Path path : deleted) {
+            SegmentCursor cursor = cursors.remove(path);
+            closeQuietly(cursor.channel);
+            Files.deleteIfExists(path);
+            log.debug("Revocation journal segment {} compacted", path.getFileName());
+        }
+    }
+
+    /**
+     * Re-appends the live entries of a sealed segment of this node to the active segment when less than
+     * half of its entries are still live.
+     *
+     * @return true if the segment can be deleted
+     */
+    private boolean rewriteIfMostlyExpired(SegmentCursor cursor, long now) {
+        ByteBuffer buffer = cursor.buffer;
+        List<int[]> live = new ArrayList<>();
+        int total = 0;
+        int position = 0;
+        while (position + LENGTH_BYTES <= cursor.position) {
+            int bodyBytes = buffer.getInt(position);
+            int bodyStart = position + LENGTH_BYTES;
+            if (bodyBytes <= 0 || buffer.get(bodyStart) == SEGMENT_SEALED)
+                break;
+            total++;
+            if (buffer.getLong(bodyStart + 9) >= now)
+                live.add(new int[]{bodyStart, bodyBytes});
+            position = bodyStart + bodyBytes;
+        }
+        if (live.size() * 2 >= total)
+            return false;
+        for (int[] record : live) {
+            byte[] keyBytes = new byte[record[1] - FIXED_BODY_BYTES];
+            buffer.get(record[0] + FIXED_BODY_BYTES, keyBytes);
+            append(buffer.get(record[0]), buffer.getLong(record[0] + 1), buffer.getLong(record[0] + 9),
+                    new String(keyBytes, StandardCharsets.UTF_8));
+        }
+        return true;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        //sequence order, so that a replay applies the records of each node in write order
+        segments.sort((a, b) -> a.getFileName().toString().compareTo(b.getFileName().toString()));
+        return segments;
+    }
+
+    private boolean isOwn(Path segment) {
+        String name = segment.getFileName().toString();
+        return name.startsWith(nodeId + "-") && name.length() == nodeId.length() + 1 + 19 + SEGMENT_SUFFIX.length();
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        String sequence = name.substring(name.lastIndexOf('-') + 1, name.length() - SEGMENT_SUFFIX.length());
+        try {
+            return Long.parseLong(sequence);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.trace("Unable to close revocation journal segment: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package it.water.authentication.service;
+
+import it.water.authentication.service.execption.LoginAdmissionRejectedException;
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executor running its tasks with the security context of the thread that created it. The Water runtime keeps
+ * the security context per thread, so work handed to another executor would otherwise run anonymous: the
+ * context is captured by {@link #capture(Executor, Runtime)}, filled on the worker for the duration of each
+ * task and the previous one restored afterwards, which keeps the context right when a task ends up running
+ * on the calling thread.
+ * <p>
+ * When the delegate rejects a task (bounded queue full) the task runs on the calling thread, the same
+ * degradation as {@link FailFastTaskScope}. Executors from {@link #captureShedding(Executor, Runtime)} throw
+ * {@link LoginAdmissionRejectedException} instead, for callers that must never run the task themselves.
+ */
+public final class SecurityContextExecutor implements Executor {
+    private static final Logger log = LoggerFactory.getLogger(SecurityContextExecutor.class);
+
+    private final Executor delegate;
+    private final Runtime runtime;
+    private final SecurityContext securityContext;
+    private final boolean shedRejected;
+
+    private SecurityContextExecutor(Executor delegate, Runtime runtime, SecurityContext securityContext, boolean shedRejected) {
+        this.delegate = delegate;
+        this.runtime = runtime;
+        this.securityContext = securityContext;
+        this.shedRejected = shedRejected;
+    }
+
+    /**
+     * @param runtime runtime holding the security context, may be null (tasks then run with no context handling)
+     * @return an executor running the tasks on the delegate with the current security context
+     */
+    public static SecurityContextExecutor capture(Executor delegate, Runtime runtime) {
+        return capture(delegate, runtime, false);
+    }
+
+    /**
+     * @param runtime runtime holding the security context, may be null (tasks then run with no context handling)
+     * @return an executor running the tasks on the delegate with the current security context, failing with
+     * {@link LoginAdmissionRejectedException} when the delegate rejects a task
+     */
+    public static SecurityContextExecutor captureShedding(Executor delegate, Runtime runtime) {
+        return capture(delegate, runtime, true);
+    }
+
+    private static SecurityContextExecutor capture(Executor delegate, Runtime runtime, boolean shedRejected) {
+        SecurityContext securityContext = (runtime != null) ? runtime.getSecurityContext() : null;
+        return new SecurityContextExecutor(delegate, runtime, securityContext, shedRejected);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Runnable contextTask = () -> {
+            SecurityContext previous = fillSecurityContext(securityContext);
+            try {
+                task.run();
+            } finally {
+                fillSecurityContext(previous);
+            }
+        };
+        try {
+            delegate.execute(contextTask);
+        } catch (RejectedExecutionException e) {
+            if (shedRejected)
+                throw new LoginAdmissionRejectedException("Authentication executor saturated, retry later", 1L);
+            log.debug("Executor saturated, running the task on the calling thread");
+            contextTask.run();
+        }
+    }
+
+    //@return the security context of the thread before the call
+    private SecurityContext fillSecurityContext(SecurityContext context) {
+        if (runtime == null)
+            return null;
+        SecurityContext previous = runtime.getSecurityContext();
+        runtime.fillSecurityContext(context);
+        return previous;
+    }
+}
@@ -0,0 +1,239 @@
+package it.water.authentication.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.EdECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Signing key loaded once from the keystore ({@code water.keystore.file} / {@code alias} / {@code password})
+ * together with a reusable signer and verifier, so that keystore parsing and private key decryption are paid
+ * at activation instead of on the first login. {@link #warmUp(int)} runs sign/verify rounds on a synthetic
+ * token to load and JIT-compile the crypto provider code path before real traffic arrives.
+ * <p>
+ * The JWS algorithm follows the key type stored under the alias: RS256 for RSA, ES256/ES384/ES512 for EC
+ * P-256/P-384/P-521 and EdDSA for Ed25519. Tokens carry a {@code kid} header derived from the public key, so
+ * validators holding several keys can pick the right one.
+ */
+public class SigningKeyCache {
+    private static final Logger log = LoggerFactory.getLogger(SigningKeyCache.class);
+
+    private static final String WARM_UP_SUBJECT = "water-signing-warm-up";
+    private static final long WARM_UP_TOKEN_DURATION_MILLIS = 60L * 1000L;
+    //bytes of the public key SHA-256 kept in the kid
+    private static final int KEY_ID_BYTES = 16;
+    private static final int ED25519_KEY_BYTES = 32;
+
+    private final String alias;
+    private final String keyId;
+    private final PrivateKey privateKey;
+    private final PublicKey publicKey;
+    private final JWSAlgorithm algorithm;
+    private final JWSSigner signer;
+    private final JWSVerifier verifier;
+    //header shared by every token signed with this key
+    private final JWSHeader header;
+
+    SigningKeyCache(String alias, PrivateKey privateKey, PublicKey publicKey) throws GeneralSecurityException {
+        this.alias = alias;
+        this.privateKey = privateKey;
+        this.publicKey = publicKey;
+        this.keyId = keyId(publicKey);
+        try {
+            if (publicKey instanceof RSAPublicKey rsaPublicKey) {
+                this.algorithm = JWSAlgorithm.RS256;
+                this.signer = new RSASSASigner(privateKey);
+                this.verifier = new RSASSAVerifier(rsaPublicKey);
+            } else if (publicKey instanceof ECPublicKey ecPublicKey && privateKey instanceof ECPrivateKey ecPrivateKey) {
+                this.algorithm = ecAlgorithm(ecPublicKey);
+                this.signer = new ECDSASigner(ecPrivateKey);
+                this.verifier = new ECDSAVerifier(ecPublicKey);
+            } else if (publicKey instanceof EdECPublicKey edPublicKey && "Ed25519".equalsIgnoreCase(edPublicKey.getParams().getName())) {
+                this.algorithm = JWSAlgorithm.EdDSA;
+                this.signer = new JdkEdDSASigner(privateKey);
+                this.verifier = new JdkEdDSAVerifier(publicKey);
+            } else {
+                throw new GeneralSecurityException("Unsupported signing key type " + publicKey.getAlgorithm() + " under alias '" + alias + "'");
+            }
+        } catch (JOSEException e) {
+            throw new GeneralSecurityException("Invalid signing key under alias '" + alias + "': " + e.getMessage(), e);
+        }
+        this.header = new JWSHeader.Builder(algorithm).keyID(keyId).type(JOSEObjectType.JWT).build();
+    }
+
+    /**
+     * Loads the key pair stored under the alias. The keystore type (PKCS12 or JKS) is detected from the file.
+     *
+     * @param keyPassword private key password, the keystore password is used when null
+     */
+    public static SigningKeyCache load(String keystoreFile, String password, String keyPassword, String alias) throws IOException, GeneralSecurityException {
+        if (keystoreFile == null || keystoreFile.isBlank() || alias == null || alias.isBlank())
+            throw new GeneralSecurityException("Keystore file and alias are required");
+        char[] secret = (password != null) ? password.toCharArray() : new char[0];
+        KeyStore keyStore = KeyStore.getInstance(new File(keystoreFile), secret);
+        char[] keySecret = (keyPassword != null) ? keyPassword.toCharArray() : secret;
+        if (!(keyStore.getKey(alias, keySecret) instanceof PrivateKey privateKey))
+            throw new GeneralSecurityException("No private key under alias '" + alias + "'");
+        Certificate certificate = keyStore.getCertificate(alias);
+        if (certificate == null)
+            throw new GeneralSecurityException("No certificate under alias '" + alias + "'");
+        return new SigningKeyCache(alias, privateKey, certificate.getPublicKey());
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    public PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    public JWSAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    JWSHeader getHeader() {
+        return header;
+    }
+
+    //Nimbus signers and verifiers are thread safe and can be shared by every request
+    public JWSSigner getSigner() {
+        return signer;
+    }
+
+    public JWSVerifier getVerifier() {
+        return verifier;
+    }
+
+    /**
+     * Signs the claims with this key, with {@code alg}, {@code kid} and {@code typ: JWT} headers.
+     *
+     * @return the compact serialization of the signed token
+     */
+    public String sign(JWTClaimsSet claims) throws JOSEException {
+        SignedJWT jwt = new SignedJWT(header, claims);
+        jwt.sign(signer);
+        return jwt.serialize();
+    }
+
+    /**
+     * Signs and verifies a synthetic short-lived token the given number of times.
+     *
+     * @return elapsed time in milliseconds
+     * @throws JOSEException if signing fails or a signature does not verify
+     */
+    public long warmUp(int rounds) throws JOSEException {
+        long started = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            long now = System.currentTimeMillis();
+            JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                    .subject(WARM_UP_SUBJECT)
+                    .jwtID(UUID.randomUUID().toString())
+                    .issueTime(new Date(now))
+                    .expirationTime(new Date(now + WARM_UP_TOKEN_DURATION_MILLIS))
+                    .build();
+            SignedJWT jwt = new SignedJWT(header, claims);
+            jwt.sign(signer);
+            if (!jwt.verify(verifier))
+                throw new JOSEException("Warm-up token signed with alias '" + alias + "' does not verify");
+        }
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000L;
+        log.debug("Signing key '{}' ({}) warmed up with {} sign/verify rounds in {} ms", alias, algorithm, rounds, elapsedMillis);
+        return elapsedMillis;
+    }
+
+    /**
+     * @return the public key as a JSON Web Key (RFC 7517 / 7518 / 8037) with {@code kid}, {@code alg} and
+     * {@code use: sig}
+     */
+    public String toJwk() {
+        StringBuilder jwk = new StringBuilder(512).append('{');
+        if (publicKey instanceof RSAPublicKey rsaPublicKey) {
+            jwk.append("\"kty\":\"RSA\",\"n\":\"").append(base64Url(unsigned(rsaPublicKey.getModulus().toByteArray())))
+                    .append("\",\"e\":\"").append(base64Url(unsigned(rsaPublicKey.getPublicExponent().toByteArray()))).append('"');
+        } else if (publicKey instanceof ECPublicKey ecPublicKey) {
+            int fieldSize = ecPublicKey.getParams().getCurve().getField().getFieldSize();
+            int length = (fieldSize + 7) / 8;
+            jwk.append("\"kty\":\"EC\",\"crv\":\"P-").append(fieldSize)
+                    .append("\",\"x\":\"").append(base64Url(padded(ecPublicKey.getW().getAffineX().toByteArray(), length)))
+                    .append("\",\"y\":\"").append(base64Url(padded(ecPublicKey.getW().getAffineY().toByteArray(), length))).append('"');
+        } else {
+            //Ed25519: the X.509 encoding ends with the 32 bytes raw public key
+            byte[] encoded = publicKey.getEncoded();
+            jwk.append("\"kty\":\"OKP\",\"crv\":\"Ed25519\",\"x\":\"")
+                    .append(base64Url(Arrays.copyOfRange(encoded, encoded.length - ED25519_KEY_BYTES, encoded.length))).append('"');
+        }
+        return jwk.append(",\"kid\":\"").append(keyId).append("\",\"alg\":\"").append(algorithm.getName())
+                .append("\",\"use\":\"sig\"}").toString();
+    }
+
+    private static JWSAlgorithm ecAlgorithm(ECPublicKey publicKey) throws GeneralSecurityException {
+        int fieldSize = publicKey.getParams().getCurve().getField().getFieldSize();
+        return switch (fieldSize) {
+            case 256 -> JWSAlgorithm.ES256;
+            case 384 -> JWSAlgorithm.ES384;
+            case 521 -> JWSAlgorithm.ES512;
+            default -> throw new GeneralSecurityException("Unsupported EC curve size " + fieldSize);
+        };
+    }
+
+    private static String base64Url(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    //BigInteger.toByteArray() is signed: drop the sign byte
+    private static byte[] unsigned(byte[] bytes) {
+        return (bytes.length > 1 && bytes[0] == 0) ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+
+    //EC coordinates are encoded with the full field length
+    private static byte[] padded(byte[] bytes, int length) {
+        byte[] value = unsigned(bytes);
+        if (value.length >= length)
+            return value;
+        byte[] result = new byte[length];
+        System.arraycopy(value, 0, result, length - value.length, value.length);
+        return result;
+    }
+
+    //stable across restarts and nodes: truncated SHA-256 of the encoded public key, base64url
+    static String keyId(PublicKey publicKey) throws GeneralSecurityException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(publicKey.getEncoded());
+        return base64Url(Arrays.copyOf(digest, KEY_ID_BYTES));
+    }
+}
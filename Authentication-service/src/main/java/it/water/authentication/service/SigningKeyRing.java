@@ -0,0 +1,288 @@
+package it.water.authentication.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jwt.SignedJWT;
+import it.water.authentication.api.JwkSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing and verification keys with zero-downtime rotation. The keystore file is polled every
+ * {@code reloadIntervalMillis}; when it changes the signing profiles are reloaded (and warmed up) without a
+ * restart. Keys that are no longer part of the keystore configuration stop signing at once but keep
+ * verifying for {@code overlapMillis} (by default the token lifetime), so every outstanding token stays valid
+ * until its natural expiry and a rotation causes no re-login storm. Extra verification-only aliases let the
+ * next key be published before it starts signing.
+ * <p>
+ * Verification keys are selected by the {@code kid} header; tokens without a kid are checked against the
+ * default key. The key set is an immutable snapshot swapped atomically on reload.
+ */
+public class SigningKeyRing {
+    private static final Logger log = LoggerFactory.getLogger(SigningKeyRing.class);
+
+    private final String keystoreFile;
+    private final String password;
+    private final String keyPassword;
+    private final String defaultAlias;
+    private final String profiles;
+    private final List<String> verificationAliases;
+    private final long overlapMillis;
+    private final long reloadIntervalMillis;
+    private final int warmUpRounds;
+    //algorithms the signing keys may use, any when empty
+    private final Set<JWSAlgorithm> signingAlgorithms;
+
+    private volatile KeySet keySet;
+    private long keystoreLastModified;
+    private long keystoreLength;
+    private ScheduledExecutorService scheduler;
+    //JWK set of the verification keys it was built from, rebuilt only when they change
+    private volatile CachedJwkSet cachedJwkSet;
+
+    /**
+     * Immutable key snapshot.
+     */
+    private static final class KeySet {
+        private final SigningProfiles profiles;
+        //kid -> key, current signing keys and verification-only keys
+        private final Map<String, SigningKeyCache> activeKeys;
+        //kid -> key no longer signing, verifying until the instant in retiredUntil
+        private final Map<String, SigningKeyCache> retiredKeys;
+        private final Map<String, Long> retiredUntil;
+
+        private KeySet(SigningProfiles profiles, Map<String, SigningKeyCache> activeKeys, Map<String, SigningKeyCache> retiredKeys, Map<String, Long> retiredUntil) {
+            this.profiles = profiles;
+            this.activeKeys = Collections.unmodifiableMap(activeKeys);
+            this.retiredKeys = Collections.unmodifiableMap(retiredKeys);
+            this.retiredUntil = Collections.unmodifiableMap(retiredUntil);
+        }
+    }
+
+    private static final class CachedJwkSet {
+        private final Set<String> keyIds;
+        private final JwkSet jwkSet;
+
+        private CachedJwkSet(Set<String> keyIds, JwkSet jwkSet) {
+            this.keyIds = keyIds;
+            this.jwkSet = jwkSet;
+        }
+    }
+
+    /**
+     * @param verificationAliases aliases accepted for verification only (e.g. the next key before a rotation)
+     * @param overlapMillis       how long a key removed from the configuration keeps verifying
+     * @param reloadIntervalMillis keystore change polling interval; 0 disables the background reload
+     * @param warmUpRounds        sign/verify rounds run on the new keys before they start signing; 0 disables
+     */
+    public SigningKeyRing(String keystoreFile, String password, String keyPassword, String defaultAlias, String profiles,
+                          List<String> verificationAliases, long overlapMillis, long reloadIntervalMillis, int warmUpRounds) {
+        this(keystoreFile, password, keyPassword, defaultAlias, profiles, verificationAliases, overlapMillis, reloadIntervalMillis, warmUpRounds, Set.of());
+    }
+
+    /**
+     * @param signingAlgorithms algorithms the signing keys may use, any when empty: a key set with a signing key
+     *                          of another algorithm is refused at start and on reload (verification-only aliases
+     *                          are not checked)
+     */
+    public SigningKeyRing(String keystoreFile, String password, String keyPassword, String defaultAlias, String profiles,
+                          List<String> verificationAliases, long overlapMillis, long reloadIntervalMillis, int warmUpRounds,
+                          Set<JWSAlgorithm> signingAlgorithms) {
+        this.keystoreFile = keystoreFile;
+        this.password = password;
+        this.keyPassword = keyPassword;
+        this.defaultAlias = defaultAlias;
+        this.profiles = profiles;
+        this.verificationAliases = List.copyOf(verificationAliases);
+        this.overlapMillis = overlapMillis;
+        this.reloadIntervalMillis = reloadIntervalMillis;
+        this.warmUpRounds = warmUpRounds;
+        this.signingAlgorithms = Set.copyOf(signingAlgorithms);
+    }
+
+    /**
+     * Loads (and warms up) the keys in the calling thread, then schedules the keystore change polling.
+     */
+    public synchronized void start() throws IOException, GeneralSecurityException, JOSEException {
+        reload(System.currentTimeMillis());
+        if (reloadIntervalMillis > 0 && scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(AuthenticationExecutors.daemonThreadFactory("water-signing-key-reload"));
+            scheduler.scheduleWithFixedDelay(this::reloadIfChanged, reloadIntervalMillis, reloadIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public SigningProfiles getProfiles() {
+        KeySet current = keySet;
+        return (current != null) ? current.profiles : null;
+    }
+
+    /**
+     * @return the key with the given id if it is signing, verification-only or retired within the overlap window
+     */
+    public SigningKeyCache verificationKey(String kid) {
+        KeySet current = keySet;
+        if (current == null)
+            return null;
+        if (kid == null)
+            return current.profiles.getDefaultKey();
+        SigningKeyCache key = current.activeKeys.get(kid);
+        if (key != null)
+            return key;
+        Long until = current.retiredUntil.get(kid);
+        return (until != null && until > System.currentTimeMillis()) ? current.retiredKeys.get(kid) : null;
+    }
+
+    /**
+     * @return every key a validator should currently accept, by kid
+     */
+    public Map<String, SigningKeyCache> verificationKeys() {
+        KeySet current = keySet;
+        if (current == null)
+            return Map.of();
+        long now = System.currentTimeMillis();
+        Map<String, SigningKeyCache> keys = new LinkedHashMap<>(current.activeKeys);
+        current.retiredKeys.forEach((kid, key) -> {
+            if (current.retiredUntil.get(kid) > now)
+                keys.putIfAbsent(kid, key);
+        });
+        return keys;
+    }
+
+    /**
+     * @return the public keys returned by {@link #verificationKeys()} as a JWK set, encoded once per key set
+     * change and reused by every request in between
+     */
+    public JwkSet jwkSet(long maxAgeSeconds) {
+        Map<String, SigningKeyCache> keys = verificationKeys();
+        CachedJwkSet cached = cachedJwkSet;
+        if (cached != null && cached.jwkSet.getMaxAgeSeconds() == maxAgeSeconds && cached.keyIds.equals(keys.keySet()))
+            return cached.jwkSet;
+        JwkSet jwkSet = encodeJwkSet(keys.values(), maxAgeSeconds);
+        cachedJwkSet = new CachedJwkSet(Set.copyOf(keys.keySet()), jwkSet);
+        return jwkSet;
+    }
+
+    /**
+     * @return the JWK set document of the keys, with a strong ETag computed from its bytes
+     */
+    public static JwkSet encodeJwkSet(Collection<SigningKeyCache> keys, long maxAgeSeconds) {
+        StringBuilder json = new StringBuilder(256 + keys.size() * 512).append("{\"keys\":[");
+        String separator = "";
+        for (SigningKeyCache key : keys) {
+            json.append(separator).append(key.toJwk());
+            separator = ",";
+        }
+        byte[] body = json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return new JwkSet(body, '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + '"', maxAgeSeconds);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * @return true if the signature verifies with the key selected by the token kid
+     */
+    public boolean verify(SignedJWT jwt) throws JOSEException {
+        SigningKeyCache key = verificationKey(jwt.getHeader().getKeyID());
+        return key != null && key.getAlgorithm().equals(jwt.getHeader().getAlgorithm()) && jwt.verify(key.getVerifier());
+    }
+
+    /**
+     * One background round: reloads the keys when the keystore file changed. Never throws, the current keys
+     * stay in use on failure.
+     */
+    void reloadIfChanged() {
+        File file = new File(keystoreFile);
+        synchronized (this) {
+            if (file.lastModified() == keystoreLastModified && file.length() == keystoreLength)
+                return;
+        }
+        try {
+            reload(System.currentTimeMillis());
+        } catch (IOException | GeneralSecurityException | JOSEException | RuntimeException e) {
+            log.warn("Signing keys reload failed, current keys stay in use: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the configured keys, warms them up and swaps them in. Keys of the previous set missing from the
+     * new one are retired for the overlap window.
+     */
+    synchronized void reload(long now) throws IOException, GeneralSecurityException, JOSEException {
+        File file = new File(keystoreFile);
+        long lastModified = file.lastModified();
+        long length = file.length();
+        SigningProfiles newProfiles = SigningProfiles.load(keystoreFile, password, keyPassword, defaultAlias, profiles);
+        checkSigningAlgorithm(newProfiles.getDefaultKey());
+        for (SigningKeyCache key : newProfiles.getIssuerKeys())
+            checkSigningAlgorithm(key);
+        Map<String, SigningKeyCache> activeKeys = new LinkedHashMap<>();
+        activeKeys.put(newProfiles.getDefaultKey().getKeyId(), newProfiles.getDefaultKey());
+        newProfiles.getIssuerKeys().forEach(key -> activeKeys.putIfAbsent(key.getKeyId(), key));
+        for (String alias : verificationAliases) {
+            SigningKeyCache key = SigningKeyCache.load(keystoreFile, password, keyPassword, alias);
+            activeKeys.putIfAbsent(key.getKeyId(), key);
+        }
+        if (warmUpRounds > 0)
+            newProfiles.warmUp(warmUpRounds);
+        Map<String, SigningKeyCache> retiredKeys = new LinkedHashMap<>();
+        Map<String, Long> retiredUntil = new LinkedHashMap<>();
+        KeySet previous = keySet;
+        if (previous != null) {
+            previous.retiredKeys.forEach((kid, key) -> {
+                long until = previous.retiredUntil.get(kid);
+                if (until > now && !activeKeys.containsKey(kid)) {
+                    retiredKeys.put(kid, key);
+                    retiredUntil.put(kid, until);
+                }
+            });
+            retire(previous.activeKeys.values(), activeKeys, retiredKeys, retiredUntil, now + overlapMillis);
+        }
+        keySet = new KeySet(newProfiles, activeKeys, retiredKeys, retiredUntil);
+        keystoreLastModified = lastModified;
+        keystoreLength = length;
+        if (previous != null)
+            log.info("Signing keys reloaded: signing with kid {}, {} keys verifying, {} retired", newProfiles.getDefaultKey().getKeyId(), activeKeys.size(), retiredKeys.size());
+    }
+
+    private void checkSigningAlgorithm(SigningKeyCache key) throws GeneralSecurityException {
+        if (!signingAlgorithms.isEmpty() && !signingAlgorithms.contains(key.getAlgorithm()))
+            throw new GeneralSecurityException("Signing key '" + key.getAlias() + "' uses " + key.getAlgorithm()
+                    + ", the token validator of this deployment only verifies " + signingAlgorithms);
+    }
+
+    private static void retire(Collection<SigningKeyCache> previousKeys, Map<String, SigningKeyCache> activeKeys,
+                               Map<String, SigningKeyCache> retiredKeys, Map<String, Long> retiredUntil, long until) {
+        for (SigningKeyCache key : previousKeys) {
+            if (!activeKeys.containsKey(key.getKeyId())) {
+                retiredKeys.put(key.getKeyId(), key);
+                retiredUntil.put(key.getKeyId(), until);
+            }
+        }
+    }
+}
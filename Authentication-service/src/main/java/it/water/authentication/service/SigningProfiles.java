@@ -0,0 +1,113 @@
+package it.water.authentication.service;
+
+import com.nimbusds.jose.JOSEException;
+import it.water.authentication.api.options.TokenClaimsProfile;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Signing keys by issuer, loaded from the keystore at activation. The default profile uses
+ * {@code water.authentication.signing.alias} (falling back to {@code water.keystore.alias});
+ * {@code water.authentication.signing.profiles} maps issuers to other aliases, as a comma separated list of
+ * {@code issuerName=alias} pairs. The JWS algorithm of each profile follows its key type (see
+ * {@link SigningKeyCache}), so moving an issuer to ES256 or Ed25519 only means storing such a key in the
+ * keystore and pointing the issuer at its alias.
+ * <p>
+ * Each profile set also caches one {@link TokenIssuanceTemplate} per issuer, dropped with the set when the keys
+ * are reloaded.
+ */
+public class SigningProfiles {
+
+    private final SigningKeyCache defaultKey;
+    private final Map<String, SigningKeyCache> keysByIssuer;
+    //issuer ("" for none) -> issuance template, issuers are the few names of the authentication providers
+    private final Map<String, TokenIssuanceTemplate> templatesByIssuer = new ConcurrentHashMap<>();
+
+    SigningProfiles(SigningKeyCache defaultKey, Map<String, SigningKeyCache> keysByIssuer) {
+        this.defaultKey = defaultKey;
+        this.keysByIssuer = Collections.unmodifiableMap(keysByIssuer);
+    }
+
+    /**
+     * @param profiles {@code issuerName=alias} pairs, may be null
+     */
+    public static SigningProfiles load(String keystoreFile, String password, String keyPassword, String defaultAlias, String profiles)
+            throws IOException, GeneralSecurityException {
+        SigningKeyCache defaultKey = SigningKeyCache.load(keystoreFile, password, keyPassword, defaultAlias);
+        Map<String, SigningKeyCache> keysByAlias = new LinkedHashMap<>();
+        keysByAlias.put(defaultAlias, defaultKey);
+        Map<String, SigningKeyCache> keysByIssuer = new LinkedHashMap<>();
+        for (Map.Entry<String, String> profile : parse(profiles).entrySet()) {
+            SigningKeyCache key = keysByAlias.get(profile.getValue());
+            if (key == null) {
+                key = SigningKeyCache.load(keystoreFile, password, keyPassword, profile.getValue());
+                keysByAlias.put(profile.getValue(), key);
+            }
+            keysByIssuer.put(profile.getKey(), key);
+        }
+        return new SigningProfiles(defaultKey, keysByIssuer);
+    }
+
+    public SigningKeyCache getDefaultKey() {
+        return defaultKey;
+    }
+
+    /**
+     * @return the key of the issuer profile, the default key when the issuer has none
+     */
+    public SigningKeyCache forIssuer(String issuer) {
+        SigningKeyCache key = (issuer != null) ? keysByIssuer.get(issuer) : null;
+        return (key != null) ? key : defaultKey;
+    }
+
+    /**
+     * @return the cached issuance template of the issuer, rebuilt when the token duration or the claims profile
+     * changes
+     */
+    public TokenIssuanceTemplate issuanceTemplate(String issuer, long durationMillis, TokenClaimsProfile profile) {
+        String templateKey = (issuer != null) ? issuer : "";
+        TokenIssuanceTemplate template = templatesByIssuer.get(templateKey);
+        if (template == null || template.getDurationMillis() != durationMillis || template.getProfile() != profile) {
+            template = new TokenIssuanceTemplate(forIssuer(issuer), issuer, durationMillis, profile);
+            templatesByIssuer.put(templateKey, template);
+        }
+        return template;
+    }
+
+    public Collection<SigningKeyCache> getIssuerKeys() {
+        return keysByIssuer.values();
+    }
+
+    /**
+     * Warms up the default key and every distinct profile key.
+     */
+    public void warmUp(int rounds) throws JOSEException {
+        defaultKey.warmUp(rounds);
+        for (SigningKeyCache key : keysByIssuer.values().stream().distinct().toList()) {
+            if (key != defaultKey)
+                key.warmUp(rounds);
+        }
+    }
+
+    static Map<String, String> parse(String profiles) {
+        Map<String, String> aliasesByIssuer = new LinkedHashMap<>();
+        if (profiles == null || profiles.isBlank())
+            return aliasesByIssuer;
+        for (String token : profiles.split(",")) {
+            int separator = token.indexOf('=');
+            if (separator <= 0)
+                continue;
+            String issuer = token.substring(0, separator).trim();
+            String alias = token.substring(separator + 1).trim();
+            if (!issuer.isEmpty() && !alias.isEmpty())
+                aliasesByIssuer.put(issuer, alias);
+        }
+        return aliasesByIssuer;
+    }
+}
@@ -0,0 +1,205 @@
+package it.water.authentication.service;
+
+import it.water.authentication.service.execption.LoginAdmissionRejectedException;
+import it.water.core.permission.exceptions.UnauthorizedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Admission control for provider login work (password hashing). At most {@code maxConcurrent} logins run
+ * at the same time; the others wait in a bounded queue per tenant, and free slots are granted with weighted
+ * fair queuing (start-time fair queuing on virtual time): each waiting login gets a finish tag of
+ * {@code max(virtualTime, tenant last finish) + 1/weight} and the lowest tag is served first. A tenant with
+ * weight {@code w} therefore gets {@code w / sum(weights of the busy tenants)} of the login throughput while
+ * it has queued logins, whatever the size of the bursts of the others, and an idle tenant does not bank
+ * credit for later. Logins that cannot be queued, or wait longer than {@code maxWaitMillis}, are rejected.
+ */
+public class TenantLoginAdmission {
+    private static final Logger log = LoggerFactory.getLogger(TenantLoginAdmission.class);
+
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final long maxWaitMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    //guarded by lock
+    private final Map<String, TenantQueue> tenants = new HashMap<>();
+    private final PriorityQueue<Ticket> waiting = new PriorityQueue<>(
+            Comparator.comparingDouble((Ticket t) -> t.finishTag).thenComparingLong(t -> t.sequence));
+    private int running;
+    private long sequence;
+    private double virtualTime;
+
+    private static final class TenantQueue {
+        private final ArrayDeque<Ticket> tickets = new ArrayDeque<>();
+        private double lastFinishTag;
+    }
+
+    private static final class Ticket {
+        private final TenantQueue tenantQueue;
+        private final double startTag;
+        private final double finishTag;
+        private final long sequence;
+        private final Condition grantedCondition;
+        private boolean granted;
+
+        private Ticket(TenantQueue tenantQueue, double startTag, double finishTag, long sequence, Condition grantedCondition) {
+            this.tenantQueue = tenantQueue;
+            this.startTag = startTag;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+            this.grantedCondition = grantedCondition;
+        }
+    }
+
+    /**
+     * @param maxConcurrent logins running at the same time
+     * @param queueCapacity logins each tenant may have waiting; beyond it new logins are rejected
+     * @param maxWaitMillis longest wait for a slot before the login is rejected
+     */
+    public TenantLoginAdmission(int maxConcurrent, int queueCapacity, long maxWaitMillis) {
+        this.maxConcurrent = Math.max(maxConcurrent, 1);
+        this.queueCapacity = Math.max(queueCapacity, 0);
+        this.maxWaitMillis = Math.max(maxWaitMillis, 0L);
+    }
+
+    /**
+     * Runs the login work once the tenant is granted a slot.
+     *
+     * @param tenant tenant identifier, null for logins not bound to a tenant
+     * @param weight relative share of the tenant (values below 1 count as 1)
+     * @param work   provider login
+     */
+    public <T> T admit(String tenant, int weight, Supplier<T> work) {
+        Ticket ticket = acquire(tenant, Math.max(weight, 1));
+        awaitGrant(tenant, ticket);
+        try {
+            return work.get();
+        } finally {
+            release();
+        }
+    }
+
+    public int running() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queued() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //a rejected client retries once a full wait for a slot has elapsed
+    private long retryAfterSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(maxWaitMillis + 999L);
+    }
+
+    private Ticket acquire(String tenant, int weight) {
+        lock.lock();
+        try {
+            TenantQueue tenantQueue = tenants.computeIfAbsent(tenantKey(tenant), k -> new TenantQueue());
+            double startTag = Math.max(virtualTime, tenantQueue.lastFinishTag);
+            double finishTag = startTag + 1.0d / weight;
+            //free slot and nobody waiting: run immediately, the tags still account for the tenant usage
+            if (running < maxConcurrent && waiting.isEmpty()) {
+                Ticket ticket = new Ticket(tenantQueue, startTag, finishTag, sequence++, null);
+                tenantQueue.lastFinishTag = finishTag;
+                virtualTime = startTag;
+                ticket.granted = true;
+                running++;
+                return ticket;
+            }
+            if (tenantQueue.tickets.size() >= queueCapacity) {
+                log.warn("Login queue of tenant {} is full ({} waiting), rejecting login", tenantKey(tenant), queueCapacity);
+                throw new LoginAdmissionRejectedException("Too many concurrent logins, retry later", retryAfterSeconds());
+            }
+            Ticket ticket = new Ticket(tenantQueue, startTag, finishTag, sequence++, lock.newCondition());
+            tenantQueue.lastFinishTag = finishTag;
+            tenantQueue.tickets.add(ticket);
+            waiting.add(ticket);
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //returns holding a slot, or throws without holding one
+    private void awaitGrant(String tenant, Ticket ticket) {
+        lock.lock();
+        try {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+            while (!ticket.granted) {
+                if (remainingNanos <= 0L) {
+                    withdraw(ticket);
+                    log.warn("Login of tenant {} waited more than {} ms for a slot, rejecting login", tenantKey(tenant), maxWaitMillis);
+                    throw new LoginAdmissionRejectedException("Too many concurrent logins, retry later", retryAfterSeconds());
+                }
+                remainingNanos = ticket.grantedCondition.awaitNanos(remainingNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (ticket.granted)
+                releaseSlot();
+            else
+                withdraw(ticket);
+            throw new UnauthorizedException("Login interrupted");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //removes a ticket that gave up waiting
+    private void withdraw(Ticket ticket) {
+        waiting.remove(ticket);
+        ticket.tenantQueue.tickets.remove(ticket);
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            releaseSlot();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //hands the freed slot to the waiting ticket with the lowest finish tag; called holding the lock
+    private void releaseSlot() {
+        running--;
+        while (running < maxConcurrent && !waiting.isEmpty()) {
+            Ticket next = waiting.poll();
+            next.tenantQueue.tickets.remove(next);
+            virtualTime = next.startTag;
+            next.granted = true;
+            running++;
+            next.grantedCondition.signal();
+        }
+        //forget tenants with nothing queued whose last login is behind the virtual clock: they would
+        //restart from virtualTime anyway. Only recently active tenants are in the map, so this is cheap
+        //compared to the password hashing it schedules.
+        tenants.values().removeIf(q -> q.tickets.isEmpty() && q.lastFinishTag <= virtualTime);
+    }
+
+    private static String tenantKey(String tenant) {
+        return (tenant != null) ? tenant : "shared";
+    }
+}
@@ -0,0 +1,187 @@
+package it.water.authentication.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.util.Base64URL;
+import it.water.authentication.api.options.TokenClaimsProfile;
+import it.water.core.api.model.Role;
+import it.water.core.api.security.Authenticable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Pre-encoded parts of the tokens issued for one issuer with one signing key. The JWS header ({@code alg},
+ * {@code kid}, {@code typ}) is serialized and Base64URL-encoded once, the issuer claim is kept as a ready JSON
+ * fragment and the token duration in seconds is fixed, so each token only writes its dynamic claims (subject,
+ * jti, issue and expiration instants, logged entity id, admin flag and roles), encodes them and signs.
+ * <p>
+ * The claims are the same written by {@link com.nimbusds.jwt.JWTClaimsSet} for the previous issuance path:
+ * instants in seconds, null values omitted. With the {@link TokenClaimsProfile#COMPACT} profile they follow
+ * the {@link CompactClaims} layout.
+ */
+public class TokenIssuanceTemplate {
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+    //initial payload capacity, enough for the claims of a principal with a few roles
+    private static final int PAYLOAD_CAPACITY = 256;
+
+    private final SigningKeyCache key;
+    private final String issuer;
+    private final long durationMillis;
+    private final TokenClaimsProfile profile;
+    //Base64URL header followed by the '.' separator, as ASCII bytes
+    private final byte[] encodedHeader;
+    //JSON fragment of the claims shared by every token of the issuer, starting with ','
+    private final String staticClaims;
+
+    TokenIssuanceTemplate(SigningKeyCache key, String issuer, long durationMillis, TokenClaimsProfile profile) {
+        this.key = key;
+        this.issuer = issuer;
+        this.durationMillis = durationMillis;
+        this.profile = profile;
+        this.encodedHeader = (key.getHeader().toBase64URL().toString() + '.').getBytes(StandardCharsets.US_ASCII);
+        StringBuilder claims = new StringBuilder();
+        if (issuer != null)
+            appendString(claims.append(",\"iss\":"), issuer);
+        if (profile == TokenClaimsProfile.COMPACT)
+            appendString(claims.append(",\"").append(CompactClaims.CLAIM_PROFILE).append("\":"), CompactClaims.PROFILE_COMPACT);
+        this.staticClaims = claims.toString();
+    }
+
+    public SigningKeyCache getKey() {
+        return key;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public TokenClaimsProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Signs a new token for the principal, issued at {@code now} and expiring after the template duration.
+     *
+     * @return the compact serialization of the signed token
+     */
+    public String sign(Authenticable authenticable, long now) throws JOSEException {
+        return sign(authenticable, now, null, 0L);
+    }
+
+    /**
+     * Same as {@link #sign(Authenticable, long)}, embedding the permission snapshot of the principal.
+     *
+     * @param permissions        resource name -> allowed action names, null to embed no snapshot
+     * @param permissionsVersion permissions version the snapshot was read at
+     */
+    public String sign(Authenticable authenticable, long now, Map<String, ? extends Collection<String>> permissions, long permissionsVersion) throws JOSEException {
+        byte[] payload = BASE64_URL.encode(payload(authenticable, now, permissions, permissionsVersion).getBytes(StandardCharsets.UTF_8));
+        byte[] signingInput = new byte[encodedHeader.length + payload.length];
+        System.arraycopy(encodedHeader, 0, signingInput, 0, encodedHeader.length);
+        System.arraycopy(payload, 0, signingInput, encodedHeader.length, payload.length);
+        JWSHeader header = key.getHeader();
+        Base64URL signature = key.getSigner().sign(header, signingInput);
+        String encodedSignature = signature.toString();
+        return new StringBuilder(signingInput.length + 1 + encodedSignature.length())
+                .append(new String(signingInput, StandardCharsets.US_ASCII))
+                .append('.')
+                .append(encodedSignature)
+                .toString();
+    }
+
+    String payload(Authenticable authenticable, long now, Map<String, ? extends Collection<String>> permissions, long permissionsVersion) {
+        long issuedAt = now / 1000L;
+        long expiresAt = (now + durationMillis) / 1000L;
+        StringBuilder json = new StringBuilder(PAYLOAD_CAPACITY).append('{');
+        json.append("\"jti\":\"").append(UUID.randomUUID()).append('"');
+        if (authenticable.getScreenName() != null)
+            appendString(json.append(",\"sub\":"), authenticable.getScreenName());
+        json.append(staticClaims);
+        json.append(",\"iat\":").append(issuedAt);
+        json.append(",\"exp\":").append(expiresAt);
+        //the principal claims keep their names with every profile: the platform security filter reads them
+        appendPrincipalClaims(json, authenticable);
+        if (permissions != null)
+            appendPermissions(json, permissions, permissionsVersion, profile == TokenClaimsProfile.COMPACT);
+        return json.append('}').toString();
+    }
+
+    private static void appendPrincipalClaims(StringBuilder json, Authenticable authenticable) {
+        if (authenticable.getLoggedEntityId() != null)
+            json.append(",\"").append(AuthenticationSystemServiceImpl.TOKEN_CLAIM_LOGGED_ENTITY_ID).append("\":").append(authenticable.getLoggedEntityId());
+        json.append(",\"").append(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ADMIN).append("\":").append(authenticable.isAdmin());
+        json.append(",\"").append(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ROLES).append("\":[");
+        Collection<? extends Role> roles = authenticable.getRoles();
+        if (roles != null) {
+            String separator = "";
+            for (Role role : roles) {
+                json.append(separator);
+                if (role.getName() != null)
+                    appendString(json, role.getName());
+                else
+                    json.append("null");
+                separator = ",";
+            }
+        }
+        json.append(']');
+    }
+
+    private static void appendPermissions(StringBuilder json, Map<String, ? extends Collection<String>> permissions, long version, boolean compact) {
+        json.append(",\"").append(compact ? CompactClaims.CLAIM_PERMISSIONS : AuthenticationSystemServiceImpl.TOKEN_CLAIM_PERMISSIONS).append("\":{");
+        String separator = "";
+        for (Map.Entry<String, ? extends Collection<String>> permission : permissions.entrySet()) {
+            if (permission.getKey() == null || permission.getValue() == null)
+                continue;
+            appendString(json.append(separator), permission.getKey()).append(':');
+            long bits = compact ? CompactClaims.permissionBits(permission.getValue()) : -1L;
+            if (bits >= 0) {
+                json.append(bits);
+            } else {
+                json.append('[');
+                String actionSeparator = "";
+                for (String action : permission.getValue()) {
+                    if (action != null) {
+                        appendString(json.append(actionSeparator), action);
+                        actionSeparator = ",";
+                    }
+                }
+                json.append(']');
+            }
+            separator = ",";
+        }
+        json.append("},\"").append(compact ? CompactClaims.CLAIM_PERMISSIONS_VERSION : AuthenticationSystemServiceImpl.TOKEN_CLAIM_PERMISSIONS_VERSION)
+                .append("\":").append(version);
+    }
+
+    //JSON string literal (RFC 8259): quotes, backslashes and control characters are escaped
+    static StringBuilder appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                case '\b' -> json.append("\\b");
+                case '\f' -> json.append("\\f");
+                default -> {
+                    if (c < 0x20)
+                        json.append(String.format("\\u%04x", (int) c));
+                    else
+                        json.append(c);
+                }
+            }
+        }
+        return json.append('"');
+    }
+}
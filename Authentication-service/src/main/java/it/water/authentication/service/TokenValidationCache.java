@@ -0,0 +1,165 @@
+package it.water.authentication.service;
+
+import it.water.authentication.api.TokenIntrospection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of successful token validations, so that repeated introspection of the same token costs a
+ * map lookup instead of a signature verification. Entries are keyed by the SHA-256 of the token (raw tokens
+ * are never kept), live at most {@code ttlMillis} and never beyond the token expiry. Only active results are
+ * cached: revocations remove the entries of the revoked jti or subject immediately.
+ * <p>
+ * A validation racing with a revocation must not re-insert a stale result: every invalidation bumps an
+ * epoch, and {@link #put(String, TokenIntrospection, long)} drops its own entry if the epoch moved since
+ * the validation started.
+ */
+public class TokenValidationCache {
+    private static final Logger log = LoggerFactory.getLogger(TokenValidationCache.class);
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    //jti -> token hash, for the logout invalidation
+    private final ConcurrentHashMap<String, String> keysByJwtId = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+
+    private static final class Entry {
+        private final TokenIntrospection introspection;
+        private final long cachedAt;
+        private final long expiresAt;
+
+        private Entry(TokenIntrospection introspection, long cachedAt, long expiresAt) {
+            this.introspection = introspection;
+            this.cachedAt = cachedAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public TokenValidationCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(maxEntries, 1);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return the epoch to pass to {@link #put(String, TokenIntrospection, long)}, read before validating
+     */
+    public long epoch() {
+        return epoch.get();
+    }
+
+    /**
+     * @return the cached active result, null on miss or expiry
+     */
+    public TokenIntrospection get(String token) {
+        String key = key(token);
+        Entry entry = entries.get(key);
+        if (entry == null)
+            return null;
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            remove(key, entry);
+            return null;
+        }
+        return entry.introspection;
+    }
+
+    /**
+     * Caches an active result until the token expiry, capped by the cache ttl.
+     *
+     * @param epoch value of {@link #epoch()} read before the validation
+     */
+    public void put(String token, TokenIntrospection introspection, long epoch) {
+        if (!introspection.isActive() || ttlMillis <= 0)
+            return;
+        long now = System.currentTimeMillis();
+        long expiresAt = now + ttlMillis;
+        if (introspection.getExpiresAt() > 0)
+            expiresAt = Math.min(expiresAt, introspection.getExpiresAt());
+        if (expiresAt <= now)
+            return;
+        String key = key(token);
+        evictIfNeeded(now);
+        Entry entry = new Entry(introspection, now, expiresAt);
+        entries.put(key, entry);
+        if (introspection.getJwtId() != null)
+            keysByJwtId.put(introspection.getJwtId(), key);
+        //a revocation ran during the validation: the result may be stale
+        if (this.epoch.get() != epoch)
+            remove(key, entry);
+    }
+
+    public void invalidateJwtId(String jwtId) {
+        if (jwtId == null)
+            return;
+        epoch.incrementAndGet();
+        String key = keysByJwtId.remove(jwtId);
+        if (key != null)
+            entries.remove(key);
+    }
+
+    /**
+     * Drops every entry of the subject, for "logout everywhere". Scans the cache, which is bounded.
+     */
+    public void invalidateSubject(String subject) {
+        if (subject == null)
+            return;
+        epoch.incrementAndGet();
+        entries.entrySet().removeIf(e -> {
+            boolean match = subject.equals(e.getValue().introspection.getSubject());
+            if (match && e.getValue().introspection.getJwtId() != null)
+                keysByJwtId.remove(e.getValue().introspection.getJwtId(), e.getKey());
+            return match;
+        });
+    }
+
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        entries.clear();
+        keysByJwtId.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void remove(String key, Entry entry) {
+        if (entries.remove(key, entry) && entry.introspection.getJwtId() != null)
+            keysByJwtId.remove(entry.introspection.getJwtId(), key);
+    }
+
+    /**
+     * Same strategy as the virtual host cache: drop expired entries first, then the oldest ones until the
+     * cache is a batch below the cap (see {@link CacheEviction}).
+     */
+    private void evictIfNeeded(long now) {
+        if (entries.size() < maxEntries)
+            return;
+        entries.forEach((key, entry) -> {
+            if (entry.expiresAt <= now)
+                remove(key, entry);
+        });
+        int excess = entries.size() - maxEntries + 1;
+        if (excess <= 0)
+            return;
+        CacheEviction.victims(entries, entry -> true, Comparator.comparingLong(entry -> entry.cachedAt), excess + CacheEviction.batch(maxEntries) - 1)
+                .forEach(e -> remove(e.getKey(), e.getValue()));
+        log.debug("Token validation cache exceeded {} entries; evicted oldest entries", maxEntries);
+    }
+
+    private static String key(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
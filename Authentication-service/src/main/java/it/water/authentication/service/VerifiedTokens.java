@@ -0,0 +1,32 @@
+package it.water.authentication.service;
+
+import it.water.authentication.api.ParsedToken;
+
+import java.util.Objects;
+
+/**
+ * Token verified last on the current thread by {@link AuthenticationJwtTokenService}, that is by the security
+ * filter of the request being served: the bearer endpoints take it instead of decoding the token again. It is
+ * matched by raw string and removed when taken, so that a leftover of an earlier request on a pooled thread is
+ * never returned for another token.
+ */
+public final class VerifiedTokens {
+    private static final ThreadLocal<ParsedToken> LAST_VERIFIED = new ThreadLocal<>();
+
+    private VerifiedTokens() {
+    }
+
+    static void publish(ParsedToken token) {
+        LAST_VERIFIED.set(token);
+    }
+
+    /**
+     * @param raw raw bearer token of the current request
+     * @return the token verified on this thread for the same raw string, null if there is none
+     */
+    public static ParsedToken take(String raw) {
+        ParsedToken verified = LAST_VERIFIED.get();
+        LAST_VERIFIED.remove();
+        return (verified != null && Objects.equals(verified.getRaw(), raw)) ? verified : null;
+    }
+}
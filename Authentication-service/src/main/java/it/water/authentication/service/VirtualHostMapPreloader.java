@@ -0,0 +1,99 @@
+package it.water.authentication.service;
+
+import it.water.authentication.api.VirtualHostCompanyCache;
+import it.water.authentication.api.VirtualHostMappingSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the whole virtual host → companyId map into the {@link VirtualHostCompanyCache} with one bulk
+ * call and then keeps it in sync from a single background thread: every
+ * {@code refreshIntervalMillis} only the mappings changed since the previous synchronization are
+ * fetched, and every {@code fullRefreshIntervalMillis} the full map is reloaded to recover from any
+ * missed change. Failures are logged and retried on the next round; lookups keep being served from
+ * the last known map and fall back to the per-host path for unknown hosts.
+ */
+public class VirtualHostMapPreloader {
+    private static final Logger log = LoggerFactory.getLogger(VirtualHostMapPreloader.class);
+
+    private final VirtualHostMappingSource mappingSource;
+    private final VirtualHostCompanyCache virtualHostCompanyCache;
+    private final long refreshIntervalMillis;
+    private final long fullRefreshIntervalMillis;
+
+    private ScheduledExecutorService scheduler;
+    //start instant of the last successful synchronization, used as the incremental watermark
+    private volatile long lastSync;
+    private volatile long lastFullSync;
+
+    public VirtualHostMapPreloader(VirtualHostMappingSource mappingSource, VirtualHostCompanyCache virtualHostCompanyCache,
+                                   long refreshIntervalMillis, long fullRefreshIntervalMillis) {
+        this.mappingSource = mappingSource;
+        this.virtualHostCompanyCache = virtualHostCompanyCache;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.fullRefreshIntervalMillis = fullRefreshIntervalMillis;
+    }
+
+    /**
+     * Runs the initial bulk load in the calling thread, so the map is in memory when activation
+     * completes, then schedules the incremental refresh (if the interval is positive).
+     *
+     * @return true if the initial bulk load succeeded
+     */
+    public synchronized boolean start() {
+        boolean loaded = fullSync();
+        if (refreshIntervalMillis > 0 && scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(AuthenticationExecutors.daemonThreadFactory("water-vhost-map-refresh"));
+            scheduler.scheduleWithFixedDelay(this::sync, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return loaded;
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * One background round: full reload when due (or when no full load ever succeeded), incremental
+     * otherwise. Never throws, so the scheduled task is never cancelled by a transient failure.
+     */
+    void sync() {
+        long now = System.currentTimeMillis();
+        if (lastFullSync == 0L || now - lastFullSync >= fullRefreshIntervalMillis) {
+            fullSync();
+            return;
+        }
+        try {
+            Map<String, Long> changes = mappingSource.findVirtualHostMappingsChangedSince(lastSync);
+            virtualHostCompanyCache.applyChanges(changes);
+            lastSync = now;
+            if (changes != null && !changes.isEmpty())
+                log.debug("Applied {} virtual host mapping changes", changes.size());
+        } catch (RuntimeException e) {
+            log.warn("Incremental virtual host map refresh failed, retrying in {} ms: {}", refreshIntervalMillis, e.getMessage());
+        }
+    }
+
+    private boolean fullSync() {
+        long now = System.currentTimeMillis();
+        try {
+            Map<String, Long> mappings = mappingSource.findAllVirtualHostMappings();
+            virtualHostCompanyCache.preload(mappings);
+            lastSync = now;
+            lastFullSync = now;
+            log.info("Virtual host map loaded: {} mappings", mappings != null ? mappings.size() : 0);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Virtual host map bulk load failed, tenants are resolved per host until the next refresh: {}", e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package it.water.authentication.service.execption;
+
+import it.water.core.model.exceptions.WaterRuntimeException;
+
+/**
+ * Login rejected by the tenant admission layer: the tenant login queue is full or the request waited
+ * longer than allowed for a login slot. The async methods of the service fail with it as well when their
+ * executor is saturated. This is load shedding, not an authentication failure: the REST
+ * runtimes answer HTTP 503 with a Retry-After header, so clients retry instead of asking for credentials
+ * again.
+ */
+public class LoginAdmissionRejectedException extends WaterRuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public LoginAdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = Math.max(retryAfterSeconds, 1L);
+    }
+
+    //value of the Retry-After header, at least one second
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
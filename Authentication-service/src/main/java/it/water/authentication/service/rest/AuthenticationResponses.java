@@ -0,0 +1,67 @@
+package it.water.authentication.service.rest;
+
+import it.water.authentication.api.TokenIntrospection;
+import it.water.authentication.api.TokenRevocationOutcome;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bodies of the /authentication responses, shared by the runtimes exposing the resources (JAX-RS, Spring MVC,
+ * Spring WebFlux) so that they keep the same contract.
+ */
+public final class AuthenticationResponses {
+
+    private AuthenticationResponses() {
+    }
+
+    /**
+     * @param refreshToken only present when refresh tokens are enabled, otherwise the response is unchanged
+     */
+    public static Map<String, String> token(String token, String refreshToken) {
+        Map<String, String> response = new HashMap<>();
+        response.put("token", token);
+        if (refreshToken != null)
+            response.put("refreshToken", refreshToken);
+        return response;
+    }
+
+    public static Map<String, String> ok() {
+        Map<String, String> response = new HashMap<>();
+        response.put("result", "ok");
+        return response;
+    }
+
+    //readiness probe body, the status code carries the outcome (200 ready, 503 not ready)
+    public static Map<String, String> readiness(boolean ready) {
+        Map<String, String> response = new HashMap<>();
+        response.put("status", ready ? "UP" : "DOWN");
+        return response;
+    }
+
+    public static Map<String, Object> revocation(List<TokenRevocationOutcome> outcomes) {
+        long revoked = outcomes.stream().filter(outcome -> outcome == TokenRevocationOutcome.REVOKED).count();
+        Map<String, Object> response = new HashMap<>();
+        response.put("revoked", revoked);
+        response.put("outcomes", outcomes);
+        return response;
+    }
+
+    //RFC 7662 members, instants in seconds; an inactive token discloses nothing else
+    public static Map<String, Object> introspection(TokenIntrospection introspection) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("active", introspection.isActive());
+        if (introspection.isActive()) {
+            response.put("sub", introspection.getSubject());
+            response.put("iss", introspection.getIssuer());
+            response.put("jti", introspection.getJwtId());
+            if (introspection.getIssuedAt() > 0)
+                response.put("iat", introspection.getIssuedAt() / 1000L);
+            if (introspection.getExpiresAt() > 0)
+                response.put("exp", introspection.getExpiresAt() / 1000L);
+            response.put("token_type", "Bearer");
+        }
+        return response;
+    }
+}
@@ -1,9 +1,23 @@
 package it.water.authentication.service.rest;
 
 import it.water.authentication.api.AuthenticationApi;
+import it.water.authentication.api.AuthenticationSystemApi;
+import it.water.authentication.api.JwkSet;
+import it.water.authentication.api.ParsedToken;
+import it.water.authentication.api.RefreshTokenGrant;
+import it.water.authentication.api.TokenRevocationOutcome;
 import it.water.authentication.api.options.AuthenticationOption;
 import it.water.authentication.api.rest.AuthenticationRestApi;
+import it.water.authentication.service.AuthenticationConstants;
+import it.water.authentication.service.AuthenticationExecutors;
 import it.water.authentication.service.ClientIpResolver;
+import it.water.authentication.service.PropertyReader;
+import it.water.authentication.service.SecurityContextExecutor;
+import it.water.authentication.service.VerifiedTokens;
+import it.water.authentication.service.execption.LoginAdmissionRejectedException;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.interceptors.OnDeactivate;
 import it.water.core.api.security.Authenticable;
 import it.water.core.api.service.rest.FrameworkRestController;
 import it.water.core.interceptors.annotations.Inject;
@@ -12,11 +26,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import java.time.Instant;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 
 
 /**
@@ -31,10 +52,24 @@ public class AuthenticationRestControllerImpl implements AuthenticationRestApi {
     @Setter
     private AuthenticationApi authenticationApi;
 
+    //logout of the verified bearer token of the request, which the public Api does not accept
+    @Inject
+    @Setter
+    private AuthenticationSystemApi authenticationSystemApi;
+
     @Inject
     @Setter
     private AuthenticationOption authenticationOption;
 
+    @Inject
+    @Setter
+    private ApplicationProperties applicationProperties;
+
+    //carries the caller security context to the threads of the asynchronous resources
+    @Inject
+    @Setter
+    private Runtime runtime;
+
     //#34/#37 - per-request HttpServletRequest (javax namespace, JAX-RS/CXF). Used only to read the immediate
     //TCP peer and forwarding headers for the per-IP login lockout key. The Spring controller overrides
     //resolveClientIp() to read the jakarta request instead.
@@ -42,42 +77,216 @@ public class AuthenticationRestControllerImpl implements AuthenticationRestApi {
     private HttpServletRequest httpServletRequest;
 
     private static final String BEARER_PREFIX = "Bearer ";
+    private static final String RETRY_AFTER = "Retry-After";
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final int INTERNAL_SERVER_ERROR = 500;
+    private static final int DEFAULT_REST_ASYNC_THREADS = 32;
+    private static final int DEFAULT_REST_ASYNC_QUEUE_CAPACITY = 1024;
+
+    //lazily created on the first asynchronous request, shut down on deactivation
+    private volatile ExecutorService restExecutor;
+
+    @Override
+    public void login(String username, String password, Long companyId, AsyncResponse asyncResponse) {
+        //the request is only read on the container thread, the worker gets the resolved values
+        String clientIp = resolveClientIp();
+        String virtualHost = (companyId == null) ? resolveVirtualHost() : null;
+        resumeAsync(asyncResponse, () -> login(username, password, companyId, virtualHost, clientIp));
+    }
 
     @Override
     public Map<String, String> login(String username, String password, Long companyId) {
+        return login(username, password, companyId, (companyId == null) ? resolveVirtualHost() : null, resolveClientIp());
+    }
+
+    private Map<String, String> login(String username, String password, Long companyId, String virtualHost, String clientIp) {
         log.debug("User {} is logging in ...", username);
-        Map<String, String> response = new HashMap<>();
         Authenticable authenticable = companyId != null
-                ? authenticationApi.login(username, password, companyId, resolveClientIp())
-                : authenticationApi.loginForVirtualHost(
-                username, password, resolveVirtualHost(), resolveClientIp());
+                ? authenticationApi.login(username, password, companyId, clientIp)
+                : authenticationApi.loginForVirtualHost(username, password, virtualHost, clientIp);
         log.debug("User has logged in succesfully at: {} - {}", username, Instant.now());
         String token = authenticationApi.generateToken(authenticable);
-        response.put("token", token);
-        return response;
+        return AuthenticationResponses.token(token, authenticationApi.generateRefreshToken(authenticable));
+    }
+
+    @Override
+    public Map<String, String> refresh(String refreshToken) {
+        //no provider login here: the refresh token is checked and rotated, then a new access token is minted
+        RefreshTokenGrant grant = authenticationApi.refresh(refreshToken);
+        String token = authenticationApi.generateToken(grant.getAuthenticable());
+        log.debug("Token refreshed at: {}", Instant.now());
+        return AuthenticationResponses.token(token, grant.getRefreshToken());
+    }
+
+    @Override
+    public void impersonate(String targetUsername, Long companyId, AsyncResponse asyncResponse) {
+        resumeAsync(asyncResponse, () -> impersonate(targetUsername, companyId));
     }
 
     @Override
     public Map<String, String> impersonate(String targetUsername, Long companyId) {
         //@LoggedIn has already validated the caller's bearer token; the caller is resolved from the context
-        //inside the Api layer, and the IMPERSONATE permission gate is enforced in the provider.
-        Authenticable authenticable = authenticationApi.impersonate(targetUsername, companyId);
-        String token = authenticationApi.generateToken(authenticable);
+        //inside the Api layer, and the IMPERSONATE permission gate is enforced in the provider. Repeated calls
+        //for the same target reuse the token issued shortly before.
+        String token = authenticationApi.impersonationToken(targetUsername, companyId);
         log.debug("Impersonation token issued for target {} at: {}", targetUsername, Instant.now());
-        Map<String, String> response = new HashMap<>();
-        response.put("token", token);
-        return response;
+        return AuthenticationResponses.token(token, null);
+    }
+
+    @Override
+    public void logout(String authorization, AsyncResponse asyncResponse) {
+        ParsedToken token = bearerToken(authorization);
+        resumeAsync(asyncResponse, () -> logoutToken(token));
     }
 
     @Override
     public Map<String, String> logout(String authorization) {
+        return logoutToken(bearerToken(authorization));
+    }
+
+    private Map<String, String> logoutToken(ParsedToken token) {
         //@LoggedIn has already validated the bearer token by the time we get here
-        String token = extractBearerToken(authorization);
-        authenticationApi.logout(token);
+        authenticationSystemApi.logout(token);
         log.debug("Token revoked (logout) at: {}", Instant.now());
-        Map<String, String> response = new HashMap<>();
-        response.put("result", "ok");
-        return response;
+        return AuthenticationResponses.ok();
+    }
+
+    @Override
+    public Map<String, String> logoutEverywhere(String authorization) {
+        //the caller is resolved from the context; the presented token is also denylisted so that it is
+        //rejected right away by the jti check of the token validation
+        authenticationApi.logoutEverywhere();
+        authenticationSystemApi.logout(bearerToken(authorization));
+        log.debug("All tokens of the caller revoked (logout everywhere) at: {}", Instant.now());
+        return AuthenticationResponses.ok();
+    }
+
+    @Override
+    public Map<String, Object> revokeTokens(List<String> tokens) {
+        //the administrator check is done in the Api layer
+        List<TokenRevocationOutcome> outcomes = authenticationApi.revokeTokens(tokens);
+        log.debug("Bulk revocation of {} tokens at: {}", outcomes.size(), Instant.now());
+        return AuthenticationResponses.revocation(outcomes);
+    }
+
+    @Override
+    public Map<String, Object> introspect(String token) {
+        return AuthenticationResponses.introspection(authenticationApi.introspect(token));
+    }
+
+    @Override
+    public Response jwks(String ifNoneMatch) {
+        //the key set is encoded once per key change, the response only copies the shared bytes
+        JwkSet jwkSet = currentJwkSet();
+        Response.ResponseBuilder response = jwkSet.isNotModified(ifNoneMatch)
+                ? Response.notModified()
+                : Response.ok(jwkSet.getBody(), MediaType.APPLICATION_JSON);
+        return response.header(HttpHeaders.ETAG, jwkSet.getETag())
+                .header(HttpHeaders.CACHE_CONTROL, jwkSet.getCacheControl())
+                .build();
+    }
+
+    @Override
+    public Response ready() {
+        boolean ready = signingReady();
+        Response.ResponseBuilder response = ready ? Response.ok() : Response.status(SERVICE_UNAVAILABLE);
+        return response.entity(AuthenticationResponses.readiness(ready))
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    /**
+     * Runs a resource on the REST executor and resumes the suspended response with its result or its exception,
+     * which the exception mappers turn into the same status as the synchronous resource (a login rejected by the
+     * admission control becomes 503 with Retry-After). The caller security
+     * context is set on the worker for the duration of the resource. When the executor queue is full the
+     * resource runs on the calling thread, as the synchronous resource would. An {@link Error} resumes the
+     * response with 500.
+     */
+    protected void resumeAsync(AsyncResponse asyncResponse, Supplier<?> resource) {
+        SecurityContextExecutor.capture(restExecutor(), runtime).execute(() -> {
+            try {
+                asyncResponse.resume(resource.get());
+            } catch (LoginAdmissionRejectedException e) {
+                asyncResponse.resume(loginRejected(e));
+            } catch (RuntimeException e) {
+                asyncResponse.resume(e);
+            } catch (Throwable t) {
+                //an Error has no exception mapper: the response would stay suspended until the container timeout
+                log.error("Asynchronous resource failed", t);
+                asyncResponse.resume(Response.status(INTERNAL_SERVER_ERROR).build());
+            }
+        });
+    }
+
+    //load shedding: 503 with the time after which the client should retry, not a credentials failure
+    protected Response loginRejected(LoginAdmissionRejectedException e) {
+        log.debug("Login rejected by the admission control: {}", e.getMessage());
+        return Response.status(SERVICE_UNAVAILABLE)
+                .header(RETRY_AFTER, e.getRetryAfterSeconds())
+                .build();
+    }
+
+    @OnDeactivate
+    public void onDeactivate() {
+        ExecutorService executor = restExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+            restExecutor = null;
+        }
+    }
+
+    private ExecutorService restExecutor() {
+        ExecutorService executor = restExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = restExecutor;
+                if (executor == null) {
+                    int threads = PropertyReader.intProp(applicationProperties, AuthenticationConstants.REST_ASYNC_THREADS, DEFAULT_REST_ASYNC_THREADS);
+                    int queueCapacity = PropertyReader.intProp(applicationProperties, AuthenticationConstants.REST_ASYNC_QUEUE_CAPACITY, DEFAULT_REST_ASYNC_QUEUE_CAPACITY);
+                    executor = AuthenticationExecutors.newExecutor("water-authentication-rest", threads, queueCapacity);
+                    restExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Bearer token of the current request, parsed once and kept as the {@link ParsedToken#REQUEST_ATTRIBUTE}
+     * request attribute: a token already stored there for the same raw string by an earlier step of the request
+     * is reused, otherwise the one verified by the security filter ({@link VerifiedTokens}) is taken; the token
+     * is decoded again only when neither is available. Request attributes are server side state, the client
+     * cannot set them. Only called by {@code @LoggedIn} resources, whose bearer token has been verified before
+     * the resource runs.
+     */
+    protected ParsedToken bearerToken(String authorization) {
+        String raw = extractBearerToken(authorization);
+        if (getRequestAttribute(ParsedToken.REQUEST_ATTRIBUTE) instanceof ParsedToken parsed && Objects.equals(parsed.getRaw(), raw))
+            return parsed;
+        ParsedToken verified = VerifiedTokens.take(raw);
+        ParsedToken parsed = (verified != null) ? verified : authenticationSystemApi.parseToken(raw);
+        setRequestAttribute(ParsedToken.REQUEST_ATTRIBUTE, parsed);
+        return parsed;
+    }
+
+    //the Spring controller overrides these two to use the jakarta request
+    protected Object getRequestAttribute(String name) {
+        try {
+            return httpServletRequest == null ? null : httpServletRequest.getAttribute(name);
+        } catch (Exception e) {
+            log.trace("Unable to read request attribute {}: {}", name, e.getMessage());
+            return null;
+        }
+    }
+
+    protected void setRequestAttribute(String name, Object value) {
+        try {
+            if (httpServletRequest != null)
+                httpServletRequest.setAttribute(name, value);
+        } catch (Exception e) {
+            log.trace("Unable to set request attribute {}: {}", name, e.getMessage());
+        }
     }
 
     /**
@@ -115,6 +324,15 @@ public class AuthenticationRestControllerImpl implements AuthenticationRestApi {
         }
     }
 
+    //exposed so runtime subclasses (e.g. Spring) can render the key set with their own response type
+    protected JwkSet currentJwkSet() {
+        return authenticationApi.getJwkSet();
+    }
+
+    protected boolean signingReady() {
+        return authenticationApi.isSigningReady();
+    }
+
     //#34/#37 - exposed so runtime subclasses (e.g. Spring) can apply the same trust policy with their own request type
     protected Set<String> trustedProxies() {
         return (authenticationOption != null) ? authenticationOption.getTrustedProxies() : Set.of();
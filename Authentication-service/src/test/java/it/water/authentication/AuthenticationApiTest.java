@@ -7,15 +7,18 @@ import it.water.authentication.service.execption.NoIssuerNameDefinedException;
 import it.water.core.api.bundle.ApplicationProperties;
 import it.water.core.api.bundle.Runtime;
 import it.water.core.api.model.User;
+import it.water.core.api.permission.SecurityContext;
 import it.water.core.api.registry.ComponentRegistry;
 import it.water.core.api.security.Authenticable;
 import it.water.core.api.service.Service;
 import it.water.core.interceptors.annotations.Inject;
+import it.water.core.permission.exceptions.UnauthorizedException;
 import it.water.core.testing.utils.junit.WaterTestExtension;
 import it.water.service.rest.api.security.jwt.JwtTokenService;
 import lombok.Setter;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
 
 import java.util.List;
 
@@ -125,7 +128,7 @@ class AuthenticationApiTest implements Service {
                 jwtTokenService.validateToken(validIssuers, token),
                 "Pre-condition: freshly generated token must be valid");
 
-        authenticationApi.logout(token);
+        runAs(subjectOf(token), () -> authenticationApi.logout(token));
 
         Assertions.assertFalse(
                 jwtTokenService.validateToken(validIssuers, token),
@@ -136,21 +139,21 @@ class AuthenticationApiTest implements Service {
     @Order(5)
     void logout_nullToken_doesNotThrow() {
         // M13: logout is idempotent/safe — null must not surface an exception
-        Assertions.assertDoesNotThrow(() -> authenticationApi.logout(null),
+        Assertions.assertDoesNotThrow(() -> runAs("admin", () -> authenticationApi.logout(null)),
                 "logout(null) must not throw");
     }
 
     @Test
     @Order(6)
     void logout_blankToken_doesNotThrow() {
-        Assertions.assertDoesNotThrow(() -> authenticationApi.logout(""),
+        Assertions.assertDoesNotThrow(() -> runAs("admin", () -> authenticationApi.logout("")),
                 "logout('') must not throw");
     }
 
     @Test
     @Order(7)
     void logout_garbageToken_doesNotThrow() {
-        Assertions.assertDoesNotThrow(() -> authenticationApi.logout("not.a.jwt.token"),
+        Assertions.assertDoesNotThrow(() -> runAs("admin", () -> authenticationApi.logout("not.a.jwt.token")),
                 "logout with garbage input must not throw");
     }
 
@@ -187,15 +190,50 @@ class AuthenticationApiTest implements Service {
         String token = authenticationApi.generateToken(auth);
         List<String> validIssuers = List.of(User.class.getName());
 
-        Assertions.assertDoesNotThrow(() -> authenticationApi.logout(token),
+        String caller = subjectOf(token);
+        Assertions.assertDoesNotThrow(() -> runAs(caller, () -> authenticationApi.logout(token)),
                 "First logout must not throw");
-        Assertions.assertDoesNotThrow(() -> authenticationApi.logout(token),
+        Assertions.assertDoesNotThrow(() -> runAs(caller, () -> authenticationApi.logout(token)),
                 "Duplicate logout must not throw (idempotent)");
         Assertions.assertFalse(
                 jwtTokenService.validateToken(validIssuers, token),
                 "Token must remain invalid after duplicate logout");
     }
 
+    @Test
+    @Order(10)
+    void logout_onlyTheCallerCanRevokeItsToken() {
+        Authenticable auth = authenticationApi.login("admin", "admin");
+        String token = authenticationApi.generateToken(auth);
+        List<String> validIssuers = List.of(User.class.getName());
+
+        Assertions.assertThrows(UnauthorizedException.class, () -> authenticationApi.logout(token),
+                "logout requires a logged in caller");
+        Assertions.assertThrows(UnauthorizedException.class, () -> runAs("another-user", () -> authenticationApi.logout(token)),
+                "a caller cannot revoke the token of another subject");
+        Assertions.assertTrue(
+                jwtTokenService.validateToken(validIssuers, token),
+                "A rejected logout must leave the token valid");
+    }
+
+    private String subjectOf(String token) {
+        return componentRegistry.findComponent(AuthenticationSystemApi.class, null).parseToken(token).getSubject();
+    }
+
+    //logout is an authenticated operation: runs the call with the security context the filter would have filled
+    private void runAs(String username, Runnable call) {
+        SecurityContext previous = runtime.getSecurityContext();
+        SecurityContext securityContext = Mockito.mock(SecurityContext.class);
+        Mockito.when(securityContext.isLoggedIn()).thenReturn(true);
+        Mockito.when(securityContext.getLoggedUsername()).thenReturn(username);
+        runtime.fillSecurityContext(securityContext);
+        try {
+            call.run();
+        } finally {
+            runtime.fillSecurityContext(previous);
+        }
+    }
+
     private Subject createSubject(String username, String password) {
         Subject subject = new Subject();
         subject.getPrincipals().add(new Principal() {
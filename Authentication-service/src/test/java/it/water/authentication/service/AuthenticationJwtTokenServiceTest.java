@@ -0,0 +1,147 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.authentication.api.ParsedToken;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.security.Authenticable;
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static it.water.authentication.service.TestTokens.ISSUER;
+import static it.water.authentication.service.TestTokens.token;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for {@link AuthenticationJwtTokenService}, the token service the platform security
+ * filter validates with: revocations of {@link AuthenticationSystemServiceImpl} are enforced on top of the
+ * platform token service, which keeps checking the signature.
+ */
+@ExtendWith(MockitoExtension.class)
+class AuthenticationJwtTokenServiceTest {
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    @Mock
+    private JwtTokenService platformTokenService;
+
+    @Mock
+    private AuthenticationOption authenticationOption;
+
+    @Mock
+    private Authenticable authenticable;
+
+    private AuthenticationJwtTokenService tokenService;
+
+    private AuthenticationSystemServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        tokenService = new AuthenticationJwtTokenService();
+        tokenService.setComponentRegistry(componentRegistry);
+        //as the framework injects it: the highest priority token service
+        service = TestTokens.service(authenticationOption, tokenService);
+        service.setComponentRegistry(componentRegistry);
+        tokenService.setAuthenticationSystemApi(service);
+        lenient().when(componentRegistry.findComponents(JwtTokenService.class, null)).thenReturn(List.of(tokenService, platformTokenService));
+        lenient().when(platformTokenService.validateToken(anyList(), anyString())).thenReturn(true);
+        service.onActivate(null);
+    }
+
+    @Test
+    void getDelegate_skipsTheWrapper() {
+        Assertions.assertSame(platformTokenService, tokenService.getDelegate());
+    }
+
+    @Test
+    void generateJwtToken_issuesThroughThePlatformTokenService() {
+        when(platformTokenService.generateJwtToken(authenticable)).thenReturn("token");
+
+        Assertions.assertEquals("token", tokenService.generateJwtToken(authenticable));
+    }
+
+    @Test
+    void validateToken_rejectsTokensTheSignatureCheckRejects() {
+        String token = token("user1");
+        when(platformTokenService.validateToken(List.of(ISSUER), token)).thenReturn(false);
+
+        Assertions.assertFalse(tokenService.validateToken(List.of(ISSUER), token));
+        Assertions.assertNull(VerifiedTokens.take(token));
+    }
+
+    @Test
+    void validateToken_publishesTheVerifiedTokenOnce() {
+        String token = token("user1");
+
+        Assertions.assertTrue(tokenService.validateToken(List.of(ISSUER), token));
+
+        ParsedToken verified = VerifiedTokens.take(token);
+        Assertions.assertEquals("user1", verified.getSubject());
+        Assertions.assertNotNull(verified.getJwtId());
+        Assertions.assertNull(VerifiedTokens.take(token));
+        //another bearer token on the same thread never gets it
+        Assertions.assertTrue(tokenService.validateToken(List.of(ISSUER), token));
+        Assertions.assertNull(VerifiedTokens.take(token("user1")));
+    }
+
+    @Test
+    void revokeToken_rejectsOnlyTheRevokedToken() {
+        String token = token("user1");
+        String otherToken = token("user1");
+        Assertions.assertTrue(tokenService.validateToken(List.of(ISSUER), token));
+
+        tokenService.revokeToken(token);
+
+        Assertions.assertFalse(tokenService.validateToken(List.of(ISSUER), token));
+        Assertions.assertTrue(tokenService.validateToken(List.of(ISSUER), otherToken));
+        //the jti denylist of this module is the only one
+        verify(platformTokenService, never()).revokeToken(anyString());
+    }
+
+    @Test
+    void logoutEverywhere_rejectsEveryOtherTokenOfTheSubject() {
+        String token = token("user1");
+        String otherToken = token("user1");
+        String otherSubjectToken = token("user2");
+
+        service.logoutEverywhere("user1");
+
+        Assertions.assertFalse(tokenService.validateToken(List.of(ISSUER), token));
+        Assertions.assertFalse(tokenService.validateToken(List.of(ISSUER), otherToken));
+        Assertions.assertTrue(tokenService.validateToken(List.of(ISSUER), otherSubjectToken));
+    }
+
+    @Test
+    void revokeToken_ignoresBlankTokens() {
+        Assertions.assertDoesNotThrow(() -> tokenService.revokeToken(null));
+        Assertions.assertDoesNotThrow(() -> tokenService.revokeToken(" "));
+    }
+}
@@ -17,6 +17,8 @@
 package it.water.authentication.service;
 
 import it.water.authentication.api.AuthenticationSystemApi;
+import it.water.authentication.api.ParsedToken;
+import it.water.authentication.api.TokenRevocationOutcome;
 import it.water.core.api.bundle.Runtime;
 import it.water.core.api.permission.SecurityContext;
 import it.water.core.api.registry.ComponentRegistry;
@@ -29,6 +31,12 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -37,7 +45,8 @@ import static org.mockito.Mockito.when;
  * Plain Mockito unit tests for the multitenancy additions on {@link AuthenticationServiceImpl}
  * (Api layer): the {@code login(username, password, companyId, clientIp)} pass-through overload
  * and the new {@code impersonate(targetUsername, companyId)} method, which resolves the caller
- * from the current {@link SecurityContext} and requires the caller to be logged in.
+ * from the current {@link SecurityContext} and requires the caller to be logged in. Logout requires it as
+ * well, and only revokes tokens of the caller.
  */
 @ExtendWith(MockitoExtension.class)
 class AuthenticationServiceImplMultitenancyTest {
@@ -128,4 +137,63 @@ class AuthenticationServiceImplMultitenancyTest {
         Assertions.assertSame(authenticable, result);
         verify(systemService).impersonate("target1", "callerUser", 55L);
     }
+
+    @Test
+    void revokeTokens_nonAdminCaller_throwsUnauthorized() {
+        when(runtime.getSecurityContext()).thenReturn(securityContext);
+        when(securityContext.isLoggedIn()).thenReturn(true);
+        when(securityContext.isAdmin()).thenReturn(false);
+
+        Assertions.assertThrows(UnauthorizedException.class, () -> service.revokeTokens(List.of("token")));
+
+        verifyNoInteractions(systemService);
+    }
+
+    @Test
+    void revokeTokens_adminCaller_delegatesToSystemService() {
+        when(runtime.getSecurityContext()).thenReturn(securityContext);
+        when(securityContext.isLoggedIn()).thenReturn(true);
+        when(securityContext.isAdmin()).thenReturn(true);
+        when(systemService.revokeTokens(List.of("token"))).thenReturn(List.of(TokenRevocationOutcome.REVOKED));
+
+        Assertions.assertEquals(List.of(TokenRevocationOutcome.REVOKED), service.revokeTokens(List.of("token")));
+    }
+
+    @Test
+    void logout_ownToken_delegatesToSystemService() {
+        loggedInAs("user1");
+        when(systemService.parseToken("token")).thenReturn(new ParsedToken("token", "jti", "user1", 1L, 2L));
+
+        service.logout("token");
+
+        verify(systemService).logout("token");
+    }
+
+    @Test
+    void logout_tokenOfAnotherSubject_throwsUnauthorizedAndRevokesNothing() {
+        loggedInAs("user1");
+        when(systemService.parseToken("token")).thenReturn(new ParsedToken("token", "jti", "user2", 1L, 2L));
+
+        Assertions.assertThrows(UnauthorizedException.class, () -> service.logout("token"));
+
+        verify(systemService, never()).logout(anyString());
+    }
+
+    @Test
+    void logoutAsync_callerNotLoggedIn_failsWithoutCallingTheSystemService() {
+        when(runtime.getSecurityContext()).thenReturn(securityContext);
+        when(securityContext.isLoggedIn()).thenReturn(false);
+
+        CompletableFuture<Void> result = service.logoutAsync("token");
+
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, result::get);
+        Assertions.assertInstanceOf(UnauthorizedException.class, e.getCause());
+        verifyNoInteractions(systemService);
+    }
+
+    private void loggedInAs(String username) {
+        when(runtime.getSecurityContext()).thenReturn(securityContext);
+        when(securityContext.isLoggedIn()).thenReturn(true);
+        when(securityContext.getLoggedUsername()).thenReturn(username);
+    }
 }
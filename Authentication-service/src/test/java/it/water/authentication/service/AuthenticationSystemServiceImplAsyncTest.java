@@ -0,0 +1,232 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.authentication.api.LoginAttemptStore;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.authentication.service.execption.AccountLockedException;
+import it.water.authentication.service.execption.LoginAdmissionRejectedException;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.security.Authenticable;
+import it.water.core.api.security.AuthenticationProvider;
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for the CompletableFuture methods of {@link AuthenticationSystemServiceImpl}: the
+ * stages run off the calling thread with the caller security context, and fail with the same exceptions as
+ * the blocking methods.
+ */
+@ExtendWith(MockitoExtension.class)
+class AuthenticationSystemServiceImplAsyncTest {
+
+    private static final String TEST_ISSUER = "test.async.issuer";
+    private static final String ATTEMPT_KEY = TEST_ISSUER + ":127.0.0.1:user1";
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    @Mock
+    private AuthenticationOption authenticationOption;
+
+    @Mock
+    private LoginAttemptStore loginAttemptStore;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private JwtTokenService jwtTokenService;
+
+    @Mock
+    private Runtime runtime;
+
+    @Mock
+    private SecurityContext securityContext;
+
+    @Mock
+    private AuthenticationProvider provider;
+
+    @Mock
+    private Authenticable authenticable;
+
+    private final ThreadLocal<SecurityContext> threadSecurityContext = new ThreadLocal<>();
+
+    private AuthenticationSystemServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = new AuthenticationSystemServiceImpl();
+        service.setComponentRegistry(componentRegistry);
+        service.setAuthenticationOption(authenticationOption);
+        service.setLoginAttemptStore(loginAttemptStore);
+        service.setApplicationProperties(applicationProperties);
+        service.setJwtTokenService(jwtTokenService);
+        service.setRuntime(runtime);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.TEST_MODE)).thenReturn("false");
+        lenient().when(authenticationOption.getIssuerName()).thenReturn(TEST_ISSUER);
+        lenient().when(provider.issuersNames()).thenReturn(Collections.singleton(TEST_ISSUER));
+        lenient().when(componentRegistry.findComponents(eq(AuthenticationProvider.class), any())).thenReturn(List.of(provider));
+        //the runtime keeps the security context per thread, as the Water runtime does
+        lenient().when(runtime.getSecurityContext()).thenAnswer(invocation -> threadSecurityContext.get());
+        lenient().doAnswer(invocation -> {
+            threadSecurityContext.set(invocation.getArgument(0));
+            return null;
+        }).when(runtime).fillSecurityContext(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.onDeactivate();
+    }
+
+    @Test
+    void loginAsync_checksLockoutThenCallsProviderOffTheCallingThread() {
+        Thread caller = Thread.currentThread();
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        when(loginAttemptStore.isLocked(ATTEMPT_KEY)).thenReturn(false);
+        when(provider.login("user1", "pwd1")).thenAnswer(invocation -> {
+            worker.set(Thread.currentThread());
+            return authenticable;
+        });
+
+        Authenticable result = service.loginAsync("user1", "pwd1", null, null, "127.0.0.1").join();
+
+        Assertions.assertSame(authenticable, result);
+        Assertions.assertNotSame(caller, worker.get());
+        verify(loginAttemptStore).recordSuccess(ATTEMPT_KEY);
+    }
+
+    @Test
+    void loginAsync_lockedKeyNeverReachesProvider() {
+        when(loginAttemptStore.isLocked(ATTEMPT_KEY)).thenReturn(true);
+        when(loginAttemptStore.remainingLockMillis(ATTEMPT_KEY)).thenReturn(1000L);
+
+        CompletionException failure = Assertions.assertThrows(CompletionException.class, () ->
+                service.loginAsync("user1", "pwd1", null, null, "127.0.0.1").join());
+
+        Assertions.assertInstanceOf(AccountLockedException.class, failure.getCause());
+        verify(provider, never()).login(anyString(), anyString());
+    }
+
+    @Test
+    void impersonateAsync_runsWithTheCallerSecurityContext() {
+        AtomicReference<SecurityContext> workerContext = new AtomicReference<>();
+        when(provider.impersonate("target", "caller", null)).thenAnswer(invocation -> {
+            workerContext.set(runtime.getSecurityContext());
+            return authenticable;
+        });
+        threadSecurityContext.set(securityContext);
+
+        Assertions.assertSame(authenticable, service.impersonateAsync("target", "caller", null).join());
+        Assertions.assertSame(securityContext, workerContext.get());
+    }
+
+    @Test
+    void generateTokenAsync_signsOnTheSigningExecutor() {
+        AtomicReference<String> signingThread = new AtomicReference<>();
+        when(jwtTokenService.generateJwtToken(authenticable)).thenAnswer(invocation -> {
+            signingThread.set(Thread.currentThread().getName());
+            return "token";
+        });
+
+        Assertions.assertEquals("token", service.generateTokenAsync(authenticable).join());
+        Assertions.assertTrue(signingThread.get().startsWith("water-authentication-signing"));
+    }
+
+    @Test
+    void securityContextExecutor_rejectedTaskRunsInlineAndRestoresTheContext() {
+        ExecutorService saturated = AuthenticationExecutors.newBoundedExecutor("test", 1, 1);
+        saturated.shutdown();
+        SecurityContext callerContext = securityContext;
+        threadSecurityContext.set(callerContext);
+        SecurityContextExecutor executor = SecurityContextExecutor.capture(saturated, runtime);
+        threadSecurityContext.set(null);
+        AtomicReference<SecurityContext> taskContext = new AtomicReference<>();
+
+        executor.execute(() -> taskContext.set(runtime.getSecurityContext()));
+
+        Assertions.assertSame(callerContext, taskContext.get());
+        Assertions.assertNull(threadSecurityContext.get());
+    }
+
+    @Test
+    void securityContextExecutor_sheddingRejectsInsteadOfRunningInline() {
+        ExecutorService saturated = AuthenticationExecutors.newBoundedExecutor("test", 1, 1);
+        saturated.shutdown();
+        SecurityContextExecutor executor = SecurityContextExecutor.captureShedding(saturated, runtime);
+        AtomicReference<Thread> taskThread = new AtomicReference<>();
+
+        Assertions.assertThrows(LoginAdmissionRejectedException.class, () -> executor.execute(() -> taskThread.set(Thread.currentThread())));
+        Assertions.assertNull(taskThread.get());
+    }
+
+    @Test
+    void generateTokenAsync_saturatedExecutorFailsTheFutureInsteadOfSigningOnTheCaller() throws Exception {
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.ASYNC_SIGNING_THREADS)).thenReturn("1");
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> callerSigned = new AtomicReference<>();
+        Thread caller = Thread.currentThread();
+        when(jwtTokenService.generateJwtToken(authenticable)).thenAnswer(invocation -> {
+            if (Thread.currentThread() == caller)
+                callerSigned.set(caller);
+            release.await(10, TimeUnit.SECONDS);
+            return "token";
+        });
+        //one running task and a full queue
+        List<CompletableFuture<String>> accepted = new ArrayList<>();
+        for (int i = 0; i <= 1024; i++)
+            accepted.add(service.generateTokenAsync(authenticable));
+
+        CompletableFuture<String> rejected = service.generateTokenAsync(authenticable);
+
+        Assertions.assertTrue(rejected.isCompletedExceptionally());
+        CompletionException failure = Assertions.assertThrows(CompletionException.class, rejected::join);
+        Assertions.assertInstanceOf(LoginAdmissionRejectedException.class, failure.getCause());
+        Assertions.assertNull(callerSigned.get());
+        release.countDown();
+        CompletableFuture.allOf(accepted.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    }
+}
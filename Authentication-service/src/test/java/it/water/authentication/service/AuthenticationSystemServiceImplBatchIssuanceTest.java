@@ -0,0 +1,129 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import com.nimbusds.jwt.SignedJWT;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.security.Authenticable;
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Plain Mockito unit tests for the batch issuance of {@link AuthenticationSystemServiceImpl#generateTokens}:
+ * one token per principal in input order, signed with the cached keys or issued by the token service, large
+ * batches spread over the batch executor.
+ */
+@ExtendWith(MockitoExtension.class)
+class AuthenticationSystemServiceImplBatchIssuanceTest {
+
+    private static final String KEYSTORE_FILE = "src/test/resources/certs/server.keystore";
+    private static final String KEYSTORE_PASSWORD = "water.";
+    private static final String ALIAS = "server-cert";
+    private static final String ISSUER = "it.water.core.api.model.User";
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private JwtTokenService jwtTokenService;
+
+    @Test
+    void generateTokens_signsTheBatchInInputOrder() throws Exception {
+        AuthenticationSystemServiceImpl service = new AuthenticationSystemServiceImpl();
+        service.setApplicationProperties(applicationProperties);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_FILE)).thenReturn(KEYSTORE_FILE);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_PASSWORD)).thenReturn(KEYSTORE_PASSWORD);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_ALIAS)).thenReturn(ALIAS);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_ENABLED)).thenReturn("true");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_WARMUP_ROUNDS)).thenReturn("1");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_RELOAD_INTERVAL_MILLIS)).thenReturn("0");
+        service.onActivate(applicationProperties);
+
+        List<String> tokens = service.generateTokens(principals(50));
+
+        SigningKeyCache keys = service.getSigningProfiles().getDefaultKey();
+        Assertions.assertEquals(50, tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            SignedJWT jwt = SignedJWT.parse(tokens.get(i));
+            Assertions.assertTrue(jwt.verify(keys.getVerifier()));
+            Assertions.assertEquals("user" + i, jwt.getJWTClaimsSet().getSubject());
+        }
+        Assertions.assertTrue(service.generateTokens(List.of()).isEmpty());
+        service.onDeactivate();
+    }
+
+    @Test
+    void generateTokens_delegatesToTheTokenServiceWhenSigningIsDisabled() {
+        AuthenticationSystemServiceImpl service = new AuthenticationSystemServiceImpl();
+        service.setJwtTokenService(jwtTokenService);
+        List<Authenticable> principals = principals(20);
+        for (int i = 0; i < principals.size(); i++) {
+            lenient().when(jwtTokenService.generateJwtToken(principals.get(i))).thenReturn("token-" + i);
+        }
+
+        List<String> tokens = service.generateTokens(principals);
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Assertions.assertEquals("token-" + i, tokens.get(i));
+        }
+        service.onDeactivate();
+    }
+
+    @Test
+    void generateTokens_largeBatchesRunOnTheBatchExecutor() {
+        Assumptions.assumeTrue(Runtime.getRuntime().availableProcessors() > 1, "a single core signs in the calling thread");
+        AuthenticationSystemServiceImpl service = new AuthenticationSystemServiceImpl();
+        service.setJwtTokenService(jwtTokenService);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        lenient().when(jwtTokenService.generateJwtToken(any())).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return "token";
+        });
+
+        service.generateTokens(principals(64));
+
+        Assertions.assertTrue(threads.contains(Thread.currentThread().getName()));
+        Assertions.assertTrue(threads.stream().anyMatch(name -> name.startsWith("water-authentication-batch")));
+        Assertions.assertTrue(threads.stream().noneMatch(name -> name.startsWith("ForkJoinPool.commonPool")));
+        service.onDeactivate();
+    }
+
+    private static List<Authenticable> principals(int count) {
+        List<Authenticable> principals = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Authenticable principal = mock(Authenticable.class);
+            lenient().when(principal.getScreenName()).thenReturn("user" + i);
+            lenient().when(principal.getIssuer()).thenReturn(ISSUER);
+            principals.add(principal);
+        }
+        return principals;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.authentication.api.LoginAttemptStore;
+import it.water.authentication.api.VirtualHostCompanyCache;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.authentication.service.execption.AccountLockedException;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.security.Authenticable;
+import it.water.core.api.security.AuthenticationProvider;
+import it.water.core.permission.exceptions.UnauthorizedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for the concurrent execution mode of
+ * {@link AuthenticationSystemServiceImpl#loginForVirtualHost(String, String, String, String, String)}
+ * (water.authentication.login.concurrent.enabled): tenant lookup and lockout check run together, the
+ * provider runs only when both succeed, and the fresh installation fallback is unchanged.
+ */
+@ExtendWith(MockitoExtension.class)
+class AuthenticationSystemServiceImplConcurrentLoginTest {
+
+    private static final String TEST_ISSUER = "test.mt.issuer";
+    private static final String HOST = "tenant.example.test";
+    private static final String ATTEMPT_KEY = TEST_ISSUER + ":127.0.0.1:user1";
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    @Mock
+    private AuthenticationOption authenticationOption;
+
+    @Mock
+    private LoginAttemptStore loginAttemptStore;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private VirtualHostCompanyCache virtualHostCompanyCache;
+
+    @Mock
+    private AuthenticationProvider provider;
+
+    @Mock
+    private Authenticable authenticable;
+
+    private AuthenticationSystemServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = new AuthenticationSystemServiceImpl();
+        service.setComponentRegistry(componentRegistry);
+        service.setAuthenticationOption(authenticationOption);
+        service.setLoginAttemptStore(loginAttemptStore);
+        service.setApplicationProperties(applicationProperties);
+        service.setVirtualHostCompanyCache(virtualHostCompanyCache);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.LOGIN_CONCURRENT_ENABLED)).thenReturn("true");
+        //lockout enforced: the lockout check is one of the concurrent subtasks
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.TEST_MODE)).thenReturn("false");
+        lenient().when(authenticationOption.isMultiTenantEnabled()).thenReturn(true);
+        lenient().when(provider.issuersNames()).thenReturn(Collections.singleton(TEST_ISSUER));
+        lenient().when(componentRegistry.findComponents(eq(AuthenticationProvider.class), any())).thenReturn(List.of(provider));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.onDeactivate();
+    }
+
+    @Test
+    void loginForVirtualHost_resolvesTenantAndChecksLockoutBeforeProvider() {
+        when(virtualHostCompanyCache.resolveCompanyId(HOST)).thenReturn(77L);
+        when(loginAttemptStore.isLocked(ATTEMPT_KEY)).thenReturn(false);
+        when(provider.login("user1", "pwd1", 77L)).thenReturn(authenticable);
+
+        Authenticable result = service.loginForVirtualHost("user1", "pwd1", TEST_ISSUER, HOST, "127.0.0.1");
+
+        Assertions.assertSame(authenticable, result);
+        verify(loginAttemptStore).isLocked(ATTEMPT_KEY);
+        verify(loginAttemptStore).recordSuccess(ATTEMPT_KEY);
+    }
+
+    @Test
+    void loginForVirtualHost_lockedKeyNeverReachesProvider() {
+        lenient().when(virtualHostCompanyCache.resolveCompanyId(HOST)).thenReturn(77L);
+        when(loginAttemptStore.isLocked(ATTEMPT_KEY)).thenReturn(true);
+        when(loginAttemptStore.remainingLockMillis(ATTEMPT_KEY)).thenReturn(1000L);
+
+        Assertions.assertThrows(AccountLockedException.class, () ->
+                service.loginForVirtualHost("user1", "pwd1", TEST_ISSUER, HOST, "127.0.0.1"));
+
+        verify(provider, never()).login(anyString(), anyString(), any());
+    }
+
+    @Test
+    void loginForVirtualHost_tenantLookupFailureIsRethrownAsIs() {
+        IllegalStateException companyDown = new IllegalStateException("company down");
+        when(virtualHostCompanyCache.resolveCompanyId(HOST)).thenThrow(companyDown);
+        lenient().when(loginAttemptStore.isLocked(ATTEMPT_KEY)).thenReturn(false);
+
+        IllegalStateException thrown = Assertions.assertThrows(IllegalStateException.class, () ->
+                service.loginForVirtualHost("user1", "pwd1", TEST_ISSUER, HOST, "127.0.0.1"));
+
+        Assertions.assertSame(companyDown, thrown);
+        verify(provider, never()).login(anyString(), anyString(), any());
+    }
+
+    @Test
+    void loginForVirtualHost_unknownHostStillAllowsOnlyTheAdmin() {
+        when(virtualHostCompanyCache.resolveCompanyId(HOST)).thenReturn(null);
+        when(loginAttemptStore.isLocked(anyString())).thenReturn(false);
+        when(provider.login(anyString(), anyString(), isNull())).thenReturn(authenticable);
+        when(authenticable.isAdmin()).thenReturn(true, false);
+
+        Assertions.assertSame(authenticable,
+                service.loginForVirtualHost("admin", "pwd", TEST_ISSUER, HOST, "127.0.0.1"));
+        Assertions.assertThrows(UnauthorizedException.class, () ->
+                service.loginForVirtualHost("user1", "pwd1", TEST_ISSUER, HOST, "127.0.0.1"));
+    }
+
+    @Test
+    void loginForVirtualHost_partitionedLockoutUsesTheResolvedTenant() {
+        when(applicationProperties.getProperty(AuthenticationConstants.LOGIN_LOCKOUT_PARTITIONED)).thenReturn("true");
+        when(virtualHostCompanyCache.resolveCompanyId(HOST)).thenReturn(77L);
+        when(loginAttemptStore.isLocked(77L, ATTEMPT_KEY)).thenReturn(false);
+        when(provider.login("user1", "pwd1", 77L)).thenReturn(null);
+
+        Assertions.assertThrows(UnauthorizedException.class, () ->
+                service.loginForVirtualHost("user1", "pwd1", TEST_ISSUER, HOST, "127.0.0.1"));
+
+        verify(loginAttemptStore).recordFailure(77L, ATTEMPT_KEY);
+        verify(loginAttemptStore, never()).recordFailure(ATTEMPT_KEY);
+    }
+
+    @Test
+    void failFastTaskScope_rejectedForkRunsInCallerThread() {
+        ExecutorService saturated = AuthenticationExecutors.newBoundedExecutor("test", 1, 1);
+        saturated.shutdown();
+        try (FailFastTaskScope scope = new FailFastTaskScope(saturated)) {
+            Future<String> result = scope.fork(() -> "inline");
+            scope.join();
+            Assertions.assertEquals("inline", FailFastTaskScope.resultNow(result));
+        }
+    }
+}
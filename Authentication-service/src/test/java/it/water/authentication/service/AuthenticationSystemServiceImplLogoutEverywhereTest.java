@@ -0,0 +1,185 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.authentication.service;
+
+import it.water.authentication.api.ParsedToken;
+import it.water.authentication.api.RefreshTokenStore;
+import it.water.authentication.api.TokenRevocationOutcome;
+import it.water.authentication.api.TokenRevocationStore;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static it.water.authentication.service.TestTokens.ISSUER;
+import static it.water.authentication.service.TestTokens.token;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Plain Mockito unit tests for the revocation checks of {@link AuthenticationSystemServiceImpl}: logout
+ * everywhere revokes every token of the subject issued until then, and nothing else; logout records the
+ * jti in the denylist of the {@link it.water.authentication.api.TokenRevocationStore} only; bulk revocation
+ * reports one outcome per token.
+ */
+@ExtendWith(MockitoExtension.class)
+class AuthenticationSystemServiceImplLogoutEverywhereTest {
+
+    @Mock
+    private RefreshTokenStore refreshTokenStore;
+
+    @Mock
+    private JwtTokenService jwtTokenService;
+
+    @Mock
+    private AuthenticationOption authenticationOption;
+
+    private AuthenticationSystemServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = TestTokens.service(authenticationOption, jwtTokenService);
+        service.setRefreshTokenStore(refreshTokenStore);
+        lenient().when(jwtTokenService.validateToken(anyList(), anyString())).thenReturn(true);
+    }
+
+    @Test
+    void logoutEverywhere_revokesTokensIssuedBefore() {
+        String oldToken = token("user1", ISSUER, System.currentTimeMillis() - 60_000L);
+        String otherUserToken = token("user2", ISSUER, System.currentTimeMillis() - 60_000L);
+
+        service.logoutEverywhere("user1");
+
+        Assertions.assertTrue(service.isTokenRevoked(oldToken));
+        Assertions.assertFalse(service.isTokenRevoked(otherUserToken));
+        Assertions.assertFalse(service.isTokenRevoked(token("user1", ISSUER, System.currentTimeMillis() + 60_000L)));
+        verify(refreshTokenStore).revokeAll("user1");
+    }
+
+    @Test
+    void logout_recordsTheJtiInTheDenylist() {
+        String token = token("user1", ISSUER, System.currentTimeMillis());
+        String otherToken = token("user1", ISSUER, System.currentTimeMillis());
+
+        service.logout(token);
+
+        Assertions.assertTrue(service.isTokenRevoked(token));
+        Assertions.assertFalse(service.isTokenRevoked(otherToken));
+        Assertions.assertDoesNotThrow(() -> service.logout("not.a.jwt"));
+        //the denylist of the store is the enforced one, the platform token service keeps none
+        verify(jwtTokenService, never()).revokeToken(anyString());
+    }
+
+    @Test
+    void logout_parsedTokenIsRevokedWithoutDecodingItAgain() {
+        InMemoryTokenRevocationStore tokenRevocationStore = new InMemoryTokenRevocationStore();
+        service.setTokenRevocationStore(tokenRevocationStore);
+        ParsedToken parsed = service.parseToken(token("user1", ISSUER, System.currentTimeMillis()));
+        //an opaque raw string: the claims can only come from the parsed token
+        ParsedToken reused = new ParsedToken("opaque", parsed.getJwtId(), parsed.getSubject(), parsed.getIssuedAt(), parsed.getExpiresAt());
+
+        service.logout(reused);
+
+        Assertions.assertTrue(tokenRevocationStore.isRevoked(parsed.getJwtId()));
+        Assertions.assertEquals("user1", parsed.getSubject());
+        Assertions.assertTrue(parsed.getExpiresAt() > parsed.getIssuedAt());
+    }
+
+    @Test
+    void parseToken_unparseableTokenKeepsOnlyTheRawString() {
+        ParsedToken parsed = service.parseToken("not.a.jwt");
+
+        Assertions.assertEquals("not.a.jwt", parsed.getRaw());
+        Assertions.assertNull(parsed.getJwtId());
+        Assertions.assertDoesNotThrow(() -> service.logout(parsed));
+        Assertions.assertNull(service.parseToken(null).getRaw());
+    }
+
+    @Test
+    void isTokenRevoked_falseForUnparseableTokens() {
+        Assertions.assertFalse(service.isTokenRevoked(null));
+        Assertions.assertFalse(service.isTokenRevoked(" "));
+        Assertions.assertFalse(service.isTokenRevoked("not.a.jwt"));
+    }
+
+    @Test
+    void logoutEverywhere_blankUsernameIsIgnored() {
+        service.logoutEverywhere(" ");
+        verify(refreshTokenStore, never()).revokeAll(anyString());
+    }
+
+    @Test
+    void revokeTokens_returnsOneOutcomePerTokenInInputOrder() {
+        String token = token("user1", ISSUER, System.currentTimeMillis());
+        String alreadyRevoked = token("user2", ISSUER, System.currentTimeMillis());
+        service.logout(alreadyRevoked);
+
+        List<TokenRevocationOutcome> outcomes = service.revokeTokens(Arrays.asList(token, "not.a.jwt", alreadyRevoked, token, null));
+
+        Assertions.assertEquals(List.of(TokenRevocationOutcome.REVOKED, TokenRevocationOutcome.INVALID,
+                TokenRevocationOutcome.ALREADY_REVOKED, TokenRevocationOutcome.ALREADY_REVOKED,
+                TokenRevocationOutcome.INVALID), outcomes);
+        Assertions.assertTrue(service.isTokenRevoked(token));
+        verify(jwtTokenService, never()).revokeToken(anyString());
+    }
+
+    @Test
+    void revokeTokens_largeBatchIsRevokedAsAWhole() {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            tokens.add(token("user" + i, ISSUER, System.currentTimeMillis()));
+        }
+
+        List<TokenRevocationOutcome> outcomes = service.revokeTokens(tokens);
+
+        Assertions.assertEquals(200, outcomes.size());
+        Assertions.assertTrue(outcomes.stream().allMatch(outcome -> outcome == TokenRevocationOutcome.REVOKED));
+        Assertions.assertTrue(tokens.stream().allMatch(service::isTokenRevoked));
+        Assertions.assertTrue(service.revokeTokens(List.of()).isEmpty());
+    }
+
+    @Test
+    void revokeTokens_writesTheEnforcedStoreInOneBatch() {
+        TokenRevocationStore tokenRevocationStore = mock(TokenRevocationStore.class);
+        service.setTokenRevocationStore(tokenRevocationStore);
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tokens.add(token("user" + i, ISSUER, System.currentTimeMillis()));
+        }
+
+        service.revokeTokens(tokens);
+
+        verify(tokenRevocationStore).revokeAll(argThat(batch -> batch.size() == 100));
+        verify(tokenRevocationStore, never()).revoke(anyString(), anyLong());
+        verify(jwtTokenService, never()).revokeToken(anyString());
+    }
+}
@@ -17,6 +17,7 @@
 package it.water.authentication.service;
 
 import it.water.authentication.api.LoginAttemptStore;
+import it.water.authentication.api.VirtualHostCompanyCache;
 import it.water.authentication.api.options.AuthenticationOption;
 import it.water.core.api.bundle.ApplicationProperties;
 import it.water.core.api.registry.ComponentRegistry;
@@ -182,6 +183,22 @@ class AuthenticationSystemServiceImplMultitenancyTest {
         verify(provider).login("user1", "pwd1", null);
     }
 
+    @Test
+    void loginForVirtualHost_resolvesCompanyThroughCacheWhenWired() {
+        VirtualHostCompanyCache virtualHostCompanyCache = mock(VirtualHostCompanyCache.class);
+        service.setVirtualHostCompanyCache(virtualHostCompanyCache);
+        when(authenticationOption.isMultiTenantEnabled()).thenReturn(true);
+        when(virtualHostCompanyCache.resolveCompanyId("tenant.example.test")).thenReturn(77L);
+        when(provider.login("user1", "pwd1", 77L)).thenReturn(authenticable);
+
+        Authenticable result = service.loginForVirtualHost(
+                "user1", "pwd1", TEST_ISSUER, "tenant.example.test", "127.0.0.1");
+
+        Assertions.assertSame(authenticable, result);
+        verify(companyIntegrationClient, never()).findCompanyIdByVirtualHost(anyString());
+        verify(provider).login("user1", "pwd1", 77L);
+    }
+
     @Test
     void impersonate_delegatesToResolvedProviderForDefaultIssuer() {
         when(authenticationOption.getIssuerName()).thenReturn(TEST_ISSUER);
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.authentication.service;
+
+import it.water.authentication.api.AuthenticableSource;
+import it.water.authentication.api.RefreshTokenGrant;
+import it.water.authentication.api.RefreshTokenStore;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.security.Authenticable;
+import it.water.core.permission.exceptions.UnauthorizedException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for the refresh token flow of {@link AuthenticationSystemServiceImpl}:
+ * disabled by default, and when enabled a refresh is a store redeem plus a reload of the principal.
+ */
+@ExtendWith(MockitoExtension.class)
+class AuthenticationSystemServiceImplRefreshTokenTest {
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private RefreshTokenStore refreshTokenStore;
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    @Mock
+    private AuthenticableSource authenticableSource;
+
+    @Mock
+    private Authenticable authenticable;
+
+    @Mock
+    private Authenticable reloaded;
+
+    private AuthenticationSystemServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = new AuthenticationSystemServiceImpl();
+        service.setApplicationProperties(applicationProperties);
+        service.setRefreshTokenStore(refreshTokenStore);
+        service.setComponentRegistry(componentRegistry);
+        lenient().when(authenticable.getIssuer()).thenReturn("it.water.core.api.model.User");
+        lenient().when(authenticable.getScreenName()).thenReturn("user1");
+        lenient().when(authenticableSource.issuersNames()).thenReturn(List.of("it.water.core.api.model.User"));
+        lenient().when(componentRegistry.findComponents(eq(AuthenticableSource.class), any())).thenReturn(List.of(authenticableSource));
+    }
+
+    @Test
+    void refreshTokensAreDisabledByDefault() {
+        Assertions.assertNull(service.generateRefreshToken(authenticable));
+        Assertions.assertThrows(UnauthorizedException.class, () -> service.refresh("token"));
+        verify(refreshTokenStore, never()).issue(any(), anyLong());
+    }
+
+    @Test
+    void refresh_redeemsTheTokenThroughTheStore() {
+        when(applicationProperties.getProperty(AuthenticationConstants.REFRESH_TOKEN_ENABLED)).thenReturn("true");
+        when(applicationProperties.getProperty(AuthenticationConstants.REFRESH_TOKEN_TTL_MILLIS)).thenReturn("1000");
+        RefreshTokenGrant grant = new RefreshTokenGrant(authenticable, "rotated");
+        when(refreshTokenStore.issue(authenticable, 1000L)).thenReturn("issued");
+        when(refreshTokenStore.redeem("issued", 1000L)).thenReturn(grant);
+
+        when(authenticableSource.reload(authenticable)).thenReturn(reloaded);
+        when(reloaded.isActive()).thenReturn(true);
+
+        Assertions.assertEquals("issued", service.generateRefreshToken(authenticable));
+        RefreshTokenGrant refreshed = service.refresh("issued");
+        //the new access token is issued for the current principal, not the one captured at login
+        Assertions.assertSame(reloaded, refreshed.getAuthenticable());
+        Assertions.assertEquals("rotated", refreshed.getRefreshToken());
+    }
+
+    @Test
+    void refresh_disabledPrincipalIsUnauthorizedAndLosesItsRefreshTokens() {
+        when(applicationProperties.getProperty(AuthenticationConstants.REFRESH_TOKEN_ENABLED)).thenReturn("true");
+        when(refreshTokenStore.redeem(any(), anyLong())).thenReturn(new RefreshTokenGrant(authenticable, "rotated"));
+        when(authenticableSource.reload(authenticable)).thenReturn(reloaded);
+        when(reloaded.isActive()).thenReturn(false);
+
+        Assertions.assertThrows(UnauthorizedException.class, () -> service.refresh("issued"));
+        verify(refreshTokenStore).revokeAll("user1");
+    }
+
+    @Test
+    void refresh_deletedPrincipalIsUnauthorized() {
+        when(applicationProperties.getProperty(AuthenticationConstants.REFRESH_TOKEN_ENABLED)).thenReturn("true");
+        when(refreshTokenStore.redeem(any(), anyLong())).thenReturn(new RefreshTokenGrant(authenticable, "rotated"));
+        when(authenticableSource.reload(authenticable)).thenReturn(null);
+
+        Assertions.assertThrows(UnauthorizedException.class, () -> service.refresh("issued"));
+        verify(refreshTokenStore).revokeAll("user1");
+    }
+
+    @Test
+    void refresh_withoutAnAuthenticableSourceIsUnauthorized() {
+        when(applicationProperties.getProperty(AuthenticationConstants.REFRESH_TOKEN_ENABLED)).thenReturn("true");
+        when(refreshTokenStore.redeem(any(), anyLong())).thenReturn(new RefreshTokenGrant(authenticable, "rotated"));
+        when(componentRegistry.findComponents(eq(AuthenticableSource.class), any())).thenReturn(List.of());
+
+        Assertions.assertThrows(UnauthorizedException.class, () -> service.refresh("issued"));
+    }
+
+    @Test
+    void refresh_invalidTokenIsUnauthorized() {
+        when(applicationProperties.getProperty(AuthenticationConstants.REFRESH_TOKEN_ENABLED)).thenReturn("true");
+        when(refreshTokenStore.redeem(any(), anyLong())).thenReturn(null);
+
+        Assertions.assertThrows(UnauthorizedException.class, () -> service.refresh("forged"));
+        service.revokeRefreshToken("forged");
+        verify(refreshTokenStore).revoke("forged");
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static it.water.authentication.service.TestTokens.ISSUER;
+import static it.water.authentication.service.TestTokens.token;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Plain Mockito unit tests for the revocation journal wiring of {@link AuthenticationSystemServiceImpl}: two
+ * services on the same journal directory play the role of two nodes, and a logout on one of them is enforced
+ * by the token service of the other.
+ */
+@ExtendWith(MockitoExtension.class)
+class AuthenticationSystemServiceImplRevocationJournalTest {
+
+    private static final long TIMEOUT_MILLIS = 5000L;
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private JwtTokenService platformTokenService;
+
+    @Mock
+    private AuthenticationOption authenticationOption;
+
+    private final List<AuthenticationSystemServiceImpl> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(AuthenticationSystemServiceImpl::onDeactivate);
+    }
+
+    @Test
+    void logoutOnANodeIsEnforcedByTheOtherNodes() throws Exception {
+        AuthenticationJwtTokenService nodeA = start("node-a");
+        AuthenticationJwtTokenService nodeB = start("node-b");
+        String token = token("user1");
+        Assertions.assertTrue(nodeB.validateToken(List.of(ISSUER), token));
+
+        nodeA.revokeToken(token);
+
+        awaitRejected(nodeB, token);
+        //a node started afterwards replays it
+        Assertions.assertFalse(start("node-c").validateToken(List.of(ISSUER), token));
+    }
+
+    @Test
+    void logoutEverywhereOnANodeIsEnforcedByTheOtherNodes() throws Exception {
+        start("node-a");
+        AuthenticationJwtTokenService nodeB = start("node-b");
+        String token = token("user1");
+
+        nodes.get(0).logoutEverywhere("user1");
+
+        awaitRejected(nodeB, token);
+    }
+
+    @Test
+    void journalWithoutNodeIdRefusesToStart() {
+        AuthenticationSystemServiceImpl service = new AuthenticationSystemServiceImpl();
+        ApplicationProperties applicationProperties = mock(ApplicationProperties.class);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.REVOCATION_JOURNAL_DIR)).thenReturn(directory.toString());
+
+        Assertions.assertThrows(IllegalStateException.class, () -> service.onActivate(applicationProperties));
+    }
+
+    private AuthenticationJwtTokenService start(String nodeId) {
+        ApplicationProperties applicationProperties = mock(ApplicationProperties.class);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.REVOCATION_JOURNAL_DIR)).thenReturn(directory.toString());
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.REVOCATION_JOURNAL_NODE_ID)).thenReturn(nodeId);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.REVOCATION_JOURNAL_POLL_INTERVAL_MILLIS)).thenReturn("20");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_WARMUP_ENABLED)).thenReturn("false");
+        lenient().when(platformTokenService.validateToken(anyList(), anyString())).thenReturn(true);
+        ComponentRegistry componentRegistry = mock(ComponentRegistry.class);
+        AuthenticationJwtTokenService tokenService = new AuthenticationJwtTokenService();
+        tokenService.setComponentRegistry(componentRegistry);
+        lenient().when(componentRegistry.findComponents(JwtTokenService.class, null)).thenReturn(List.of(tokenService, platformTokenService));
+        AuthenticationSystemServiceImpl service = TestTokens.service(authenticationOption, tokenService);
+        service.setApplicationProperties(applicationProperties);
+        service.setComponentRegistry(componentRegistry);
+        tokenService.setAuthenticationSystemApi(service);
+        service.onActivate(applicationProperties);
+        nodes.add(service);
+        return tokenService;
+    }
+
+    private static void awaitRejected(AuthenticationJwtTokenService tokenService, String token) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (tokenService.validateToken(List.of(ISSUER), token) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20L);
+        }
+        Assertions.assertFalse(tokenService.validateToken(List.of(ISSUER), token));
+    }
+}
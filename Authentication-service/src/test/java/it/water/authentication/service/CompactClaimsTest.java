@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import it.water.authentication.api.options.TokenClaimsProfile;
+import it.water.core.api.bundle.ApplicationProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for the compact claims profile: issuer selection through
+ * {@link AuthenticationOptionImpl#getTokenClaimsProfile(String)} and the expansion done by {@link CompactClaims}.
+ */
+@ExtendWith(MockitoExtension.class)
+class CompactClaimsTest {
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Test
+    void getTokenClaimsProfile_compactOnlyForTheListedIssuers() {
+        AuthenticationOptionImpl option = new AuthenticationOptionImpl();
+        option.setApplicationProperties(applicationProperties);
+        when(applicationProperties.getProperty(AuthenticationConstants.CLAIMS_COMPACT_ISSUERS)).thenReturn("it.water.Partner, it.water.Device");
+
+        Assertions.assertEquals(TokenClaimsProfile.COMPACT, option.getTokenClaimsProfile("it.water.Device"));
+        Assertions.assertEquals(TokenClaimsProfile.STANDARD, option.getTokenClaimsProfile("it.water.core.api.model.User"));
+        Assertions.assertEquals(TokenClaimsProfile.STANDARD, option.getTokenClaimsProfile(null));
+    }
+
+    @Test
+    void getTokenClaimsProfile_wildcardAndDefaults() {
+        AuthenticationOptionImpl option = new AuthenticationOptionImpl();
+        option.setApplicationProperties(applicationProperties);
+        when(applicationProperties.getProperty(AuthenticationConstants.CLAIMS_COMPACT_ISSUERS)).thenReturn("*");
+
+        Assertions.assertEquals(TokenClaimsProfile.COMPACT, option.getTokenClaimsProfile("it.water.core.api.model.User"));
+        option.setApplicationProperties(null);
+        Assertions.assertEquals(TokenClaimsProfile.STANDARD, option.getTokenClaimsProfile("it.water.core.api.model.User"));
+    }
+
+    @Test
+    void permissionBits_roundTripAndFallBackToNamesForUnknownActions() {
+        long bits = CompactClaims.permissionBits(List.of("find", "save", "find-all"));
+
+        Assertions.assertEquals(0b11001L, bits);
+        Assertions.assertEquals(List.of("save", "find", "find-all"), CompactClaims.permissionActions(bits));
+        Assertions.assertEquals(-1L, CompactClaims.permissionBits(List.of("find", "approve")));
+        Assertions.assertEquals(List.of("find", "approve"), CompactClaims.permissionActions(List.of("find", "approve")));
+        Assertions.assertEquals(0L, CompactClaims.permissionBits(List.of()));
+    }
+
+    @Test
+    void expand_rewritesShortNamesAndKeepsStandardTokensUntouched() throws Exception {
+        JWTClaimsSet compact = new JWTClaimsSet.Builder()
+                .subject("user1")
+                .claim(CompactClaims.CLAIM_PROFILE, CompactClaims.PROFILE_COMPACT)
+                .claim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_LOGGED_ENTITY_ID, 5L)
+                .claim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ADMIN, false)
+                .claim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ROLES, List.of("operator"))
+                .claim(CompactClaims.CLAIM_PERMISSIONS, Map.of("it.water.Device", 0b1000L, "it.water.Order", List.of("approve")))
+                .claim(CompactClaims.CLAIM_PERMISSIONS_VERSION, 4L)
+                .build();
+
+        JWTClaimsSet claims = CompactClaims.expand(compact);
+
+        Assertions.assertEquals("user1", claims.getSubject());
+        Assertions.assertEquals(5L, claims.getLongClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_LOGGED_ENTITY_ID));
+        Assertions.assertFalse(claims.getBooleanClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ADMIN));
+        Assertions.assertEquals(List.of("operator"), claims.getStringListClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ROLES));
+        Assertions.assertEquals(Map.of("it.water.Device", List.of("find"), "it.water.Order", List.of("approve")),
+                claims.getClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_PERMISSIONS));
+        Assertions.assertEquals(4L, claims.getLongClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_PERMISSIONS_VERSION));
+        Assertions.assertFalse(CompactClaims.isCompact(claims));
+        JWTClaimsSet standard = new JWTClaimsSet.Builder().subject("user1").build();
+        Assertions.assertSame(standard, CompactClaims.expand(standard));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.authentication.api.PermissionSnapshotSource;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.security.Authenticable;
+import it.water.core.api.security.AuthenticationProvider;
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+import java.util.List;
+
+import static it.water.authentication.service.TestTokens.ISSUER;
+import static it.water.authentication.service.TestTokens.token;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for {@link ImpersonationTokenCache} and the impersonation token reuse of
+ * {@link AuthenticationSystemServiceImpl#impersonationToken(String, String, Long)}.
+ */
+@ExtendWith(MockitoExtension.class)
+class ImpersonationTokenCacheTest {
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    @Mock
+    private AuthenticationOption authenticationOption;
+
+    @Mock
+    private AuthenticationProvider provider;
+
+    @Mock
+    private JwtTokenService jwtTokenService;
+
+    @Mock
+    private Authenticable target;
+
+    @Mock
+    private PermissionSnapshotSource permissionSnapshotSource;
+
+    private AuthenticationSystemServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = TestTokens.service(authenticationOption, jwtTokenService);
+        service.setComponentRegistry(componentRegistry);
+        lenient().when(provider.issuersNames()).thenReturn(Collections.singleton(ISSUER));
+        lenient().when(componentRegistry.findComponents(eq(AuthenticationProvider.class), any())).thenReturn(List.of(provider));
+        lenient().when(provider.impersonate("customer1", "agent1", 5L)).thenReturn(target);
+        lenient().when(jwtTokenService.generateJwtToken(target)).thenAnswer(invocation -> token("customer1"));
+        //tokens are only reused while a snapshot source publishes the permissions version
+        lenient().when(componentRegistry.findComponent(PermissionSnapshotSource.class, null)).thenReturn(permissionSnapshotSource);
+        lenient().when(permissionSnapshotSource.getPermissionsVersion()).thenReturn(1L);
+        lenient().when(jwtTokenService.validateToken(anyList(), anyString())).thenReturn(true);
+        service.onActivate(null);
+    }
+
+    @Test
+    void get_isKeyedByCallerTargetAndCompanyAndCappedByTheTokenExpiry() {
+        ImpersonationTokenCache cache = new ImpersonationTokenCache(10, 60_000L);
+        long now = System.currentTimeMillis();
+
+        cache.put("agent1", "customer1", 5L, "token-a", "jti-a", now, now + 60_000L, 1L, cache.epoch());
+        cache.put("agent1", "customer2", null, "token-b", "jti-b", now, now - 1L, 1L, cache.epoch());
+
+        Assertions.assertEquals("token-a", cache.get("agent1", "customer1", 5L, 1L).getToken());
+        Assertions.assertNull(cache.get("agent1", "customer1", 6L, 1L));
+        Assertions.assertNull(cache.get("agent2", "customer1", 5L, 1L));
+        Assertions.assertNull(cache.get("agent1", "customer2", null, 1L));
+        //the permissions changed since the token was issued
+        Assertions.assertNull(cache.get("agent1", "customer1", 5L, 2L));
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void invalidate_dropsTheEntriesOfTheCallerSubjectOrJti() {
+        ImpersonationTokenCache cache = new ImpersonationTokenCache(10, 60_000L);
+        long now = System.currentTimeMillis();
+        long expiresAt = now + 60_000L;
+        cache.put("agent1", "customer1", null, "token-a", "jti-a", now, expiresAt, 1L, cache.epoch());
+        cache.put("agent1", "customer2", null, "token-b", "jti-b", now, expiresAt, 1L, cache.epoch());
+        cache.put("agent2", "customer1", null, "token-c", "jti-c", now, expiresAt, 1L, cache.epoch());
+        cache.put("agent2", "customer3", null, "token-d", "jti-d", now, expiresAt, 1L, cache.epoch());
+
+        cache.invalidateJwtId("jti-d");
+        Assertions.assertNull(cache.get("agent2", "customer3", null, 1L));
+
+        cache.invalidateCaller("agent1");
+        Assertions.assertNull(cache.get("agent1", "customer1", null, 1L));
+        Assertions.assertNull(cache.get("agent1", "customer2", null, 1L));
+        Assertions.assertNotNull(cache.get("agent2", "customer1", null, 1L));
+
+        cache.invalidateSubject("customer1");
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_dropsATokenIssuedBeforeAConcurrentLogoutAndEvictsBeyondTheBound() {
+        ImpersonationTokenCache cache = new ImpersonationTokenCache(3, 60_000L);
+        long now = System.currentTimeMillis();
+        long epoch = cache.epoch();
+
+        cache.invalidateCaller("agent1");
+        cache.put("agent1", "customer1", null, "token-a", "jti-a", now, now + 60_000L, 1L, epoch);
+        Assertions.assertNull(cache.get("agent1", "customer1", null, 1L));
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("agent1", "customer" + i, null, "token-" + i, "jti-" + i, now, now + 60_000L, 1L, cache.epoch());
+        }
+        Assertions.assertTrue(cache.size() <= 3);
+    }
+
+    @Test
+    void impersonationToken_reusesTheIssuedTokenUntilTheCallerLogsOut() {
+        String first = service.impersonationToken("customer1", "agent1", 5L);
+
+        Assertions.assertEquals(first, service.impersonationToken("customer1", "agent1", 5L));
+        verify(provider, times(1)).impersonate("customer1", "agent1", 5L);
+
+        service.logout(token("agent1"));
+        String second = service.impersonationToken("customer1", "agent1", 5L);
+
+        Assertions.assertNotEquals(first, second);
+        verify(provider, times(2)).impersonate("customer1", "agent1", 5L);
+    }
+
+    @Test
+    void impersonationToken_revokedOrStaleTokensGoThroughThePermissionGateAgain() {
+        when(permissionSnapshotSource.getPermissionsVersion()).thenReturn(1L, 1L, 2L, 2L, 2L);
+        String first = service.impersonationToken("customer1", "agent1", 5L);
+        Assertions.assertEquals(first, service.impersonationToken("customer1", "agent1", 5L));
+
+        //IMPERSONATE withdrawn: the permissions version moved
+        String second = service.impersonationToken("customer1", "agent1", 5L);
+        Assertions.assertNotEquals(first, second);
+
+        //the impersonation token itself was revoked
+        service.logout(second);
+        Assertions.assertNotEquals(second, service.impersonationToken("customer1", "agent1", 5L));
+        verify(provider, times(3)).impersonate("customer1", "agent1", 5L);
+    }
+
+    @Test
+    void logout_forgedTokenNeitherFlushesImpersonationsNorWritesTheDenylist() {
+        InMemoryTokenRevocationStore tokenRevocationStore = new InMemoryTokenRevocationStore();
+        service.setTokenRevocationStore(tokenRevocationStore);
+        String first = service.impersonationToken("customer1", "agent1", 5L);
+        //claims of the caller, signature rejected
+        String forged = token("agent1");
+        when(jwtTokenService.validateToken(anyList(), eq(forged))).thenReturn(false);
+
+        service.logout(forged);
+
+        Assertions.assertFalse(tokenRevocationStore.isRevoked(service.parseToken(forged).getJwtId()));
+        Assertions.assertEquals(first, service.impersonationToken("customer1", "agent1", 5L));
+        verify(provider, times(1)).impersonate("customer1", "agent1", 5L);
+    }
+
+    @Test
+    void impersonationToken_explicitInvalidationOfTheCaller() {
+        String first = service.impersonationToken("customer1", "agent1", 5L);
+
+        service.invalidateImpersonations("agent1");
+
+        Assertions.assertNotEquals(first, service.impersonationToken("customer1", "agent1", 5L));
+        verify(provider, times(2)).impersonate("customer1", "agent1", 5L);
+    }
+
+    @Test
+    void impersonationToken_noSnapshotSourceGoesThroughThePermissionGateEveryTime() {
+        when(componentRegistry.findComponent(PermissionSnapshotSource.class, null)).thenReturn(null);
+
+        service.impersonationToken("customer1", "agent1", 5L);
+        service.impersonationToken("customer1", "agent1", 5L);
+
+        verify(provider, times(2)).impersonate("customer1", "agent1", 5L);
+    }
+}
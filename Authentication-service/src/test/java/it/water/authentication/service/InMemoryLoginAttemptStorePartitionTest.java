@@ -0,0 +1,194 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.core.api.bundle.ApplicationProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+
+/**
+ * Plain Mockito unit tests for the tenant partitions of {@link InMemoryLoginAttemptStore}: isolation
+ * between tenants, fair eviction under the global budget, per-tenant policy overrides, the bound on
+ * the number of partitions and the state of tenants that overflowed into the shared partition.
+ */
+@ExtendWith(MockitoExtension.class)
+class InMemoryLoginAttemptStorePartitionTest {
+
+    private static final String KEY = "water:127.0.0.1:user1";
+    private static final long TENANT_A = 1L;
+    private static final long TENANT_B = 2L;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    private InMemoryLoginAttemptStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryLoginAttemptStore();
+        store.setApplicationProperties(applicationProperties);
+        //unset properties fall back to the defaults
+        lenient().when(applicationProperties.getProperty(anyString())).thenReturn(null);
+        property(AuthenticationConstants.LOGIN_LOCKOUT_THRESHOLD, "3");
+    }
+
+    @Test
+    void sameKeyIsTrackedSeparatelyPerTenant() {
+        failures(TENANT_A, KEY, 3);
+
+        Assertions.assertTrue(store.isLocked(TENANT_A, KEY));
+        Assertions.assertFalse(store.isLocked(TENANT_B, KEY));
+        Assertions.assertFalse(store.isLocked(KEY));
+        Assertions.assertTrue(store.remainingLockMillis(TENANT_A, KEY) > 0L);
+    }
+
+    @Test
+    void recordSuccessResetsOnlyTheTenantPartition() {
+        failures(TENANT_A, KEY, 2);
+        failures(TENANT_B, KEY, 2);
+
+        store.recordSuccess(TENANT_A, KEY);
+        failures(TENANT_A, KEY, 1);
+        failures(TENANT_B, KEY, 1);
+
+        Assertions.assertFalse(store.isLocked(TENANT_A, KEY));
+        Assertions.assertTrue(store.isLocked(TENANT_B, KEY));
+    }
+
+    @Test
+    void floodOnOneTenantDoesNotEvictOtherTenants() {
+        property(AuthenticationConstants.LOGIN_LOCKOUT_MAX_KEYS, "10");
+        failures(TENANT_B, KEY, 3);
+
+        for (int i = 0; i < 100; i++) {
+            store.recordFailure(TENANT_A, "water:10.0.0.1:random" + i);
+        }
+
+        Assertions.assertTrue(store.isLocked(TENANT_B, KEY), "the flooded tenant must pay for its own keys");
+    }
+
+    @Test
+    void perTenantOverrideChangesThePolicyOfThatTenantOnly() {
+        property(AuthenticationConstants.LOGIN_LOCKOUT_THRESHOLD + ".company." + TENANT_A, "1");
+
+        failures(TENANT_A, KEY, 1);
+        failures(TENANT_B, KEY, 1);
+
+        Assertions.assertTrue(store.isLocked(TENANT_A, KEY));
+        Assertions.assertFalse(store.isLocked(TENANT_B, KEY));
+    }
+
+    @Test
+    void tenantsBeyondThePartitionBoundShareTheDefaultPartition() {
+        property(AuthenticationConstants.LOGIN_LOCKOUT_TENANT_MAX_PARTITIONS, "1");
+        failures(TENANT_A, KEY, 1);
+
+        failures(TENANT_B, KEY, 3);
+
+        Assertions.assertTrue(store.isLocked(KEY));
+        Assertions.assertTrue(store.isLocked(TENANT_B, KEY));
+        Assertions.assertFalse(store.isLocked(TENANT_A, KEY));
+    }
+
+    @Test
+    void overflowedTenantKeepsItsLockoutOnceItGetsItsOwnPartition() {
+        property(AuthenticationConstants.LOGIN_LOCKOUT_TENANT_MAX_PARTITIONS, "1");
+        failures(TENANT_A, "water:10.0.0.1:other", 1);
+        failures(TENANT_B, KEY, 3);
+        //tenant A no longer tracks keys: its partition is retired and tenant B gets its own
+        store.recordSuccess(TENANT_A, "water:10.0.0.1:other");
+        failures(TENANT_B, "water:10.0.0.2:user2", 1);
+
+        Assertions.assertTrue(store.isLocked(TENANT_B, KEY), "the lock recorded during the overflow must still apply");
+        failures(TENANT_B, KEY, 1);
+        Assertions.assertTrue(store.isLocked(TENANT_B, KEY), "the carried over counter keeps the lock");
+        Assertions.assertTrue(store.remainingLockMillis(TENANT_B, KEY) > 0L);
+    }
+
+    @Test
+    void overflowedFailuresCountTowardsTheThresholdOfTheNewPartition() {
+        property(AuthenticationConstants.LOGIN_LOCKOUT_TENANT_MAX_PARTITIONS, "1");
+        failures(TENANT_A, "water:10.0.0.1:other", 1);
+        failures(TENANT_B, KEY, 2);
+        store.recordSuccess(TENANT_A, "water:10.0.0.1:other");
+        failures(TENANT_B, "water:10.0.0.2:user2", 1);
+
+        failures(TENANT_B, KEY, 1);
+
+        Assertions.assertTrue(store.isLocked(TENANT_B, KEY));
+    }
+
+    @Test
+    void emptyPartitionsAreRetiredAndRecreatedOnDemand() {
+        property(AuthenticationConstants.LOGIN_LOCKOUT_TENANT_MAX_PARTITIONS, "1");
+        failures(TENANT_A, KEY, 1);
+        store.recordSuccess(TENANT_A, KEY);
+        failures(TENANT_B, KEY, 1);
+        store.recordSuccess(TENANT_B, KEY);
+
+        failures(TENANT_A, KEY, 3);
+
+        Assertions.assertTrue(store.isLocked(TENANT_A, KEY));
+        Assertions.assertFalse(store.isLocked(KEY), "tenant A must have got its own partition back");
+    }
+
+    @Test
+    void partitionAboveItsCapEvictsABatch() {
+        property(AuthenticationConstants.LOGIN_LOCKOUT_MAX_KEYS, "20");
+        property(AuthenticationConstants.LOGIN_LOCKOUT_THRESHOLD, "1");
+
+        for (int i = 0; i < 22; i++) {
+            store.recordFailure("water:10.0.0.1:user" + i);
+        }
+
+        //the overflow dropped a tenth of the cap beyond itself: the next insertions do not evict
+        Assertions.assertEquals(19, lockedKeys(22));
+        store.recordFailure("water:10.0.0.1:user22");
+        Assertions.assertEquals(20, lockedKeys(23));
+    }
+
+    @Test
+    void nullKeysAreIgnored() {
+        Assertions.assertDoesNotThrow(() -> store.recordFailure(TENANT_A, null));
+        Assertions.assertDoesNotThrow(() -> store.recordSuccess(TENANT_A, null));
+        Assertions.assertFalse(store.isLocked(TENANT_A, null));
+        Assertions.assertEquals(0L, store.remainingLockMillis(TENANT_A, null));
+    }
+
+    private void failures(Long companyId, String key, int count) {
+        for (int i = 0; i < count; i++) {
+            store.recordFailure(companyId, key);
+        }
+    }
+
+    private long lockedKeys(int keys) {
+        return IntStream.range(0, keys).filter(i -> store.isLocked("water:10.0.0.1:user" + i)).count();
+    }
+
+    private void property(String key, String value) {
+        lenient().when(applicationProperties.getProperty(key)).thenReturn(value);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.authentication.service;
+
+import it.water.authentication.api.RefreshTokenGrant;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.security.Authenticable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.mockito.Mockito.lenient;
+
+/**
+ * Plain Mockito unit tests for {@link InMemoryRefreshTokenStore}: rotation, reuse detection, revocation,
+ * expiry and the entry cap.
+ */
+@ExtendWith(MockitoExtension.class)
+class InMemoryRefreshTokenStoreTest {
+
+    private static final long TTL = 60_000L;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private Authenticable authenticable;
+
+    private InMemoryRefreshTokenStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryRefreshTokenStore();
+        store.setApplicationProperties(applicationProperties);
+        lenient().when(authenticable.getScreenName()).thenReturn("user1");
+    }
+
+    @Test
+    void redeem_returnsPrincipalAndRotatedToken() {
+        String token = store.issue(authenticable, TTL);
+
+        RefreshTokenGrant grant = store.redeem(token, TTL);
+
+        Assertions.assertNotNull(grant);
+        Assertions.assertSame(authenticable, grant.getAuthenticable());
+        Assertions.assertNotNull(grant.getRefreshToken());
+        Assertions.assertNotEquals(token, grant.getRefreshToken());
+        Assertions.assertNotNull(store.redeem(grant.getRefreshToken(), TTL));
+    }
+
+    @Test
+    void redeem_reusedTokenRevokesTheWholeFamily() {
+        String token = store.issue(authenticable, TTL);
+        RefreshTokenGrant grant = store.redeem(token, TTL);
+
+        Assertions.assertNull(store.redeem(token, TTL), "a rotated token must not be redeemable twice");
+        Assertions.assertNull(store.redeem(grant.getRefreshToken(), TTL), "reuse must revoke the rotated tokens too");
+    }
+
+    @Test
+    void revoke_invalidatesTokenAndItsRotations() {
+        String token = store.issue(authenticable, TTL);
+        String other = store.issue(authenticable, TTL);
+        RefreshTokenGrant grant = store.redeem(token, TTL);
+
+        store.revoke(grant.getRefreshToken());
+
+        Assertions.assertNull(store.redeem(grant.getRefreshToken(), TTL));
+        Assertions.assertNotNull(store.redeem(other, TTL), "other logins keep their tokens");
+        Assertions.assertDoesNotThrow(() -> store.revoke(null));
+        Assertions.assertDoesNotThrow(() -> store.revoke("unknown"));
+    }
+
+    @Test
+    void redeem_rejectsExpiredUnknownAndBlankTokens() {
+        String expired = store.issue(authenticable, 0L);
+
+        Assertions.assertNull(store.redeem(expired, TTL));
+        Assertions.assertNull(store.redeem("unknown", TTL));
+        Assertions.assertNull(store.redeem(" ", TTL));
+        Assertions.assertNull(store.redeem(null, TTL));
+        Assertions.assertNull(store.issue(null, TTL));
+    }
+
+    @Test
+    void issue_capEvictsOldestTokens() {
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.REFRESH_TOKEN_MAX_ENTRIES)).thenReturn("1");
+        String first = store.issue(authenticable, TTL);
+        String second = store.issue(authenticable, TTL);
+
+        Assertions.assertNull(store.redeem(first, TTL));
+        Assertions.assertNotNull(store.redeem(second, TTL));
+    }
+
+    @Test
+    void issue_capEvictsABatchOfTheOldestTokens() throws InterruptedException {
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.REFRESH_TOKEN_MAX_ENTRIES)).thenReturn("20");
+        String[] tokens = new String[21];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = store.issue(authenticable, TTL);
+            Thread.sleep(2L); //NOSONAR: distinct issue instants make the eviction order deterministic
+        }
+
+        //the overflow dropped the two oldest tokens, a tenth of the cap
+        Assertions.assertNull(store.redeem(tokens[0], TTL));
+        Assertions.assertNull(store.redeem(tokens[1], TTL));
+        Assertions.assertNotNull(store.redeem(tokens[2], TTL));
+    }
+}
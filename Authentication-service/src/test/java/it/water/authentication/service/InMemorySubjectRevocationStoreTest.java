@@ -0,0 +1,72 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.authentication.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link InMemorySubjectRevocationStore}: one "not before" instant per subject.
+ */
+class InMemorySubjectRevocationStoreTest {
+
+    private InMemorySubjectRevocationStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemorySubjectRevocationStore();
+    }
+
+    @Test
+    void tokensIssuedUntilTheRevocationAreRevoked() {
+        long now = System.currentTimeMillis();
+        store.revokeBefore("user1", now);
+
+        Assertions.assertTrue(store.isRevoked("user1", now - 1000L));
+        Assertions.assertTrue(store.isRevoked("user1", now));
+        Assertions.assertFalse(store.isRevoked("user1", now + 1000L));
+        Assertions.assertFalse(store.isRevoked("user2", now - 1000L));
+    }
+
+    @Test
+    void revocationInstantNeverMovesBackwards() {
+        long now = System.currentTimeMillis();
+        store.revokeBefore("user1", now);
+        store.revokeBefore("user1", now - 5000L);
+
+        Assertions.assertEquals(now, store.revokedBefore("user1"));
+    }
+
+    @Test
+    void nullSubjectIsIgnored() {
+        Assertions.assertDoesNotThrow(() -> store.revokeBefore(null, System.currentTimeMillis()));
+        Assertions.assertEquals(0L, store.revokedBefore(null));
+        Assertions.assertFalse(store.isRevoked(null, 0L));
+    }
+
+    @Test
+    void entriesOlderThanTheLongestTokenLifetimeAreDropped() {
+        long longAgo = System.currentTimeMillis() - 30L * 24L * 60L * 60L * 1000L;
+        store.revokeBefore("user1", longAgo);
+
+        store.revokeBefore("user2", System.currentTimeMillis());
+
+        Assertions.assertEquals(0L, store.revokedBefore("user1"));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.authentication.service;
+
+import it.water.core.api.bundle.ApplicationProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.UUID;
+
+import static org.mockito.Mockito.lenient;
+
+/**
+ * Plain Mockito unit tests for {@link InMemoryTokenRevocationStore} and its {@link BloomFilter}: revoked
+ * jtis are found until their token expires, and expired buckets are dropped as a whole.
+ */
+@ExtendWith(MockitoExtension.class)
+class InMemoryTokenRevocationStoreTest {
+
+    private static final long BUCKET_MILLIS = 1000L;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    private InMemoryTokenRevocationStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryTokenRevocationStore();
+        store.setApplicationProperties(applicationProperties);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.REVOCATION_BUCKET_MILLIS)).thenReturn(String.valueOf(BUCKET_MILLIS));
+    }
+
+    @Test
+    void revokedJtiIsReportedUntilItsTokenExpires() {
+        long now = System.currentTimeMillis();
+        store.revoke("jti-1", now + 60_000L);
+
+        Assertions.assertTrue(store.isRevoked("jti-1"));
+        Assertions.assertFalse(store.isRevoked("jti-2"));
+        Assertions.assertFalse(store.isRevoked(null));
+    }
+
+    @Test
+    void alreadyExpiredTokensAreNotStored() {
+        store.revoke("jti-1", System.currentTimeMillis() - 1L);
+
+        Assertions.assertFalse(store.isRevoked("jti-1"));
+        Assertions.assertEquals(0, store.bucketCount());
+    }
+
+    @Test
+    void tokensExpiringCloseTogetherShareABucket() {
+        long base = (System.currentTimeMillis() / BUCKET_MILLIS + 60L) * BUCKET_MILLIS;
+        store.revoke("jti-1", base + 100L);
+        store.revoke("jti-2", base + 900L);
+        store.revoke("jti-3", base + BUCKET_MILLIS + 100L);
+
+        Assertions.assertEquals(2, store.bucketCount());
+    }
+
+    @Test
+    void expiredBucketsAreDroppedOnTheNextRevocation() throws InterruptedException {
+        store.revoke("jti-1", System.currentTimeMillis() + 50L);
+        Thread.sleep(BUCKET_MILLIS + 100L);
+
+        store.revoke("jti-2", System.currentTimeMillis() + 60_000L);
+
+        Assertions.assertFalse(store.isRevoked("jti-1"));
+        Assertions.assertTrue(store.isRevoked("jti-2"));
+        Assertions.assertEquals(1, store.bucketCount());
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegativesAndFewFalsePositives() {
+        BloomFilter bloomFilter = new BloomFilter(1000, 0.01d);
+        for (int i = 0; i < 1000; i++) {
+            bloomFilter.put(BloomFilter.hash("in-" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertTrue(bloomFilter.mightContain(BloomFilter.hash("in-" + i)));
+            if (bloomFilter.mightContain(BloomFilter.hash(UUID.randomUUID().toString())))
+                falsePositives++;
+        }
+        Assertions.assertTrue(falsePositives < 50, "false positive rate far above the target: " + falsePositives);
+    }
+}
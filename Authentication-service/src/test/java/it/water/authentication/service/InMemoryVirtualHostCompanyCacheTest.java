@@ -0,0 +1,294 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.integration.CompanyIntegrationClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for {@link InMemoryVirtualHostCompanyCache}: positive and negative caching,
+ * invalidation, ttl expiry, refresh-ahead, the entry cap, the pinned preloaded mappings, single-flight
+ * loading and loads racing with an invalidation.
+ */
+@ExtendWith(MockitoExtension.class)
+class InMemoryVirtualHostCompanyCacheTest {
+
+    private static final String HOST = "tenant.example.test";
+    private static final String UNKNOWN_HOST = "unknown.example.test";
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private CompanyIntegrationClient companyIntegrationClient;
+
+    private InMemoryVirtualHostCompanyCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new InMemoryVirtualHostCompanyCache();
+        cache.setComponentRegistry(componentRegistry);
+        cache.setApplicationProperties(applicationProperties);
+        lenient().when(componentRegistry.findComponent(CompanyIntegrationClient.class, null)).thenReturn(companyIntegrationClient);
+        //refresh-ahead disabled unless a test enables it
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.VHOST_CACHE_REFRESH_AHEAD_PERCENT)).thenReturn("100");
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.onDeactivate();
+    }
+
+    @Test
+    void resolveCompanyId_secondLookupIsServedFromCache() {
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(HOST)).thenReturn(77L);
+
+        Assertions.assertEquals(77L, cache.resolveCompanyId(HOST));
+        Assertions.assertEquals(77L, cache.resolveCompanyId(HOST));
+
+        verify(companyIntegrationClient, times(1)).findCompanyIdByVirtualHost(HOST);
+    }
+
+    @Test
+    void resolveCompanyId_missIsCachedToo() {
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(UNKNOWN_HOST)).thenReturn(null);
+
+        Assertions.assertNull(cache.resolveCompanyId(UNKNOWN_HOST));
+        Assertions.assertNull(cache.resolveCompanyId(UNKNOWN_HOST));
+
+        verify(companyIntegrationClient, times(1)).findCompanyIdByVirtualHost(UNKNOWN_HOST);
+    }
+
+    @Test
+    void resolveCompanyId_expiredMissIsReloaded() {
+        when(applicationProperties.getProperty(AuthenticationConstants.VHOST_CACHE_NEGATIVE_TTL_MILLIS)).thenReturn("0");
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(UNKNOWN_HOST)).thenReturn(null, 5L);
+
+        Assertions.assertNull(cache.resolveCompanyId(UNKNOWN_HOST));
+        Assertions.assertEquals(5L, cache.resolveCompanyId(UNKNOWN_HOST));
+
+        verify(companyIntegrationClient, times(2)).findCompanyIdByVirtualHost(UNKNOWN_HOST);
+    }
+
+    @Test
+    void resolveCompanyId_nullHostIsNeverCached() {
+        Assertions.assertNull(cache.resolveCompanyId(null));
+        Assertions.assertNull(cache.resolveCompanyId(null));
+
+        verify(companyIntegrationClient, times(2)).findCompanyIdByVirtualHost(null);
+    }
+
+    @Test
+    void invalidate_forcesReloadOfThatHostOnly() {
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(HOST)).thenReturn(77L, 78L);
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(UNKNOWN_HOST)).thenReturn(null);
+        cache.resolveCompanyId(HOST);
+        cache.resolveCompanyId(UNKNOWN_HOST);
+
+        cache.invalidate(HOST);
+
+        Assertions.assertEquals(78L, cache.resolveCompanyId(HOST));
+        Assertions.assertNull(cache.resolveCompanyId(UNKNOWN_HOST));
+        verify(companyIntegrationClient, times(2)).findCompanyIdByVirtualHost(HOST);
+        verify(companyIntegrationClient, times(1)).findCompanyIdByVirtualHost(UNKNOWN_HOST);
+    }
+
+    @Test
+    void invalidateAll_forcesReloadOfEveryHost() {
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(HOST)).thenReturn(77L);
+        cache.resolveCompanyId(HOST);
+
+        cache.invalidateAll();
+        cache.resolveCompanyId(HOST);
+
+        verify(companyIntegrationClient, times(2)).findCompanyIdByVirtualHost(HOST);
+        Assertions.assertDoesNotThrow(() -> cache.invalidate(null));
+    }
+
+    @Test
+    void resolveCompanyId_refreshAheadReloadsInBackgroundWhileServingCurrentValue() {
+        when(applicationProperties.getProperty(AuthenticationConstants.VHOST_CACHE_REFRESH_AHEAD_PERCENT)).thenReturn("0");
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(HOST)).thenReturn(77L, 78L);
+
+        Assertions.assertEquals(77L, cache.resolveCompanyId(HOST));
+        //served from the cache while the reload runs asynchronously
+        Assertions.assertEquals(77L, cache.resolveCompanyId(HOST));
+
+        verify(companyIntegrationClient, timeout(2000).times(2)).findCompanyIdByVirtualHost(HOST);
+    }
+
+    @Test
+    void resolveCompanyId_capEvictsOldestEntries() {
+        when(applicationProperties.getProperty(AuthenticationConstants.VHOST_CACHE_MAX_ENTRIES)).thenReturn("1");
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(HOST)).thenReturn(77L);
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(UNKNOWN_HOST)).thenReturn(null);
+
+        cache.resolveCompanyId(HOST);
+        cache.resolveCompanyId(UNKNOWN_HOST);
+        cache.resolveCompanyId(HOST);
+
+        verify(companyIntegrationClient, times(2)).findCompanyIdByVirtualHost(HOST);
+        verify(companyIntegrationClient, never()).findCompanyIdByVirtualHost("other.example.test");
+    }
+
+    @Test
+    void resolveCompanyId_capStillAppliesAfterAPinnedHostIsInvalidated() {
+        when(applicationProperties.getProperty(AuthenticationConstants.VHOST_CACHE_MAX_ENTRIES)).thenReturn("1");
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(UNKNOWN_HOST)).thenReturn(null);
+        when(companyIntegrationClient.findCompanyIdByVirtualHost("other.example.test")).thenReturn(9L);
+        cache.preload(Map.of(HOST, 77L, "pinned.example.test", 5L));
+        cache.invalidate(HOST);
+
+        cache.resolveCompanyId(UNKNOWN_HOST);
+        cache.resolveCompanyId("other.example.test");
+        cache.resolveCompanyId(UNKNOWN_HOST);
+
+        //one lazy entry at most: the second load evicted the first
+        verify(companyIntegrationClient, times(2)).findCompanyIdByVirtualHost(UNKNOWN_HOST);
+        Assertions.assertEquals(5L, cache.resolveCompanyId("pinned.example.test"));
+    }
+
+    @Test
+    void preload_mappingsAreServedWithoutCallingTheCompanyClient() {
+        cache.preload(Map.of(HOST, 77L));
+
+        Assertions.assertEquals(77L, cache.resolveCompanyId(HOST));
+        Assertions.assertEquals(77L, cache.resolveCompanyId(HOST));
+        verify(companyIntegrationClient, never()).findCompanyIdByVirtualHost(anyString());
+    }
+
+    @Test
+    void preload_dropsHostsMissingFromTheNewFullMap() {
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(UNKNOWN_HOST)).thenReturn(null);
+        cache.preload(Map.of(HOST, 77L, UNKNOWN_HOST, 5L));
+
+        cache.preload(Map.of(HOST, 77L));
+
+        Assertions.assertNull(cache.resolveCompanyId(UNKNOWN_HOST));
+        verify(companyIntegrationClient, times(1)).findCompanyIdByVirtualHost(UNKNOWN_HOST);
+    }
+
+    @Test
+    void applyChanges_updatesAndRemovesPreloadedHosts() {
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(UNKNOWN_HOST)).thenReturn(null);
+        cache.preload(Map.of(HOST, 77L, UNKNOWN_HOST, 5L));
+        Map<String, Long> changes = new HashMap<>();
+        changes.put(HOST, 78L);
+        changes.put(UNKNOWN_HOST, null);
+
+        cache.applyChanges(changes);
+
+        Assertions.assertEquals(78L, cache.resolveCompanyId(HOST));
+        Assertions.assertNull(cache.resolveCompanyId(UNKNOWN_HOST));
+        verify(companyIntegrationClient, never()).findCompanyIdByVirtualHost(HOST);
+        Assertions.assertDoesNotThrow(() -> cache.applyChanges(null));
+        Assertions.assertDoesNotThrow(() -> cache.preload(null));
+    }
+
+    @Test
+    void resolveCompanyId_concurrentMissesShareOneCompanyCall() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(HOST)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 77L;
+        });
+        CompletableFuture<Long> first = CompletableFuture.supplyAsync(() -> cache.resolveCompanyId(HOST));
+        Assertions.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Long> second = CompletableFuture.supplyAsync(() -> cache.resolveCompanyId(HOST));
+
+        release.countDown();
+
+        Assertions.assertEquals(77L, first.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(77L, second.get(5, TimeUnit.SECONDS));
+        verify(companyIntegrationClient, times(1)).findCompanyIdByVirtualHost(HOST);
+    }
+
+    @Test
+    void resolveCompanyId_waitingCallersGetTheLoadFailure() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(HOST)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            throw new IllegalStateException("company module down");
+        });
+        CompletableFuture<Long> first = CompletableFuture.supplyAsync(() -> cache.resolveCompanyId(HOST));
+        Assertions.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Long> second = CompletableFuture.supplyAsync(() -> cache.resolveCompanyId(HOST));
+
+        release.countDown();
+
+        Exception firstError = Assertions.assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+        Exception secondError = Assertions.assertThrows(Exception.class, () -> second.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(IllegalStateException.class, firstError.getCause());
+        Assertions.assertInstanceOf(IllegalStateException.class, secondError.getCause());
+    }
+
+    @Test
+    void resolveCompanyId_loadRacingWithInvalidateIsNotCached() {
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(HOST)).thenAnswer(invocation -> {
+            //the mapping changes while the Company call is in flight
+            cache.invalidate(HOST);
+            return 77L;
+        }).thenReturn(78L);
+
+        Assertions.assertEquals(77L, cache.resolveCompanyId(HOST));
+        Assertions.assertEquals(78L, cache.resolveCompanyId(HOST));
+
+        verify(companyIntegrationClient, times(2)).findCompanyIdByVirtualHost(HOST);
+    }
+
+    @Test
+    void resolveCompanyId_loadRacingWithApplyChangesKeepsThePinnedMapping() {
+        when(companyIntegrationClient.findCompanyIdByVirtualHost(HOST)).thenAnswer(invocation -> {
+            cache.applyChanges(Map.of(HOST, 78L));
+            return 77L;
+        });
+
+        Assertions.assertEquals(77L, cache.resolveCompanyId(HOST));
+        Assertions.assertEquals(78L, cache.resolveCompanyId(HOST));
+
+        verify(companyIntegrationClient, times(1)).findCompanyIdByVirtualHost(HOST);
+    }
+}
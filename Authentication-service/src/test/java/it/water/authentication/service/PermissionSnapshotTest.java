@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import com.nimbusds.jwt.SignedJWT;
+import it.water.authentication.api.PermissionSnapshot;
+import it.water.authentication.api.PermissionSnapshotSource;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.authentication.api.options.TokenClaimsProfile;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.model.Role;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.security.Authenticable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for the permission snapshot embedded by
+ * {@link AuthenticationSystemServiceImpl#generateToken(Authenticable)} with in-tree signing on the test keystore.
+ */
+@ExtendWith(MockitoExtension.class)
+class PermissionSnapshotTest {
+
+    private static final String ISSUER = "it.water.core.api.model.User";
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    @Mock
+    private AuthenticationOption authenticationOption;
+
+    @Mock
+    private PermissionSnapshotSource permissionSnapshotSource;
+
+    @Mock
+    private Authenticable authenticable;
+
+    private AuthenticationSystemServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = new AuthenticationSystemServiceImpl();
+        service.setApplicationProperties(applicationProperties);
+        service.setComponentRegistry(componentRegistry);
+        service.setAuthenticationOption(authenticationOption);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_FILE)).thenReturn("src/test/resources/certs/server.keystore");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_PASSWORD)).thenReturn("water.");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_ALIAS)).thenReturn("server-cert");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_ENABLED)).thenReturn("true");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_WARMUP_ROUNDS)).thenReturn("1");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_RELOAD_INTERVAL_MILLIS)).thenReturn("0");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.INTROSPECTION_CACHE_TTL_MILLIS)).thenReturn("0");
+        lenient().when(componentRegistry.findComponent(PermissionSnapshotSource.class, null)).thenReturn(permissionSnapshotSource);
+        lenient().when(authenticationOption.getIssuerName()).thenReturn(ISSUER);
+        Role role = mock(Role.class);
+        lenient().when(role.getId()).thenReturn(11L);
+        lenient().when(role.getName()).thenReturn("operator");
+        lenient().when(authenticable.getScreenName()).thenReturn("user1");
+        lenient().when(authenticable.getIssuer()).thenReturn(ISSUER);
+        lenient().when(authenticable.getRoles()).thenReturn(List.of(role));
+        Map<String, Collection<String>> permissions = Map.of("it.water.Device", List.of("find", "find-all"), "it.water.Order", List.of("approve"));
+        lenient().when(permissionSnapshotSource.findPermissions(authenticable)).thenReturn(permissions);
+        lenient().when(permissionSnapshotSource.getPermissionsVersion()).thenReturn(7L);
+        service.onActivate(applicationProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.onDeactivate();
+    }
+
+    @Test
+    void generateToken_embedsTheVersionedSnapshotWhenEnabled() {
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.PERMISSION_SNAPSHOT_ENABLED)).thenReturn("true");
+        when(authenticationOption.getTokenClaimsProfile(ISSUER)).thenReturn(TokenClaimsProfile.STANDARD);
+
+        PermissionSnapshot snapshot = service.getPermissionSnapshot(service.generateToken(authenticable));
+
+        assertSnapshot(snapshot);
+    }
+
+    @Test
+    void generateToken_compactSnapshotIsExpandedBack() throws Exception {
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.PERMISSION_SNAPSHOT_ENABLED)).thenReturn("true");
+        when(authenticationOption.getTokenClaimsProfile(ISSUER)).thenReturn(TokenClaimsProfile.COMPACT);
+
+        String token = service.generateToken(authenticable);
+
+        Map<?, ?> compact = (Map<?, ?>) SignedJWT.parse(token).getJWTClaimsSet().getClaim(CompactClaims.CLAIM_PERMISSIONS);
+        Assertions.assertEquals(0b11000L, compact.get("it.water.Device"));
+        assertSnapshot(service.getPermissionSnapshot(token));
+    }
+
+    @Test
+    void generateToken_noSnapshotWhenDisabled() {
+        PermissionSnapshot snapshot = service.getPermissionSnapshot(service.generateToken(authenticable));
+
+        Assertions.assertNull(snapshot);
+        verify(permissionSnapshotSource, never()).findPermissions(authenticable);
+        Assertions.assertNull(service.getPermissionSnapshot("not-a-token"));
+    }
+
+    private static void assertSnapshot(PermissionSnapshot snapshot) {
+        Assertions.assertNotNull(snapshot);
+        Assertions.assertEquals(7L, snapshot.getVersion());
+        Assertions.assertTrue(snapshot.isCurrent(7L));
+        Assertions.assertFalse(snapshot.isCurrent(8L));
+        Assertions.assertEquals(Set.of("operator"), snapshot.getRoles());
+        Assertions.assertTrue(snapshot.isAllowed("it.water.Device", "find-all"));
+        Assertions.assertTrue(snapshot.isAllowed("it.water.Order", "approve"));
+        Assertions.assertFalse(snapshot.isAllowed("it.water.Device", "remove"));
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Plain unit tests for {@link RevocationJournal}: two journals on the same directory play the role of two
+ * nodes. The background thread is disabled and {@code poll()} is called directly.
+ */
+class RevocationJournalTest {
+
+    private static final long HOUR = 60L * 60L * 1000L;
+
+    @TempDir
+    Path directory;
+
+    private final List<RevocationJournal> journals = new ArrayList<>();
+
+    /**
+     * Records every delivered entry as "T:jti" or "S:subject".
+     */
+    private static final class RecordingListener implements RevocationJournal.Listener {
+        private final List<String> received = new ArrayList<>();
+
+        @Override
+        public void onTokenRevoked(String jti, long expiresAtMillis) {
+            received.add("T:" + jti);
+        }
+
+        @Override
+        public void onSubjectRevoked(String subject, long notBeforeMillis) {
+            received.add("S:" + subject);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        journals.forEach(RevocationJournal::stop);
+    }
+
+    private RevocationJournal start(String nodeId, int segmentBytes, long rollIntervalMillis, RevocationJournal.Listener listener) throws IOException {
+        RevocationJournal journal = new RevocationJournal(directory, nodeId, segmentBytes, rollIntervalMillis, 0L, listener);
+        journal.start();
+        journals.add(journal);
+        return journal;
+    }
+
+    private long segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void poll_deliversTheRecordsOfTheOtherNodesOnly() throws IOException {
+        RecordingListener listenerA = new RecordingListener();
+        RecordingListener listenerB = new RecordingListener();
+        RevocationJournal nodeA = start("node-a", 64 * 1024, HOUR, listenerA);
+        RevocationJournal nodeB = start("node-b", 64 * 1024, HOUR, listenerB);
+        long expiresAt = System.currentTimeMillis() + HOUR;
+
+        nodeA.appendTokenRevoked("jti-1", expiresAt);
+        nodeA.appendSubjectRevoked("alice", System.currentTimeMillis(), expiresAt);
+        nodeB.poll();
+        nodeA.poll();
+
+        Assertions.assertEquals(List.of("T:jti-1", "S:alice"), listenerB.received);
+        Assertions.assertTrue(listenerA.received.isEmpty());
+
+        //tailing resumes from the last offset
+        nodeA.appendTokenRevoked("jti-2", expiresAt);
+        nodeB.poll();
+        Assertions.assertEquals(List.of("T:jti-1", "S:alice", "T:jti-2"), listenerB.received);
+    }
+
+    @Test
+    void start_replaysEverySegmentIncludingTheOwnOnes() throws IOException {
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        RevocationJournal nodeA = start("node-a", 512, HOUR, new RecordingListener());
+        //small segments: the records span several sealed segments
+        for (int i = 0; i < 20; i++) {
+            nodeA.appendTokenRevoked("jti-" + i, expiresAt);
+        }
+        nodeA.stop();
+        Assertions.assertTrue(segments() > 1);
+
+        RecordingListener restarted = new RecordingListener();
+        RevocationJournal nodeARestarted = start("node-a", 512, HOUR, restarted);
+        nodeARestarted.appendTokenRevoked("jti-20", expiresAt);
+
+        Assertions.assertEquals(20, restarted.received.size());
+        Assertions.assertEquals("T:jti-0", restarted.received.get(0));
+        Assertions.assertEquals("T:jti-19", restarted.received.get(19));
+        RecordingListener other = new RecordingListener();
+        start("node-b", 512, HOUR, other);
+        Assertions.assertEquals(21, other.received.size());
+    }
+
+    @Test
+    void poll_deletesSealedSegmentsWhoseEntriesAreAllExpired() throws IOException {
+        RevocationJournal nodeA = start("node-a", 64 * 1024, 0L, new RecordingListener());
+        nodeA.appendTokenRevoked("expired", System.currentTimeMillis() - 1);
+
+        //first round seals the active segment, second one reads the seal and deletes it
+        nodeA.poll();
+        nodeA.poll();
+
+        Assertions.assertEquals(1, segments());
+        RecordingListener other = new RecordingListener();
+        start("node-b", 64 * 1024, HOUR, other);
+        Assertions.assertTrue(other.received.isEmpty());
+    }
+
+    @Test
+    void poll_rewritesTheLiveEntriesOfMostlyExpiredSegments() throws IOException, InterruptedException {
+        RevocationJournal nodeA = start("node-a", 64 * 1024, 0L, new RecordingListener());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            nodeA.appendTokenRevoked("short-" + i, now + 50);
+        }
+        nodeA.appendTokenRevoked("live", now + HOUR);
+        nodeA.poll();
+        Thread.sleep(100);
+
+        nodeA.poll();
+
+        RecordingListener other = new RecordingListener();
+        start("node-b", 64 * 1024, HOUR, other);
+        Assertions.assertEquals(List.of("T:live"), other.received);
+    }
+
+    @Test
+    void start_failsForASecondWriterWithTheSameNodeId() throws IOException {
+        start("node-a", 64 * 1024, HOUR, new RecordingListener());
+        RevocationJournal duplicate = new RevocationJournal(directory, "node-a", 64 * 1024, HOUR, 0L, new RecordingListener());
+
+        Assertions.assertThrows(IOException.class, duplicate::start);
+        duplicate.stop();
+    }
+
+    @Test
+    void append_isIgnoredAfterStop() throws IOException {
+        RevocationJournal nodeA = start("node-a", 64 * 1024, HOUR, new RecordingListener());
+        nodeA.stop();
+
+        Assertions.assertDoesNotThrow(() -> nodeA.appendTokenRevoked("jti", System.currentTimeMillis() + HOUR));
+        Assertions.assertDoesNotThrow(() -> nodeA.appendTokenRevoked(null, 0L));
+    }
+}
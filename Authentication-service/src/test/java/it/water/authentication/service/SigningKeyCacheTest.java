@@ -0,0 +1,197 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.security.Authenticable;
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for {@link SigningKeyCache}, {@link SigningProfiles} and the signing warm-up run by
+ * {@link AuthenticationSystemServiceImpl#onActivate(ApplicationProperties)}, against the test keystore.
+ */
+@ExtendWith(MockitoExtension.class)
+class SigningKeyCacheTest {
+
+    private static final String KEYSTORE_FILE = "src/test/resources/certs/server.keystore";
+    private static final String KEYSTORE_PASSWORD = "water.";
+    private static final String ALIAS = "server-cert";
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private Authenticable authenticable;
+
+    @Mock
+    private JwtTokenService jwtTokenService;
+
+    @Test
+    void load_cachesKeyPairSignerAndVerifier() throws Exception {
+        SigningKeyCache keys = SigningKeyCache.load(KEYSTORE_FILE, KEYSTORE_PASSWORD, null, ALIAS);
+
+        Assertions.assertEquals(ALIAS, keys.getAlias());
+        Assertions.assertEquals("RSA", keys.getPrivateKey().getAlgorithm());
+        Assertions.assertNotNull(keys.getSigner());
+        Assertions.assertNotNull(keys.getVerifier());
+        Assertions.assertTrue(keys.warmUp(3) >= 0L);
+    }
+
+    @Test
+    void sign_algorithmAndKidFollowTheKeyType() throws Exception {
+        assertSignsAndVerifies(generate("EC", new ECGenParameterSpec("secp256r1")), JWSAlgorithm.ES256);
+        assertSignsAndVerifies(generate("Ed25519", null), JWSAlgorithm.EdDSA);
+        SigningKeyCache rsa = SigningKeyCache.load(KEYSTORE_FILE, KEYSTORE_PASSWORD, null, ALIAS);
+        Assertions.assertEquals(JWSAlgorithm.RS256, rsa.getAlgorithm());
+    }
+
+    @Test
+    void signingProfiles_issuerWithoutProfileUsesTheDefaultKey() throws Exception {
+        SigningProfiles profiles = SigningProfiles.load(KEYSTORE_FILE, KEYSTORE_PASSWORD, null, ALIAS, "it.water.Partner=" + ALIAS + ", malformed");
+
+        Assertions.assertSame(profiles.getDefaultKey(), profiles.forIssuer("it.water.Partner"));
+        Assertions.assertSame(profiles.getDefaultKey(), profiles.forIssuer("it.water.Other"));
+        Assertions.assertSame(profiles.getDefaultKey(), profiles.forIssuer(null));
+        Assertions.assertEquals(1, SigningProfiles.parse("a=b, =c, d=").size());
+    }
+
+    @Test
+    void load_failsOnUnknownAliasOrMissingConfiguration() {
+        Assertions.assertThrows(GeneralSecurityException.class, () -> SigningKeyCache.load(KEYSTORE_FILE, KEYSTORE_PASSWORD, null, "missing"));
+        Assertions.assertThrows(GeneralSecurityException.class, () -> SigningKeyCache.load(null, KEYSTORE_PASSWORD, null, ALIAS));
+        Assertions.assertThrows(Exception.class, () -> SigningKeyCache.load("missing.keystore", KEYSTORE_PASSWORD, null, ALIAS));
+    }
+
+    @Test
+    void onActivate_warmsUpSigningBeforeReportingReady() {
+        AuthenticationSystemServiceImpl service = new AuthenticationSystemServiceImpl();
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_FILE)).thenReturn(KEYSTORE_FILE);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_PASSWORD)).thenReturn(KEYSTORE_PASSWORD);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_ALIAS)).thenReturn(ALIAS);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_WARMUP_ROUNDS)).thenReturn("2");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_RELOAD_INTERVAL_MILLIS)).thenReturn("0");
+        service.setJwtTokenService(jwtTokenService);
+        Assertions.assertFalse(service.isSigningReady());
+
+        service.onActivate(applicationProperties);
+
+        Assertions.assertTrue(service.isSigningReady());
+        Assertions.assertEquals(ALIAS, service.getSigningProfiles().getDefaultKey().getAlias());
+        //the warm-up runs on the cached signer only, no token is issued through the token service
+        verifyNoInteractions(jwtTokenService);
+    }
+
+    @Test
+    void generateToken_signsWithTheProfileKeyWhenSigningIsEnabled() throws Exception {
+        AuthenticationSystemServiceImpl service = new AuthenticationSystemServiceImpl();
+        service.setApplicationProperties(applicationProperties);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_FILE)).thenReturn(KEYSTORE_FILE);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_PASSWORD)).thenReturn(KEYSTORE_PASSWORD);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_ALIAS)).thenReturn(ALIAS);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_ENABLED)).thenReturn("true");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_WARMUP_ROUNDS)).thenReturn("1");
+        when(authenticable.getScreenName()).thenReturn("user1");
+        when(authenticable.getIssuer()).thenReturn("it.water.core.api.model.User");
+        service.onActivate(applicationProperties);
+
+        SignedJWT jwt = SignedJWT.parse(service.generateToken(authenticable));
+
+        SigningKeyCache keys = service.getSigningProfiles().getDefaultKey();
+        Assertions.assertEquals(keys.getKeyId(), jwt.getHeader().getKeyID());
+        Assertions.assertTrue(jwt.verify(keys.getVerifier()));
+        Assertions.assertEquals("user1", jwt.getJWTClaimsSet().getSubject());
+        Assertions.assertEquals("it.water.core.api.model.User", jwt.getJWTClaimsSet().getIssuer());
+        Assertions.assertNotNull(jwt.getJWTClaimsSet().getJWTID());
+    }
+
+    @Test
+    void onActivate_missingKeystoreIsReadyAndRetriesLoadingTheKeys() throws InterruptedException {
+        AuthenticationSystemServiceImpl service = new AuthenticationSystemServiceImpl();
+        //stubbed once: the retry thread reads the properties while the test runs
+        AtomicReference<String> keystoreFile = new AtomicReference<>();
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_FILE)).thenAnswer(invocation -> keystoreFile.get());
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_PASSWORD)).thenReturn(KEYSTORE_PASSWORD);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_ALIAS)).thenReturn(ALIAS);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_WARMUP_ROUNDS)).thenReturn("1");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_RELOAD_INTERVAL_MILLIS)).thenReturn("20");
+
+        Assertions.assertDoesNotThrow(() -> service.onActivate(applicationProperties));
+
+        //tokens are issued by the token service meanwhile, the node is not kept out of rotation
+        Assertions.assertTrue(service.isSigningReady());
+        Assertions.assertNull(service.getSigningProfiles());
+        //the keystore becomes available later, e.g. a secret mounted after the start
+        keystoreFile.set(KEYSTORE_FILE);
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (service.getSigningProfiles() == null && System.currentTimeMillis() < deadline)
+            Thread.sleep(20L);
+
+        Assertions.assertNotNull(service.getSigningProfiles());
+        Assertions.assertEquals(ALIAS, service.getSigningProfiles().getDefaultKey().getAlias());
+        service.onDeactivate();
+    }
+
+    @Test
+    void onActivate_disabledWarmUpIsReadyRightAway() {
+        AuthenticationSystemServiceImpl service = new AuthenticationSystemServiceImpl();
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_WARMUP_ENABLED)).thenReturn("false");
+
+        service.onActivate(applicationProperties);
+
+        Assertions.assertTrue(service.isSigningReady());
+        Assertions.assertNull(service.getSigningProfiles());
+    }
+
+    private static void assertSignsAndVerifies(KeyPair keyPair, JWSAlgorithm expectedAlgorithm) throws Exception {
+        SigningKeyCache keys = new SigningKeyCache("generated", keyPair.getPrivate(), keyPair.getPublic());
+        JWTClaimsSet claims = new JWTClaimsSet.Builder().subject("user1").build();
+
+        SignedJWT jwt = SignedJWT.parse(keys.sign(claims));
+
+        Assertions.assertEquals(expectedAlgorithm, keys.getAlgorithm());
+        Assertions.assertEquals(expectedAlgorithm, jwt.getHeader().getAlgorithm());
+        Assertions.assertEquals(keys.getKeyId(), jwt.getHeader().getKeyID());
+        Assertions.assertTrue(jwt.verify(keys.getVerifier()));
+        Assertions.assertEquals("user1", jwt.getJWTClaimsSet().getSubject());
+    }
+
+    private static KeyPair generate(String algorithm, AlgorithmParameterSpec parameters) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        if (parameters != null)
+            generator.initialize(parameters);
+        return generator.generateKeyPair();
+    }
+}
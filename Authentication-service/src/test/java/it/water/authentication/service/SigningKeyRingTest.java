@@ -0,0 +1,248 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import it.water.authentication.api.JwkSet;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.security.Authenticable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for {@link SigningKeyRing}: the key under the signing alias is replaced in a copy
+ * of the test keystore with the JDK keytool, as an operator would rotate it.
+ */
+@ExtendWith(MockitoExtension.class)
+class SigningKeyRingTest {
+
+    private static final String KEYSTORE_PASSWORD = "water.";
+    private static final String ALIAS = "server-cert";
+    private static final long OVERLAP_MILLIS = 60L * 60L * 1000L;
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private Authenticable authenticable;
+
+    @Mock
+    private AuthenticationOption authenticationOption;
+
+    private SigningKeyRing keyRing;
+
+    @AfterEach
+    void stopKeyRing() {
+        if (keyRing != null)
+            keyRing.stop();
+    }
+
+    @Test
+    void reload_retiredKeyKeepsVerifyingDuringTheOverlap() throws Exception {
+        Path keystore = copyTestKeystore();
+        keyRing = new SigningKeyRing(keystore.toString(), KEYSTORE_PASSWORD, null, ALIAS, null, List.of(), OVERLAP_MILLIS, 0L, 1);
+        keyRing.start();
+        SigningKeyCache oldKey = keyRing.getProfiles().getDefaultKey();
+        SignedJWT oldToken = SignedJWT.parse(oldKey.sign(claims()));
+
+        rotate(keystore, ALIAS);
+        keyRing.reloadIfChanged();
+
+        SigningKeyCache newKey = keyRing.getProfiles().getDefaultKey();
+        Assertions.assertNotEquals(oldKey.getKeyId(), newKey.getKeyId());
+        Assertions.assertSame(oldKey, keyRing.verificationKey(oldKey.getKeyId()));
+        Assertions.assertTrue(keyRing.verify(oldToken));
+        Assertions.assertTrue(keyRing.verify(SignedJWT.parse(newKey.sign(claims()))));
+        Assertions.assertEquals(2, keyRing.verificationKeys().size());
+    }
+
+    @Test
+    void reload_retiredKeyStopsVerifyingAfterTheOverlap() throws Exception {
+        Path keystore = copyTestKeystore();
+        keyRing = new SigningKeyRing(keystore.toString(), KEYSTORE_PASSWORD, null, ALIAS, null, List.of(), 0L, 0L, 0);
+        keyRing.start();
+        SigningKeyCache oldKey = keyRing.getProfiles().getDefaultKey();
+        SignedJWT oldToken = SignedJWT.parse(oldKey.sign(claims()));
+
+        rotate(keystore, ALIAS);
+        keyRing.reloadIfChanged();
+
+        Assertions.assertNull(keyRing.verificationKey(oldKey.getKeyId()));
+        Assertions.assertFalse(keyRing.verify(oldToken));
+        Assertions.assertEquals(1, keyRing.verificationKeys().size());
+    }
+
+    @Test
+    void start_verificationAliasValidatesBeforeItSigns() throws Exception {
+        Path keystore = copyTestKeystore();
+        rotate(keystore, "next-cert");
+        keyRing = new SigningKeyRing(keystore.toString(), KEYSTORE_PASSWORD, null, ALIAS, null, List.of("next-cert"), OVERLAP_MILLIS, 0L, 0);
+        keyRing.start();
+        SigningKeyCache nextKey = SigningKeyCache.load(keystore.toString(), KEYSTORE_PASSWORD, null, "next-cert");
+
+        Assertions.assertEquals(ALIAS, keyRing.getProfiles().getDefaultKey().getAlias());
+        Assertions.assertTrue(keyRing.verify(SignedJWT.parse(nextKey.sign(claims()))));
+    }
+
+    @Test
+    void reloadIfChanged_keepsTheCurrentKeysWhenTheKeystoreIsBroken() throws Exception {
+        Path keystore = copyTestKeystore();
+        keyRing = new SigningKeyRing(keystore.toString(), KEYSTORE_PASSWORD, null, ALIAS, null, List.of(), OVERLAP_MILLIS, 0L, 0);
+        keyRing.start();
+        SigningProfiles profiles = keyRing.getProfiles();
+
+        Files.write(keystore, new byte[]{1, 2, 3});
+        keyRing.reloadIfChanged();
+
+        Assertions.assertSame(profiles, keyRing.getProfiles());
+    }
+
+    @Test
+    void start_refusesSigningKeysTheValidatorCannotVerify() throws Exception {
+        Path keystore = copyTestKeystore();
+        keyRing = new SigningKeyRing(keystore.toString(), KEYSTORE_PASSWORD, null, ALIAS, null, List.of(), OVERLAP_MILLIS, 0L, 0, Set.of(JWSAlgorithm.ES256));
+
+        Assertions.assertThrows(GeneralSecurityException.class, keyRing::start);
+        Assertions.assertNull(keyRing.getProfiles());
+
+        keyRing = new SigningKeyRing(keystore.toString(), KEYSTORE_PASSWORD, null, ALIAS, null, List.of(), OVERLAP_MILLIS, 0L, 0, Set.of(JWSAlgorithm.RS256));
+        keyRing.start();
+        Assertions.assertEquals(JWSAlgorithm.RS256, keyRing.getProfiles().getDefaultKey().getAlgorithm());
+    }
+
+    @Test
+    void jwkSet_encodedOncePerKeySetWithAStrongETag() throws Exception {
+        Path keystore = copyTestKeystore();
+        keyRing = new SigningKeyRing(keystore.toString(), KEYSTORE_PASSWORD, null, ALIAS, null, List.of(), OVERLAP_MILLIS, 0L, 0);
+        keyRing.start();
+        String oldKid = keyRing.getProfiles().getDefaultKey().getKeyId();
+        JwkSet jwkSet = keyRing.jwkSet(300L);
+
+        String json = new String(jwkSet.getBody(), StandardCharsets.UTF_8);
+        Assertions.assertSame(jwkSet, keyRing.jwkSet(300L));
+        Assertions.assertTrue(json.startsWith("{\"keys\":[{\"kty\":\"RSA\",\"n\":\""));
+        Assertions.assertTrue(json.contains("\"kid\":\"" + oldKid + "\",\"alg\":\"RS256\",\"use\":\"sig\""));
+        Assertions.assertTrue(jwkSet.getETag().startsWith("\"") && jwkSet.getETag().endsWith("\""));
+        Assertions.assertEquals("public, max-age=300", jwkSet.getCacheControl());
+        Assertions.assertTrue(jwkSet.isNotModified(jwkSet.getETag()));
+        Assertions.assertTrue(jwkSet.isNotModified("\"other\", W/" + jwkSet.getETag()));
+        Assertions.assertFalse(jwkSet.isNotModified("\"other\""));
+        Assertions.assertFalse(jwkSet.isNotModified(null));
+
+        rotate(keystore, ALIAS);
+        keyRing.reloadIfChanged();
+        JwkSet rotated = keyRing.jwkSet(300L);
+
+        String rotatedJson = new String(rotated.getBody(), StandardCharsets.UTF_8);
+        Assertions.assertNotEquals(jwkSet.getETag(), rotated.getETag());
+        Assertions.assertTrue(rotatedJson.contains("\"kty\":\"EC\",\"crv\":\"P-256\""));
+        Assertions.assertTrue(rotatedJson.contains(oldKid));
+    }
+
+    @Test
+    void getJwkSet_isEmptyWhenTheKeysAreNotLoaded() {
+        AuthenticationSystemServiceImpl service = new AuthenticationSystemServiceImpl();
+
+        JwkSet jwkSet = service.getJwkSet();
+
+        Assertions.assertEquals("{\"keys\":[]}", new String(jwkSet.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void validateToken_checksSignatureByKidAndExpiry() throws Exception {
+        AuthenticationSystemServiceImpl service = new AuthenticationSystemServiceImpl();
+        service.setApplicationProperties(applicationProperties);
+        service.setAuthenticationOption(authenticationOption);
+        lenient().when(authenticationOption.getIssuerName()).thenReturn("it.water.core.api.model.User");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_FILE)).thenReturn(copyTestKeystore().toString());
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_PASSWORD)).thenReturn(KEYSTORE_PASSWORD);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.KEYSTORE_ALIAS)).thenReturn(ALIAS);
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_ENABLED)).thenReturn("true");
+        lenient().when(applicationProperties.getProperty(AuthenticationConstants.SIGNING_RELOAD_INTERVAL_MILLIS)).thenReturn("0");
+        when(authenticable.getScreenName()).thenReturn("user1");
+        when(authenticable.getIssuer()).thenReturn("it.water.core.api.model.User");
+        service.onActivate(applicationProperties);
+        String token = service.generateToken(authenticable);
+        SigningKeyCache key = service.getSigningKeyRing().getProfiles().getDefaultKey();
+        long past = System.currentTimeMillis() - 1000L;
+        String expired = key.sign(new JWTClaimsSet.Builder().subject("user1").expirationTime(new Date(past)).build());
+
+        Assertions.assertTrue(service.validateToken(token));
+        Assertions.assertFalse(service.validateToken(expired));
+        Assertions.assertFalse(service.validateToken(token.substring(0, token.length() - 4) + "AAAA"));
+        Assertions.assertFalse(service.validateToken("not-a-token"));
+        //signed by the current key, but for an issuer the security filter does not accept
+        Assertions.assertFalse(service.validateToken(List.of("it.water.Other"), token));
+        Assertions.assertTrue(service.validateToken(List.of("it.water.core.api.model.User"), token));
+        service.onDeactivate();
+    }
+
+    private Path copyTestKeystore() throws IOException {
+        Path keystore = tempDir.resolve("server.keystore");
+        if (!Files.exists(keystore))
+            Files.copy(Paths.get("src/test/resources/certs/server.keystore"), keystore);
+        return keystore;
+    }
+
+    //replaces (or adds) the key under the alias with a new EC P-256 key, like a scheduled rotation
+    private static void rotate(Path keystore, String alias) throws Exception {
+        String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+        List<String> common = List.of("-keystore", keystore.toString(), "-storepass", KEYSTORE_PASSWORD, "-noprompt");
+        if (ALIAS.equals(alias))
+            run(keytool, "-delete", "-alias", alias, common);
+        run(keytool, "-genkeypair", "-alias", alias, common, "-keyalg", "EC", "-groupname", "secp256r1", "-dname", "CN=" + alias, "-validity", "1");
+    }
+
+    private static void run(String keytool, String command, String aliasOption, String alias, List<String> common, String... options) throws Exception {
+        List<String> arguments = new ArrayList<>(List.of(keytool, command, aliasOption, alias));
+        arguments.addAll(common);
+        arguments.addAll(List.of(options));
+        Process process = new ProcessBuilder(arguments).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes());
+        Assertions.assertEquals(0, process.waitFor(), output);
+    }
+
+    private static JWTClaimsSet claims() {
+        long now = System.currentTimeMillis();
+        return new JWTClaimsSet.Builder().subject("user1").expirationTime(new Date(now + 60_000L)).build();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.authentication.service.execption.LoginAdmissionRejectedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link TenantLoginAdmission}: slots are granted by weighted fair queuing across tenants,
+ * and logins beyond the queue bound or the maximum wait are rejected.
+ */
+class TenantLoginAdmissionTest {
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private final List<String> served = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void burstOfOneTenantDoesNotStarveAnother() throws Exception {
+        TenantLoginAdmission admission = new TenantLoginAdmission(1, 10, 5000L);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> logins = new ArrayList<>();
+        logins.add(holdSlot(admission, release));
+        logins.add(enqueue(admission, "company:1", 1, "A1"));
+        logins.add(enqueue(admission, "company:1", 1, "A2"));
+        logins.add(enqueue(admission, "company:1", 1, "A3"));
+        logins.add(enqueue(admission, "company:2", 1, "B1"));
+
+        release.countDown();
+        for (Future<String> login : logins) {
+            login.get(5, TimeUnit.SECONDS);
+        }
+
+        Assertions.assertEquals(List.of("A1", "B1", "A2", "A3"), served);
+    }
+
+    @Test
+    void heavierTenantGetsALargerShare() throws Exception {
+        TenantLoginAdmission admission = new TenantLoginAdmission(1, 10, 5000L);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> logins = new ArrayList<>();
+        logins.add(holdSlot(admission, release));
+        logins.add(enqueue(admission, "company:1", 1, "A1"));
+        logins.add(enqueue(admission, "company:1", 1, "A2"));
+        logins.add(enqueue(admission, "company:2", 4, "B1"));
+        logins.add(enqueue(admission, "company:2", 4, "B2"));
+        logins.add(enqueue(admission, "company:2", 4, "B3"));
+        logins.add(enqueue(admission, "company:2", 4, "B4"));
+
+        release.countDown();
+        for (Future<String> login : logins) {
+            login.get(5, TimeUnit.SECONDS);
+        }
+
+        Assertions.assertEquals(List.of("B1", "B2", "B3", "A1", "B4", "A2"), served);
+    }
+
+    @Test
+    void loginBeyondTheTenantQueueBoundIsRejected() throws Exception {
+        TenantLoginAdmission admission = new TenantLoginAdmission(1, 1, 5000L);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> holder = holdSlot(admission, release);
+        Future<String> queued = enqueue(admission, "company:1", 1, "A1");
+
+        LoginAdmissionRejectedException rejected = Assertions.assertThrows(LoginAdmissionRejectedException.class,
+                () -> admission.admit("company:1", 1, () -> "A2"));
+        Assertions.assertEquals(5L, rejected.getRetryAfterSeconds());
+        //other tenants still have room in their own queue
+        Future<String> otherTenant = enqueue(admission, "company:2", 1, "B1");
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals("A1", queued.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("B1", otherTenant.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, admission.running());
+    }
+
+    @Test
+    void loginWaitingTooLongIsRejectedAndLeavesTheQueue() throws Exception {
+        TenantLoginAdmission admission = new TenantLoginAdmission(1, 10, 50L);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> holder = holdSlot(admission, release);
+
+        LoginAdmissionRejectedException rejected = Assertions.assertThrows(LoginAdmissionRejectedException.class,
+                () -> admission.admit("company:1", 1, () -> "A1"));
+        //never below one second, even when the configured wait is shorter
+        Assertions.assertEquals(1L, rejected.getRetryAfterSeconds());
+        Assertions.assertEquals(0, admission.queued());
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals("B1", admission.admit("company:2", 1, () -> "B1"));
+        Assertions.assertEquals(0, admission.running());
+    }
+
+    //occupies the only slot until the latch is released
+    private Future<String> holdSlot(TenantLoginAdmission admission, CountDownLatch release) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        Future<String> holder = callers.submit(() -> admission.admit("company:0", 1, () -> {
+            started.countDown();
+            await(release);
+            return "holder";
+        }));
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        return holder;
+    }
+
+    //submits a login and waits until it is queued, so that the queuing order is deterministic
+    private Future<String> enqueue(TenantLoginAdmission admission, String tenant, int weight, String name) throws InterruptedException {
+        int queued = admission.queued();
+        Future<String> login = callers.submit(() -> admission.admit(tenant, weight, () -> {
+            served.add(name);
+            return name;
+        }));
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (admission.queued() == queued && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+        return login;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
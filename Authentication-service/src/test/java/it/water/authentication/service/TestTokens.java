@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+
+import java.util.Date;
+import java.util.UUID;
+
+import static org.mockito.Mockito.lenient;
+
+/**
+ * Shared fixture of the revocation and validation tests: HS256 tokens, whose signature is checked by the
+ * mocked platform token service only, and a service backed by the in-memory revocation stores.
+ */
+final class TestTokens {
+
+    static final String ISSUER = "it.water.core.api.model.User";
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+
+    private TestTokens() {
+    }
+
+    /**
+     * Token of the default issuer. The iat claim is truncated to seconds: it is issued in the past so that a
+     * logout everywhere done right after covers it.
+     */
+    static String token(String subject) {
+        return token(subject, ISSUER, System.currentTimeMillis() - 2_000L);
+    }
+
+    static String token(String subject, String issuer, long issuedAtMillis) {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject(subject)
+                .issuer(issuer)
+                .jwtID(UUID.randomUUID().toString())
+                .issueTime(new Date(issuedAtMillis))
+                .expirationTime(new Date(issuedAtMillis + 3_600_000L))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), claims);
+        try {
+            jwt.sign(new MACSigner(SECRET));
+        } catch (JOSEException e) {
+            throw new IllegalStateException(e);
+        }
+        return jwt.serialize();
+    }
+
+    /**
+     * @return a service, not activated yet, with the in-memory revocation stores and the default issuer
+     */
+    static AuthenticationSystemServiceImpl service(AuthenticationOption authenticationOption, JwtTokenService jwtTokenService) {
+        AuthenticationSystemServiceImpl service = new AuthenticationSystemServiceImpl();
+        service.setSubjectRevocationStore(new InMemorySubjectRevocationStore());
+        service.setTokenRevocationStore(new InMemoryTokenRevocationStore());
+        service.setAuthenticationOption(authenticationOption);
+        service.setJwtTokenService(jwtTokenService);
+        lenient().when(authenticationOption.getIssuerName()).thenReturn(ISSUER);
+        return service;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import it.water.authentication.api.options.TokenClaimsProfile;
+import it.water.core.api.model.Role;
+import it.water.core.api.security.Authenticable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for {@link TokenIssuanceTemplate}, the per issuer template cache of
+ * {@link SigningProfiles} and the compact claims profile, against the test keystore.
+ */
+@ExtendWith(MockitoExtension.class)
+class TokenIssuanceTemplateTest {
+
+    private static final String KEYSTORE_FILE = "src/test/resources/certs/server.keystore";
+    private static final String KEYSTORE_PASSWORD = "water.";
+    private static final String ALIAS = "server-cert";
+    private static final String ISSUER = "it.water.core.api.model.User";
+    private static final long DURATION_MILLIS = 3_600_000L;
+
+    private static SigningProfiles profiles;
+
+    @Mock
+    private Authenticable authenticable;
+
+    @BeforeAll
+    static void loadKeys() throws Exception {
+        profiles = SigningProfiles.load(KEYSTORE_FILE, KEYSTORE_PASSWORD, null, ALIAS, null);
+    }
+
+    @Test
+    void sign_writesHeaderAndClaimsOfTheClaimsSetPath() throws Exception {
+        Role admin = mock(Role.class);
+        Role user = mock(Role.class);
+        when(admin.getName()).thenReturn("admin");
+        when(user.getName()).thenReturn("user");
+        when(authenticable.getScreenName()).thenReturn("user1");
+        when(authenticable.getLoggedEntityId()).thenReturn(42L);
+        when(authenticable.isAdmin()).thenReturn(true);
+        when(authenticable.getRoles()).thenReturn(List.of(admin, user));
+        long now = 1_700_000_000_123L;
+
+        SignedJWT jwt = SignedJWT.parse(profiles.issuanceTemplate(ISSUER, DURATION_MILLIS, TokenClaimsProfile.STANDARD).sign(authenticable, now));
+
+        SigningKeyCache keys = profiles.getDefaultKey();
+        Assertions.assertTrue(jwt.verify(keys.getVerifier()));
+        Assertions.assertEquals(JWSAlgorithm.RS256, jwt.getHeader().getAlgorithm());
+        Assertions.assertEquals(keys.getKeyId(), jwt.getHeader().getKeyID());
+        Assertions.assertEquals(JOSEObjectType.JWT, jwt.getHeader().getType());
+        JWTClaimsSet claims = jwt.getJWTClaimsSet();
+        Assertions.assertEquals("user1", claims.getSubject());
+        Assertions.assertEquals(ISSUER, claims.getIssuer());
+        Assertions.assertNotNull(claims.getJWTID());
+        Assertions.assertEquals(now / 1000L * 1000L, claims.getIssueTime().getTime());
+        Assertions.assertEquals((now + DURATION_MILLIS) / 1000L * 1000L, claims.getExpirationTime().getTime());
+        Assertions.assertEquals(42L, claims.getLongClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_LOGGED_ENTITY_ID));
+        Assertions.assertTrue(claims.getBooleanClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ADMIN));
+        Assertions.assertEquals(List.of("admin", "user"), claims.getStringListClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ROLES));
+    }
+
+    @Test
+    void sign_escapesStringsAndOmitsMissingClaims() throws Exception {
+        when(authenticable.getScreenName()).thenReturn("we\"ird\\user\n\u0001");
+
+        SignedJWT jwt = SignedJWT.parse(profiles.issuanceTemplate(null, DURATION_MILLIS, TokenClaimsProfile.STANDARD).sign(authenticable, System.currentTimeMillis()));
+
+        JWTClaimsSet claims = jwt.getJWTClaimsSet();
+        Assertions.assertTrue(jwt.verify(profiles.getDefaultKey().getVerifier()));
+        Assertions.assertEquals("we\"ird\\user\n\u0001", claims.getSubject());
+        Assertions.assertNull(claims.getIssuer());
+        Assertions.assertNull(claims.getClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_LOGGED_ENTITY_ID));
+        Assertions.assertFalse(claims.getBooleanClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ADMIN));
+        Assertions.assertTrue(claims.getStringListClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ROLES).isEmpty());
+    }
+
+    @Test
+    void issuanceTemplate_isCachedPerIssuerAndRebuiltOnDurationChange() {
+        TokenIssuanceTemplate template = profiles.issuanceTemplate(ISSUER, DURATION_MILLIS, TokenClaimsProfile.STANDARD);
+
+        Assertions.assertSame(template, profiles.issuanceTemplate(ISSUER, DURATION_MILLIS, TokenClaimsProfile.STANDARD));
+        Assertions.assertNotSame(template, profiles.issuanceTemplate("it.water.Other", DURATION_MILLIS, TokenClaimsProfile.STANDARD));
+        TokenIssuanceTemplate shorter = profiles.issuanceTemplate(ISSUER, 60_000L, TokenClaimsProfile.STANDARD);
+        Assertions.assertEquals(60_000L, shorter.getDurationMillis());
+        Assertions.assertSame(shorter, profiles.issuanceTemplate(ISSUER, 60_000L, TokenClaimsProfile.STANDARD));
+        Assertions.assertSame(profiles.getDefaultKey(), shorter.getKey());
+        Assertions.assertEquals(TokenClaimsProfile.COMPACT, profiles.issuanceTemplate(ISSUER, 60_000L, TokenClaimsProfile.COMPACT).getProfile());
+    }
+
+    @Test
+    void sign_compactProfileKeepsThePrincipalClaimsAndCompactsThePermissions() throws Exception {
+        Role admin = mock(Role.class);
+        when(admin.getName()).thenReturn("admin");
+        when(authenticable.getScreenName()).thenReturn("user1");
+        when(authenticable.getLoggedEntityId()).thenReturn(42L);
+        when(authenticable.isAdmin()).thenReturn(true);
+        when(authenticable.getRoles()).thenReturn(List.of(admin));
+
+        SignedJWT jwt = SignedJWT.parse(profiles.issuanceTemplate("it.water.Compact", DURATION_MILLIS, TokenClaimsProfile.COMPACT)
+                .sign(authenticable, System.currentTimeMillis(), Map.of("it.water.Device", List.of("find")), 3L));
+
+        JWTClaimsSet compact = jwt.getJWTClaimsSet();
+        Assertions.assertTrue(jwt.verify(profiles.getDefaultKey().getVerifier()));
+        Assertions.assertTrue(CompactClaims.isCompact(compact));
+        //read by the platform security filter as they are, on any node
+        Assertions.assertEquals(42L, compact.getLongClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_LOGGED_ENTITY_ID));
+        Assertions.assertTrue(compact.getBooleanClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ADMIN));
+        Assertions.assertEquals(List.of("admin"), compact.getStringListClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ROLES));
+        Assertions.assertEquals(Map.of("it.water.Device", 0b1000L), compact.getClaim(CompactClaims.CLAIM_PERMISSIONS));
+        Assertions.assertNull(compact.getClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_PERMISSIONS));
+        JWTClaimsSet claims = CompactClaims.expand(compact);
+        Assertions.assertEquals("user1", claims.getSubject());
+        Assertions.assertEquals("it.water.Compact", claims.getIssuer());
+        Assertions.assertEquals(compact.getExpirationTime(), claims.getExpirationTime());
+        Assertions.assertEquals(List.of("admin"), claims.getStringListClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_ROLES));
+        Assertions.assertEquals(Map.of("it.water.Device", List.of("find")), claims.getClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_PERMISSIONS));
+        Assertions.assertEquals(3L, claims.getLongClaim(AuthenticationSystemServiceImpl.TOKEN_CLAIM_PERMISSIONS_VERSION));
+        Assertions.assertNull(claims.getClaim(CompactClaims.CLAIM_PROFILE));
+    }
+}
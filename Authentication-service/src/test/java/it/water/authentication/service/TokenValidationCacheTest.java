@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.authentication.api.TokenIntrospection;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static it.water.authentication.service.TestTokens.token;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Plain Mockito unit tests for {@link TokenValidationCache} and the cached introspection of
+ * {@link AuthenticationSystemServiceImpl}.
+ */
+@ExtendWith(MockitoExtension.class)
+class TokenValidationCacheTest {
+
+    @Mock
+    private JwtTokenService jwtTokenService;
+
+    @Mock
+    private AuthenticationOption authenticationOption;
+
+    @Test
+    void get_returnsTheCachedResultUntilTheTokenExpires() {
+        TokenValidationCache cache = new TokenValidationCache(10, 60_000L);
+        long now = System.currentTimeMillis();
+
+        cache.put("token-a", active("user1", "jti-a", now + 60_000L), cache.epoch());
+        cache.put("token-b", active("user1", "jti-b", now - 1L), cache.epoch());
+        cache.put("token-c", TokenIntrospection.inactive(), cache.epoch());
+
+        Assertions.assertEquals("jti-a", cache.get("token-a").getJwtId());
+        Assertions.assertNull(cache.get("token-b"));
+        Assertions.assertNull(cache.get("token-c"));
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    void invalidate_dropsTheEntriesOfTheJtiOrSubject() {
+        TokenValidationCache cache = new TokenValidationCache(10, 60_000L);
+        long expiresAt = System.currentTimeMillis() + 60_000L;
+        cache.put("token-a", active("user1", "jti-a", expiresAt), cache.epoch());
+        cache.put("token-b", active("user1", "jti-b", expiresAt), cache.epoch());
+        cache.put("token-c", active("user2", "jti-c", expiresAt), cache.epoch());
+
+        cache.invalidateJwtId("jti-a");
+        Assertions.assertNull(cache.get("token-a"));
+        Assertions.assertNotNull(cache.get("token-b"));
+
+        cache.invalidateSubject("user1");
+        Assertions.assertNull(cache.get("token-b"));
+        Assertions.assertNotNull(cache.get("token-c"));
+    }
+
+    @Test
+    void put_dropsAResultValidatedBeforeAConcurrentRevocation() {
+        TokenValidationCache cache = new TokenValidationCache(10, 60_000L);
+        long epoch = cache.epoch();
+
+        cache.invalidateJwtId("jti-a");
+        cache.put("token-a", active("user1", "jti-a", System.currentTimeMillis() + 60_000L), epoch);
+
+        Assertions.assertNull(cache.get("token-a"));
+    }
+
+    @Test
+    void put_evictsTheOldestEntriesBeyondTheBound() {
+        TokenValidationCache cache = new TokenValidationCache(3, 60_000L);
+        long expiresAt = System.currentTimeMillis() + 60_000L;
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("token-" + i, active("user" + i, "jti-" + i, expiresAt), cache.epoch());
+        }
+
+        Assertions.assertTrue(cache.size() <= 3);
+        Assertions.assertNotNull(cache.get("token-9"));
+    }
+
+    @Test
+    void put_evictsABatchPerOverflow() {
+        TokenValidationCache cache = new TokenValidationCache(100, 60_000L);
+        long expiresAt = System.currentTimeMillis() + 60_000L;
+
+        for (int i = 0; i <= 100; i++) {
+            cache.put("token-" + i, active("user" + i, "jti-" + i, expiresAt), cache.epoch());
+        }
+
+        //the overflow dropped ten entries at once: the next nine insertions do not evict
+        Assertions.assertEquals(91, cache.size());
+        Assertions.assertNotNull(cache.get("token-100"));
+    }
+
+    @Test
+    void introspect_validatesOnceThenServesTheCache() {
+        AuthenticationSystemServiceImpl service = activatedService();
+        String token = token("user1");
+
+        TokenIntrospection first = service.introspect(token);
+        TokenIntrospection second = service.introspect(token);
+
+        Assertions.assertTrue(first.isActive());
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals("user1", first.getSubject());
+        verify(jwtTokenService, times(1)).validateToken(anyList(), anyString());
+    }
+
+    @Test
+    void introspect_logoutInvalidatesTheCachedResult() {
+        AuthenticationSystemServiceImpl service = activatedService();
+        String token = token("user1");
+        String otherToken = token("user1");
+        Assertions.assertTrue(service.introspect(token).isActive());
+
+        service.logout(token);
+
+        Assertions.assertFalse(service.introspect(token).isActive());
+        Assertions.assertTrue(service.introspect(otherToken).isActive());
+
+        service.logoutEverywhere("user1");
+
+        Assertions.assertFalse(service.introspect(otherToken).isActive());
+    }
+
+    @Test
+    void introspect_inactiveForInvalidTokens() {
+        AuthenticationSystemServiceImpl service = activatedService();
+        String token = token("user1");
+        lenient().when(jwtTokenService.validateToken(anyList(), anyString())).thenReturn(false);
+
+        Assertions.assertFalse(service.introspect(token).isActive());
+        Assertions.assertFalse(service.introspect("not.a.jwt").isActive());
+        Assertions.assertFalse(service.introspect(null).isActive());
+    }
+
+    //the cache tests above use the cache alone, the introspection ones a service validating every token
+    private AuthenticationSystemServiceImpl activatedService() {
+        AuthenticationSystemServiceImpl service = TestTokens.service(authenticationOption, jwtTokenService);
+        lenient().when(jwtTokenService.validateToken(anyList(), anyString())).thenReturn(true);
+        service.onActivate(null);
+        return service;
+    }
+
+    private static TokenIntrospection active(String subject, String jwtId, long expiresAt) {
+        return new TokenIntrospection(true, subject, "issuer", jwtId, System.currentTimeMillis(), expiresAt);
+    }
+}
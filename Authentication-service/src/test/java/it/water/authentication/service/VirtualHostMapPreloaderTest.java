@@ -0,0 +1,127 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service;
+
+import it.water.authentication.api.VirtualHostCompanyCache;
+import it.water.authentication.api.VirtualHostMappingSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for {@link VirtualHostMapPreloader}: initial bulk load, incremental and
+ * periodic full refresh, failure tolerance.
+ */
+@ExtendWith(MockitoExtension.class)
+class VirtualHostMapPreloaderTest {
+
+    @Mock
+    private VirtualHostMappingSource mappingSource;
+
+    @Mock
+    private VirtualHostCompanyCache virtualHostCompanyCache;
+
+    private VirtualHostMapPreloader preloader;
+
+    @AfterEach
+    void tearDown() {
+        if (preloader != null)
+            preloader.stop();
+    }
+
+    @Test
+    void start_loadsTheFullMapSynchronously() {
+        Map<String, Long> mappings = Map.of("tenant.example.test", 77L);
+        when(mappingSource.findAllVirtualHostMappings()).thenReturn(mappings);
+        preloader = new VirtualHostMapPreloader(mappingSource, virtualHostCompanyCache, 0L, 3600000L);
+
+        Assertions.assertTrue(preloader.start());
+
+        verify(virtualHostCompanyCache).preload(mappings);
+    }
+
+    @Test
+    void start_bulkLoadFailureDoesNotPreventActivation() {
+        when(mappingSource.findAllVirtualHostMappings()).thenThrow(new IllegalStateException("company down"));
+        preloader = new VirtualHostMapPreloader(mappingSource, virtualHostCompanyCache, 0L, 3600000L);
+
+        Assertions.assertFalse(preloader.start());
+
+        verify(virtualHostCompanyCache, never()).preload(any());
+    }
+
+    @Test
+    void sync_appliesOnlyChangesBetweenFullRefreshes() {
+        Map<String, Long> changes = Map.of("new.example.test", 78L);
+        when(mappingSource.findAllVirtualHostMappings()).thenReturn(Map.of());
+        when(mappingSource.findVirtualHostMappingsChangedSince(anyLong())).thenReturn(changes);
+        preloader = new VirtualHostMapPreloader(mappingSource, virtualHostCompanyCache, 0L, 3600000L);
+        preloader.start();
+
+        preloader.sync();
+
+        verify(virtualHostCompanyCache).applyChanges(changes);
+        verify(mappingSource, times(1)).findAllVirtualHostMappings();
+    }
+
+    @Test
+    void sync_reloadsTheFullMapWhenDue() {
+        when(mappingSource.findAllVirtualHostMappings()).thenReturn(Map.of());
+        preloader = new VirtualHostMapPreloader(mappingSource, virtualHostCompanyCache, 0L, 0L);
+        preloader.start();
+
+        preloader.sync();
+
+        verify(mappingSource, times(2)).findAllVirtualHostMappings();
+        verify(mappingSource, never()).findVirtualHostMappingsChangedSince(anyLong());
+    }
+
+    @Test
+    void sync_incrementalFailureIsSwallowed() {
+        when(mappingSource.findAllVirtualHostMappings()).thenReturn(Map.of());
+        when(mappingSource.findVirtualHostMappingsChangedSince(anyLong())).thenThrow(new IllegalStateException("company down"));
+        preloader = new VirtualHostMapPreloader(mappingSource, virtualHostCompanyCache, 0L, 3600000L);
+        preloader.start();
+
+        Assertions.assertDoesNotThrow(() -> preloader.sync());
+        verify(virtualHostCompanyCache, never()).applyChanges(any());
+    }
+
+    @Test
+    void start_schedulesBackgroundRefresh() {
+        when(mappingSource.findAllVirtualHostMappings()).thenReturn(Map.of());
+        when(mappingSource.findVirtualHostMappingsChangedSince(anyLong())).thenReturn(Map.of());
+        preloader = new VirtualHostMapPreloader(mappingSource, virtualHostCompanyCache, 10L, 3600000L);
+
+        preloader.start();
+
+        verify(virtualHostCompanyCache, timeout(2000).atLeastOnce()).applyChanges(Map.of());
+    }
+}
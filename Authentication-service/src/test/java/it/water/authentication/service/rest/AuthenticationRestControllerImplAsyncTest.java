@@ -0,0 +1,227 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.authentication.service.rest;
+
+import it.water.authentication.api.AuthenticationApi;
+import it.water.authentication.api.AuthenticationSystemApi;
+import it.water.authentication.api.ParsedToken;
+import it.water.authentication.api.options.AuthenticationOption;
+import it.water.authentication.service.AuthenticationJwtTokenService;
+import it.water.authentication.service.execption.LoginAdmissionRejectedException;
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.security.Authenticable;
+import it.water.core.permission.exceptions.UnauthorizedException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain Mockito unit tests for the asynchronous login, impersonate and logout resources: the work runs off the
+ * calling thread, the suspended response is resumed with the same body or exception as the synchronous
+ * resource, and the caller security context is visible to the worker.
+ */
+@ExtendWith(MockitoExtension.class)
+class AuthenticationRestControllerImplAsyncTest {
+
+    private static final long TIMEOUT_MILLIS = 5000L;
+
+    @Mock
+    private AuthenticationApi authenticationApi;
+
+    @Mock
+    private AuthenticationSystemApi authenticationSystemApi;
+
+    @Mock
+    private AuthenticationOption authenticationOption;
+
+    @Mock
+    private Runtime runtime;
+
+    @Mock
+    private AsyncResponse asyncResponse;
+
+    @Mock
+    private Authenticable authenticable;
+
+    @Mock
+    private SecurityContext securityContext;
+
+    private final ThreadLocal<SecurityContext> threadSecurityContext = new ThreadLocal<>();
+
+    private AuthenticationRestControllerImpl controller;
+
+    @BeforeEach
+    void setUp() {
+        controller = new AuthenticationRestControllerImpl();
+        controller.setAuthenticationApi(authenticationApi);
+        controller.setAuthenticationSystemApi(authenticationSystemApi);
+        controller.setAuthenticationOption(authenticationOption);
+        controller.setRuntime(runtime);
+        //the runtime keeps the security context per thread, as the Water runtime does
+        lenient().when(runtime.getSecurityContext()).thenAnswer(invocation -> threadSecurityContext.get());
+        lenient().doAnswer(invocation -> {
+            threadSecurityContext.set(invocation.getArgument(0));
+            return null;
+        }).when(runtime).fillSecurityContext(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void loginResumesWithTheTokenFromAnotherThread() {
+        Thread caller = Thread.currentThread();
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        when(authenticationApi.login("user1", "pwd", 5L, (String) null)).thenAnswer(invocation -> {
+            worker.set(Thread.currentThread());
+            return authenticable;
+        });
+        when(authenticationApi.generateToken(authenticable)).thenReturn("token");
+
+        controller.login("user1", "pwd", 5L, asyncResponse);
+
+        ArgumentCaptor<Object> response = ArgumentCaptor.forClass(Object.class);
+        verify(asyncResponse, timeout(TIMEOUT_MILLIS)).resume(response.capture());
+        Map<String, String> body = (Map<String, String>) response.getValue();
+        Assertions.assertEquals("token", body.get("token"));
+        Assertions.assertFalse(body.containsKey("refreshToken"));
+        Assertions.assertNotSame(caller, worker.get());
+    }
+
+    @Test
+    void loginFailureResumesWithTheException() {
+        UnauthorizedException failure = new UnauthorizedException("Invalid credentials");
+        when(authenticationApi.login("user1", "wrong", 5L, (String) null)).thenThrow(failure);
+
+        controller.login("user1", "wrong", 5L, asyncResponse);
+
+        verify(asyncResponse, timeout(TIMEOUT_MILLIS)).resume((Throwable) failure);
+    }
+
+    @Test
+    void errorResumesWithInternalServerError() {
+        when(authenticationApi.login("user1", "pwd", 5L, (String) null)).thenThrow(new NoClassDefFoundError("missing"));
+
+        controller.login("user1", "pwd", 5L, asyncResponse);
+
+        ArgumentCaptor<Object> response = ArgumentCaptor.forClass(Object.class);
+        verify(asyncResponse, timeout(TIMEOUT_MILLIS)).resume(response.capture());
+        Assertions.assertEquals(500, ((Response) response.getValue()).getStatus());
+    }
+
+    @Test
+    void onDeactivateStopsTheWorkers() throws InterruptedException {
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        when(authenticationApi.login("user1", "pwd", 5L, (String) null)).thenAnswer(invocation -> {
+            worker.set(Thread.currentThread());
+            return authenticable;
+        });
+        when(authenticationApi.generateToken(authenticable)).thenReturn("token");
+        controller.login("user1", "pwd", 5L, asyncResponse);
+        verify(asyncResponse, timeout(TIMEOUT_MILLIS)).resume(any(Object.class));
+
+        controller.onDeactivate();
+
+        worker.get().join(TIMEOUT_MILLIS);
+        Assertions.assertFalse(worker.get().isAlive());
+    }
+
+    @Test
+    void rejectedAdmissionResumesWithServiceUnavailable() {
+        when(authenticationApi.login("user1", "pwd", 5L, (String) null))
+                .thenThrow(new LoginAdmissionRejectedException("Too many pending logins", 3L));
+
+        controller.login("user1", "pwd", 5L, asyncResponse);
+
+        ArgumentCaptor<Object> response = ArgumentCaptor.forClass(Object.class);
+        verify(asyncResponse, timeout(TIMEOUT_MILLIS)).resume(response.capture());
+        Response rejected = (Response) response.getValue();
+        Assertions.assertEquals(503, rejected.getStatus());
+        Assertions.assertEquals("3", rejected.getHeaderString("Retry-After"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void impersonateRunsWithTheCallerSecurityContext() {
+        AtomicReference<SecurityContext> workerContext = new AtomicReference<>();
+        when(authenticationApi.impersonationToken("target", null)).thenAnswer(invocation -> {
+            workerContext.set(runtime.getSecurityContext());
+            return "impersonation-token";
+        });
+        threadSecurityContext.set(securityContext);
+
+        controller.impersonate("target", null, asyncResponse);
+
+        ArgumentCaptor<Object> response = ArgumentCaptor.forClass(Object.class);
+        verify(asyncResponse, timeout(TIMEOUT_MILLIS)).resume(response.capture());
+        Assertions.assertEquals("impersonation-token", ((Map<String, String>) response.getValue()).get("token"));
+        Assertions.assertSame(securityContext, workerContext.get());
+        Assertions.assertSame(securityContext, threadSecurityContext.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void logoutParsesTheBearerTokenBeforeSuspending() {
+        ParsedToken parsed = new ParsedToken("raw", "jti-1", "user1", 0L, 0L);
+        when(authenticationSystemApi.parseToken("raw")).thenReturn(parsed);
+
+        controller.logout("Bearer raw", asyncResponse);
+
+        ArgumentCaptor<Object> response = ArgumentCaptor.forClass(Object.class);
+        verify(asyncResponse, timeout(TIMEOUT_MILLIS)).resume(response.capture());
+        Assertions.assertEquals("ok", ((Map<String, String>) response.getValue()).get("result"));
+        verify(authenticationSystemApi).logout(parsed);
+    }
+
+    @Test
+    void logoutReusesTheTokenVerifiedByTheSecurityFilter() {
+        ParsedToken verified = new ParsedToken("raw", "jti-1", "user1", 0L, 0L);
+        ComponentRegistry componentRegistry = mock(ComponentRegistry.class);
+        when(componentRegistry.findComponent(AuthenticationSystemApi.class, null)).thenReturn(authenticationSystemApi);
+        when(authenticationSystemApi.verifyToken(List.of("issuer"), "raw")).thenReturn(verified);
+        AuthenticationJwtTokenService filterTokenService = new AuthenticationJwtTokenService();
+        filterTokenService.setComponentRegistry(componentRegistry);
+        //the @LoggedIn filter validates the bearer token on the request thread before the resource runs
+        Assertions.assertTrue(filterTokenService.validateToken(List.of("issuer"), "raw"));
+
+        controller.logout("Bearer raw", asyncResponse);
+
+        verify(asyncResponse, timeout(TIMEOUT_MILLIS)).resume(any(Object.class));
+        verify(authenticationSystemApi).logout(verified);
+        verify(authenticationSystemApi, never()).parseToken(anyString());
+    }
+}
@@ -0,0 +1,25 @@
+# JWKS REST test
+# Exercises GET /water/authentication/jwks
+#
+# serviceBaseUrl is provided by karate-config.js (built from protocol/host/webServerPort properties).
+# The endpoint is public: it publishes the signing public keys loaded at activation as a JWK set.
+# Responses carry a strong ETag and Cache-Control; revalidating with If-None-Match returns HTTP 304.
+
+Feature: Authentication JWKS
+
+  Scenario: Public keys are published with ETag and revalidated with If-None-Match
+
+    Given url serviceBaseUrl+'/water/authentication/jwks'
+    And header Accept = 'application/json'
+    When method GET
+    Then status 200
+    And match response.keys == '#[_ > 0]'
+    And match each response.keys contains { kid: '#string', kty: '#string', use: 'sig' }
+    And match karate.response.header('Cache-Control') contains 'max-age='
+    * def eTag = karate.response.header('ETag')
+    And match eTag == '#regex "[A-Za-z0-9_-]+"'
+
+    Given url serviceBaseUrl+'/water/authentication/jwks'
+    And header If-None-Match = eTag
+    When method GET
+    Then status 304
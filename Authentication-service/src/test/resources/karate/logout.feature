@@ -1,6 +1,6 @@
 # Generated with Water Generator
 # M13 — Logout / token revocation REST test
-# Exercises POST /water/authentication/logout
+# Exercises POST /water/authentication/logout and /water/authentication/logout/all
 #
 # serviceBaseUrl is provided by karate-config.js (built from protocol/host/webServerPort properties).
 # The endpoint is @LoggedIn — it reads the Authorization header.
@@ -35,3 +35,47 @@ Feature: Authentication Logout
     And header Accept = 'application/json'
     When method POST
     Then status 401
+
+  Scenario: Login twice then logout everywhere — the other token of the caller is rejected too
+
+    # Step 1: two sessions of the same user
+    Given header Content-Type = 'application/x-www-form-urlencoded'
+    And header Accept = 'application/json'
+    Given url serviceBaseUrl+'/water/authentication/login'
+    And request 'username=admin&password=admin'
+    When method POST
+    Then status 200
+    * def bearerToken = response.token
+
+    Given header Content-Type = 'application/x-www-form-urlencoded'
+    And header Accept = 'application/json'
+    Given url serviceBaseUrl+'/water/authentication/login'
+    And request 'username=admin&password=admin'
+    When method POST
+    Then status 200
+    * def otherBearerToken = response.token
+
+    # Step 2: logout everywhere with the first token
+    Given url serviceBaseUrl+'/water/authentication/logout/all'
+    And header Authorization = 'Bearer ' + bearerToken
+    And header Accept = 'application/json'
+    When method POST
+    Then status 200
+    And match response == { result: 'ok' }
+
+    # Step 3: the second token is refused by an authenticated endpoint
+    Given url serviceBaseUrl+'/water/authentication/logout'
+    And header Authorization = 'Bearer ' + otherBearerToken
+    And header Accept = 'application/json'
+    When method POST
+    Then status 401
+
+    # iat has second precision: tokens issued within the revocation second are revoked too
+    * java.lang.Thread.sleep(1100)
+
+  Scenario: Logout everywhere without Authorization header returns 401
+
+    Given url serviceBaseUrl+'/water/authentication/logout/all'
+    And header Accept = 'application/json'
+    When method POST
+    Then status 401